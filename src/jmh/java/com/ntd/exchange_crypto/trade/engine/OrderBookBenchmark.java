@@ -0,0 +1,105 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrderBook} alone, without the engine: insert / cancel at a random depth and partial fills at the top, on a
+ * book of {@code levels} price levels per side. Orders are built in setup, so allocation is the book's own.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderBookBenchmark {
+
+    private static final long MID = 6_500_000;
+    private static final int ORDERS_PER_LEVEL = 10;
+    private static final int POOL = 1 << 16;
+
+    @Param({"10", "1000"})
+    int levels;
+
+    private OrderBook book;
+    private Order[] pool;
+    private SplittableRandom random;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        book = new OrderBook("BTC-USDT", 2, 3);
+        random = new SplittableRandom(7);
+        long id = 0;
+        for (int level = 1; level <= levels; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) {
+                book.add(order(++id, Side.ASK, MID + level));
+                book.add(order(++id, Side.BID, MID - level));
+            }
+        }
+        // Lệnh xoay vòng: thêm lệnh i, hủy lệnh i - POOL/2 -> kích thước book không đổi
+        pool = new Order[POOL];
+        for (int i = 0; i < POOL; i++) {
+            Side side = random.nextBoolean() ? Side.BID : Side.ASK;
+            long depth = 1 + random.nextInt(levels);
+            pool[i] = order(++id, side, side == Side.ASK ? MID + depth : MID - depth);
+        }
+        for (int i = 0; i < POOL / 2; i++) {
+            book.add(pool[i]);
+        }
+        next = POOL / 2;
+    }
+
+    @Benchmark
+    public Order addCancel() {
+        book.add(pool[next & (POOL - 1)]);
+        Order removed = book.remove(pool[(next - POOL / 2) & (POOL - 1)].getId());
+        next++;
+        return removed;
+    }
+
+    @Benchmark
+    public long fillTop() {
+        Side side = random.nextBoolean() ? Side.BID : Side.ASK;
+        PriceLevel best = book.best(side);
+        BookEntry entry = best.first();
+        // Khớp một phần rất nhỏ: book giữ nguyên hình dạng
+        book.onFill(entry.getOrder().getId(), 1);
+        return entry.remaining();
+    }
+
+    private static Order order(long id, Side side, long price) {
+        Order order = new Order();
+        order.setId(Long.toString(id));
+        order.setUserId("maker");
+        order.setGetCryptoId(side == Side.BID ? "BTC" : "USDT");
+        order.setGiveCryptoId(side == Side.BID ? "USDT" : "BTC");
+        order.setSide(side);
+        order.setType(OrderType.LIMIT);
+        order.setStatus(OrderStatus.NEW);
+        order.setTimeInForce(TimeInForce.GTC);
+        order.setPrice(BigDecimal.valueOf(price, 2));
+        order.setQuantity(BigDecimal.valueOf(1_000_000_000L, 3));
+        return order;
+    }
+}
@@ -0,0 +1,263 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.order.OrderExternalAPI;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
+import com.ntd.exchange_crypto.trade.engine.CancelOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.EngineCheckpointer;
+import com.ntd.exchange_crypto.trade.engine.EngineJournal;
+import com.ntd.exchange_crypto.trade.engine.EngineSequencer;
+import com.ntd.exchange_crypto.trade.engine.EngineTimers;
+import com.ntd.exchange_crypto.trade.engine.NewOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.OrderBook;
+import com.ntd.exchange_crypto.trade.engine.OrderBookRegistry;
+import com.ntd.exchange_crypto.trade.engine.PairLeaseManager;
+import com.ntd.exchange_crypto.trade.engine.PriceLevel;
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+import com.ntd.exchange_crypto.trade.model.Trade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link MatchEngine} synchronously (the shard thread's {@code handle}, without the sequencer queue) with
+ * synthetic order flows on one pair. Journal, leases and Redis are off; trades, order updates and events go to
+ * no-op sinks, so the numbers cover matching, book maintenance and timers only. Creating the input orders is part of
+ * every operation and shows up in the allocation rate.
+ * <p>
+ * {@link #throughput} reports ops/s, {@link #latency} the latency distribution (p0.99 etc.), and the default
+ * {@code -prof gc} of the {@code jmh} profile adds {@code gc.alloc.rate.norm} (bytes/op).
+ * <p>
+ * The Binance stats are pinned far away from the book, so a LIMIT order that does not match rests as PENDING
+ * (no anonymous-fill timer) and a MARKET order may sweep every level of the book.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MatchEngineBenchmark {
+
+    private static final String PAIR = "BTC-USDT";
+    // 65000.00 với tick 0.01
+    private static final long MID = 6_500_000;
+    private static final OrderBookStats STATS = new OrderBookStats(
+            new BigDecimal("10000000"), new BigDecimal("10000000"), new BigDecimal("0.01"), new BigDecimal("0.01"));
+
+    public enum Flow {
+        // 200 mức giá x 25 lệnh mỗi bên; nửa lệnh mới nằm chờ ở độ sâu ngẫu nhiên, nửa khớp mức tốt nhất
+        DEEP_BOOK,
+        // Mức giá thưa trên dải rộng: mỗi op tạo một lệnh ở giá ngẫu nhiên (thường là mức mới) và hủy một lệnh
+        WIDE_SPREAD,
+        // MARKET quét ~2 mức giá, xen kẽ hai bên, rồi bù lại đúng số lệnh đã khớp ở cuối book
+        MARKET_SWEEP,
+        // 45% đặt, 45% hủy, 10% khớp mức tốt nhất
+        CANCEL_HEAVY
+    }
+
+    @Param
+    Flow flow;
+
+    private MatchEngine engine;
+    private OrderBook book;
+    private SplittableRandom random;
+    private long sequence;
+    // Lệnh còn có thể hủy (có thể đã khớp hết -> hủy thành no-op như thực tế)
+    private List<String> live;
+    private long askTail;
+    private long bidTail;
+    private boolean sweepBid;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        EngineSequencer sequencer = new EngineSequencer(1, 1024);
+        EngineJournal journal = new EngineJournal(false, "target/jmh-journal", 64, 5, 1);
+        EngineTimers timers = new EngineTimers(sequencer, 100, 4096, 1);
+        CryptoExternalAPI cryptos = (CryptoExternalAPI) Proxy.newProxyInstance(CryptoExternalAPI.class.getClassLoader(),
+                new Class<?>[]{CryptoExternalAPI.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getScale")) return null;
+                    return "BTC".equals(args[0]) ? 3 : 2;
+                });
+        OrderBookRegistry registry = new OrderBookRegistry(null, cryptos, new MarketDepthService(cryptos));
+        EngineCheckpointer checkpointer = new EngineCheckpointer(journal, null, registry, sequencer,
+                Long.MAX_VALUE, Long.MAX_VALUE, 1);
+        PairLeaseManager leases = new PairLeaseManager(null, false, "bench", 10_000, 3_000, 30_000);
+        TradeService trades = new TradeService(null, null, null) {
+            @Override
+            public void saveTrade(Trade trade) {
+            }
+        };
+
+        engine = new MatchEngine(trades, null, noop(OrderExternalAPI.class), event -> {
+        }, registry, sequencer, journal, checkpointer, timers, leases, null, new OrderLatencyMonitor(false, 60_000),
+                "resident");
+        registry.setRemovalListener((b, order) -> timers.cancelAll(b.getPairId(), order.getId()));
+        book = new OrderBook(PAIR, 2, 3);
+        registry.put(book);
+
+        random = new SplittableRandom(42);
+        sequence = 0;
+        live = new ArrayList<>();
+        switch (flow) {
+            case DEEP_BOOK -> prefill(200, 25, 1);
+            case WIDE_SPREAD -> prefill(2_000, 1, 100);
+            case MARKET_SWEEP -> prefill(50, 5, 1);
+            case CANCEL_HEAVY -> prefill(100, 20, 1);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int throughput() {
+        return step();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int latency() {
+        return step();
+    }
+
+    private int step() {
+        switch (flow) {
+            case DEEP_BOOK -> {
+                if (random.nextBoolean()) {
+                    passive(randomSide(), 1 + random.nextInt(200));
+                } else {
+                    aggressive(randomSide());
+                }
+            }
+            case WIDE_SPREAD -> {
+                Side side = randomSide();
+                long offset = 1_000 + random.nextInt(200_000);
+                place(side, OrderType.LIMIT, side == Side.ASK ? MID + offset : MID - offset, 1_000);
+                cancelRandom();
+            }
+            case MARKET_SWEEP -> sweep();
+            case CANCEL_HEAVY -> {
+                int dice = random.nextInt(100);
+                if (dice < 45) {
+                    passive(randomSide(), 1 + random.nextInt(100));
+                } else if (dice < 90) {
+                    cancelRandom();
+                } else {
+                    aggressive(randomSide());
+                }
+            }
+        }
+        return book.size();
+    }
+
+    private void prefill(int levels, int ordersPerLevel, long tickStep) {
+        for (int level = 1; level <= levels; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                place(Side.ASK, OrderType.LIMIT, MID + level * tickStep, 1_000);
+                place(Side.BID, OrderType.LIMIT, MID - level * tickStep, 1_000);
+            }
+        }
+        askTail = MID + levels * tickStep;
+        bidTail = MID - levels * tickStep;
+    }
+
+    private void passive(Side side, long depth) {
+        place(side, OrderType.LIMIT, side == Side.ASK ? MID + depth : MID - depth, 1_000);
+    }
+
+    // LIMIT đúng giá mức tốt nhất bên kia (engine chỉ khớp LIMIT cùng mức giá)
+    private void aggressive(Side side) {
+        PriceLevel best = book.best(side == Side.BID ? Side.ASK : Side.BID);
+        if (best == null) {
+            passive(side, 1 + random.nextInt(100));
+            return;
+        }
+        taker(side, OrderType.LIMIT, best.getPrice(), 1_000);
+    }
+
+    private void sweep() {
+        sweepBid = !sweepBid;
+        Side side = sweepBid ? Side.BID : Side.ASK;
+        taker(side, OrderType.MARKET, MID, 10_000);
+        for (int i = 0; i < 10; i++) {
+            if (sweepBid) {
+                if (i % 5 == 0) askTail++;
+                place(Side.ASK, OrderType.LIMIT, askTail, 1_000);
+            } else {
+                if (i % 5 == 0) bidTail--;
+                place(Side.BID, OrderType.LIMIT, bidTail, 1_000);
+            }
+        }
+    }
+
+    private void cancelRandom() {
+        if (live.isEmpty()) return;
+        int index = random.nextInt(live.size());
+        String orderId = live.get(index);
+        live.set(index, live.getLast());
+        live.removeLast();
+        engine.handle(0, new CancelOrderCommand(PAIR, orderId));
+    }
+
+    private void place(Side side, OrderType type, long price, long quantity) {
+        Order order = order(side, type, price, quantity, "maker");
+        if (flow == Flow.WIDE_SPREAD || flow == Flow.CANCEL_HEAVY) live.add(order.getId());
+        engine.handle(0, new NewOrderCommand(PAIR, order, STATS));
+    }
+
+    private void taker(Side side, OrderType type, long price, long quantity) {
+        engine.handle(0, new NewOrderCommand(PAIR, order(side, type, price, quantity, "taker"), STATS));
+    }
+
+    private Order order(Side side, OrderType type, long price, long quantity, String userId) {
+        Order order = new Order();
+        order.setId(Long.toString(++sequence));
+        order.setUserId(userId);
+        order.setGetCryptoId(side == Side.BID ? "BTC" : "USDT");
+        order.setGiveCryptoId(side == Side.BID ? "USDT" : "BTC");
+        order.setSide(side);
+        order.setType(type);
+        order.setStatus(OrderStatus.NEW);
+        order.setTimeInForce(TimeInForce.GTC);
+        order.setPrice(BigDecimal.valueOf(price, 2));
+        order.setQuantity(BigDecimal.valueOf(quantity, 3));
+        return order;
+    }
+
+    private Side randomSide() {
+        return random.nextBoolean() ? Side.BID : Side.ASK;
+    }
+
+    // Sink không làm gì cho các API ngoài engine (DB / Redis)
+    @SuppressWarnings("unchecked")
+    private static <T> T noop(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) return false;
+            if (returnType == int.class) return 0;
+            if (returnType == long.class) return 0L;
+            return null;
+        });
+    }
+}
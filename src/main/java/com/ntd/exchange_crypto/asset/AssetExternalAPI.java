@@ -18,9 +18,15 @@ public interface AssetExternalAPI {
 
     void lockBalance(String cryptoId, BigDecimal amount);
 
+    // Check + lock trong một bước; false nếu số dư khả dụng không đủ
+    boolean tryLockBalance(String userId, String cryptoId, BigDecimal amount);
+
     void unlockBalance(String userId ,String productId, BigDecimal amount);
 
     void updateAsset(String userId, String cryptoId, BigDecimal amount, String side);
 
+    // Delta ròng của nhiều fill theo account (settlement), áp hết hoặc không áp gì; account từ chối -> AssetException
+    void settleBalances(List<BalanceChange> changes);
+
     AssetResponse createNewAsset(String productId, BigDecimal newBalance);
 }
@@ -0,0 +1,14 @@
+package com.ntd.exchange_crypto.asset;
+
+import java.math.BigDecimal;
+
+/**
+ * Netted change of one account: {@code balanceDelta} to the balance and {@code lockedDelta} to the locked balance.
+ */
+public record BalanceChange(String userId, String cryptoId, BigDecimal balanceDelta, BigDecimal lockedDelta) {
+
+    // Chỉ nhận vào (không trừ, không đụng locked): áp được cả khi account chưa tồn tại
+    public boolean isCredit() {
+        return lockedDelta.signum() == 0 && balanceDelta.signum() >= 0;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ntd.exchange_crypto.asset.config;
+
+import com.ntd.exchange_crypto.asset.service.AssetKeyMigration;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AssetSchemaConfig {
+
+    // Gộp account trùng trước khi Hibernate (ddl-auto: update) thêm unique key vào bảng asset
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor assetKeyBeforeSchemaUpdate() {
+        return new EntityManagerFactoryDependsOnPostProcessor(AssetKeyMigration.class);
+    }
+}
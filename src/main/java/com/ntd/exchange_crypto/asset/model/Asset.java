@@ -8,7 +8,10 @@ import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
-@Table(name = "asset")
+// Một account cho mỗi (user, crypto): AssetBalanceStore dựa vào đây để tạo account bằng upsert.
+// Bảng cũ có thể còn account trùng -> AssetKeyMigration gộp chúng và tạo key trước khi schema update chạy
+@Table(name = "asset", uniqueConstraints = @UniqueConstraint(name = "uk_asset_user_crypto",
+        columnNames = {"user_id", "crypto_id"}))
 @Getter
 @Setter
 @NoArgsConstructor
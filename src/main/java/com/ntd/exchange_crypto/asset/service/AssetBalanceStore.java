@@ -0,0 +1,231 @@
+package com.ntd.exchange_crypto.asset.service;
+
+import com.ntd.exchange_crypto.asset.BalanceChange;
+import com.ntd.exchange_crypto.asset.exception.AssetErrorCode;
+import com.ntd.exchange_crypto.asset.exception.AssetException;
+import com.ntd.exchange_crypto.asset.model.Asset;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Balances of the {@code asset} table, which stays the source of truth: an order locks on whichever node receives
+ * the request while its fills settle on the node holding the pair's lease, so no node may check a balance against its
+ * own memory. Every change is one relative, conditional UPDATE ({@code balance = balance + ?,
+ * locked_balance = locked_balance + ?} only if the row stays non-negative and covers its locked balance) in the
+ * caller's transaction. The affected-row count tells whether it was applied: changes from different nodes never
+ * overwrite each other, and a refused change is reported to the caller (false or an exception), never dropped.
+ * <p>
+ * Reads (available balance, asset list) come from a resident cache of each user's accounts, loaded on demand and kept
+ * at most {@code app.asset.balances.cache-ttl-ms}; a change made here evicts the user's entry when its transaction
+ * ends. Checks never use the cache.
+ */
+@Slf4j
+@Component
+public class AssetBalanceStore {
+
+    private static final String SELECT_USER_SQL =
+            "SELECT id, user_id, crypto_id, balance, locked_balance, last_updated, status FROM asset WHERE user_id = ?";
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM asset WHERE user_id = ? AND crypto_id = ?";
+    // Delta ròng của account; chỉ áp khi sau đó locked >= 0 và balance >= locked
+    private static final String UPDATE_SQL = """
+            UPDATE asset SET balance = balance + ?, locked_balance = locked_balance + ?, last_updated = ?
+            WHERE user_id = ? AND crypto_id = ? AND locked_balance + ? >= 0 AND balance + ? >= locked_balance + ?
+            """;
+    // Nhận vào account có thể chưa có; unique (user_id, crypto_id) chặn hai node cùng tạo một account
+    private static final String CREDIT_SQL = """
+            INSERT INTO asset (id, crypto_id, user_id, balance, locked_balance, last_updated, status)
+            VALUES (?, ?, ?, ?, 0, ?, 'ACTIVE')
+            ON DUPLICATE KEY UPDATE balance = balance + VALUES(balance), last_updated = VALUES(last_updated)
+            """;
+    private static final String OPEN_SQL = """
+            INSERT IGNORE INTO asset (id, crypto_id, user_id, balance, locked_balance, last_updated, status)
+            VALUES (?, ?, ?, ?, 0, ?, 'ACTIVE')
+            """;
+    private static final RowMapper<Asset> ASSET_MAPPER = (rs, n) -> Asset.builder()
+            .id(rs.getString("id"))
+            .userId(rs.getString("user_id"))
+            .cryptoId(rs.getString("crypto_id"))
+            .balance(rs.getBigDecimal("balance"))
+            .lockedBalance(rs.getBigDecimal("locked_balance"))
+            .lastUpdated(rs.getTimestamp("last_updated").toInstant())
+            .status(Asset.AssetStatus.valueOf(rs.getString("status")))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long cacheTtlMs;
+    // userId -> cryptoId -> account lúc đọc từ bảng; chỉ dùng để đọc
+    private final Map<String, CachedAccounts> cache = new ConcurrentHashMap<>();
+
+    public AssetBalanceStore(JdbcTemplate jdbcTemplate,
+                         @Value("${app.asset.balances.cache-ttl-ms:1000}") long cacheTtlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheTtlMs = cacheTtlMs;
+    }
+
+    /**
+     * Balance minus locked balance as last read from the table, or null when the user has no account of that crypto.
+     */
+    public BigDecimal available(String userId, String cryptoId) {
+        Asset asset = cached(userId).get(cryptoId);
+        return asset == null ? null : asset.getBalance().subtract(asset.getLockedBalance());
+    }
+
+    /**
+     * Locks {@code amount} if the available balance in the table covers it; false (nothing changed) otherwise.
+     */
+    public boolean tryLock(String userId, String cryptoId, BigDecimal amount) {
+        if (apply(userId, cryptoId, BigDecimal.ZERO, amount)) return true;
+        requireExists(userId, cryptoId);
+        return false;
+    }
+
+    public void unlock(String userId, String cryptoId, BigDecimal amount) {
+        if (apply(userId, cryptoId, BigDecimal.ZERO, amount.negate())) return;
+        requireExists(userId, cryptoId);
+        throw new AssetException(AssetErrorCode.LOCKED_BALANCE_INSUFFICIENT);
+    }
+
+    /**
+     * Adds {@code amount} to the balance. A missing account is opened when {@code open} is set.
+     */
+    public void credit(String userId, String cryptoId, BigDecimal amount, boolean open) {
+        if (open && amount.signum() >= 0) {
+            upsertCredit(userId, cryptoId, amount);
+            return;
+        }
+        if (apply(userId, cryptoId, amount, BigDecimal.ZERO)) return;
+        requireExists(userId, cryptoId);
+        throw new AssetException(AssetErrorCode.INSUFFICIENT_BALANCE);
+    }
+
+    /**
+     * Applies netted settlements, all or nothing within the caller's transaction: credits as one batch of upserts
+     * (a missing account is opened), the other changes as one batch of conditional UPDATEs. Any change the guard
+     * refuses is logged and reported with an {@link AssetException}, so the caller rolls the whole batch back and
+     * can settle it again item by item.
+     */
+    public void settle(List<BalanceChange> changes) {
+        List<BalanceChange> credits = new ArrayList<>();
+        List<BalanceChange> updates = new ArrayList<>(changes.size());
+        for (BalanceChange change : changes) (change.isCredit() ? credits : updates).add(change);
+        Timestamp now = Timestamp.from(Instant.now());
+
+        if (!credits.isEmpty()) {
+            jdbcTemplate.batchUpdate(CREDIT_SQL, credits, credits.size(), (ps, change) -> {
+                ps.setString(1, UUID.randomUUID().toString());
+                ps.setString(2, change.cryptoId());
+                ps.setString(3, change.userId());
+                ps.setBigDecimal(4, change.balanceDelta());
+                ps.setTimestamp(5, now);
+            });
+        }
+        if (!updates.isEmpty()) {
+            int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(), (ps, change) -> {
+                ps.setBigDecimal(1, change.balanceDelta());
+                ps.setBigDecimal(2, change.lockedDelta());
+                ps.setTimestamp(3, now);
+                ps.setString(4, change.userId());
+                ps.setString(5, change.cryptoId());
+                ps.setBigDecimal(6, change.lockedDelta());
+                ps.setBigDecimal(7, change.balanceDelta());
+                ps.setBigDecimal(8, change.lockedDelta());
+            });
+            List<BalanceChange> rejected = new ArrayList<>();
+            int i = 0;
+            for (int[] chunk : counts) {
+                for (int count : chunk) {
+                    // Cần số row thật của từng câu: không bật rewriteBatchedStatements cho datasource này
+                    if (count == 0) rejected.add(updates.get(i));
+                    i++;
+                }
+            }
+            if (!rejected.isEmpty()) {
+                for (BalanceChange change : rejected) requireExists(change.userId(), change.cryptoId());
+                log.error("Asset table refused {} of {} settlement changes: {}", rejected.size(), changes.size(),
+                        rejected);
+                throw new AssetException(AssetErrorCode.LOCKED_BALANCE_INSUFFICIENT);
+            }
+        }
+        changes.stream().map(BalanceChange::userId).distinct().forEach(this::evict);
+    }
+
+    /**
+     * The user's account of {@code cryptoId}, opened with {@code balance} when missing.
+     */
+    public Asset open(String userId, String cryptoId, BigDecimal balance) {
+        jdbcTemplate.update(OPEN_SQL, UUID.randomUUID().toString(), cryptoId, userId, balance,
+                Timestamp.from(Instant.now()));
+        evict(userId);
+        return load(userId).get(cryptoId);
+    }
+
+    public List<Asset> accounts(String userId) {
+        return List.copyOf(cached(userId).values());
+    }
+
+    // Một UPDATE có điều kiện trong transaction của caller; true nếu row đã đổi
+    private boolean apply(String userId, String cryptoId, BigDecimal balanceDelta, BigDecimal lockedDelta) {
+        int updated = jdbcTemplate.update(UPDATE_SQL, balanceDelta, lockedDelta, Timestamp.from(Instant.now()),
+                userId, cryptoId, lockedDelta, balanceDelta, lockedDelta);
+        if (updated == 0) return false;
+        evict(userId);
+        return true;
+    }
+
+    private void upsertCredit(String userId, String cryptoId, BigDecimal amount) {
+        jdbcTemplate.update(CREDIT_SQL, UUID.randomUUID().toString(), cryptoId, userId, amount,
+                Timestamp.from(Instant.now()));
+        evict(userId);
+    }
+
+    private void requireExists(String userId, String cryptoId) {
+        Integer count = jdbcTemplate.queryForObject(EXISTS_SQL, Integer.class, userId, cryptoId);
+        if (count == null || count == 0) throw new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND);
+    }
+
+    private Map<String, Asset> cached(String userId) {
+        CachedAccounts cached = cache.get(userId);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt() < cacheTtlMs) return cached.byCrypto();
+        return load(userId);
+    }
+
+    private Map<String, Asset> load(String userId) {
+        long loadedAt = System.currentTimeMillis();
+        Map<String, Asset> byCrypto = new HashMap<>();
+        for (Asset asset : jdbcTemplate.query(SELECT_USER_SQL, ASSET_MAPPER, userId)) {
+            byCrypto.put(asset.getCryptoId(), asset);
+        }
+        cache.put(userId, new CachedAccounts(byCrypto, loadedAt));
+        return byCrypto;
+    }
+
+    // Giá trị mới chỉ thấy được sau commit -> bỏ cache của user cả lúc transaction kết thúc (commit hay rollback)
+    private void evict(String userId) {
+        cache.remove(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                cache.remove(userId);
+            }
+        });
+    }
+
+    private record CachedAccounts(Map<String, Asset> byCrypto, long loadedAt) {
+    }
+}
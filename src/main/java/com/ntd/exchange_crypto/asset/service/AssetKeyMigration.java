@@ -0,0 +1,82 @@
+package com.ntd.exchange_crypto.asset.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Objects;
+
+/**
+ * Brings an existing {@code asset} table under the one-account-per-(user, crypto) key that {@link AssetBalanceStore}
+ * relies on. Older code could open the same account twice, and the schema update cannot add the key while such
+ * duplicates exist. So before the entity manager starts, every group of duplicates is merged into its lowest id
+ * (balances and locked balances summed, FROZEN if any row was), the other rows are deleted and the key is created.
+ * Does nothing on a fresh database or once the key exists.
+ */
+@Slf4j
+@Component
+public class AssetKeyMigration implements InitializingBean {
+
+    public static final String KEY_NAME = "uk_asset_user_crypto";
+
+    private static final String TABLE_SQL = """
+            SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'asset'
+            """;
+    // Unique index đúng hai cột (user_id, crypto_id), tên gì cũng được
+    private static final String KEY_SQL = """
+            SELECT COUNT(*) FROM (
+                SELECT index_name FROM information_schema.statistics
+                WHERE table_schema = DATABASE() AND table_name = 'asset' AND non_unique = 0
+                GROUP BY index_name
+                HAVING GROUP_CONCAT(column_name ORDER BY seq_in_index) = 'user_id,crypto_id'
+            ) k
+            """;
+    private static final String DUPLICATES_SQL = """
+            SELECT user_id, crypto_id, MIN(id) AS keep_id, SUM(balance) AS balance,
+                   SUM(locked_balance) AS locked_balance, MAX(last_updated) AS last_updated,
+                   SUM(status = 'FROZEN') AS frozen
+            FROM asset GROUP BY user_id, crypto_id HAVING COUNT(*) > 1
+            """;
+    private static final String MERGE_SQL = """
+            UPDATE asset a JOIN (%s) d ON a.id = d.keep_id
+            SET a.balance = d.balance, a.locked_balance = d.locked_balance, a.last_updated = d.last_updated,
+                a.status = IF(d.frozen > 0, 'FROZEN', a.status)
+            """.formatted(DUPLICATES_SQL);
+    private static final String DELETE_SQL = """
+            DELETE a FROM asset a JOIN (%s) d
+            ON a.user_id = d.user_id AND a.crypto_id = d.crypto_id AND a.id <> d.keep_id
+            """.formatted(DUPLICATES_SQL);
+    private static final String ADD_KEY_SQL =
+            "ALTER TABLE asset ADD CONSTRAINT " + KEY_NAME + " UNIQUE (user_id, crypto_id)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AssetKeyMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (count(TABLE_SQL) == 0 || count(KEY_SQL) > 0) return;
+
+        // Transaction riêng trên DataSource: transaction manager JPA chưa có ở thời điểm này
+        TransactionTemplate tx = new TransactionTemplate(
+                new DataSourceTransactionManager(Objects.requireNonNull(jdbcTemplate.getDataSource())));
+        int deleted = Objects.requireNonNull(tx.execute(status -> {
+            jdbcTemplate.update(MERGE_SQL);
+            return jdbcTemplate.update(DELETE_SQL);
+        }));
+        if (deleted > 0) log.warn("ALERT merged duplicated asset accounts, {} extra rows deleted", deleted);
+        // DDL tự commit trên MySQL -> chạy sau khi phần gộp đã commit
+        jdbcTemplate.execute(ADD_KEY_SQL);
+        log.info("Added unique key {} on asset (user_id, crypto_id) after {} duplicate rows removed", KEY_NAME, deleted);
+    }
+
+    private int count(String sql) {
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
+        return count == null ? 0 : count;
+    }
+}
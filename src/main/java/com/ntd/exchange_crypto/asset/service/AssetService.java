@@ -2,10 +2,10 @@ package com.ntd.exchange_crypto.asset.service;
 
 import com.ntd.exchange_crypto.asset.AssetExternalAPI;
 import com.ntd.exchange_crypto.asset.AssetInternalAPI;
+import com.ntd.exchange_crypto.asset.BalanceChange;
 import com.ntd.exchange_crypto.asset.dto.response.AssetResponse;
 import com.ntd.exchange_crypto.asset.mapper.AssetMapper;
 import com.ntd.exchange_crypto.asset.model.Asset;
-import com.ntd.exchange_crypto.asset.repository.AssetRepository;
 import com.ntd.exchange_crypto.asset.exception.AssetErrorCode;
 import com.ntd.exchange_crypto.asset.exception.AssetException;
 import com.ntd.exchange_crypto.user.UserDTO;
@@ -16,13 +16,10 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 
 @Service
@@ -31,7 +28,7 @@ import java.util.Set;
 @RequiredArgsConstructor
 public class AssetService implements AssetInternalAPI, AssetExternalAPI {
 
-    AssetRepository assetRepository;
+    AssetBalanceStore balanceStore;
     UserExternalAPI userExternalAPI;
     AssetMapper assetMapper;
 
@@ -43,30 +40,25 @@ public class AssetService implements AssetInternalAPI, AssetExternalAPI {
     public BigDecimal getAvailableBalance(String cryptoId) {
         UserDTO user = userExternalAPI.getUserLogin();
 
-        Asset asset = this.assetRepository
-                .findAssetsByUserIdAndCryptoId(user.getId(), cryptoId)
-                .orElseThrow(() -> new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND));
-
-        return asset.getBalance().subtract(asset.getLockedBalance());
+        BigDecimal available = balanceStore.available(user.getId(), cryptoId);
+        if (available == null) throw new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND);
+        return available;
     }
 
     @Override
     public List<AssetResponse> getMyAsset() {
         UserDTO user = userExternalAPI.getUserLogin();
-        Set<Asset> assets = this.assetRepository.findAllByUserId(user.getId());
-        if (assets.isEmpty()) {
-            log.warn("No assets found for user: {}", user.getId());
-            return List.of();
-        }
-        return assets.stream()
-                .map(assetMapper::toAssetResponse)
-                .toList();
+        return getAssets(user.getId());
     }
 
     @Override
     @PreAuthorize("hasRole('ADMIN')")
     public List<AssetResponse> getUserAsset(String userId) {
-        Set<Asset> assets = this.assetRepository.findAllByUserId(userId);
+        return getAssets(userId);
+    }
+
+    private List<AssetResponse> getAssets(String userId) {
+        List<Asset> assets = balanceStore.accounts(userId);
         if (assets.isEmpty()) {
             log.warn("No assets found for user: {}", userId);
             return List.of();
@@ -77,19 +69,17 @@ public class AssetService implements AssetInternalAPI, AssetExternalAPI {
     }
 
     @Override
-    @Transactional(readOnly = true)
     public boolean hasSufficientBalance(String cryptoId, BigDecimal amount) {
         BigDecimal availableBalance = getAvailableBalance(cryptoId);
         return availableBalance.compareTo(amount) >= 0;
     }
 
-    /*
-    *
-    *
-    * */
+    @Override
+    public boolean tryLockBalance(String userId, String cryptoId, BigDecimal amount) {
+        return balanceStore.tryLock(userId, cryptoId, amount);
+    }
 
     @Override
-    @Transactional
     public void lockBalance(String giveCryptoId, BigDecimal amount) {
 
         UserDTO userDTO = userExternalAPI.getUserLogin();
@@ -97,60 +87,26 @@ public class AssetService implements AssetInternalAPI, AssetExternalAPI {
         log.info("Locking balance for user: {}, cryptoId: {}, amount: {}",
                 userDTO.getId(), giveCryptoId, amount);
 
-        Asset userAsset = this.assetRepository
-                .findAssetsByUserIdAndCryptoId(userDTO.getId(), giveCryptoId)
-                .orElseThrow(() -> new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND));
-
-
-        if (getAvailableBalance(giveCryptoId).compareTo(amount) < 0)
+        if (!tryLockBalance(userDTO.getId(), giveCryptoId, amount))
             throw new AssetException(AssetErrorCode.INSUFFICIENT_BALANCE_TO_LOCK);
-
-        userAsset.setLockedBalance(userAsset.getLockedBalance().add(amount));
-        assetRepository.save(userAsset);
     }
 
     @Override
-    @Transactional
     public void unlockBalance(String userId, String giveCryptoId, BigDecimal amount) {
-        log.info("Unlocking balance for user");
-
-        Asset userAsset = this.assetRepository
-                .findAssetsByUserIdAndCryptoId(userId, giveCryptoId)
-                .orElseThrow(() -> new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND));
-
-        log.info("UNLOCK AMOUNT: {}, LOCKED BALANCE: {}", amount, userAsset.getLockedBalance());
-        if (userAsset.getLockedBalance().compareTo(amount) < 0)
-            throw new AssetException(AssetErrorCode.LOCKED_BALANCE_INSUFFICIENT);
+        log.debug("Unlocking balance for user: {}, cryptoId: {}, amount: {}", userId, giveCryptoId, amount);
 
-        userAsset.setLockedBalance(userAsset.getLockedBalance().subtract(amount));
-        assetRepository.saveAndFlush(userAsset);
+        balanceStore.unlock(userId, giveCryptoId, amount);
     }
 
     @Override
     public void updateAsset(String userId, String cryptoId, BigDecimal amount, String side) {
-        Asset userAsset = assetRepository.findAssetsByUserIdAndCryptoId(userId, cryptoId)
-                .orElse(null);
-
-        if (userAsset == null) {
-            if ("BID".equals(side)) {
-                userAsset = Asset.builder()
-                        .balance(amount)
-                        .lockedBalance(BigDecimal.ZERO)
-                        .cryptoId(cryptoId)
-                        .lastUpdated(Instant.now())
-                        .status(Asset.AssetStatus.ACTIVE)
-                        .userId(userId)
-                        .build();
-            } else {
-                throw new AssetException(AssetErrorCode.USER_ASSET_NOTFOUND);
-            }
-        } else {
-            userAsset.setBalance(userAsset.getBalance().add(amount));
-            userAsset.setLastUpdated(Instant.now());
-        }
-
         log.info("Updating asset for user: {}, cryptoId: {}, amount: {}", userId, cryptoId, amount);
-        assetRepository.save(userAsset);
+        balanceStore.credit(userId, cryptoId, amount, "BID".equals(side));
+    }
+
+    @Override
+    public void settleBalances(List<BalanceChange> changes) {
+        balanceStore.settle(changes);
     }
 
 
@@ -191,19 +147,7 @@ public class AssetService implements AssetInternalAPI, AssetExternalAPI {
 
         UserDTO user = userExternalAPI.getUserLogin();
 
-        Asset asset = this.assetRepository
-                .findAssetsByUserIdAndCryptoId(user.getId(), productId)
-                .orElseGet(() -> {
-                    Asset newAsset = Asset.builder()
-                            .balance(newBalance)
-                            .lockedBalance(BigDecimal.ZERO)
-                            .cryptoId(productId)
-                            .lastUpdated(Instant.now())
-                            .status(Asset.AssetStatus.ACTIVE)
-                            .userId(user.getId())
-                            .build();
-                    return this.assetRepository.save(newAsset);
-                });
+        Asset asset = balanceStore.open(user.getId(), productId, newBalance);
         return assetMapper.toAssetResponse(asset);
 
     }
@@ -0,0 +1,60 @@
+package com.ntd.exchange_crypto.common;
+
+import java.time.Instant;
+
+/**
+ * Member of an {@code orderbook:<pair>:<side>} ZSet. Every member has score 0 and sorts by its bytes
+ * (ZRANGEBYLEX), best first: {@code <price key><time key>:<orderId>}, both keys fixed-width lowercase hex.
+ * The price key is the scaled price for asks and {@code Long.MAX_VALUE - price} for bids; the time key is the
+ * creation time in epoch nanos. Price-time priority is therefore exact, unlike a double score where the time part
+ * falls below the precision of large prices.
+ */
+public final class BookMember {
+
+    static final int KEY_WIDTH = 16;
+    static final int PREFIX_LENGTH = 2 * KEY_WIDTH + 1;
+    // Lớn hơn mọi ký tự hex: "(" + priceKey + END bao hết member của mức giá đó
+    private static final char END = '~';
+
+    private BookMember() {
+    }
+
+    public static String of(boolean bid, long scaledPrice, Instant createdAt, String orderId) {
+        long nanos = createdAt.getEpochSecond() * 1_000_000_000L + createdAt.getNano();
+        return priceKey(bid, scaledPrice) + hex(nanos) + ':' + orderId;
+    }
+
+    public static String priceKey(boolean bid, long scaledPrice) {
+        if (scaledPrice < 0) {
+            throw new IllegalArgumentException("Negative book price " + scaledPrice);
+        }
+        return hex(bid ? Long.MAX_VALUE - scaledPrice : scaledPrice);
+    }
+
+    /**
+     * Exclusive upper lex bound of the members priced at {@code scaledPrice} or better.
+     */
+    public static String upTo(boolean bid, long scaledPrice) {
+        return priceKey(bid, scaledPrice) + END;
+    }
+
+    /**
+     * Order id of a member. Members written before the lex layout were the bare id (or the id in JSON quotes).
+     */
+    public static String orderId(String member) {
+        if (member.length() > PREFIX_LENGTH && member.charAt(PREFIX_LENGTH - 1) == ':') {
+            return member.substring(PREFIX_LENGTH);
+        }
+        boolean quoted = member.length() >= 2 && member.charAt(0) == '"' && member.charAt(member.length() - 1) == '"';
+        return quoted ? member.substring(1, member.length() - 1) : member;
+    }
+
+    public static boolean isLegacy(String member) {
+        return !(member.length() > PREFIX_LENGTH && member.charAt(PREFIX_LENGTH - 1) == ':');
+    }
+
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0".repeat(KEY_WIDTH - digits.length()) + digits;
+    }
+}
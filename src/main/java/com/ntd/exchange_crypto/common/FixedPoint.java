@@ -0,0 +1,61 @@
+package com.ntd.exchange_crypto.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Scaled-long helpers for prices and quantities.
+ * A value {@code v} with scale {@code s} is stored as {@code v * 10^s}; the scale of each crypto comes from the
+ * catalog ({@code crypto.decimal_scale}). BigDecimal is only used at the edges (REST, JPA, Binance feed).
+ */
+public final class FixedPoint {
+
+    public static final int DEFAULT_SCALE = 8;
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Digits beyond {@code scale} are truncated; callers normalize user input at the edge so nothing is lost here.
+     */
+    public static long toLong(BigDecimal value, int scale) {
+        if (value == null) return 0L;
+        return value.setScale(scale, RoundingMode.DOWN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long value, int scale) {
+        return BigDecimal.valueOf(value, scale);
+    }
+
+    public static BigDecimal normalize(BigDecimal value, int scale) {
+        return value == null ? null : value.setScale(scale, RoundingMode.DOWN);
+    }
+
+    /**
+     * {@code a * b / 10^scale}, truncated. Falls back to BigInteger only when the intermediate product overflows.
+     */
+    public static long multiply(long a, long b, int scale) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return low / POW10[scale];
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b))
+                .divide(BigInteger.valueOf(POW10[scale]))
+                .longValueExact();
+    }
+
+    public static long pow10(int scale) {
+        return POW10[scale];
+    }
+}
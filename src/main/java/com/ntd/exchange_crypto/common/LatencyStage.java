@@ -0,0 +1,26 @@
+package com.ntd.exchange_crypto.common;
+
+/**
+ * Stages of an order between {@code POST /api/orders/} and the WebSocket notification of its owner, in pipeline
+ * order. Each stage is the time from the previous mark of the {@link OrderTrace} to its own mark, except
+ * {@link #STATUS_UPDATE} (every fill the engine hands to settlement, taker or maker), {@link #PUSH}
+ * (engine start to the first push to the taker) and {@link #END_TO_END}.
+ */
+public enum LatencyStage {
+    // Controller -> user đăng nhập (gồm proxy + mở transaction)
+    USER_LOOKUP,
+    // Dựng order, chuẩn hóa scale, giá tốt nhất / tổng chi phí MARKET
+    ORDER_PREPARE,
+    // Check + lock số dư trên AssetBalanceStore
+    BALANCE_LOCK,
+    ORDER_SAVE,
+    // Commit + ghi book Redis, tới ngay trước PUBLISH
+    COMMIT_PUBLISH,
+    // PUBLISH -> node giữ lease nhận và decode (giữa hai node: lệch đồng hồ cũng nằm ở đây)
+    TRANSPORT,
+    ENGINE_QUEUE,
+    MATCH,
+    STATUS_UPDATE,
+    PUSH,
+    END_TO_END
+}
@@ -0,0 +1,276 @@
+package com.ntd.exchange_crypto.common;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis mirror of the order book: {@code order:<id>} hashes plus {@code orderbook:<pair>:<side>} ZSets.
+ * Every multi-command operation is pipelined so it costs one network round trip, and reads of many orders are
+ * fetched in a single pipeline instead of one blocking HGET per order.
+ * Values are raw bytes: the {@code order} field holds the caller's encoding (see {@code OrderCodec}), ZSet members are
+ * {@link BookMember}s and numeric fields are ASCII integers, so Lua scripts can use all of them as-is.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderBookRedisStore {
+
+    static final String ORDER_FIELD = "order";
+    static final String MEMBER_FIELD = "mbr";
+
+    // Member lấy từ hash; vẫn xóa được member dạng cũ (id trần hoặc id trong dấu nháy JSON)
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REMOVE = new DefaultRedisScript<>("""
+            local member = redis.call('HGET', KEYS[1], 'mbr')
+            if member then redis.call('ZREM', KEYS[2], member) end
+            redis.call('ZREM', KEYS[2], ARGV[1], '"' .. ARGV[1] .. '"')
+            redis.call('DEL', KEYS[1])
+            return {}
+            """, List.class);
+    // Số order tối đa trong một pipeline đọc, tránh reply quá lớn khi hydrate cả book
+    static final int READ_CHUNK = 512;
+
+    RedisTemplate<String, byte[]> orderBookRedisTemplate;
+    OrderIntakeStreams orderIntakeStreams;
+    LongAdder roundTrips = new LongAdder();
+
+    public static String orderKey(String orderId) {
+        return "order:" + orderId;
+    }
+
+    public static byte[] number(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static long parseNumber(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * HSET order:&lt;id&gt; + ZADD (score 0, see {@link BookMember}) in one round trip. The member is also kept in the
+     * hash so the order can be removed without recomputing it.
+     */
+    public void addOrder(String orderId, Map<String, byte[]> fields, String zsetKey, String member) {
+        Map<String, byte[]> hash = new HashMap<>(fields);
+        hash.put(MEMBER_FIELD, bytes(member));
+        roundTrips.increment();
+        orderBookRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = operations;
+                ops.opsForHash().putAll(orderKey(orderId), hash);
+                ops.opsForZSet().add(zsetKey, bytes(member), 0);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Hand-off of many new orders in one round trip: for each, HSET + ZADD as in {@link #addOrder} followed by the
+     * XADD to its pair's intake stream ({@link OrderIntakeStreams}). A pipeline keeps the order of its commands, so
+     * an order's mirror is written before the engine can read it.
+     */
+    public void placeAll(List<Placement> placements) {
+        if (placements.isEmpty()) return;
+        roundTrips.increment();
+        orderBookRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = operations;
+                for (Placement placement : placements) {
+                    Map<String, byte[]> hash = new HashMap<>(placement.fields());
+                    hash.put(MEMBER_FIELD, bytes(placement.member()));
+                    ops.opsForHash().putAll(orderKey(placement.orderId()), hash);
+                    ops.opsForZSet().add(placement.zsetKey(), bytes(placement.member()), 0);
+                    orderIntakeStreams.append(ops, placement.pairId(), placement.message());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * DEL order:&lt;id&gt; + ZREM of its member in one round trip.
+     */
+    public void removeOrder(String orderId, String zsetKey) {
+        execute(REMOVE, List.of(orderKey(orderId), zsetKey), orderId);
+    }
+
+    public void putOrder(String orderId, byte[] encodedOrder) {
+        roundTrips.increment();
+        orderBookRedisTemplate.opsForHash().put(orderKey(orderId), ORDER_FIELD, encodedOrder);
+    }
+
+    /**
+     * Order ids of a book side, best first.
+     */
+    public List<String> range(String zsetKey, long start, long end) {
+        List<String> members = members(zsetKey, start, end);
+        List<String> result = new ArrayList<>(members.size());
+        for (String member : members) {
+            result.add(BookMember.orderId(member));
+        }
+        return result;
+    }
+
+    /**
+     * Raw ZSet members of a book side, best first.
+     */
+    public List<String> members(String zsetKey, long start, long end) {
+        roundTrips.increment();
+        Set<byte[]> members = orderBookRedisTemplate.opsForZSet().range(zsetKey, start, end);
+        if (members == null) return List.of();
+        List<String> result = new ArrayList<>(members.size());
+        for (byte[] member : members) {
+            result.add(new String(member, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Ids of the first {@code count} orders below the exclusive lex bound {@code upTo} (see {@link BookMember#upTo}),
+     * best first: a single ZRANGEBYLEX, no filtering by price afterwards.
+     */
+    public List<String> rangeUpTo(String zsetKey, String upTo, int count) {
+        roundTrips.increment();
+        Range<byte[]> range = Range.of(Range.Bound.unbounded(), Range.Bound.exclusive(bytes(upTo)));
+        Set<byte[]> members = orderBookRedisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.zSetCommands().zRangeByLex(bytes(zsetKey), range, Limit.limit().count(count)));
+        if (members == null) return List.of();
+        List<String> result = new ArrayList<>(members.size());
+        for (byte[] member : members) {
+            result.add(BookMember.orderId(new String(member, StandardCharsets.UTF_8)));
+        }
+        return result;
+    }
+
+    /**
+     * Replaces {@code oldMember} (pre-lex layout) by {@code newMember} in one round trip.
+     */
+    public void moveMember(String orderId, String zsetKey, String oldMember, String newMember) {
+        roundTrips.increment();
+        orderBookRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = operations;
+                ops.opsForZSet().remove(zsetKey, bytes(oldMember));
+                ops.opsForZSet().add(zsetKey, bytes(newMember), 0);
+                ops.opsForHash().put(orderKey(orderId), MEMBER_FIELD, bytes(newMember));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Encoded form of each order, in the order of {@code orderIds}; {@code null} where the hash is gone.
+     * One pipelined round trip per {@link #READ_CHUNK} orders.
+     */
+    public List<byte[]> getOrders(Collection<String> orderIds) {
+        List<String> ids = List.copyOf(orderIds);
+        List<byte[]> result = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += READ_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + READ_CHUNK));
+            roundTrips.increment();
+            List<Object> replies = orderBookRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, byte[]> ops = operations;
+                    for (String id : chunk) {
+                        ops.opsForHash().get(orderKey(id), ORDER_FIELD);
+                    }
+                    return null;
+                }
+            });
+            for (Object reply : replies) {
+                result.add((byte[]) reply);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ZRANGE + pipelined HGETs: the first {@code count} orders of a book side in two round trips.
+     */
+    public List<byte[]> topOrders(String zsetKey, int count) {
+        List<String> ids = range(zsetKey, 0, count - 1);
+        return ids.isEmpty() ? List.of() : getOrders(ids);
+    }
+
+    /**
+     * ZRANGEBYLEX + pipelined HGETs: up to {@code count} orders priced at or better than the bound, in two round
+     * trips.
+     */
+    public List<byte[]> ordersUpTo(String zsetKey, String upTo, int count) {
+        List<String> ids = rangeUpTo(zsetKey, upTo, count);
+        return ids.isEmpty() ? List.of() : getOrders(ids);
+    }
+
+    public Set<String> bookKeys() {
+        roundTrips.increment();
+        Set<String> keys = orderBookRedisTemplate.keys("orderbook:*");
+        return keys != null ? keys : Set.of();
+    }
+
+    public void publish(String channel, byte[] payload) {
+        roundTrips.increment();
+        orderBookRedisTemplate.convertAndSend(channel, payload);
+    }
+
+    /**
+     * Runs a script over the book keys. Arguments go out as UTF-8 strings; each element of the reply is returned
+     * as raw bytes (a nested reply is returned as a list).
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public List<?> execute(RedisScript<List> script, List<String> keys, String... args) {
+        roundTrips.increment();
+        // Serializer của reply được áp lên từng phần tử của list
+        RedisSerializer elementSerializer = RedisSerializer.byteArray();
+        return orderBookRedisTemplate.execute(script, RedisSerializer.string(), elementSerializer, keys,
+                (Object[]) args);
+    }
+
+    /**
+     * Network round trips issued through this store since startup.
+     */
+    public long roundTrips() {
+        return roundTrips.sum();
+    }
+
+    /**
+     * One order for {@link #placeAll}: its mirror ({@link #addOrder} arguments) and the entry for its pair's stream.
+     */
+    public record Placement(String orderId, Map<String, byte[]> fields, String zsetKey, String member,
+                            String pairId, byte[] message) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.ntd.exchange_crypto.common;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Redis Streams intake of new orders: one stream per pair ({@code engine:orders:<pairId>}), appended by the order
+ * outbox relay and read by the engines through the consumer group {@value #GROUP}. An entry stays pending until the
+ * engine acknowledges it after matching, so entries delivered to a consumer that died can be claimed by another one.
+ * Streams are capped at about {@code app.engine.intake.max-len} entries (approximate MAXLEN on every XADD).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderIntakeStreams {
+
+    public static final String GROUP = "engine";
+    // Tập pairId đã có stream, để consumer biết cần đọc stream nào
+    static final String STREAMS_KEY = "engine:order-streams";
+    static final String ORDER_FIELD = "o";
+
+    RedisTemplate<String, byte[]> orderBookRedisTemplate;
+
+    @NonFinal
+    @Value("${app.engine.intake.max-len:100000}")
+    long maxLen;
+
+    public static String streamKey(String pairId) {
+        return "engine:orders:" + pairId;
+    }
+
+    /**
+     * XADD of one encoded order (see {@code OrderCodec.encodeMessage}) plus its pair registration, queued on
+     * {@code ops}, which is normally a pipeline.
+     */
+    public void append(RedisOperations<String, byte[]> ops, String pairId, byte[] order) {
+        StreamOperations<String, String, byte[]> streams = ops.opsForStream();
+        streams.add(MapRecord.create(streamKey(pairId), Map.of(ORDER_FIELD, order)),
+                RedisStreamCommands.XAddOptions.maxlen(maxLen).approximateTrimming(true));
+        ops.opsForSet().add(STREAMS_KEY, pairId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Set<String> pairIds() {
+        Set<byte[]> members = orderBookRedisTemplate.opsForSet().members(STREAMS_KEY);
+        Set<String> pairIds = new TreeSet<>();
+        if (members != null) {
+            for (byte[] member : members) pairIds.add(new String(member, StandardCharsets.UTF_8));
+        }
+        return pairIds;
+    }
+
+    /**
+     * Creates the consumer group of the pair's stream if missing, positioned at the start so entries appended
+     * before it existed are still delivered.
+     */
+    public void ensureGroup(String pairId) {
+        try {
+            streams().createGroup(streamKey(pairId), ReadOffset.from("0"), GROUP);
+        } catch (DataAccessException e) {
+            // BUSYGROUP: group đã có (node khác hoặc lần chạy trước tạo)
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) throw e;
+        }
+    }
+
+    /**
+     * XREADGROUP over the streams of {@code pairIds}: at most {@code count} new entries per stream, blocking up to
+     * {@code block} when all of them are empty.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entry> read(String consumer, Collection<String> pairIds, int count, Duration block) {
+        StreamOffset<String>[] offsets = pairIds.stream()
+                .map(pairId -> StreamOffset.create(streamKey(pairId), ReadOffset.lastConsumed()))
+                .toArray(StreamOffset[]::new);
+        List<MapRecord<String, String, byte[]>> records = streams().read(Consumer.from(GROUP, consumer),
+                StreamReadOptions.empty().count(count).block(block), offsets);
+        return toEntries(records);
+    }
+
+    /**
+     * Takes over up to {@code count} entries of the pair that other consumers received but have not acknowledged
+     * for at least {@code minIdle}.
+     */
+    public List<Entry> reclaim(String pairId, String consumer, Duration minIdle, int count) {
+        String key = streamKey(pairId);
+        PendingMessages pending = streams().pending(key, GROUP, Range.unbounded(), count);
+        List<RecordId> idle = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) idle.add(message.getId());
+        }
+        if (idle.isEmpty()) return List.of();
+        return toEntries(streams().claim(key, GROUP, consumer, minIdle, idle.toArray(RecordId[]::new)));
+    }
+
+    /**
+     * XACK of many pairs' entries in one round trip.
+     */
+    public void ack(Map<String, List<String>> idsByPair) {
+        if (idsByPair.isEmpty()) return;
+        orderBookRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = operations;
+                idsByPair.forEach((pairId, ids) ->
+                        ops.opsForStream().acknowledge(streamKey(pairId), GROUP, ids.toArray(String[]::new)));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Length of the pair's stream, entries delivered but not yet acknowledged, and entries not yet delivered to the
+     * group ({@code lag}, -1 when Redis cannot tell, e.g. before 7.0 or after trimming past the group).
+     */
+    public Lag lag(String pairId) {
+        String key = streamKey(pairId);
+        Long length = streams().size(key);
+        for (StreamInfo.XInfoGroup group : streams().groups(key)) {
+            if (!GROUP.equals(group.groupName())) continue;
+            Object lag = group.getRaw().get("lag");
+            return new Lag(pairId, length != null ? length : 0, group.pendingCount(),
+                    lag instanceof Number number ? number.longValue() : -1, group.consumerCount());
+        }
+        return new Lag(pairId, length != null ? length : 0, 0, -1, 0);
+    }
+
+    private StreamOperations<String, String, byte[]> streams() {
+        return orderBookRedisTemplate.opsForStream();
+    }
+
+    private static List<Entry> toEntries(List<MapRecord<String, String, byte[]>> records) {
+        if (records == null || records.isEmpty()) return List.of();
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (MapRecord<String, String, byte[]> record : records) {
+            String pairId = record.getStream().substring(streamKey("").length());
+            entries.add(new Entry(pairId, record.getId().getValue(), record.getValue().get(ORDER_FIELD)));
+        }
+        return entries;
+    }
+
+    public record Entry(String pairId, String id, byte[] order) {
+    }
+
+    public record Lag(String pairId, long length, long pending, long lag, long consumers) {
+    }
+}
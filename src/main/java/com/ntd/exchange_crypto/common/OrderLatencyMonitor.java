@@ -0,0 +1,177 @@
+package com.ntd.exchange_crypto.common;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedHistogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pair, per-{@link LatencyStage} latency histograms (HdrHistogram, nanoseconds, 3 significant digits).
+ * Writers on any thread record into a wait-free {@link Recorder}; every {@code app.latency.log-interval-ms} the
+ * reporter thread swaps out the interval histograms, logs a p50 / p99 / p99.9 / max line per pair and adds them to
+ * the totals since startup. Both are exposed through {@link #lastInterval} and {@link #total}.
+ * Disabled, {@link #start} returns null and every other call is a no-op.
+ */
+@Slf4j
+@Component
+public class OrderLatencyMonitor {
+
+    private static final LatencyStage[] STAGES = LatencyStage.values();
+
+    private final boolean enabled;
+    private final long intervalMs;
+    private final Map<String, PairHistograms> pairs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reporter;
+
+    public OrderLatencyMonitor(@Value("${app.latency.enabled:true}") boolean enabled,
+                               @Value("${app.latency.log-interval-ms:60000}") long intervalMs) {
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        if (enabled) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "order-latency-reporter"));
+            reporter.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reporter != null) reporter.shutdownNow();
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public OrderTrace start() {
+        return enabled ? OrderTrace.start() : null;
+    }
+
+    /**
+     * Records the time since the previous mark of {@code trace} as {@code stage}.
+     */
+    public void mark(OrderTrace trace, LatencyStage stage) {
+        if (trace == null) return;
+        long now = OrderTrace.now();
+        record(trace.getPairId(), stage, now - trace.swapLast(now));
+    }
+
+    /**
+     * Marks {@link LatencyStage#ENGINE_QUEUE} and remembers the time as the start of {@link LatencyStage#PUSH}.
+     */
+    public void engineStart(OrderTrace trace) {
+        if (trace == null) return;
+        long now = OrderTrace.now();
+        record(trace.getPairId(), LatencyStage.ENGINE_QUEUE, now - trace.swapLast(now));
+        trace.engineStart(now);
+    }
+
+    /**
+     * First WebSocket push to the taker: records {@link LatencyStage#PUSH} and {@link LatencyStage#END_TO_END}.
+     */
+    public void pushed(OrderTrace trace) {
+        if (trace == null || !trace.markPushed()) return;
+        long now = OrderTrace.now();
+        if (trace.engineStart() > 0) {
+            record(trace.getPairId(), LatencyStage.PUSH, now - trace.engineStart());
+        }
+        record(trace.getPairId(), LatencyStage.END_TO_END, now - trace.received());
+    }
+
+    public void record(String pairId, LatencyStage stage, long nanos) {
+        // Âm khi đồng hồ hai node lệch nhau -> bỏ mẫu
+        if (!enabled || pairId == null || nanos < 0) return;
+        pairs.computeIfAbsent(pairId, PairHistograms::new).recorders[stage.ordinal()].recordValue(nanos);
+    }
+
+    public Set<String> pairIds() {
+        return new TreeSet<>(pairs.keySet());
+    }
+
+    public synchronized List<StageLatency> lastInterval(String pairId) {
+        PairHistograms histograms = pairs.get(pairId);
+        return histograms == null ? List.of() : summarize(histograms.interval);
+    }
+
+    public synchronized List<StageLatency> total(String pairId) {
+        PairHistograms histograms = pairs.get(pairId);
+        return histograms == null ? List.of() : summarize(histograms.total);
+    }
+
+    private synchronized void report() {
+        try {
+            for (PairHistograms histograms : pairs.values()) {
+                histograms.swap();
+                List<StageLatency> interval = summarize(histograms.interval);
+                if (interval.isEmpty()) continue;
+
+                StringBuilder line = new StringBuilder();
+                for (StageLatency stage : interval) {
+                    line.append(String.format(" %s[n=%d p50=%.1f p99=%.1f p99.9=%.1f max=%.1f]",
+                            stage.stage(), stage.count(), stage.p50(), stage.p99(), stage.p999(), stage.max()));
+                }
+                log.info("Order latency {} last {} ms (us):{}", histograms.pairId, intervalMs, line);
+            }
+        } catch (Exception e) {
+            log.error("Cannot report order latency", e);
+        }
+    }
+
+    private static List<StageLatency> summarize(Histogram[] histograms) {
+        List<StageLatency> result = new ArrayList<>();
+        for (LatencyStage stage : STAGES) {
+            Histogram histogram = histograms[stage.ordinal()];
+            if (histogram == null || histogram.getTotalCount() == 0) continue;
+            result.add(new StageLatency(stage, histogram.getTotalCount(),
+                    micros(histogram.getValueAtPercentile(50)),
+                    micros(histogram.getValueAtPercentile(90)),
+                    micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)),
+                    micros(histogram.getMaxValue())));
+        }
+        return result;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    private static final class PairHistograms {
+
+        final String pairId;
+        final Recorder[] recorders = new Recorder[STAGES.length];
+        // Chỉ thread reporter ghi, đọc dưới lock của monitor
+        final Histogram[] interval = new Histogram[STAGES.length];
+        final Histogram[] total = new Histogram[STAGES.length];
+
+        PairHistograms(String pairId) {
+            this.pairId = pairId;
+            for (int i = 0; i < STAGES.length; i++) {
+                // packed + tự giãn: chỉ tốn bộ nhớ cho các bucket thực sự có mẫu
+                recorders[i] = new Recorder(3, true);
+                total[i] = new PackedHistogram(3);
+            }
+        }
+
+        void swap() {
+            for (int i = 0; i < STAGES.length; i++) {
+                interval[i] = recorders[i].getIntervalHistogram(interval[i]);
+                total[i].add(interval[i]);
+            }
+        }
+    }
+}
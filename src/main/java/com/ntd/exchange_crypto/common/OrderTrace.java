@@ -0,0 +1,76 @@
+package com.ntd.exchange_crypto.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timestamps of one order on its way through the pipeline, carried on the order itself (and across Redis pub/sub in
+ * the message form of {@code OrderCodec}). Times are epoch nanos from {@link #now()}: {@code System.nanoTime()}
+ * anchored to the wall clock once, so a mark costs one nanoTime call and stays comparable between nodes up to
+ * their clock offset. Marks are recorded by {@link OrderLatencyMonitor}.
+ */
+public final class OrderTrace {
+
+    private static final long EPOCH_OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private final long received;
+    private long last;
+    private long engineStart;
+    private String pairId;
+    // Nhiều thông báo cho cùng taker -> chỉ lần push đầu tiên được tính
+    private final AtomicBoolean pushed = new AtomicBoolean();
+
+    private OrderTrace(long received, long last) {
+        this.received = received;
+        this.last = last;
+    }
+
+    public static long now() {
+        return System.nanoTime() + EPOCH_OFFSET;
+    }
+
+    public static OrderTrace start() {
+        long now = now();
+        return new OrderTrace(now, now);
+    }
+
+    /**
+     * Trace of an order received from another node (or this one) through pub/sub.
+     */
+    public static OrderTrace resume(long received, long last) {
+        return new OrderTrace(received, last);
+    }
+
+    public long received() {
+        return received;
+    }
+
+    public long last() {
+        return last;
+    }
+
+    public String getPairId() {
+        return pairId;
+    }
+
+    public void setPairId(String pairId) {
+        this.pairId = pairId;
+    }
+
+    long swapLast(long now) {
+        long previous = last;
+        last = now;
+        return previous;
+    }
+
+    long engineStart() {
+        return engineStart;
+    }
+
+    void engineStart(long now) {
+        engineStart = now;
+    }
+
+    boolean markPushed() {
+        return pushed.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,8 @@
+package com.ntd.exchange_crypto.common;
+
+/**
+ * Summary of one {@link LatencyStage} histogram, in microseconds.
+ */
+public record StageLatency(LatencyStage stage, long count, double p50, double p90, double p99, double p999,
+                           double max) {
+}
@@ -15,11 +15,18 @@ public abstract class WebSocketUserMessageEvent {
     String destination;
     Object payload;
     Instant timestamp;
+    // Trace của order (nếu có) -> đo latency tới lúc push xong
+    OrderTrace trace;
 
     public WebSocketUserMessageEvent(String userId, String destination, Object payload) {
+        this(userId, destination, payload, null);
+    }
+
+    public WebSocketUserMessageEvent(String userId, String destination, Object payload, OrderTrace trace) {
         this.userId = userId;
         this.destination = destination;
         this.payload = payload;
         this.timestamp = Instant.now();
+        this.trace = trace;
     }
 }
\ No newline at end of file
@@ -1,8 +1,9 @@
 package com.ntd.exchange_crypto.common.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntd.exchange_crypto.trade.service.OrderAmendMessageSubscriber;
 import com.ntd.exchange_crypto.trade.service.OrderBookStatsMessageSubscriber;
-import com.ntd.exchange_crypto.trade.service.OrderMessageSubscriber;
+import com.ntd.exchange_crypto.trade.service.OrderCancelMessageSubscriber;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -11,6 +12,7 @@ import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -35,6 +37,19 @@ public class RedisConfig {
         return template;
     }
 
+    // Order book mirror: value là byte[] thô (order đã mã hóa nhị phân, id, số nguyên px / rem)
+    @Bean
+    public RedisTemplate<String, byte[]> orderBookRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
 
 
 
@@ -43,22 +58,29 @@ public class RedisConfig {
     @Bean
     public RedisMessageListenerContainer container(
             RedisConnectionFactory connectionFactory,
-            MessageListenerAdapter orderListenerAdapter,
+            MessageListenerAdapter orderCancelListenerAdapter,
+            MessageListenerAdapter orderAmendListenerAdapter,
             MessageListenerAdapter orderBookStatListenerAdapter) {
 
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
 
-        container.addMessageListener(orderListenerAdapter, new PatternTopic("order:*"));
+        // Order mới đi qua Redis Streams (OrderIntakeStreams / OrderStreamConsumer), không qua pub/sub
+        container.addMessageListener(orderCancelListenerAdapter, new PatternTopic("cancel:*"));
+        container.addMessageListener(orderAmendListenerAdapter, new PatternTopic("amend:*"));
         container.addMessageListener(orderBookStatListenerAdapter, new PatternTopic("orderbook-to-stat:*"));
         return container;
     }
 
     @Bean
-    public MessageListenerAdapter orderListenerAdapter(OrderMessageSubscriber subscriber) {
+    public MessageListenerAdapter orderCancelListenerAdapter(OrderCancelMessageSubscriber subscriber) {
         return new MessageListenerAdapter(subscriber);
     }
 
+    @Bean
+    public MessageListenerAdapter orderAmendListenerAdapter(OrderAmendMessageSubscriber subscriber) {
+        return new MessageListenerAdapter(subscriber);
+    }
 
     @Bean
     public MessageListenerAdapter orderBookStatListenerAdapter(OrderBookStatsMessageSubscriber subscriber) {
@@ -10,4 +10,6 @@ public interface CryptoExternalAPI {
     Optional<Crypto> getCryptoById(String productId);
 
     boolean existsById(String productId);
+
+    int getScale(String cryptoId);
 }
@@ -3,6 +3,7 @@ package com.ntd.exchange_crypto.cryptocurrency.model;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.ColumnDefault;
 
 
 @Entity
@@ -25,6 +26,12 @@ public class Crypto {
     @Column(name = "symbol", nullable = false, length = 10)
     String symbol;
 
+    // Số chữ số thập phân dùng cho scaled-long trong matching engine
+    @Builder.Default
+    @ColumnDefault("8")
+    @Column(name = "decimal_scale", nullable = false)
+    Integer scale = 8;
+
 //    @Column(name = "total_supply", precision = 18, scale = 8)
 //    private BigDecimal totalSupply; // Tổng cung tối đa
 //
@@ -1,5 +1,6 @@
 package com.ntd.exchange_crypto.cryptocurrency.service;
 
+import com.ntd.exchange_crypto.common.FixedPoint;
 import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
 import com.ntd.exchange_crypto.cryptocurrency.CryptoInternalAPI;
 import com.ntd.exchange_crypto.cryptocurrency.exception.CryptoErrorCode;
@@ -38,6 +39,17 @@ public class CryptoService implements CryptoInternalAPI, CryptoExternalAPI {
         return cryptoRepository.existsById(productId);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public int getScale(String cryptoId) {
+        if (cryptoId == null || cryptoId.trim().isEmpty()) {
+            throw new CryptoException(CryptoErrorCode.INVALID_CRYPTO);
+        }
+        return cryptoRepository.findById(cryptoId)
+                .map(Crypto::getScale)
+                .orElse(FixedPoint.DEFAULT_SCALE);
+    }
+
 //    @Override
 //    public Optional<Crypto> updateCryptoData(String productId, BigDecimal totalSupply, BigDecimal price) {
 //        if (productId == null || productId.trim().isEmpty()) {
@@ -0,0 +1,15 @@
+package com.ntd.exchange_crypto.order;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Everything one engine command did on a pair: the fills in execution order and the final state of every order it
+ * touched, one {@link OrderDTO} per order however many times it was filled.
+ */
+public record ExecutionReportEvent(String pairId, List<Fill> fills, List<OrderDTO> orders) {
+
+    public record Fill(String takerOrderId, String makerOrderId, BigDecimal price, BigDecimal quantity,
+                       boolean buyerMaker) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.ntd.exchange_crypto.order;
+
+import com.ntd.exchange_crypto.common.WebSocketUserMessageEvent;
+
+public class ExecutionReportUpdatedEvent extends WebSocketUserMessageEvent {
+
+    public ExecutionReportUpdatedEvent(String userId, ExecutionReportEvent report) {
+        super(userId, "/order/executions", report);
+    }
+}
@@ -0,0 +1,50 @@
+package com.ntd.exchange_crypto.order;
+
+import com.ntd.exchange_crypto.order.enums.Side;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * New price and total quantity for a resting LIMIT order, sent on {@code amend:<pair>} to the node owning the pair.
+ * {@code reserved} is the extra balance the API locked up front for an amend that needs more than the order holds;
+ * the engine hands back whatever the amended order does not need.
+ */
+public record OrderAmend(String orderId, BigDecimal price, BigDecimal quantity, BigDecimal reserved) {
+
+    /**
+     * Balance an open order holds for {@code remaining}: quote for a BID, base for an ASK.
+     */
+    public static BigDecimal lockFor(Side side, BigDecimal price, BigDecimal remaining) {
+        return side == Side.BID ? price.multiply(remaining) : remaining;
+    }
+
+    public byte[] encode() {
+        byte[][] fields = {
+                orderId.getBytes(StandardCharsets.UTF_8),
+                price.toPlainString().getBytes(StandardCharsets.US_ASCII),
+                quantity.toPlainString().getBytes(StandardCharsets.US_ASCII),
+                reserved.toPlainString().getBytes(StandardCharsets.US_ASCII)
+        };
+        int size = 0;
+        for (byte[] field : fields) size += 2 + field.length;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] field : fields) {
+            buf.putShort((short) field.length);
+            buf.put(field);
+        }
+        return buf.array();
+    }
+
+    public static OrderAmend decode(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        return new OrderAmend(read(buf), new BigDecimal(read(buf)), new BigDecimal(read(buf)), new BigDecimal(read(buf)));
+    }
+
+    private static String read(ByteBuffer buf) {
+        byte[] field = new byte[buf.getShort()];
+        buf.get(field);
+        return new String(field, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,284 @@
+package com.ntd.exchange_crypto.order;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Compact binary form of an {@link Order}, used for the {@code order} field of the {@code order:<id>} hashes and for
+ * the {@code order:<pair>} pub/sub payload instead of Jackson JSON.
+ * <p>
+ * Layout (version 1): a version byte, then every field in declaration order with no names.
+ * Ids are 16 raw bytes when they are UUIDs, decimals are a varint header (scale) plus a zig-zag varint unscaled value,
+ * enums are one byte (ordinal + 1), instants are varint seconds + nanos; {@code 0} in a header always means null.
+ * Enum constants may only be appended: reordering them, like any layout change, needs a new version byte.
+ * Optional tagged blocks may follow the last field; a decoder stops at the first block it does not know.
+ * The only one is the {@link OrderTrace} of {@link #encodeMessage}, which the Redis hashes never store.
+ * <p>
+ * {@link #decode} still accepts the JSON written by older nodes (the version byte has the high bit set, JSON never
+ * starts with such a byte), so a rolling upgrade does not need Redis to be flushed.
+ */
+public final class OrderCodec {
+
+    public static final byte VERSION_1 = (byte) 0x81;
+
+    private static final int ID_NULL = 0;
+    private static final int ID_UUID = 1;
+    private static final int ID_TEXT = 2;
+
+    private static final int BLOCK_TRACE = 1;
+
+    // Chỉ dùng để đọc dữ liệu JSON cũ còn nằm trong Redis
+    private static final ObjectMapper LEGACY = new ObjectMapper().findAndRegisterModules();
+
+    private OrderCodec() {
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == VERSION_1;
+    }
+
+    public static byte[] encode(Order order) {
+        return write(order).toByteArray();
+    }
+
+    /**
+     * Pub/sub form: {@link #encode} plus the order's trace, when it has one.
+     */
+    public static byte[] encodeMessage(Order order) {
+        Writer out = write(order);
+        OrderTrace trace = order.getTrace();
+        if (trace != null) {
+            out.write(BLOCK_TRACE);
+            out.fixedLong(trace.received());
+            out.fixedLong(trace.last());
+        }
+        return out.toByteArray();
+    }
+
+    private static Writer write(Order order) {
+        Writer out = new Writer();
+        out.write(VERSION_1);
+        out.id(order.getId());
+        out.id(order.getUserId());
+        out.text(order.getGetCryptoId());
+        out.text(order.getGiveCryptoId());
+        out.decimal(order.getQuantity());
+        out.decimal(order.getPrice());
+        out.instant(order.getCreatedAt());
+        out.instant(order.getUpdatedAt());
+        out.enumValue(order.getSide());
+        out.enumValue(order.getType());
+        out.enumValue(order.getStatus());
+        out.decimal(order.getFilledQuantity());
+        out.enumValue(order.getTimeInForce());
+        out.decimal(order.getStopPrice());
+        out.decimal(order.getTrailOffset());
+        out.instant(order.getExpiresAt());
+        return out;
+    }
+
+    /**
+     * Decodes the binary form, or the legacy JSON (a JSON object, or a JSON string holding one as written through the
+     * Jackson hash serializer).
+     */
+    public static Order decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) return null;
+        if (!isBinary(bytes)) return decodeLegacy(bytes);
+
+        ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        Order order = new Order();
+        order.setId(readId(in));
+        order.setUserId(readId(in));
+        order.setGetCryptoId(readText(in));
+        order.setGiveCryptoId(readText(in));
+        order.setQuantity(readDecimal(in));
+        order.setPrice(readDecimal(in));
+        order.setCreatedAt(readInstant(in));
+        order.setUpdatedAt(readInstant(in));
+        order.setSide(readEnum(in, Side.values()));
+        order.setType(readEnum(in, OrderType.values()));
+        order.setStatus(readEnum(in, OrderStatus.values()));
+        order.setFilledQuantity(readDecimal(in));
+        order.setTimeInForce(readEnum(in, TimeInForce.values()));
+        order.setStopPrice(readDecimal(in));
+        order.setTrailOffset(readDecimal(in));
+        order.setExpiresAt(readInstant(in));
+        if (in.hasRemaining() && in.get() == BLOCK_TRACE) {
+            order.setTrace(OrderTrace.resume(in.getLong(), in.getLong()));
+        }
+        return order;
+    }
+
+    private static Order decodeLegacy(byte[] bytes) {
+        try {
+            if (bytes[0] == '"') {
+                return LEGACY.readValue(LEGACY.readValue(bytes, String.class), Order.class);
+            }
+            return LEGACY.readValue(bytes, Order.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Not an encoded order (" + bytes.length + " bytes)", e);
+        }
+    }
+
+    private static String readId(ByteBuffer in) {
+        int tag = in.get();
+        return switch (tag) {
+            case ID_NULL -> null;
+            case ID_UUID -> new UUID(in.getLong(), in.getLong()).toString();
+            case ID_TEXT -> readText(in);
+            default -> throw new IllegalArgumentException("Unknown id tag " + tag);
+        };
+    }
+
+    private static String readText(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length == 0) return null;
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        long header = readVarLong(in);
+        if (header == 0) return null;
+        header--;
+        int scale = (int) unzigzag(header >>> 1);
+        if ((header & 1) == 0) {
+            return BigDecimal.valueOf(unzigzag(readVarLong(in)), scale);
+        }
+        byte[] unscaled = new byte[(int) readVarLong(in)];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static <E extends Enum<E>> E readEnum(ByteBuffer in, E[] values) {
+        int ordinal = in.get() & 0xFF;
+        return ordinal == 0 ? null : values[ordinal - 1];
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        long nanos = readVarLong(in);
+        if (nanos == 0) return null;
+        return Instant.ofEpochSecond(unzigzag(readVarLong(in)), nanos - 1);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(96);
+        }
+
+        void id(String value) {
+            if (value == null) {
+                write(ID_NULL);
+                return;
+            }
+            UUID uuid = parseUuid(value);
+            if (uuid == null) {
+                write(ID_TEXT);
+                text(value);
+                return;
+            }
+            write(ID_UUID);
+            fixedLong(uuid.getMostSignificantBits());
+            fixedLong(uuid.getLeastSignificantBits());
+        }
+
+        void text(String value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varLong(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        // header = (zigzag(scale) << 1 | unscaled vượt long) + 1, 0 = null
+        void decimal(BigDecimal value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            boolean big = unscaled.bitLength() > 63;
+            varLong((zigzag(value.scale()) << 1 | (big ? 1 : 0)) + 1);
+            if (big) {
+                byte[] bytes = unscaled.toByteArray();
+                varLong(bytes.length);
+                write(bytes, 0, bytes.length);
+            } else {
+                varLong(zigzag(unscaled.longValue()));
+            }
+        }
+
+        void enumValue(Enum<?> value) {
+            write(value == null ? 0 : value.ordinal() + 1);
+        }
+
+        void instant(Instant value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            varLong(value.getNano() + 1L);
+            varLong(zigzag(value.getEpochSecond()));
+        }
+
+        void varLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void fixedLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        // Chỉ nhận dạng chuẩn 36 ký tự để encode lại ra đúng chuỗi ban đầu
+        private static UUID parseUuid(String value) {
+            if (value.length() != 36) return null;
+            try {
+                UUID uuid = UUID.fromString(value);
+                return uuid.toString().equals(value) ? uuid : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
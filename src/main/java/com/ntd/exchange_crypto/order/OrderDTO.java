@@ -1,6 +1,8 @@
 package com.ntd.exchange_crypto.order;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ntd.exchange_crypto.common.OrderTrace;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -26,6 +28,10 @@ public class OrderDTO {
     BigDecimal remainingQuantity;
     String createdAt;
     String updatedAt;
+
+    // Chỉ có ở thông báo cho taker của order vừa vào engine
+    @JsonIgnore
+    OrderTrace trace;
 }
 
 
@@ -3,9 +3,11 @@ package com.ntd.exchange_crypto.order;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.ntd.exchange_crypto.common.PagedResponse;
 import com.ntd.exchange_crypto.common.SliceResponse;
+import com.ntd.exchange_crypto.order.dto.request.OrderAmendRequest;
 import com.ntd.exchange_crypto.order.dto.request.OrderCreationRequest;
 import com.ntd.exchange_crypto.order.dto.response.AdminOrderBookResponse;
 import com.ntd.exchange_crypto.order.dto.response.OrderResponse;
+import com.ntd.exchange_crypto.order.dto.response.OrderQuoteResponse;
 import com.ntd.exchange_crypto.order.dto.response.OrderStatResponse;
 import com.ntd.exchange_crypto.order.enums.Side;
 import com.ntd.exchange_crypto.order.model.Order;
@@ -52,9 +54,38 @@ public interface OrderExternalAPI {
 
     void updateOrderStatus(Order order, BigDecimal matchQuantity, BigDecimal matchPrice);
 
+    void releaseOrder(Order order);
+
+    // Như releaseOrder nhưng chỉ trả lock của quantity đã thật sự gỡ khỏi book (tối đa phần DB còn coi là mở)
+    void releaseOrder(Order order, BigDecimal quantity);
+
+    // Engine resident: đưa kết quả khớp vào settlement stage, áp bất đồng bộ theo đúng thứ tự.
+    // stream / seq / item xác định kết quả trong journal của engine: gửi lại sau crash không settle hai lần
+    void submitFill(String stream, long seq, int item, Order order, BigDecimal matchQuantity, BigDecimal matchPrice);
+
+    void submitRelease(String stream, long seq, int item, Order order);
+
+    void submitAmend(String stream, long seq, int item, Order order, BigDecimal previousPrice,
+                     BigDecimal previousQuantity, BigDecimal reserved);
+
+    // Kết quả của stream đã nhận mà chưa commit (engine giữ trong snapshot), gửi lại bằng resubmitSettlement
+    List<byte[]> unsettled(String stream);
+
+    void resubmitSettlement(byte[] settlement);
+
     void updateOrderInOrderBookRedis(Order order) throws JsonProcessingException;
 
     BigDecimal getBestPriceForMarket(Order order, String pairId);
 
+    OrderQuoteResponse quote(String pairId, String side, BigDecimal quantity, BigDecimal limitPrice);
+
+    OrderResponse cancelOrder(String orderId);
+
+    List<OrderResponse> cancelOpenOrders(String pairId);
+
+    OrderResponse amendOrder(String orderId, OrderAmendRequest orderAmendRequest);
+
+    void settleAmend(Order order, BigDecimal previousPrice, BigDecimal previousQuantity, BigDecimal reserved);
+
 
 }
@@ -0,0 +1,23 @@
+package com.ntd.exchange_crypto.order;
+
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.order.model.Order;
+
+/**
+ * An order committed and waiting to be handed to the engine. Published inside the placing transaction, so the event
+ * publication registry stores it in the same commit (the outbox row). Serialized with the publication: it carries
+ * the order id and the trace timestamps (0 without a trace) rather than the order itself.
+ */
+public record OrderPlacedEvent(String orderId, long traceReceived, long traceLast) {
+
+    public static OrderPlacedEvent of(Order order) {
+        OrderTrace trace = order.getTrace();
+        return trace == null
+                ? new OrderPlacedEvent(order.getId(), 0, 0)
+                : new OrderPlacedEvent(order.getId(), trace.received(), trace.last());
+    }
+
+    public OrderTrace resumeTrace() {
+        return traceReceived > 0 ? OrderTrace.resume(traceReceived, traceLast) : null;
+    }
+}
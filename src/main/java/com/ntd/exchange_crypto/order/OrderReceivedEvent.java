@@ -1,4 +0,0 @@
-package com.ntd.exchange_crypto.order;
-
-
-public record OrderReceivedEvent(OrderDTO orderDTO) {}
\ No newline at end of file
@@ -5,6 +5,6 @@ import com.ntd.exchange_crypto.common.WebSocketUserMessageEvent;
 public class OrderUpdatedEvent extends WebSocketUserMessageEvent {
 
     public OrderUpdatedEvent(OrderDTO orderDTO) {
-        super(orderDTO.getUserId(), "/order/notification", orderDTO);
+        super(orderDTO.getUserId(), "/order/notification", orderDTO, orderDTO.getTrace());
     }
 }
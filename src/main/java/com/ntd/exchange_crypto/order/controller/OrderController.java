@@ -1,12 +1,15 @@
 package com.ntd.exchange_crypto.order.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
 import com.ntd.exchange_crypto.common.PagedResponse;
 import com.ntd.exchange_crypto.common.SliceResponse;
 import com.ntd.exchange_crypto.common.dto.response.APIResponse;
 import com.ntd.exchange_crypto.order.OrderExternalAPI;
+import com.ntd.exchange_crypto.order.dto.request.OrderAmendRequest;
 import com.ntd.exchange_crypto.order.dto.request.OrderCreationRequest;
 import com.ntd.exchange_crypto.order.dto.response.AdminOrderBookResponse;
+import com.ntd.exchange_crypto.order.dto.response.OrderQuoteResponse;
 import com.ntd.exchange_crypto.order.dto.response.OrderResponse;
 import com.ntd.exchange_crypto.order.service.OrderService;
 import com.ntd.exchange_crypto.order.service.OrderStatisticsService;
@@ -21,6 +24,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 @Slf4j
@@ -32,6 +36,7 @@ public class OrderController {
 
     OrderExternalAPI orderService;
     OrderStatisticsService orderStatisticsService;
+    OrderLatencyMonitor orderLatencyMonitor;
 
     private <T> APIResponse<T> buildResponse(T result, String message, HttpStatus status) {
         return APIResponse.<T>builder()
@@ -45,12 +50,42 @@ public class OrderController {
     @PostMapping("/")
     public ResponseEntity<APIResponse<OrderResponse>> createOrder(
             @RequestBody @Valid OrderCreationRequest orderCreationRequest) throws JsonProcessingException {
+        orderCreationRequest.setTrace(orderLatencyMonitor.start());
         log.info("Received order creation request: {}", orderCreationRequest);
         OrderResponse orderResponse = orderService.placeOrder(orderCreationRequest);
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(buildResponse(orderResponse, "Order created successfully", HttpStatus.CREATED));
     }
 
+    @GetMapping("/quote")
+    public ResponseEntity<APIResponse<OrderQuoteResponse>> quote(
+            @RequestParam String pairId,
+            @RequestParam String side,
+            @RequestParam BigDecimal quantity,
+            @RequestParam(required = false) BigDecimal limitPrice
+    ) {
+        OrderQuoteResponse quote = orderService.quote(pairId, side, quantity, limitPrice);
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(buildResponse(quote, "Fetched order quote successfully", HttpStatus.OK));
+    }
+
+    @DeleteMapping("/{orderId}")
+    public ResponseEntity<APIResponse<OrderResponse>> cancelOrder(
+            @PathVariable("orderId") String orderId) {
+        OrderResponse order = orderService.cancelOrder(orderId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(buildResponse(order, "Cancel requested", HttpStatus.ACCEPTED));
+    }
+
+    @PatchMapping("/{orderId}")
+    public ResponseEntity<APIResponse<OrderResponse>> amendOrder(
+            @PathVariable("orderId") String orderId,
+            @RequestBody OrderAmendRequest orderAmendRequest) {
+        OrderResponse order = orderService.amendOrder(orderId, orderAmendRequest);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(buildResponse(order, "Amend requested", HttpStatus.ACCEPTED));
+    }
+
     @GetMapping("/{productId}")
     public ResponseEntity<APIResponse<List<OrderResponse>>> getOrdersByPairId(
             @PathVariable("productId") String productId) {
@@ -72,6 +107,14 @@ public class OrderController {
                 .body(buildResponse(orders, "Fetched orders by pairId successfully", HttpStatus.OK));
     }
 
+    @DeleteMapping("/open/{productId}")
+    public ResponseEntity<APIResponse<List<OrderResponse>>> cancelOpenOrders(
+            @PathVariable("productId") String productId) {
+        List<OrderResponse> orders = orderService.cancelOpenOrders(productId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(buildResponse(orders, "Cancel requested for open orders", HttpStatus.ACCEPTED));
+    }
+
     @GetMapping("/history/{productId}")
     public ResponseEntity<APIResponse<SliceResponse<OrderResponse>>> getOrderHistoryByPairId(
             @PathVariable("productId") String productId,
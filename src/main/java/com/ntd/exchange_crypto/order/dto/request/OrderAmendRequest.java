@@ -0,0 +1,20 @@
+package com.ntd.exchange_crypto.order.dto.request;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class OrderAmendRequest {
+    // null = giữ nguyên; đổi giá -> order mất ưu tiên thời gian
+    BigDecimal price;
+
+    // Tổng quantity mới (gồm phần đã khớp); chỉ giảm + giữ giá -> giữ nguyên ưu tiên
+    BigDecimal quantity;
+}
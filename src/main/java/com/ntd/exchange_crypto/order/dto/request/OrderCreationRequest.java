@@ -1,5 +1,7 @@
 package com.ntd.exchange_crypto.order.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ntd.exchange_crypto.common.OrderTrace;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -7,6 +9,7 @@ import lombok.*;
 import lombok.experimental.FieldDefaults;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 
 @Getter
 @Setter
@@ -37,11 +40,23 @@ public class OrderCreationRequest {
     @Size(max = 10, message = "SIZE_MAX_10")
     String timeInForce;
 
+    // Bắt buộc với STOP_LOSS / TAKE_PROFIT (và *_LIMIT)
+    BigDecimal stopPrice;
+
+    // Bắt buộc với TRAILING_STOP
+    BigDecimal trailOffset;
+
+    // Bắt buộc khi timeInForce = GTD
+    Instant expiresAt;
+
 
 
     @NotBlank(message = "NOT_BLANK")
     String orderType;
 
+    // Gắn bởi controller khi nhận request
+    @JsonIgnore
+    OrderTrace trace;
 
 
     @Override
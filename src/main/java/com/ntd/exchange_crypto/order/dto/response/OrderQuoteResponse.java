@@ -0,0 +1,28 @@
+package com.ntd.exchange_crypto.order.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OrderQuoteResponse {
+    String pairId;
+    String side;
+    BigDecimal requestedQuantity;
+    // < requestedQuantity khi depth đã biết (hoặc limitPrice) không đủ
+    BigDecimal filledQuantity;
+    // Phần khớp được với lệnh nội bộ, còn lại là thanh khoản Binance
+    BigDecimal internalQuantity;
+    BigDecimal cost;
+    BigDecimal averagePrice;
+    BigDecimal bestPrice;
+    BigDecimal worstPrice;
+    int levels;
+    boolean complete;
+}
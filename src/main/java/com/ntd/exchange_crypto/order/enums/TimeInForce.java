@@ -6,7 +6,9 @@ public enum TimeInForce {
     FOK, // Fill Or Kill
     GTX, // Good 'Til Crossing
     PO, // Post Only
-    AON; // All Or None
+    AON, // All Or None
+    DAY, // Expires at the end of the UTC day
+    GTD; // Good 'Til Date (expiresAt)
 
     @Override
     public String toString() {
@@ -14,7 +14,14 @@ public enum OrderErrorCode {
     INSUFFICIENT_BALANCE(5001, "Insufficient balance", HttpStatus.BAD_REQUEST),
     ORDER_NOT_FOUND(5002, "Order not found", HttpStatus.BAD_REQUEST),
     INVALID_MONTH(5003, "Month must be between 1 and 12", HttpStatus.BAD_REQUEST),
-    INVALID_YEAR(5004, "Year must be between 1970 and 2100", HttpStatus.BAD_REQUEST)
+    INVALID_YEAR(5004, "Year must be between 1970 and 2100", HttpStatus.BAD_REQUEST),
+    INVALID_QUANTITY(5005, "Quantity is below the minimum unit of the pair", HttpStatus.BAD_REQUEST),
+    INVALID_EXPIRY(5006, "GTD orders need an expiresAt in the future", HttpStatus.BAD_REQUEST),
+    INVALID_STOP_PRICE(5007, "Stop-loss and take-profit orders need a positive stopPrice", HttpStatus.BAD_REQUEST),
+    INVALID_TRAIL_OFFSET(5008, "Trailing-stop orders need a positive trailOffset", HttpStatus.BAD_REQUEST),
+    MARKET_PRICE_UNAVAILABLE(5009, "No market price available for this pair yet", HttpStatus.SERVICE_UNAVAILABLE),
+    ORDER_NOT_CANCELABLE(5010, "Only NEW, PENDING or PARTIALLY_FILLED orders can be canceled", HttpStatus.BAD_REQUEST),
+    ORDER_NOT_AMENDABLE(5011, "Only open LIMIT orders can be amended", HttpStatus.BAD_REQUEST)
     ;
 
     private int code;
@@ -0,0 +1,40 @@
+package com.ntd.exchange_crypto.order.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+// Kết quả engine không settle được (không phải lỗi DB): giữ lại để đối soát tay, không bao giờ bỏ
+@Entity
+@Table(name = "failed_settlement")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class FailedSettlement {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false, length = 36)
+    String id;
+
+    // FILL / RELEASE / AMEND
+    @Column(name = "kind", nullable = false, length = 20)
+    String kind;
+
+    @Column(name = "order_id", length = 36)
+    String orderId;
+
+    @Lob
+    @Column(name = "detail", nullable = false)
+    String detail;
+
+    @Column(name = "error", length = 1000)
+    String error;
+
+    @Column(name = "created_at", nullable = false)
+    Instant createdAt;
+}
@@ -5,6 +5,8 @@ import java.time.Instant;
 import java.util.UUID;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ntd.exchange_crypto.common.OrderTrace;
 import com.ntd.exchange_crypto.order.enums.OrderStatus;
 import com.ntd.exchange_crypto.order.enums.OrderType;
 import com.ntd.exchange_crypto.order.enums.Side;
@@ -79,6 +81,25 @@ public class Order {
     @Column(name = "time_in_force", nullable = false, length = 10)
     TimeInForce timeInForce;
 
+    // Giá kích hoạt của STOP_LOSS / TAKE_PROFIT (và *_LIMIT)
+    @Column(name = "stop_price", precision = 19, scale = 8)
+    BigDecimal stopPrice;
+
+    // Khoảng cách bám giá của TRAILING_STOP (theo đơn vị giá)
+    @Column(name = "trail_offset", precision = 19, scale = 8)
+    BigDecimal trailOffset;
+
+    // Chỉ có với DAY / GTD
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    @Column(name = "expires_at")
+    Instant expiresAt;
+
+    // Mốc thời gian đo latency, chỉ đi theo order trong bộ nhớ và trên pub/sub
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    OrderTrace trace;
+
     @PrePersist
     protected void onCreate() {
         createdAt = Instant.now();
@@ -0,0 +1,27 @@
+package com.ntd.exchange_crypto.order.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+// Sequence cuối cùng đã settle của một stream kết quả engine (journal + pair), ghi cùng transaction với settlement
+@Entity
+@Table(name = "settlement_watermark")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class SettlementWatermark {
+    @Id
+    @Column(name = "stream", nullable = false, length = 100)
+    String stream;
+
+    @Column(name = "seq", nullable = false)
+    long seq;
+
+    // Thứ tự item trong kết quả của command seq
+    @Column(name = "item", nullable = false)
+    int item;
+}
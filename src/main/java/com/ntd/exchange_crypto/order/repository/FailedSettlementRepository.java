@@ -0,0 +1,9 @@
+package com.ntd.exchange_crypto.order.repository;
+
+import com.ntd.exchange_crypto.order.model.FailedSettlement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FailedSettlementRepository extends JpaRepository<FailedSettlement, String> {
+}
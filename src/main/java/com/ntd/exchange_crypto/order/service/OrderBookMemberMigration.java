@@ -0,0 +1,65 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.ntd.exchange_crypto.common.BookMember;
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the book members written before {@link BookMember} (bare or JSON-quoted ids with a double price-time
+ * score) into lex members, before the engine hydrates or matches: ZRANGEBYLEX is only defined on a ZSet whose
+ * members all share one score. Runs once per startup and is a no-op when nothing is left to migrate.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderBookMemberMigration {
+
+    OrderBookRedisStore orderBookRedisStore;
+
+    @org.springframework.core.annotation.Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        int migrated = 0;
+        for (String zsetKey : orderBookRedisStore.bookKeys()) {
+            List<String> legacy = new ArrayList<>();
+            for (String member : orderBookRedisStore.members(zsetKey, 0, -1)) {
+                if (BookMember.isLegacy(member)) legacy.add(member);
+            }
+            if (legacy.isEmpty()) continue;
+
+            List<String> orderIds = legacy.stream().map(BookMember::orderId).toList();
+            List<byte[]> encodedOrders = orderBookRedisStore.getOrders(orderIds);
+            for (int i = 0; i < legacy.size(); i++) {
+                try {
+                    Order order = OrderCodec.decode(encodedOrders.get(i));
+                    if (order == null) continue;
+                    String member = BookMember.of(order.getSide() == Side.BID,
+                            FixedPoint.toLong(order.getPrice(), FixedPoint.DEFAULT_SCALE),
+                            order.getCreatedAt(), order.getId());
+                    orderBookRedisStore.moveMember(order.getId(), zsetKey, legacy.get(i), member);
+                    migrated++;
+                } catch (Exception e) {
+                    log.error("Cannot migrate book member {} of {}", legacy.get(i), zsetKey, e);
+                }
+            }
+        }
+        if (migrated > 0) {
+            log.info("Migrated {} order book members to the lex layout", migrated);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.ntd.exchange_crypto.common.BookMember;
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of an order in the Redis mirror of the book, shared by {@link OrderService} and {@link OrderOutboxRelay}.
+ */
+final class OrderBookMirror {
+
+    private OrderBookMirror() {
+    }
+
+    // HSET order:<uuid> order <order>                  Terminal: // HGET key field
+    // ZADD orderbook:<BTC-USDT>:<bid|ask> 0 <member>   Terminal: // ZRANGE key start stop WITHSCORES
+    static String zsetKey(String pairId, Side side) {
+        return "orderbook:" + pairId + ":" + side.name().toLowerCase();
+    }
+
+    static String member(Order order) {
+        return BookMember.of(order.getSide() == Side.BID,
+                FixedPoint.toLong(order.getPrice(), FixedPoint.DEFAULT_SCALE), order.getCreatedAt(), order.getId());
+    }
+
+    // order (OrderCodec) + uid + px / rem: số nguyên scale 8 để script khớp lệnh phía Redis so sánh & trừ trực tiếp.
+    // rem chỉ ghi lúc tạo, sau đó do script sở hữu (ghi đè từ DB có thể hồi sinh phần đã khớp)
+    static Map<String, byte[]> fields(Order order) {
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put("order", OrderCodec.encode(order));
+        // Script khớp phía Redis bỏ qua maker cùng user (không tự khớp)
+        fields.put("uid", order.getUserId().getBytes(StandardCharsets.UTF_8));
+        if (order.getPrice() != null) {
+            fields.put("px", OrderBookRedisStore.number(FixedPoint.toLong(order.getPrice(), FixedPoint.DEFAULT_SCALE)));
+        }
+        BigDecimal filled = order.getFilledQuantity() != null ? order.getFilledQuantity() : BigDecimal.ZERO;
+        fields.put("rem", OrderBookRedisStore.number(
+                FixedPoint.toLong(order.getQuantity().subtract(filled), FixedPoint.DEFAULT_SCALE)));
+        return fields;
+    }
+}
@@ -1,12 +1,15 @@
 package com.ntd.exchange_crypto.order.service;
 
+import com.ntd.exchange_crypto.order.ExecutionReportEvent;
+import com.ntd.exchange_crypto.order.ExecutionReportUpdatedEvent;
 import com.ntd.exchange_crypto.order.OrderDTO;
-import com.ntd.exchange_crypto.order.OrderReceivedEvent;
 import com.ntd.exchange_crypto.order.OrderUpdatedEvent;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
@@ -22,15 +25,23 @@ public class OrderNotificationService {
 
     ApplicationEventPublisher eventPublisher;
 
+    @NonFinal
+    @Value("${app.admin.user-id:1218a33f-e5dd-4e4b-8589-8a53c4d0144d}")
+    String adminUserId;
 
+
+    // Một report cho mỗi command của engine: mỗi order một thông báo, admin nhận cả report một lần
     @EventListener
     @Async("websocketExecutor")
-    public void handleMatchOrderReceived(OrderReceivedEvent event) {
+    public void handleExecutionReport(ExecutionReportEvent report) {
         try {
-            OrderDTO order = event.orderDTO();
-            eventPublisher.publishEvent(new OrderUpdatedEvent(order));
+            for (OrderDTO order : report.orders()) {
+                eventPublisher.publishEvent(new OrderUpdatedEvent(order));
+            }
+            eventPublisher.publishEvent(new ExecutionReportUpdatedEvent(adminUserId, report));
         } catch (Exception e) {
-            log.error("Error processing new order notification: {}", event, e);
+            log.error("Error processing execution report of {}: {} orders, {} fills",
+                    report.pairId(), report.orders().size(), report.fills().size(), e);
         }
     }
 }
@@ -0,0 +1,207 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.ntd.exchange_crypto.common.LatencyStage;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.OrderPlacedEvent;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.order.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.modulith.events.IncompleteEventPublications;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays committed orders from the outbox to the engine. The outbox is the Spring Modulith event publication
+ * registry: {@code placeOrder} publishes an {@link OrderPlacedEvent} inside its transaction, so the publication is
+ * stored in the same commit as the order and its balance lock.
+ * <p>
+ * After commit the listener queues the event for the flusher thread and waits. The flusher takes everything queued
+ * since its last flush (up to {@code app.order.outbox.max-batch}), loads those orders with one query and writes their
+ * book mirror and intake stream entries ({@code OrderIntakeStreams}) in one Redis pipeline, so a burst of orders
+ * shares a round trip.
+ * A listener returns, and its publication is completed, only after its flush succeeded. A failed or timed-out flush
+ * leaves the publication incomplete, and the retry task resubmits it after {@code app.order.outbox.retry-after-ms}.
+ * <p>
+ * Delivery is at least once. Duplicates are dropped on both sides: the relay skips orders that are no longer
+ * untouched NEW in the database, and the engine ignores an order its book already holds.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderOutboxRelay {
+
+    // Chu kỳ flusher kiểm tra cờ dừng khi queue rỗng
+    static final long POLL_MS = 100;
+
+    OrderRepository orderRepository;
+    OrderBookRedisStore orderBookRedisStore;
+    OrderLatencyMonitor orderLatencyMonitor;
+    IncompleteEventPublications incompleteEventPublications;
+    int maxBatch;
+    long timeoutMs;
+    long retryAfterMs;
+    BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    @NonFinal
+    Thread flusher;
+    @NonFinal
+    ScheduledExecutorService retrier;
+    @NonFinal
+    volatile boolean running;
+
+    public OrderOutboxRelay(OrderRepository orderRepository,
+                            OrderBookRedisStore orderBookRedisStore,
+                            OrderLatencyMonitor orderLatencyMonitor,
+                            IncompleteEventPublications incompleteEventPublications,
+                            @Value("${app.order.outbox.max-batch:512}") int maxBatch,
+                            @Value("${app.order.outbox.timeout-ms:5000}") long timeoutMs,
+                            @Value("${app.order.outbox.retry-after-ms:30000}") long retryAfterMs) {
+        this.orderRepository = orderRepository;
+        this.orderBookRedisStore = orderBookRedisStore;
+        this.orderLatencyMonitor = orderLatencyMonitor;
+        this.incompleteEventPublications = incompleteEventPublications;
+        this.maxBatch = maxBatch;
+        this.timeoutMs = timeoutMs;
+        // Phải lớn hơn timeout, nếu không sẽ gửi lại publication vẫn đang chờ flush
+        this.retryAfterMs = Math.max(retryAfterMs, timeoutMs * 2);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::run, "order-outbox-flusher");
+        flusher.start();
+        retrier = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "order-outbox-retrier"));
+        retrier.scheduleWithFixedDelay(this::resubmit, retryAfterMs, retryAfterMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops taking new work and waits for the flusher to relay what is already queued; a flush in progress is not
+     * interrupted.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        retrier.shutdownNow();
+        running = false;
+        flusher.join();
+        retrier.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Async("orderOutboxExecutor")
+    @TransactionalEventListener
+    public void relay(OrderPlacedEvent event) throws Exception {
+        Pending pending = new Pending(event, new CompletableFuture<>());
+        queue.add(pending);
+        // Ném lỗi -> publication giữ trạng thái chưa xong, retrier gửi lại
+        pending.done().get(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Không ai interrupt thread này; nếu có thì vẫn flush nốt phần còn trong queue
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                if (!batch.isEmpty()) flush(batch);
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        log.info("Order outbox relay stopped");
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            Set<String> ids = new LinkedHashSet<>();
+            for (Pending pending : batch) ids.add(pending.event().orderId());
+            Map<String, Order> orders = new HashMap<>();
+            for (Order order : orderRepository.findAllById(ids)) orders.put(order.getId(), order);
+
+            List<OrderBookRedisStore.Placement> placements = new ArrayList<>(ids.size());
+            List<OrderTrace> traces = new ArrayList<>();
+            for (Pending pending : batch) {
+                // Cùng order hai lần trong một batch (lần gửi lại gặp lần đầu) -> chỉ gửi một lần
+                Order order = orders.remove(pending.event().orderId());
+                if (order == null) continue;
+                if (!awaitsEngine(order)) {
+                    log.debug("Order {} already reached the engine ({}), not relayed again",
+                            order.getId(), order.getStatus());
+                    continue;
+                }
+                String pairId = order.getSide() == Side.BID
+                        ? order.getGetCryptoId() + "-" + order.getGiveCryptoId()
+                        : order.getGiveCryptoId() + "-" + order.getGetCryptoId();
+                OrderTrace trace = pending.event().resumeTrace();
+                if (trace != null) {
+                    trace.setPairId(pairId);
+                    traces.add(trace);
+                }
+                order.setTrace(trace);
+                placements.add(new OrderBookRedisStore.Placement(order.getId(), OrderBookMirror.fields(order),
+                        OrderBookMirror.zsetKey(pairId, order.getSide()), OrderBookMirror.member(order),
+                        pairId, OrderCodec.encodeMessage(order)));
+            }
+
+            orderBookRedisStore.placeAll(placements);
+            for (OrderTrace trace : traces) orderLatencyMonitor.mark(trace, LatencyStage.COMMIT_PUBLISH);
+            for (Pending pending : batch) pending.done().complete(null);
+            if (batch.size() > 1) log.debug("Relayed {} orders in one flush", placements.size());
+        } catch (Exception e) {
+            log.error("Cannot relay {} orders to the engine, will retry", batch.size(), e);
+            for (Pending pending : batch) pending.done().completeExceptionally(e);
+        }
+    }
+
+    // Engine đã nhận order thì status / filled đã đổi, hoặc order còn NEW đang nằm trong book (engine tự bỏ qua)
+    private boolean awaitsEngine(Order order) {
+        return order.getStatus() == OrderStatus.NEW
+                && (order.getFilledQuantity() == null || order.getFilledQuantity().signum() == 0);
+    }
+
+    private void resubmit() {
+        try {
+            Instant before = Instant.now().minusMillis(retryAfterMs);
+            incompleteEventPublications.resubmitIncompletePublications(publication ->
+                    publication.getEvent() instanceof OrderPlacedEvent
+                            && publication.getPublicationDate().isBefore(before));
+        } catch (Exception e) {
+            log.error("Cannot resubmit outstanding order hand-offs", e);
+        }
+    }
+
+    private record Pending(OrderPlacedEvent event, CompletableFuture<Void> done) {
+    }
+}
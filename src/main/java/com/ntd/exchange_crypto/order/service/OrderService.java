@@ -4,14 +4,25 @@ package com.ntd.exchange_crypto.order.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ntd.exchange_crypto.asset.AssetExternalAPI;
+import com.ntd.exchange_crypto.asset.BalanceChange;
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.common.LatencyStage;
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
 import com.ntd.exchange_crypto.common.PagedResponse;
 import com.ntd.exchange_crypto.common.SliceResponse;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.order.OrderAmend;
+import com.ntd.exchange_crypto.order.OrderCodec;
 import com.ntd.exchange_crypto.order.OrderDTO;
 import com.ntd.exchange_crypto.order.OrderExternalAPI;
 import com.ntd.exchange_crypto.order.OrderInternalAPI;
-import com.ntd.exchange_crypto.order.OrderReceivedEvent;
+import com.ntd.exchange_crypto.order.OrderPlacedEvent;
+import com.ntd.exchange_crypto.order.dto.request.OrderAmendRequest;
 import com.ntd.exchange_crypto.order.dto.request.OrderCreationRequest;
 import com.ntd.exchange_crypto.order.dto.response.AdminOrderBookResponse;
+import com.ntd.exchange_crypto.order.dto.response.OrderQuoteResponse;
 import com.ntd.exchange_crypto.order.dto.response.OrderResponse;
 import com.ntd.exchange_crypto.order.dto.response.OrderStatResponse;
 import com.ntd.exchange_crypto.order.enums.OrderStatus;
@@ -24,10 +35,14 @@ import com.ntd.exchange_crypto.order.mapper.OrderMapper;
 import com.ntd.exchange_crypto.order.model.Order;
 import com.ntd.exchange_crypto.order.repository.OrderRepository;
 import com.ntd.exchange_crypto.order.repository.OrderStatProjection;
+import com.ntd.exchange_crypto.trade.DepthQuote;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
 import com.ntd.exchange_crypto.trade.OrderBookStatsService;
 import com.ntd.exchange_crypto.trade.model.OrderBookStats;
 import com.ntd.exchange_crypto.user.UserDTO;
 import com.ntd.exchange_crypto.user.UserExternalAPI;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -38,15 +53,19 @@ import org.springframework.data.domain.*;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronizationAdapter;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -64,22 +83,27 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
     AssetExternalAPI assetExternalAPI;
     OrderBookStatsService orderBookStatsService;
     OrderMapper orderMapper;
+    CryptoExternalAPI cryptoExternalAPI;
+    OrderBookRedisStore orderBookRedisStore;
+    OrderLatencyMonitor orderLatencyMonitor;
+    MarketDepthService marketDepthService;
+    OrderSettlement orderSettlement;
 
     @Override
     public OrderResponse placeOrder(OrderCreationRequest orderCreationRequest) {
         log.info("Placing order for request: {}", orderCreationRequest);
 
+        OrderTrace trace = orderCreationRequest.getTrace();
+        if (trace != null) {
+            trace.setPairId(getPairId(Side.valueOf(orderCreationRequest.getSide().toUpperCase()),
+                    orderCreationRequest.getGiveCryptoId(), orderCreationRequest.getGetCryptoId()));
+        }
 
         // Step 1: Get current user from security context
         UserDTO userDTO = userExternalAPI.getUserLogin();
+        orderLatencyMonitor.mark(trace, LatencyStage.USER_LOOKUP);
 
-        // Step 2: Check if the user has sufficient balance for the order
-        if (!assetExternalAPI.hasSufficientBalance(orderCreationRequest.getGiveCryptoId(),
-                orderCreationRequest.getQuantity())) {
-            throw new OrderException(OrderErrorCode.INSUFFICIENT_BALANCE);
-        }
-
-        // Step 3: Create the order object
+        // Step 2: Create the order object
 //        Order order = orderMapper.toOrder(orderCreationRequest);
 //        order.setStatus(OrderStatus.NEW);
 //        order.setUserId(userDTO.getId());
@@ -96,10 +120,26 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
                 .status(OrderStatus.NEW)
                 .timeInForce(TimeInForce.valueOf(orderCreationRequest.getTimeInForce().toUpperCase()))
                 .filledQuantity(BigDecimal.ZERO)
+                .expiresAt(resolveExpiry(orderCreationRequest))
+                .stopPrice(orderCreationRequest.getStopPrice())
+                .trailOffset(orderCreationRequest.getTrailOffset())
                 .createdAt(Instant.now())
                 .updatedAt(Instant.now())
+                .trace(trace)
                 .build();
 
+        if (isConditional(order.getType())
+                && (order.getStopPrice() == null || order.getStopPrice().compareTo(BigDecimal.ZERO) <= 0)) {
+            throw new OrderException(OrderErrorCode.INVALID_STOP_PRICE);
+        }
+        if (order.getType() == OrderType.TRAILING_STOP
+                && (order.getTrailOffset() == null || order.getTrailOffset().compareTo(BigDecimal.ZERO) <= 0)) {
+            throw new OrderException(OrderErrorCode.INVALID_TRAIL_OFFSET);
+        }
+
+        // Engine làm việc với scaled long -> cắt price/quantity về scale của cặp ngay tại đây
+        normalizeToPairScale(order);
+
         String pairId = this.getPairIdFromOrderBookData(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
 
         BigDecimal bestPrice = getBestPriceForMarket(order, pairId);
@@ -109,12 +149,7 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
 
         BigDecimal amountToLock;
         if (order.getType().equals(OrderType.MARKET)) {
-            if (order.getSide().equals(Side.BID))
-                try {
-                    amountToLock = calculateTotalCostFromOrderBook(order, pairId);
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
+            if (order.getSide().equals(Side.BID)) amountToLock = calculateTotalCostFromOrderBook(order, pairId);
             else amountToLock = order.getQuantity();
 
         } else {
@@ -122,30 +157,23 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
             else amountToLock = order.getQuantity();
         }
 
-        try {
+        orderLatencyMonitor.mark(trace, LatencyStage.ORDER_PREPARE);
 
-            // Step 4: Lock quantity in the user's asset
-            assetExternalAPI.lockBalance(orderCreationRequest.getGiveCryptoId(), amountToLock);
+        // Step 3: Check + lock amountToLock bằng một UPDATE có điều kiện, cùng transaction với order
+        if (!assetExternalAPI.tryLockBalance(userDTO.getId(), order.getGiveCryptoId(), amountToLock)) {
+            throw new OrderException(OrderErrorCode.INSUFFICIENT_BALANCE);
+        }
+        orderLatencyMonitor.mark(trace, LatencyStage.BALANCE_LOCK);
+
+        try {
 
-            // Step 5: Save the order to the database
+            // Step 4: Save the order to the database
             order = orderRepository.save(order);
+            orderLatencyMonitor.mark(trace, LatencyStage.ORDER_SAVE);
 
-//
-            Order finalOrder = order;
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
-                @Override
-                public void afterCommit() {
-                    // Step 6: Publish the order to Redis order book
-                    try {
-                        addOrderToOrderBook(finalOrder);
-                    } catch (JsonProcessingException e) {
-                        throw new RuntimeException(e);
-                    }
-
-                    // Step 7: send the order to the Redis channel
-                    redisTemplate.convertAndSend("order:" + pairId, finalOrder);
-                }
-            });
+            // Step 5: outbox - event được lưu cùng transaction với order, OrderOutboxRelay đưa lên Redis
+            // (order book + stream intake của pair) sau commit
+            eventPublisher.publishEvent(OrderPlacedEvent.of(order));
 
 
         } catch (Exception e) {
@@ -182,6 +210,135 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
 
     }
 
+    @Override
+    public OrderResponse cancelOrder(String orderId) {
+        UserDTO userDTO = userExternalAPI.getUserLogin();
+        Order order = getOrderById(orderId);
+        // Order của user khác -> coi như không tồn tại
+        if (!order.getUserId().equals(userDTO.getId())) {
+            throw new OrderException(OrderErrorCode.ORDER_NOT_FOUND);
+        }
+        if (!isOpen(order.getStatus())) {
+            throw new OrderException(OrderErrorCode.ORDER_NOT_CANCELABLE);
+        }
+
+        String pairId = getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
+        publishCancel(order, pairId);
+        return orderMapper.toOrderResponse(order, pairId);
+    }
+
+    @Override
+    public List<OrderResponse> cancelOpenOrders(String pairId) {
+        String baseSymbol = pairId.split("-")[0];
+        String quoteSymbol = pairId.split("-")[1];
+        UserDTO userDTO = userExternalAPI.getUserLogin();
+
+        Slice<Order> orders = orderRepository
+                .findAllOpenOrdersByPairAndAndUser(baseSymbol, quoteSymbol, userDTO.getId(), Pageable.unpaged());
+
+        List<OrderResponse> canceled = new ArrayList<>();
+        for (Order order : orders) {
+            publishCancel(order, pairId);
+            canceled.add(orderMapper.toOrderResponse(order, pairId));
+        }
+        log.info("Cancel requested for {} open orders of user {} on {}", canceled.size(), userDTO.getId(), pairId);
+        return canceled;
+    }
+
+    @Override
+    public OrderResponse amendOrder(String orderId, OrderAmendRequest orderAmendRequest) {
+        UserDTO userDTO = userExternalAPI.getUserLogin();
+        Order order = getOrderById(orderId);
+        if (!order.getUserId().equals(userDTO.getId())) {
+            throw new OrderException(OrderErrorCode.ORDER_NOT_FOUND);
+        }
+        if (order.getType() != OrderType.LIMIT || !isOpen(order.getStatus())) {
+            throw new OrderException(OrderErrorCode.ORDER_NOT_AMENDABLE);
+        }
+
+        // Cắt về scale của cặp như lúc đặt lệnh
+        Order amended = Order.builder()
+                .side(order.getSide())
+                .getCryptoId(order.getGetCryptoId())
+                .giveCryptoId(order.getGiveCryptoId())
+                .price(orderAmendRequest.getPrice() != null ? orderAmendRequest.getPrice() : order.getPrice())
+                .quantity(orderAmendRequest.getQuantity() != null ? orderAmendRequest.getQuantity() : order.getQuantity())
+                .build();
+        normalizeToPairScale(amended);
+        if (amended.getPrice().signum() <= 0) {
+            throw new OrderException(OrderErrorCode.ORDER_NOT_AMENDABLE);
+        }
+        if (amended.getQuantity().compareTo(order.getFilledQuantity()) <= 0) {
+            throw new OrderException(OrderErrorCode.INVALID_QUANTITY);
+        }
+
+        String pairId = getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
+        if (amended.getPrice().compareTo(order.getPrice()) == 0
+                && amended.getQuantity().compareTo(order.getQuantity()) == 0) {
+            return orderMapper.toOrderResponse(order, pairId);
+        }
+
+        // Chỉ lock thêm phần chênh lệch; engine trả lại phần thừa khi áp amend
+        BigDecimal reserved = OrderAmend.lockFor(order.getSide(), amended.getPrice(),
+                        amended.getQuantity().subtract(order.getFilledQuantity()))
+                .subtract(OrderAmend.lockFor(order.getSide(), order.getPrice(),
+                        order.getQuantity().subtract(order.getFilledQuantity())))
+                .max(BigDecimal.ZERO);
+        if (reserved.signum() > 0) {
+            if (!assetExternalAPI.tryLockBalance(order.getUserId(), order.getGiveCryptoId(), reserved)) {
+                throw new OrderException(OrderErrorCode.INSUFFICIENT_BALANCE);
+            }
+        }
+
+        orderBookRedisStore.publish("amend:" + pairId,
+                new OrderAmend(orderId, amended.getPrice(), amended.getQuantity(), reserved).encode());
+        log.info("Amend requested for order {}: price {} -> {}, quantity {} -> {}, reserved {}", orderId,
+                order.getPrice(), amended.getPrice(), order.getQuantity(), amended.getQuantity(), reserved);
+        return orderMapper.toOrderResponse(order, pairId);
+    }
+
+    @Override
+    public void settleAmend(Order amended, BigDecimal previousPrice, BigDecimal previousQuantity, BigDecimal reserved) {
+        // Trả lại: phần đã reserve + lock cũ - lock mới (engine đã từ chối amend nếu số này âm)
+        BigDecimal filled = amended.getFilledQuantity();
+        BigDecimal toUnlock = reserved
+                .add(OrderAmend.lockFor(amended.getSide(), previousPrice, previousQuantity.subtract(filled)))
+                .subtract(OrderAmend.lockFor(amended.getSide(), amended.getPrice(), amended.getQuantity().subtract(filled)));
+        if (toUnlock.signum() > 0) {
+            assetExternalAPI.unlockBalance(amended.getUserId(), amended.getGiveCryptoId(), toUnlock);
+        }
+
+        boolean priceChanged = amended.getPrice().compareTo(previousPrice) != 0;
+        if (!priceChanged && amended.getQuantity().compareTo(previousQuantity) == 0) return;
+
+        Order order = getOrderById(amended.getId());
+        order.setPrice(amended.getPrice());
+        order.setQuantity(amended.getQuantity());
+        order.setUpdatedAt(Instant.now());
+        orderRepository.save(order);
+
+        if (priceChanged) {
+            // Member của zset chứa giá -> xóa rồi thêm lại
+            String zsetKey = OrderBookMirror.zsetKey(
+                    getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId()), order.getSide());
+            orderBookRedisStore.removeOrder(order.getId(), zsetKey);
+            addOrderToOrderBook(order);
+        } else {
+            orderBookRedisStore.putOrder(order.getId(), OrderCodec.encode(order));
+        }
+        log.info("Order {} amended: price {} -> {}, quantity {} -> {}, unlocked {}", order.getId(),
+                previousPrice, order.getPrice(), previousQuantity, order.getQuantity(), toUnlock.max(BigDecimal.ZERO));
+    }
+
+    // Engine hủy order + trả balance trong cùng một command; kết quả về qua /order/notification
+    private void publishCancel(Order order, String pairId) {
+        orderBookRedisStore.publish("cancel:" + pairId, order.getId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean isOpen(OrderStatus status) {
+        return status == OrderStatus.NEW || status == OrderStatus.PENDING || status == OrderStatus.PARTIALLY_FILLED;
+    }
+
     @Override
     public String getPairId(Side side, String giveCryptoId, String getCryptoId) {
         return side == Side.BID ?
@@ -190,35 +347,49 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
     }
 
 
-    private void addOrderToOrderBook(Order order) throws JsonProcessingException {
-        // HSET order:<uuid> order <order_json>                        Terminal: // HGET key field
-        //          key      field    value
-        // ZADD orderbook:<BTC-USDT>:<BUY> <score> order:<uuid>        Terminal: // ZRANGE key start stop WITHSCORES
-        //             key                  score   member
-
+    private void addOrderToOrderBook(Order order) {
         String pairId = getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
-        String hashKey = "order:" + order.getId();
-        String zsetKey = buildOrderBookKey(pairId, order.getSide());
-
-        redisTemplate.opsForHash().put(hashKey, "order", objectMapper.writeValueAsString(order));
-
-        double score = computeOrderScore(order.getPrice(), order.getCreatedAt(), order.getSide());
 
-        redisTemplate.opsForZSet().add(zsetKey, order.getId(), score);
+        // HSET + ZADD trong một pipeline
+        orderBookRedisStore.addOrder(order.getId(), OrderBookMirror.fields(order),
+                OrderBookMirror.zsetKey(pairId, order.getSide()), OrderBookMirror.member(order));
+    }
 
+    private boolean isConditional(OrderType type) {
+        return type == OrderType.STOP_LOSS || type == OrderType.STOP_LOSS_LIMIT
+                || type == OrderType.TAKE_PROFIT || type == OrderType.TAKE_PROFIT_LIMIT;
     }
 
-    private String buildOrderBookKey(String pairId, Side side) {
-        return "orderbook:" + pairId + ":" + side.name().toLowerCase();
+    private Instant resolveExpiry(OrderCreationRequest request) {
+        TimeInForce timeInForce = TimeInForce.valueOf(request.getTimeInForce().toUpperCase());
+        if (timeInForce == TimeInForce.DAY) {
+            // Hết hạn lúc 00:00 UTC ngày hôm sau
+            return LocalDate.now(ZoneOffset.UTC).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+        if (timeInForce == TimeInForce.GTD) {
+            if (request.getExpiresAt() == null || !request.getExpiresAt().isAfter(Instant.now())) {
+                throw new OrderException(OrderErrorCode.INVALID_EXPIRY);
+            }
+            return request.getExpiresAt();
+        }
+        return null;
     }
 
-    private double computeOrderScore(BigDecimal price, Instant createdAt, Side side) {
-        // Với side = BID -> ưu tiên price cao hơn -> đảo dấu để ZSet sắp xếp tăng dần
-        // Với side = ASK -> ưu tiên price thấp hơn (Mặc định trong ZSet là tăng dần)
-        double pricePart = side == Side.BID ? -price.doubleValue() : price.doubleValue();
-        double timePart = createdAt.toEpochMilli() / 1e13;
-        System.out.println("TIME-PART: " + timePart);// để không ảnh hưởng nhiều đến price
-        return pricePart + timePart;
+    private void normalizeToPairScale(Order order) {
+        String baseCryptoId = order.getSide() == Side.BID ? order.getGetCryptoId() : order.getGiveCryptoId();
+        String quoteCryptoId = order.getSide() == Side.BID ? order.getGiveCryptoId() : order.getGetCryptoId();
+
+        order.setQuantity(FixedPoint.normalize(order.getQuantity(), cryptoExternalAPI.getScale(baseCryptoId)));
+        int priceScale = cryptoExternalAPI.getScale(quoteCryptoId);
+        order.setPrice(FixedPoint.normalize(order.getPrice(), priceScale));
+        order.setStopPrice(FixedPoint.normalize(order.getStopPrice(), priceScale));
+        order.setTrailOffset(FixedPoint.normalize(order.getTrailOffset(), priceScale));
+        if (order.getTrailOffset() != null && order.getTrailOffset().signum() <= 0) {
+            throw new OrderException(OrderErrorCode.INVALID_TRAIL_OFFSET);
+        }
+        if (order.getQuantity().signum() <= 0) {
+            throw new OrderException(OrderErrorCode.INVALID_QUANTITY);
+        }
     }
 
 
@@ -291,9 +462,161 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
         this.updateOrderInOrderBookRedis(order);
     }
 
+    // Gọi từ thread engine: chỉ xếp hàng, không mở transaction / lấy connection
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void submitFill(String stream, long seq, int item, Order order, BigDecimal matchQuantity,
+                           BigDecimal matchPrice) {
+        orderSettlement.fill(stream, seq, item, order, matchQuantity, matchPrice);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void submitRelease(String stream, long seq, int item, Order order) {
+        orderSettlement.release(stream, seq, item, order);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void submitAmend(String stream, long seq, int item, Order order, BigDecimal previousPrice,
+                            BigDecimal previousQuantity, BigDecimal reserved) {
+        orderSettlement.amend(stream, seq, item, order, previousPrice, previousQuantity, reserved);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<byte[]> unsettled(String stream) {
+        return orderSettlement.unsettled(stream);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void resubmitSettlement(byte[] settlement) {
+        orderSettlement.resubmit(settlement);
+    }
+
+    @PostConstruct
+    void startSettlement() {
+        orderSettlement.start(this::settle);
+    }
+
+    // Dừng trước asset balance store (bean phụ thuộc) -> các fill còn lại vẫn được settle
+    @PreDestroy
+    void stopSettlement() throws InterruptedException {
+        orderSettlement.stop();
+    }
+
+    // Một batch của OrderSettlement, trong transaction của nó: fill liên tiếp được gộp,
+    // release / amend chạy đúng vị trí (sau các fill trước nó)
+    private void settle(List<OrderSettlement.Settlement> batch) {
+        List<OrderSettlement.Fill> fills = new ArrayList<>();
+        for (OrderSettlement.Settlement settlement : batch) {
+            if (settlement instanceof OrderSettlement.Fill fill) {
+                fills.add(fill);
+                continue;
+            }
+            settleFills(fills);
+            fills.clear();
+            switch (settlement) {
+                case OrderSettlement.Release release -> releaseOrder(release.order());
+                case OrderSettlement.Amend amend -> settleAmend(amend.order(), amend.previousPrice(),
+                        amend.previousQuantity(), amend.reserved());
+                default -> throw new IllegalStateException("Unexpected settlement " + settlement);
+            }
+        }
+        settleFills(fills);
+    }
+
+    // Như updateOrderStatus cho từng fill, nhưng: một findAllById / saveAll cho các order, một thay đổi số dư
+    // cho mỗi (user, crypto), một lần ghi Redis cho mỗi order với trạng thái sau fill cuối
+    private void settleFills(List<OrderSettlement.Fill> fills) {
+        if (fills.isEmpty()) return;
+        Map<String, Order> orders = new LinkedHashMap<>();
+        for (Order order : orderRepository.findAllById(fills.stream().map(OrderSettlement.Fill::orderId).toList())) {
+            orders.put(order.getId(), order);
+        }
+        // userId, cryptoId -> {balance, locked}
+        Map<List<String>, BigDecimal[]> deltas = new LinkedHashMap<>();
+        Instant now = Instant.now();
+        for (OrderSettlement.Fill fill : fills) {
+            Order order = orders.get(fill.orderId());
+            if (order == null) {
+                log.error("Order {} of a fill no longer exists, not settled", fill.orderId());
+                continue;
+            }
+            order.setStatus(fill.status());
+            order.setUpdatedAt(now);
+            if (fill.status() == OrderStatus.PENDING) continue;
+
+            BigDecimal matchQuantity = fill.quantity();
+            BigDecimal matchPrice = fill.price();
+            order.setFilledQuantity(order.getFilledQuantity().add(matchQuantity));
+            BigDecimal amountToUnlock = order.getSide() == Side.BID ? matchPrice.multiply(matchQuantity) : matchQuantity;
+            BigDecimal received = order.getSide() == Side.BID ? matchQuantity : matchQuantity.multiply(matchPrice);
+            addDelta(deltas, order.getUserId(), order.getGiveCryptoId(), amountToUnlock.negate(), amountToUnlock.negate());
+            addDelta(deltas, order.getUserId(), order.getGetCryptoId(), received, BigDecimal.ZERO);
+
+            if (order.getStatus() == OrderStatus.FILLED && order.getSide() == Side.BID && order.getPrice() != null) {
+                BigDecimal remainingLocked = order.getPrice().multiply(order.getQuantity())
+                        .subtract(order.getFilledQuantity().multiply(matchPrice));
+                if (remainingLocked.compareTo(BigDecimal.ZERO) > 0) {
+                    addDelta(deltas, order.getUserId(), order.getGiveCryptoId(), BigDecimal.ZERO, remainingLocked.negate());
+                }
+            }
+        }
+
+        List<BalanceChange> changes = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> {
+            if (delta[0].signum() != 0 || delta[1].signum() != 0) {
+                changes.add(new BalanceChange(key.get(0), key.get(1), delta[0], delta[1]));
+            }
+        });
+        if (!changes.isEmpty()) assetExternalAPI.settleBalances(changes);
+        orderRepository.saveAll(orders.values());
+        for (Order order : orders.values()) this.updateOrderInOrderBookRedis(order);
+        log.debug("Settled {} fills of {} orders with {} balance changes", fills.size(), orders.size(), deltas.size());
+    }
+
+    private static void addDelta(Map<List<String>, BigDecimal[]> deltas, String userId, String cryptoId,
+                                 BigDecimal balance, BigDecimal locked) {
+        BigDecimal[] delta = deltas.computeIfAbsent(List.of(userId, cryptoId),
+                k -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+        delta[0] = delta[0].add(balance);
+        delta[1] = delta[1].add(locked);
+    }
+
+    @Override
+    public void releaseOrder(Order orderUpdate) {
+        // Order rời book mà không khớp hết (EXPIRED / CANCELED) -> trả lại phần balance còn lock
+        Order order = getOrderById(orderUpdate.getId());
+        release(order, orderUpdate.getStatus(), order.getQuantity().subtract(order.getFilledQuantity()));
+    }
+
+    @Override
+    public void releaseOrder(Order orderUpdate, BigDecimal quantity) {
+        Order order = getOrderById(orderUpdate.getId());
+        // Fill chưa settle làm DB coi phần mở lớn hơn thực tế, không bao giờ nhỏ hơn; min chỉ để chặn dữ liệu lệch
+        release(order, orderUpdate.getStatus(), quantity.min(order.getQuantity().subtract(order.getFilledQuantity())));
+    }
+
+    private void release(Order order, OrderStatus status, BigDecimal remaining) {
+        order.setStatus(status);
+        order.setUpdatedAt(Instant.now());
+
+        if (remaining.compareTo(BigDecimal.ZERO) > 0) {
+            BigDecimal amountToUnlock = order.getSide() == Side.BID
+                    ? order.getPrice().multiply(remaining)
+                    : remaining;
+            assetExternalAPI.unlockBalance(order.getUserId(), order.getGiveCryptoId(), amountToUnlock);
+        }
+
+        orderRepository.save(order);
+        this.updateOrderInOrderBookRedis(order);
+        log.info("Order {} released with status {}", order.getId(), order.getStatus());
+    }
+
     @Override
     public void updateOrderInOrderBookRedis(Order order) {
-        String hashKey = "order:" + order.getId();
         String zsetKey = "orderbook:" +
                 getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId()) +
                 ":" + order.getSide().name().toLowerCase();
@@ -302,9 +625,8 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
                 || order.getStatus() == OrderStatus.CANCELED
                 || order.getStatus() == OrderStatus.EXPIRED) {
 
-            // Xóa khỏi Redis
-            redisTemplate.delete(hashKey);
-            redisTemplate.opsForZSet().remove(zsetKey, order.getId());
+            // Xóa khỏi Redis (DEL + ZREM trong một pipeline)
+            orderBookRedisStore.removeOrder(order.getId(), zsetKey);
 
         } else if (order.getStatus() == OrderStatus.PARTIALLY_FILLED) {
 //            BigDecimal remainingQuantity = order.getQuantity().subtract(order.getFilledQuantity());
@@ -317,23 +639,16 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
             }
 //            redisOrder.setQuantity(remainingQuantity);
 
-            try {
-                redisTemplate.opsForHash().put(hashKey, "order", objectMapper.writeValueAsString(redisOrder));
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
+            orderBookRedisStore.putOrder(order.getId(), OrderCodec.encode(redisOrder));
         } else {
             // Cập nhật lại thông tin order trong Redis
-            try {
-                redisTemplate.opsForHash().put(hashKey, "order", objectMapper.writeValueAsString(order));
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
+            orderBookRedisStore.putOrder(order.getId(), OrderCodec.encode(order));
         }
 
     }
 
 
+
     @Override
     public Order getOrderById(String orderId) {
         return orderRepository.findById(orderId)
@@ -577,113 +892,46 @@ public class OrderService implements OrderExternalAPI, OrderInternalAPI {
     }
 
 
-    public BigDecimal calculateTotalCostFromOrderBook(Order order, String pairId) throws JsonProcessingException {
-        BigDecimal totalCost = BigDecimal.ZERO;
-        BigDecimal remainingQuantity = order.getQuantity();
-
-        // Lấy bestPrice từ StatsService
-        BigDecimal bestPrice = getBestPriceForMarket(order, pairId);
-
-        // Lấy counterOrders tốt nhất từ Redis
-        List<Order> counterOrders = getBestCounterOrders(pairId, order.getSide(), remainingQuantity);
-
-        if (counterOrders.isEmpty()) {
-            // Nếu không có counterOrder → lock toàn bộ theo bestPrice
-            return bestPrice.multiply(order.getQuantity());
-        }
-
-        // So sánh counterOrder tốt nhất với bestPrice
-        Order bestCounterOrder = counterOrders.get(0);
-        boolean isBetterPrice = (order.getSide() == Side.BID)
-                ? bestCounterOrder.getPrice().compareTo(bestPrice) < 0
-                : bestCounterOrder.getPrice().compareTo(bestPrice) > 0;
-
-        if (!isBetterPrice) {
-            // Giá Redis không tốt hơn → lock toàn bộ với bestPrice
-            return bestPrice.multiply(order.getQuantity());
-        }
-
-        // Trường hợp Redis có giá tốt hơn → cộng dồn
-        for (Order counterOrder : counterOrders) {
-            BigDecimal tradableQuantity = counterOrder.getQuantity().subtract(counterOrder.getFilledQuantity());
-            if (tradableQuantity.compareTo(remainingQuantity) >= 0) {
-                // Đủ số lượng cần
-                totalCost = totalCost.add(counterOrder.getPrice().multiply(remainingQuantity));
-                remainingQuantity = BigDecimal.ZERO;
-                break;
-            } else {
-                // Dùng hết counterOrder này
-                totalCost = totalCost.add(counterOrder.getPrice().multiply(tradableQuantity));
-                remainingQuantity = remainingQuantity.subtract(tradableQuantity);
-            }
+    public BigDecimal calculateTotalCostFromOrderBook(Order order, String pairId) {
+        // Một lần đi trên cumulative depth (book nội bộ + Binance depth20), không đọc lại order đối ứng từ Redis
+        DepthQuote quote = marketDepthService.quote(
+                getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId()),
+                order.getSide(), order.getQuantity(), null);
+        BigDecimal remainingQuantity = order.getQuantity().subtract(quote.filledQuantity());
+        if (remainingQuantity.signum() <= 0) {
+            return quote.cost();
         }
 
-        // Nếu vẫn còn thiếu thì dùng bestPrice
-        if (remainingQuantity.compareTo(BigDecimal.ZERO) > 0) {
-            totalCost = totalCost.add(bestPrice.multiply(remainingQuantity));
+        // Phần vượt quá depth đã biết -> giá tệ nhất trong số giá đã thấy và bestPrice của stats
+        BigDecimal bestPrice = getBestPriceForMarket(order, pairId);
+        BigDecimal fallbackPrice = quote.worstPrice() == null ? bestPrice
+                : bestPrice == null ? quote.worstPrice() : quote.worstPrice().max(bestPrice);
+        if (fallbackPrice == null) {
+            throw new OrderException(OrderErrorCode.MARKET_PRICE_UNAVAILABLE);
         }
-
-        return totalCost;
+        return quote.cost().add(fallbackPrice.multiply(remainingQuantity));
     }
 
-
-    public List<Order> getBestCounterOrders(String pairId, Side side, BigDecimal remainingQty)
-            throws JsonProcessingException {
-        List<Order> matchedCounterOrders = new ArrayList<>();
-
-        Side counterSide = (side == Side.BID) ? Side.ASK : Side.BID;
-        String redisZSetKey = "orderbook:" + pairId + ":" + counterSide.name().toLowerCase();
-
-        OrderBookStats stats = orderBookStatsService.getStats(pairId);
-        if (stats == null) {
-            return matchedCounterOrders;
-        }
-        BigDecimal bestPrice = (side == Side.BID) ? stats.getMinAskPrice() : stats.getMaxBidPrice();
-
-        Set<Object> counterOrderKeys = redisTemplate.opsForZSet().range(redisZSetKey, 0, 49);
-        if (counterOrderKeys == null || counterOrderKeys.isEmpty()) {
-            return matchedCounterOrders;
-        }
-
-        int counterCount = 0;
-        for (Object keyObj : counterOrderKeys) {
-            String counterOrderKey = (String) keyObj;
-            String orderJson = (String) redisTemplate.opsForHash().get("order:" + counterOrderKey, "order");
-            if (orderJson == null) continue;
-
-            Order counterOrder = objectMapper.readValue(orderJson, Order.class);
-
-            //  Lần đầu tiên check giá với bestPrice
-            if (counterCount == 0) {
-                boolean isPriceAcceptable =
-                        (side == Side.BID && counterOrder.getPrice().compareTo(bestPrice) <= 0) ||
-                                (side == Side.ASK && counterOrder.getPrice().compareTo(bestPrice) >= 0);
-
-                if (!isPriceAcceptable) {
-                    // Dừng nếu giá không tốt hơn bestPrice
-                    return Collections.emptyList();
-                }
-            }
-
-            //  Nếu giá hợp lệ thì lấy
-            boolean canMatch =
-                    (side == Side.BID && counterOrder.getPrice().compareTo(bestPrice) <= 0) ||
-                            (side == Side.ASK && counterOrder.getPrice().compareTo(bestPrice) >= 0);
-
-            if (!canMatch) break;
-
-            matchedCounterOrders.add(counterOrder);
-            counterCount++;
-
-            // Trừ dần quantity
-            if (remainingQty.compareTo(counterOrder.getQuantity()) > 0) {
-                remainingQty = remainingQty.subtract(counterOrder.getQuantity());
-            } else {
-                break;
-            }
+    @Override
+    public OrderQuoteResponse quote(String pairId, String side, BigDecimal quantity, BigDecimal limitPrice) {
+        if (quantity == null || quantity.signum() <= 0) {
+            throw new OrderException(OrderErrorCode.INVALID_QUANTITY);
         }
-
-        return matchedCounterOrders;
+        DepthQuote quote = marketDepthService.quote(pairId.toUpperCase(), Side.valueOf(side.toUpperCase()),
+                quantity, limitPrice);
+        return OrderQuoteResponse.builder()
+                .pairId(quote.pairId())
+                .side(quote.side())
+                .requestedQuantity(quote.requestedQuantity())
+                .filledQuantity(quote.filledQuantity())
+                .internalQuantity(quote.internalQuantity())
+                .cost(quote.cost())
+                .averagePrice(quote.averagePrice())
+                .bestPrice(quote.bestPrice())
+                .worstPrice(quote.worstPrice())
+                .levels(quote.levels())
+                .complete(quote.isComplete())
+                .build();
     }
 
 }
@@ -0,0 +1,428 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.model.FailedSettlement;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.order.model.SettlementWatermark;
+import com.ntd.exchange_crypto.order.repository.FailedSettlementRepository;
+import com.ntd.exchange_crypto.order.repository.SettlementWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Settlement stage between the matching engine and the order / asset tables. The engine only queues what it decided
+ * (fills, releases, amends) and moves on; a settler thread takes everything queued within
+ * {@code app.order.settlement.flush-interval-ms} (up to {@code batch-size} items) and hands it, in engine order, to
+ * {@link OrderService} inside one transaction, where consecutive fills are netted per order and per (user, crypto).
+ * <p>
+ * The queue is bounded: when settlement falls behind, the engine blocks on it (back-pressure). A failed batch is
+ * settled again item by item, so one bad item does not hold back the others: database errors are retried with
+ * backoff, an item failing with any other error is parked in {@code failed_settlement} for reconciliation and raises
+ * an alert in the log. Nothing is ever dropped. Stopping flushes what is left.
+ * <p>
+ * Each item comes from a stream (the engine's journal plus the pair) and carries the journal sequence that produced
+ * it, with its position among that command's results. The transaction that applies (or parks) an item also moves
+ * the stream's {@code settlement_watermark} to it, and items at or before the watermark are skipped, so the engine
+ * may submit results again after a crash (replayed commands, or results kept in its snapshots via
+ * {@link #unsettled}) without settling anything twice. Items with sequence 0 are not tracked.
+ */
+@Slf4j
+@Component
+public class OrderSettlement implements Runnable {
+
+    private static final byte FILL = 1;
+    private static final byte RELEASE = 2;
+    private static final byte AMEND = 3;
+
+    private final TransactionTemplate transactionTemplate;
+    private final FailedSettlementRepository failedSettlementRepository;
+    private final SettlementWatermarkRepository settlementWatermarkRepository;
+    private final BlockingQueue<Settlement> queue;
+    // stream -> item đã nhận nhưng chưa commit, theo thứ tự engine; engine chụp vào snapshot
+    private final Map<String, Deque<Settlement>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong parked = new AtomicLong();
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private Consumer<List<Settlement>> settler;
+    private Thread thread;
+    private volatile boolean running;
+
+    public OrderSettlement(PlatformTransactionManager transactionManager,
+                           FailedSettlementRepository failedSettlementRepository,
+                           SettlementWatermarkRepository settlementWatermarkRepository,
+                           @Value("${app.order.settlement.queue-capacity:65536}") int queueCapacity,
+                           @Value("${app.order.settlement.batch-size:1000}") int batchSize,
+                           @Value("${app.order.settlement.flush-interval-ms:5}") long flushIntervalMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.failedSettlementRepository = failedSettlementRepository;
+        this.settlementWatermarkRepository = settlementWatermarkRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    // OrderService gọi khi khởi tạo / hủy: settler là OrderService, tránh phụ thuộc vòng
+    void start(Consumer<List<Settlement>> settler) {
+        this.settler = settler;
+        running = true;
+        thread = new Thread(this, "order-settlement");
+        thread.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Queues a fill of {@code order}; only its id and the status after the fill are taken, the engine keeps
+     * mutating the order.
+     */
+    public void fill(String stream, long seq, int item, Order order, BigDecimal quantity, BigDecimal price) {
+        submit(new Fill(stream, seq, item, order.getId(), order.getStatus(), quantity, price));
+    }
+
+    public void release(String stream, long seq, int item, Order order) {
+        submit(new Release(stream, seq, item, copy(order)));
+    }
+
+    public void amend(String stream, long seq, int item, Order order, BigDecimal previousPrice,
+                      BigDecimal previousQuantity, BigDecimal reserved) {
+        submit(new Amend(stream, seq, item, copy(order), previousPrice, previousQuantity, reserved));
+    }
+
+    /**
+     * Items of {@code stream} queued but not committed yet, encoded for {@link #resubmit}.
+     */
+    public List<byte[]> unsettled(String stream) {
+        Deque<Settlement> items = inFlight.get(stream);
+        if (items == null || items.isEmpty()) return List.of();
+        List<byte[]> encoded = new ArrayList<>(items.size());
+        for (Settlement settlement : items) encoded.add(encode(settlement));
+        return encoded;
+    }
+
+    public void resubmit(byte[] encoded) {
+        submit(decode(encoded));
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    // Số item đã vào failed_settlement từ lúc khởi động
+    public long parked() {
+        return parked.get();
+    }
+
+    private void submit(Settlement settlement) {
+        if (settlement.seq() > 0) {
+            inFlight.computeIfAbsent(settlement.stream(), k -> new ConcurrentLinkedDeque<>()).add(settlement);
+        }
+        if (!running) {
+            // Đang shutdown -> settle ngay trên thread gọi
+            settleOneByOne(List.of(settlement));
+            return;
+        }
+        try {
+            queue.put(settlement);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            settleOneByOne(List.of(settlement));
+        }
+    }
+
+    private static Order copy(Order order) {
+        Order copy = new Order();
+        BeanUtils.copyProperties(order, copy);
+        return copy;
+    }
+
+    @Override
+    public void run() {
+        List<Settlement> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Settlement first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Gom thêm tới batchSize hoặc hết flushInterval
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0) break;
+                    Settlement next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+            }
+
+            if (!batch.isEmpty()) {
+                settle(batch);
+                batch.clear();
+            }
+        }
+        log.info("Order settlement stopped");
+    }
+
+    private void settle(List<Settlement> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(batch));
+            done(batch);
+            if (batch.size() > 1) log.debug("Settled {} engine results in one transaction", batch.size());
+        } catch (Exception e) {
+            log.warn("Settlement batch of {} failed, settling item by item", batch.size(), e);
+            settleOneByOne(batch);
+        }
+    }
+
+    private void settleOneByOne(List<Settlement> batch) {
+        for (Settlement settlement : batch) {
+            long backoffMs = 100;
+            while (true) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> apply(List.of(settlement)));
+                    break;
+                } catch (DataAccessException | TransactionException e) {
+                    log.error("Cannot settle {}, retrying in {} ms", settlement, backoffMs, e);
+                } catch (Exception e) {
+                    // Thử lại không giúp được -> dead letter; chưa ghi được dead letter thì thử lại cả item
+                    if (park(settlement, e)) break;
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                } catch (InterruptedException ignored) {
+                    // đang shutdown: vẫn phải settle xong
+                }
+                backoffMs = Math.min(backoffMs * 2, 5_000);
+            }
+            done(List.of(settlement));
+        }
+    }
+
+    // Trong transaction: bỏ item đã settle trước đó (engine gửi lại sau crash), settle phần còn lại, nâng watermark
+    private void apply(List<Settlement> batch) {
+        Map<String, SettlementWatermark> watermarks = watermarks(batch);
+        List<Settlement> fresh = new ArrayList<>(batch.size());
+        for (Settlement settlement : batch) {
+            if (advance(watermarks, settlement)) {
+                fresh.add(settlement);
+            } else {
+                log.debug("Skipped {}: already settled", settlement);
+            }
+        }
+        if (!fresh.isEmpty()) settler.accept(fresh);
+        saveWatermarks(watermarks);
+    }
+
+    private Map<String, SettlementWatermark> watermarks(List<Settlement> batch) {
+        Set<String> streams = new LinkedHashSet<>();
+        for (Settlement settlement : batch) {
+            if (settlement.seq() > 0) streams.add(settlement.stream());
+        }
+        Map<String, SettlementWatermark> watermarks = new HashMap<>();
+        if (streams.isEmpty()) return watermarks;
+        for (SettlementWatermark watermark : settlementWatermarkRepository.findAllById(streams)) {
+            watermarks.put(watermark.getStream(), watermark);
+        }
+        return watermarks;
+    }
+
+    // false nếu item không sau watermark của stream (đã settle); true và dời watermark tới item nếu chưa
+    private static boolean advance(Map<String, SettlementWatermark> watermarks, Settlement settlement) {
+        if (settlement.seq() <= 0) return true;
+        SettlementWatermark watermark = watermarks.computeIfAbsent(settlement.stream(),
+                stream -> new SettlementWatermark(stream, 0, 0));
+        if (settlement.seq() < watermark.getSeq()
+                || settlement.seq() == watermark.getSeq() && settlement.item() <= watermark.getItem()) {
+            return false;
+        }
+        watermark.setSeq(settlement.seq());
+        watermark.setItem(settlement.item());
+        return true;
+    }
+
+    private void saveWatermarks(Map<String, SettlementWatermark> watermarks) {
+        if (!watermarks.isEmpty()) settlementWatermarkRepository.saveAll(watermarks.values());
+    }
+
+    private void done(List<Settlement> settled) {
+        for (Settlement settlement : settled) {
+            if (settlement.seq() <= 0) continue;
+            Deque<Settlement> items = inFlight.get(settlement.stream());
+            if (items != null) items.removeFirstOccurrence(settlement);
+        }
+    }
+
+    private boolean park(Settlement settlement, Exception cause) {
+        FailedSettlement failed = switch (settlement) {
+            case Fill fill -> failed("FILL", fill.orderId(), settlement, cause);
+            case Release release -> failed("RELEASE", release.order().getId(), settlement, cause);
+            case Amend amend -> failed("AMEND", amend.order().getId(), settlement, cause);
+        };
+        try {
+            // Item đã vào dead letter coi như đã xử lý: engine gửi lại thì bỏ qua
+            transactionTemplate.executeWithoutResult(status -> {
+                failedSettlementRepository.save(failed);
+                Map<String, SettlementWatermark> watermarks = watermarks(List.of(settlement));
+                advance(watermarks, settlement);
+                saveWatermarks(watermarks);
+            });
+        } catch (Exception e) {
+            log.error("Cannot park {} in failed_settlement, retrying", settlement, e);
+            return false;
+        }
+        parked.incrementAndGet();
+        log.error("ALERT: settlement {} failed and was parked in failed_settlement ({}) for reconciliation",
+                settlement, failed.getId(), cause);
+        return true;
+    }
+
+    private static FailedSettlement failed(String kind, String orderId, Settlement settlement, Exception cause) {
+        String error = String.valueOf(cause);
+        return FailedSettlement.builder()
+                .kind(kind)
+                .orderId(orderId)
+                .detail(settlement.toString())
+                .error(error.length() > 1000 ? error.substring(0, 1000) : error)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    /*--------------- Encoding cho snapshot của engine ---------------*/
+
+    static byte[] encode(Settlement settlement) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            switch (settlement) {
+                case Fill fill -> {
+                    out.writeByte(FILL);
+                    writeHeader(out, fill);
+                    out.writeUTF(fill.orderId());
+                    out.writeUTF(fill.status().name());
+                    writeDecimal(out, fill.quantity());
+                    writeDecimal(out, fill.price());
+                }
+                case Release release -> {
+                    out.writeByte(RELEASE);
+                    writeHeader(out, release);
+                    writeOrder(out, release.order());
+                }
+                case Amend amend -> {
+                    out.writeByte(AMEND);
+                    writeHeader(out, amend);
+                    writeOrder(out, amend.order());
+                    writeDecimal(out, amend.previousPrice());
+                    writeDecimal(out, amend.previousQuantity());
+                    writeDecimal(out, amend.reserved());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Settlement decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            byte kind = in.readByte();
+            String stream = in.readUTF();
+            long seq = in.readLong();
+            int item = in.readInt();
+            return switch (kind) {
+                case FILL -> new Fill(stream, seq, item, in.readUTF(), OrderStatus.valueOf(in.readUTF()),
+                        readDecimal(in), readDecimal(in));
+                case RELEASE -> new Release(stream, seq, item, readOrder(in));
+                case AMEND -> new Amend(stream, seq, item, readOrder(in), readDecimal(in), readDecimal(in),
+                        readDecimal(in));
+                default -> throw new IllegalStateException("Unknown settlement kind " + kind);
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, Settlement settlement) throws IOException {
+        out.writeUTF(settlement.stream());
+        out.writeLong(settlement.seq());
+        out.writeInt(settlement.item());
+    }
+
+    private static void writeOrder(DataOutputStream out, Order order) throws IOException {
+        byte[] encoded = OrderCodec.encode(order);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static Order readOrder(DataInputStream in) throws IOException {
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        return OrderCodec.decode(encoded);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value.toPlainString());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new BigDecimal(in.readUTF()) : null;
+    }
+
+    sealed interface Settlement permits Fill, Release, Amend {
+        // journal + pair của engine; seq = sequence journal của command sinh ra item (0 = không theo dõi),
+        // item = thứ tự của item trong các kết quả của command đó
+        String stream();
+
+        long seq();
+
+        int item();
+    }
+
+    record Fill(String stream, long seq, int item, String orderId, OrderStatus status, BigDecimal quantity,
+                BigDecimal price) implements Settlement {
+    }
+
+    record Release(String stream, long seq, int item, Order order) implements Settlement {
+    }
+
+    record Amend(String stream, long seq, int item, Order order, BigDecimal previousPrice,
+                 BigDecimal previousQuantity, BigDecimal reserved) implements Settlement {
+    }
+}
@@ -0,0 +1,24 @@
+package com.ntd.exchange_crypto.trade;
+
+import java.math.BigDecimal;
+
+/**
+ * Simulated fill of an order against the cumulative depth (resident book + Binance depth20) of a pair.
+ * {@code filledQuantity < requestedQuantity} when the known depth, or the limit price, runs out first;
+ * prices are null when nothing can be filled.
+ */
+public record DepthQuote(String pairId,
+                         String side,
+                         BigDecimal requestedQuantity,
+                         BigDecimal filledQuantity,
+                         BigDecimal internalQuantity,
+                         BigDecimal cost,
+                         BigDecimal averagePrice,
+                         BigDecimal bestPrice,
+                         BigDecimal worstPrice,
+                         int levels) {
+
+    public boolean isComplete() {
+        return filledQuantity.compareTo(requestedQuantity) >= 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ntd.exchange_crypto.trade;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.market.OrderBookData;
+import com.ntd.exchange_crypto.market.OrderBookEntry;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.trade.engine.DepthIndex;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link DepthIndex} per pair: the resident books feed their levels into it as they change
+ * ({@code OrderBookRegistry} attaches them), the Binance depth20 feed replaces its external levels.
+ * Nodes (or engine modes) without the pair's resident book quote on the Binance depth alone.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MarketDepthService {
+
+    CryptoExternalAPI cryptoExternalAPI;
+    Map<String, DepthIndex> indexes = new ConcurrentHashMap<>();
+    // BTCUSDT (Binance) -> depth20 mới nhất, áp vào index khi pair được tạo sau đó
+    Map<String, OrderBookData> latestDepth = new ConcurrentHashMap<>();
+
+    public DepthIndex index(String pairId) {
+        DepthIndex index = indexes.get(pairId);
+        if (index != null) return index;
+        index = indexes.computeIfAbsent(pairId, this::newIndex);
+        OrderBookData depth = latestDepth.get(symbol(pairId));
+        if (depth != null) applyExternal(index, depth);
+        return index;
+    }
+
+    public void updateExternal(OrderBookData depth) {
+        if (depth == null || depth.getProductId() == null) return;
+        String symbol = depth.getProductId().toUpperCase();
+        latestDepth.put(symbol, depth);
+        for (Map.Entry<String, DepthIndex> entry : indexes.entrySet()) {
+            if (symbol(entry.getKey()).equals(symbol)) applyExternal(entry.getValue(), depth);
+        }
+    }
+
+    /**
+     * Cost of taking {@code quantity} with a {@code side} order, walking the depth best price first and stopping at
+     * {@code limitPrice} when it is given.
+     */
+    public DepthQuote quote(String pairId, Side side, BigDecimal quantity, BigDecimal limitPrice) {
+        DepthIndex index = index(pairId);
+        int priceScale = index.getPriceScale();
+        int quantityScale = index.getQuantityScale();
+
+        DepthIndex.Fill fill = index.quote(side, FixedPoint.toLong(quantity, quantityScale),
+                limitPrice != null ? FixedPoint.toLong(limitPrice, priceScale) : 0);
+
+        BigDecimal filled = FixedPoint.toBigDecimal(fill.filled(), quantityScale);
+        BigDecimal cost = FixedPoint.toBigDecimal(fill.notional(), priceScale);
+        return new DepthQuote(pairId, side.name(),
+                FixedPoint.toBigDecimal(fill.requested(), quantityScale),
+                filled,
+                FixedPoint.toBigDecimal(fill.internalFilled(), quantityScale),
+                cost,
+                fill.filled() > 0 ? cost.divide(filled, priceScale, RoundingMode.HALF_UP) : null,
+                fill.bestPrice() > 0 ? FixedPoint.toBigDecimal(fill.bestPrice(), priceScale) : null,
+                fill.filled() > 0 ? FixedPoint.toBigDecimal(fill.worstPrice(), priceScale) : null,
+                fill.levels());
+    }
+
+    private void applyExternal(DepthIndex index, OrderBookData depth) {
+        try {
+            // Bên BID của index = lệnh mua đang chờ = bids của Binance
+            index.replaceExternal(Side.BID, prices(depth.getBids(), index), quantities(depth.getBids(), index));
+            index.replaceExternal(Side.ASK, prices(depth.getAsks(), index), quantities(depth.getAsks(), index));
+        } catch (ArithmeticException e) {
+            log.warn("Cannot apply depth of {}: {}", depth.getProductId(), e.getMessage());
+        }
+    }
+
+    private static long[] prices(List<OrderBookEntry> entries, DepthIndex index) {
+        if (entries == null) return new long[0];
+        long[] prices = new long[entries.size()];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = FixedPoint.toLong(entries.get(i).getPriceLevel(), index.getPriceScale());
+        }
+        return prices;
+    }
+
+    private static long[] quantities(List<OrderBookEntry> entries, DepthIndex index) {
+        if (entries == null) return new long[0];
+        long[] quantities = new long[entries.size()];
+        for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = FixedPoint.toLong(entries.get(i).getQuantity(), index.getQuantityScale());
+        }
+        return quantities;
+    }
+
+    // pairId = <base>-<quote>: giá theo scale của quote, khối lượng theo scale của base (như OrderBook)
+    private DepthIndex newIndex(String pairId) {
+        int separator = pairId.indexOf('-');
+        if (separator < 0) return new DepthIndex(FixedPoint.DEFAULT_SCALE, FixedPoint.DEFAULT_SCALE);
+        return new DepthIndex(cryptoExternalAPI.getScale(pairId.substring(separator + 1)),
+                cryptoExternalAPI.getScale(pairId.substring(0, separator)));
+    }
+
+    private static String symbol(String pairId) {
+        return pairId.replace("-", "").toUpperCase();
+    }
+}
@@ -0,0 +1,102 @@
+package com.ntd.exchange_crypto.trade.controller;
+
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.common.dto.response.APIResponse;
+import com.ntd.exchange_crypto.trade.dto.response.EngineShardResponse;
+import com.ntd.exchange_crypto.trade.dto.response.IntakeStreamResponse;
+import com.ntd.exchange_crypto.trade.dto.response.PairLatencyResponse;
+import com.ntd.exchange_crypto.trade.service.MatchEngine;
+import com.ntd.exchange_crypto.trade.service.OrderStreamConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/engine")
+@Slf4j
+public class EngineController {
+
+    private final MatchEngine matchEngine;
+    private final OrderLatencyMonitor orderLatencyMonitor;
+    private final OrderStreamConsumer orderStreamConsumer;
+
+    public EngineController(MatchEngine matchEngine, OrderLatencyMonitor orderLatencyMonitor,
+                            OrderStreamConsumer orderStreamConsumer) {
+        this.matchEngine = matchEngine;
+        this.orderLatencyMonitor = orderLatencyMonitor;
+        this.orderStreamConsumer = orderStreamConsumer;
+    }
+
+    private <T> APIResponse<T> buildResponse(T result, String message, HttpStatus status) {
+        return APIResponse.<T>builder()
+                .success(status.is2xxSuccessful())
+                .code(status.value())
+                .message(message)
+                .result(result)
+                .build();
+    }
+
+    @GetMapping("/shards")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<APIResponse<List<EngineShardResponse>>> getShards() {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(buildResponse(matchEngine.shardStats(), "Fetched engine shards successfully", HttpStatus.OK));
+    }
+
+    @PutMapping("/pairs/{pairId}/shard/{shard}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<APIResponse<?>> reassignPair(@PathVariable("pairId") String pairId,
+                                                       @PathVariable("shard") int shard) {
+        try {
+            log.info("Received request to move pair {} to engine shard {}", pairId, shard);
+            if (!matchEngine.reassign(pairId, shard)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(buildResponse(null, "Pair " + pairId + " is already on shard " + shard
+                                + " or still moving", HttpStatus.CONFLICT));
+            }
+            return ResponseEntity.status(HttpStatus.OK)
+                    .body(buildResponse(null, "Moving " + pairId + " to shard " + shard, HttpStatus.OK));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(buildResponse(null, e.getMessage(), HttpStatus.BAD_REQUEST));
+        }
+    }
+
+    @GetMapping("/intake")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<APIResponse<List<IntakeStreamResponse>>> getIntake() {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(buildResponse(orderStreamConsumer.intakeStats(), "Fetched order intake streams successfully",
+                        HttpStatus.OK));
+    }
+
+    @GetMapping("/latency")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<APIResponse<List<PairLatencyResponse>>> getLatency() {
+        List<PairLatencyResponse> latency = orderLatencyMonitor.pairIds().stream()
+                .map(this::toLatencyResponse)
+                .toList();
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(buildResponse(latency, "Fetched order latency successfully", HttpStatus.OK));
+    }
+
+    @GetMapping("/latency/{pairId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<APIResponse<PairLatencyResponse>> getPairLatency(@PathVariable("pairId") String pairId) {
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(buildResponse(toLatencyResponse(pairId), "Fetched order latency successfully", HttpStatus.OK));
+    }
+
+    private PairLatencyResponse toLatencyResponse(String pairId) {
+        return PairLatencyResponse.builder()
+                .pairId(pairId)
+                .intervalMs(orderLatencyMonitor.getIntervalMs())
+                .lastInterval(orderLatencyMonitor.lastInterval(pairId))
+                .total(orderLatencyMonitor.total(pairId))
+                .build();
+    }
+}
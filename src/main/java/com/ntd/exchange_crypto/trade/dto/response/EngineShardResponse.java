@@ -0,0 +1,32 @@
+package com.ntd.exchange_crypto.trade.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class EngineShardResponse {
+
+    int shard;
+
+    int queueDepth;
+
+    int queueCapacity;
+
+    long processed;
+
+    // Tỉ lệ thời gian bận kể từ lần đọc trước (0..1)
+    double utilization;
+
+    int parkedCommands;
+
+    int pendingTimers;
+
+    List<String> pairs;
+}
@@ -0,0 +1,26 @@
+package com.ntd.exchange_crypto.trade.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class IntakeStreamResponse {
+
+    String pairId;
+
+    // Số entry còn giữ trong stream (đã cắt theo max-len)
+    long length;
+
+    // Đã giao cho consumer nhưng chưa ack
+    long pending;
+
+    // Chưa giao cho consumer nào, -1 nếu Redis không tính được
+    long lag;
+
+    long consumers;
+}
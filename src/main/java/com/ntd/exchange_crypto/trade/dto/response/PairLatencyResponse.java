@@ -0,0 +1,26 @@
+package com.ntd.exchange_crypto.trade.dto.response;
+
+import com.ntd.exchange_crypto.common.StageLatency;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class PairLatencyResponse {
+
+    String pairId;
+
+    long intervalMs;
+
+    // Khoảng báo cáo gần nhất (cũng là dòng log), đơn vị us
+    List<StageLatency> lastInterval;
+
+    // Từ lúc khởi động tới khoảng báo cáo gần nhất
+    List<StageLatency> total;
+}
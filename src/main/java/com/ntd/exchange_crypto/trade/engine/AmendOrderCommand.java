@@ -0,0 +1,21 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+
+import java.math.BigDecimal;
+
+/**
+ * New price / total quantity of a resting LIMIT order. A repriced order is matched again like a new one, so
+ * {@code stats} is pinned before journaling as for {@link NewOrderCommand}.
+ */
+public record AmendOrderCommand(String pairId, String orderId, BigDecimal price, BigDecimal quantity,
+                                BigDecimal reserved, OrderBookStats stats) implements EngineCommand {
+
+    public AmendOrderCommand(String pairId, String orderId, BigDecimal price, BigDecimal quantity, BigDecimal reserved) {
+        this(pairId, orderId, price, quantity, reserved, null);
+    }
+
+    public AmendOrderCommand withStats(OrderBookStats stats) {
+        return new AmendOrderCommand(pairId, orderId, price, quantity, reserved, stats);
+    }
+}
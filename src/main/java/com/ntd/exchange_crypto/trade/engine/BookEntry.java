@@ -0,0 +1,37 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.model.Order;
+import lombok.Getter;
+
+/**
+ * Node of the intrusive FIFO list kept by a {@link PriceLevel}.
+ * Price and remaining quantity are scaled longs in the scales of the owning {@link OrderBook}.
+ */
+public class BookEntry {
+    @Getter
+    private final Order order;
+    private final long price;
+    long remaining;
+
+    PriceLevel level;
+    BookEntry prev;
+    BookEntry next;
+
+    BookEntry(Order order, long price, long remaining) {
+        this.order = order;
+        this.price = price;
+        this.remaining = remaining;
+    }
+
+    public long price() {
+        return price;
+    }
+
+    public long remaining() {
+        return remaining;
+    }
+
+    PriceLevel level() {
+        return level;
+    }
+}
@@ -0,0 +1,205 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Binary snapshots of resident order books, one file per pair ({@code <pairId>.snap}).
+ * Each snapshot carries the journal sequence it reflects (watermark); replay only applies records after it. It also
+ * carries the pair's results still on their way to settlement, which no journal record will produce again.
+ * Files are written to a temp file and atomically renamed, so a crash never leaves a half-written snapshot.
+ */
+@Slf4j
+@Component
+public class BookSnapshotStore {
+
+    private static final int MAGIC = 0x45534E50; // "ESNP"
+    private static final short VERSION = 4;
+    private static final String SUFFIX = ".snap";
+
+    private final Path dir;
+
+    public BookSnapshotStore(@Value("${app.engine.journal.dir:./data/engine}") String journalDir) {
+        this.dir = Path.of(journalDir, "snapshots");
+    }
+
+    public void write(OrderBook book, long watermark, PendingResults pending) {
+        Path target = dir.resolve(book.getPairId() + SUFFIX);
+        Path tmp = dir.resolve(book.getPairId() + SUFFIX + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+
+        try {
+            Files.createDirectories(dir);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                buf.putInt(MAGIC);
+                buf.putShort(VERSION);
+                EngineCodec.writeString(buf, book.getPairId());
+                buf.putInt(book.getPriceScale());
+                buf.putInt(book.getQuantityScale());
+                buf.putLong(watermark);
+                buf.putInt(book.size());
+
+                // Ghi theo thứ tự level -> FIFO để khi load lại giữ nguyên ưu tiên thời gian
+                for (Side side : Side.values()) {
+                    for (PriceLevel level : book.allLevels(side)) {
+                        for (BookEntry entry : level.entries()) {
+                            if (buf.remaining() < 4 * 1024) flush(channel, buf);
+                            EngineCodec.writeOrder(buf, entry.getOrder());
+                        }
+                    }
+                }
+
+                buf.putInt(book.armedTimers().size());
+                for (String orderId : book.armedTimers()) {
+                    if (buf.remaining() < 1024) flush(channel, buf);
+                    EngineCodec.writeString(buf, orderId);
+                }
+
+                buf.putLong(book.lastTradePrice());
+                buf.putInt(book.triggers().size());
+                for (Order order : book.triggers().orders()) {
+                    if (buf.remaining() < 4 * 1024) flush(channel, buf);
+                    EngineCodec.writeOrder(buf, order);
+                }
+
+                buf.putInt(book.trailingStops().size());
+                for (Order order : book.trailingStops().orders()) {
+                    if (buf.remaining() < 4 * 1024) flush(channel, buf);
+                    EngineCodec.writeOrder(buf, order);
+                    buf.putLong(book.trailingStops().watermark(order.getId()));
+                }
+
+                buf.putInt(book.earlyCancels().size());
+                for (String orderId : book.earlyCancels()) {
+                    if (buf.remaining() < 1024) flush(channel, buf);
+                    EngineCodec.writeString(buf, orderId);
+                }
+
+                writeBlobs(channel, buf, pending.settlements());
+                writeBlobs(channel, buf, pending.trades());
+                flush(channel, buf);
+                channel.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot of " + book.getPairId(), e);
+        }
+    }
+
+    /**
+     * Reads every snapshot; the pair ids of files that cannot be read are added to {@code unreadable}.
+     */
+    public List<BookSnapshot> readAll(Set<String> unreadable) {
+        List<BookSnapshot> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return snapshots;
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                try {
+                    snapshots.add(read(ByteBuffer.wrap(Files.readAllBytes(file))));
+                } catch (IOException | RuntimeException e) {
+                    String fileName = file.getFileName().toString();
+                    unreadable.add(fileName.substring(0, fileName.length() - SUFFIX.length()));
+                    log.error("Snapshot {} is unreadable, the pair will be rebuilt from the Redis mirror", file, e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list snapshots in " + dir, e);
+        }
+        return snapshots;
+    }
+
+    // v1: order + timer; v1 ghi sau khi có lệnh điều kiện thêm giá khớp cuối + trigger (nhận ra nhờ còn byte);
+    // v2: + trailing stop; v3: + early cancels; v4: + kết quả chưa settle / chưa ghi
+    private BookSnapshot read(ByteBuffer buf) {
+        if (buf.getInt() != MAGIC) throw new IllegalStateException("Not a book snapshot");
+        short version = buf.getShort();
+        if (version < 1 || version > VERSION) throw new IllegalStateException("Unsupported snapshot version " + version);
+
+        OrderBook book = new OrderBook(EngineCodec.readString(buf), buf.getInt(), buf.getInt());
+        long watermark = buf.getLong();
+        int orders = buf.getInt();
+        for (int i = 0; i < orders; i++) {
+            book.add(EngineCodec.readOrder(buf));
+        }
+        int timers = buf.getInt();
+        for (int i = 0; i < timers; i++) {
+            book.armTimer(EngineCodec.readString(buf));
+        }
+        if (version == 1 && !buf.hasRemaining()) return new BookSnapshot(book, watermark, PendingResults.NONE);
+
+        book.recordTrade(buf.getLong());
+        book.takePriceMove();
+        int triggers = buf.getInt();
+        for (int i = 0; i < triggers; i++) {
+            book.triggers().add(EngineCodec.readOrder(buf));
+        }
+        if (version >= 2) {
+            int trailing = buf.getInt();
+            for (int i = 0; i < trailing; i++) {
+                Order order = EngineCodec.readOrder(buf);
+                book.trailingStops().add(order, buf.getLong());
+            }
+        }
+        if (version >= 3) {
+            int cancels = buf.getInt();
+            for (int i = 0; i < cancels; i++) {
+                book.cancelEarly(EngineCodec.readString(buf));
+            }
+        }
+        PendingResults pending = PendingResults.NONE;
+        if (version >= 4) {
+            pending = new PendingResults(readBlobs(buf), readBlobs(buf));
+        }
+        return new BookSnapshot(book, watermark, pending);
+    }
+
+    private void writeBlobs(FileChannel channel, ByteBuffer buf, List<byte[]> blobs) throws IOException {
+        if (buf.remaining() < 4) flush(channel, buf);
+        buf.putInt(blobs.size());
+        for (byte[] blob : blobs) {
+            if (buf.remaining() < 4 + blob.length) flush(channel, buf);
+            buf.putInt(blob.length);
+            buf.put(blob);
+        }
+    }
+
+    private static List<byte[]> readBlobs(ByteBuffer buf) {
+        int count = buf.getInt();
+        List<byte[]> blobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] blob = new byte[buf.getInt()];
+            buf.get(blob);
+            blobs.add(blob);
+        }
+        return blobs;
+    }
+
+    private void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    public record BookSnapshot(OrderBook book, long watermark, PendingResults pending) {
+    }
+}
@@ -0,0 +1,3 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+public record CancelOrderCommand(String pairId, String orderId) implements EngineCommand {}
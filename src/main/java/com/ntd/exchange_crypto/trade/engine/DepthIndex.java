@@ -0,0 +1,272 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.order.enums.Side;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cumulative depth of one pair: the price levels of the resident book plus the latest Binance depth20, per side.
+ * Each side is a treap ordered best price first whose nodes carry the level's quantity and the subtree sums of
+ * quantity and notional (price x quantity), i.e. prefix sums maintained under insertion and removal of levels.
+ * A level change and {@link #quote} ("what does taking Q cost") are both O(log levels).
+ * <p>
+ * Prices and quantities are scaled longs in the scales of the pair's book; notional is in the price scale.
+ * Written by the pair's shard thread (through {@link OrderBook}) and by the depth feed, read by request threads.
+ */
+public class DepthIndex {
+
+    private final int priceScale;
+    private final int quantityScale;
+    private final Ladder bids = new Ladder(true);
+    private final Ladder asks = new Ladder(false);
+
+    public DepthIndex(int priceScale, int quantityScale) {
+        this.priceScale = priceScale;
+        this.quantityScale = quantityScale;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public int getQuantityScale() {
+        return quantityScale;
+    }
+
+    /**
+     * Adds {@code quantity} (negative to remove) resting in the internal book at {@code price}.
+     */
+    public synchronized void addInternal(Side side, long price, long quantity) {
+        if (quantity == 0) return;
+        Ladder ladder = ladder(side);
+        ladder.root = ladder.upsert(ladder.root, ladder.key(price), price, quantity, 0);
+    }
+
+    public synchronized void clearInternal() {
+        bids.clearInternal();
+        asks.clearInternal();
+    }
+
+    /**
+     * Replaces the external (Binance) levels of one side with a new snapshot.
+     */
+    public synchronized void replaceExternal(Side side, long[] prices, long[] quantities) {
+        Ladder ladder = ladder(side);
+        for (int i = 0; i < ladder.externalPrices.length; i++) {
+            long price = ladder.externalPrices[i];
+            ladder.root = ladder.upsert(ladder.root, ladder.key(price), price, 0, -ladder.externalQuantities[i]);
+        }
+        for (int i = 0; i < prices.length; i++) {
+            if (prices[i] <= 0 || quantities[i] <= 0) continue;
+            ladder.root = ladder.upsert(ladder.root, ladder.key(prices[i]), prices[i], 0, quantities[i]);
+        }
+        ladder.externalPrices = prices.clone();
+        ladder.externalQuantities = quantities.clone();
+    }
+
+    /**
+     * Walks the levels a {@code takerSide} order would take, best first, until {@code quantity} is filled or the
+     * next level is worse than {@code limitPrice} (0 = no limit).
+     */
+    public synchronized Fill quote(Side takerSide, long quantity, long limitPrice) {
+        Ladder ladder = ladder(takerSide == Side.BID ? Side.ASK : Side.BID);
+        long limitKey = limitPrice > 0 ? ladder.key(limitPrice) : Long.MAX_VALUE;
+
+        long remaining = quantity;
+        long filled = 0, notional = 0, internal = 0, worst = 0;
+        int levels = 0;
+        Node node = ladder.root;
+        while (node != null && remaining > 0) {
+            if (node.key > limitKey) {
+                node = node.left;
+                continue;
+            }
+            Node left = node.left;
+            if (left != null && remaining <= left.sumQuantity) {
+                node = left;
+                continue;
+            }
+            // Lấy trọn cây con trái (toàn giá tốt hơn node)
+            if (left != null) {
+                filled += left.sumQuantity;
+                notional += left.sumNotional;
+                internal += left.sumInternal;
+                levels += left.count;
+                remaining -= left.sumQuantity;
+                worst = left.worstPrice;
+            }
+            long take = Math.min(remaining, node.quantity());
+            filled += take;
+            notional += take == node.quantity() ? node.notional : FixedPoint.multiply(node.price, take, quantityScale);
+            // Trong một mức giá, lệnh nội bộ được tính trước
+            internal += Math.min(take, node.internal);
+            levels++;
+            remaining -= take;
+            worst = node.price;
+            node = node.right;
+        }
+        Node best = ladder.first();
+        return new Fill(quantity, filled, notional, internal, best != null ? best.price : 0, worst, levels);
+    }
+
+    public synchronized int levelCount(Side side) {
+        Node root = ladder(side).root;
+        return root != null ? root.count : 0;
+    }
+
+    private Ladder ladder(Side side) {
+        return side == Side.BID ? bids : asks;
+    }
+
+    /**
+     * Result of {@link #quote}: {@code filled < requested} when the known depth (or the limit) runs out.
+     */
+    public record Fill(long requested, long filled, long notional, long internalFilled, long bestPrice,
+                       long worstPrice, int levels) {
+    }
+
+    private final class Ladder {
+
+        // BID: giá cao trước -> key = -price
+        final boolean descending;
+        Node root;
+        long[] externalPrices = new long[0];
+        long[] externalQuantities = new long[0];
+
+        Ladder(boolean descending) {
+            this.descending = descending;
+        }
+
+        long key(long price) {
+            return descending ? -price : price;
+        }
+
+        Node first() {
+            Node node = root;
+            while (node != null && node.left != null) node = node.left;
+            return node;
+        }
+
+        Node upsert(Node node, long key, long price, long internal, long external) {
+            if (node == null) {
+                if (internal <= 0 && external <= 0) return null;
+                Node created = new Node(key, price, ThreadLocalRandom.current().nextInt());
+                created.internal = Math.max(internal, 0);
+                created.external = Math.max(external, 0);
+                created.pull();
+                return created;
+            }
+            if (key < node.key) {
+                node.left = upsert(node.left, key, price, internal, external);
+                if (node.left != null && node.left.priority > node.priority) return rotateRight(node);
+            } else if (key > node.key) {
+                node.right = upsert(node.right, key, price, internal, external);
+                if (node.right != null && node.right.priority > node.priority) return rotateLeft(node);
+            } else {
+                node.internal = Math.max(node.internal + internal, 0);
+                node.external = Math.max(node.external + external, 0);
+                if (node.quantity() == 0) return merge(node.left, node.right);
+            }
+            node.pull();
+            return node;
+        }
+
+        void clearInternal() {
+            root = clearInternal(root);
+        }
+
+        private Node clearInternal(Node node) {
+            if (node == null) return null;
+            node.left = clearInternal(node.left);
+            node.right = clearInternal(node.right);
+            node.internal = 0;
+            if (node.external == 0) return merge(node.left, node.right);
+            node.pull();
+            return node;
+        }
+
+        private Node merge(Node left, Node right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                left.pull();
+                return left;
+            }
+            right.left = merge(left, right.left);
+            right.pull();
+            return right;
+        }
+
+        private Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            node.pull();
+            left.right = node;
+            left.pull();
+            return left;
+        }
+
+        private Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            node.pull();
+            right.left = node;
+            right.pull();
+            return right;
+        }
+    }
+
+    private final class Node {
+
+        final long key;
+        final long price;
+        final int priority;
+        Node left;
+        Node right;
+        long internal;
+        long external;
+        long notional;
+
+        // Tổng của cả cây con (gồm node này)
+        long sumQuantity;
+        long sumNotional;
+        long sumInternal;
+        int count;
+        // Giá tệ nhất trong cây con = node ngoài cùng bên phải
+        long worstPrice;
+
+        Node(long key, long price, int priority) {
+            this.key = key;
+            this.price = price;
+            this.priority = priority;
+        }
+
+        long quantity() {
+            return internal + external;
+        }
+
+        void pull() {
+            notional = FixedPoint.multiply(price, quantity(), quantityScale);
+            sumQuantity = quantity();
+            sumNotional = notional;
+            sumInternal = internal;
+            count = 1;
+            worstPrice = price;
+            if (left != null) {
+                sumQuantity += left.sumQuantity;
+                sumNotional += left.sumNotional;
+                sumInternal += left.sumInternal;
+                count += left.count;
+            }
+            if (right != null) {
+                sumQuantity += right.sumQuantity;
+                sumNotional += right.sumNotional;
+                sumInternal += right.sumInternal;
+                count += right.count;
+                worstPrice = right.worstPrice;
+            }
+        }
+    }
+}
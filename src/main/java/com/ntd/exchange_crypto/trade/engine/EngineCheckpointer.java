@@ -0,0 +1,159 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Restores the books on startup from the latest snapshots plus the journal tail, and takes periodic per-shard
+ * snapshots so the journal stays short.
+ */
+@Slf4j
+@Component
+public class EngineCheckpointer {
+
+    private final EngineJournal journal;
+    private final BookSnapshotStore snapshotStore;
+    private final OrderBookRegistry orderBookRegistry;
+    private final EngineSequencer sequencer;
+    private final long intervalCommands;
+    private final long intervalMs;
+    private final long[] lastSnapshotSeq;
+    private final long[] lastSnapshotAt;
+    // pairId -> kết quả engine của pair chưa durable ở consumer; MatchEngine gắn trước khi chạy
+    private Function<String, PendingResults> pendingResults = pairId -> PendingResults.NONE;
+
+    public EngineCheckpointer(EngineJournal journal,
+                              BookSnapshotStore snapshotStore,
+                              OrderBookRegistry orderBookRegistry,
+                              EngineSequencer sequencer,
+                              @Value("${app.engine.snapshot.interval-commands:50000}") long intervalCommands,
+                              @Value("${app.engine.snapshot.interval-ms:60000}") long intervalMs,
+                              @Value("${app.engine.shards:4}") int shardCount) {
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        this.orderBookRegistry = orderBookRegistry;
+        this.sequencer = sequencer;
+        this.intervalCommands = intervalCommands;
+        this.intervalMs = intervalMs;
+        this.lastSnapshotSeq = new long[shardCount];
+        this.lastSnapshotAt = new long[shardCount];
+    }
+
+    public void setPendingResults(Function<String, PendingResults> pendingResults) {
+        this.pendingResults = pendingResults;
+    }
+
+    /**
+     * Loads snapshots, hands the results they kept to {@code resubmit}, and replays the journal records after each
+     * pair's watermark through {@code replay} (with their sequence). After a crash the journal gets a new id once
+     * everything is snapshotted again, see {@link EngineJournal#wasCleanShutdown}.
+     * Returns false when there is nothing on disk, in which case the caller falls back to the Redis mirror.
+     * A pair whose snapshot cannot be read is rebuilt from the Redis mirror instead: the journal before its
+     * watermark is already gone, so replaying the tail alone would lose its resting orders.
+     * Must run before the sequencer starts.
+     */
+    public boolean restore(ObjLongConsumer<EngineCommand> replay, Consumer<PendingResults> resubmit) {
+        if (!journal.isEnabled()) return false;
+
+        long started = System.currentTimeMillis();
+        Set<String> unreadable = new HashSet<>();
+        List<BookSnapshotStore.BookSnapshot> snapshots = snapshotStore.readAll(unreadable);
+        List<EngineJournal.JournalRecord> records = journal.readAll();
+        if (snapshots.isEmpty() && records.isEmpty()) {
+            // Sequence bắt đầu lại từ 0 -> id mới để kết quả mới không bị coi là đã settle
+            journal.renewId();
+            return false;
+        }
+
+        Map<String, Long> watermarks = new HashMap<>();
+        for (BookSnapshotStore.BookSnapshot snapshot : snapshots) {
+            orderBookRegistry.put(snapshot.book());
+            watermarks.put(snapshot.book().getPairId(), snapshot.watermark());
+            journal.advanceSequenceTo(snapshot.watermark());
+            if (!snapshot.pending().isEmpty()) resubmit.accept(snapshot.pending());
+        }
+
+        int replayed = 0;
+        for (EngineJournal.JournalRecord record : records) {
+            String pairId = record.command().pairId();
+            if (record.seq() <= watermarks.getOrDefault(pairId, 0L) || unreadable.contains(pairId)) continue;
+
+            replay.accept(record.command(), record.seq());
+            journal.markReplayed(sequencer.shardIndexOf(pairId), record.seq());
+            replayed++;
+        }
+
+        // Redis mirror đã phản ánh mọi command đã xử lý của pair (kể cả phần journal đã truncate)
+        for (String pairId : unreadable) {
+            orderBookRegistry.reload(pairId, Set.of());
+        }
+
+        // Chụp lại toàn bộ ngay sau replay -> các segment cũ không còn cần nữa
+        long watermark = journal.currentSequence();
+        for (OrderBook book : orderBookRegistry.all()) {
+            snapshotStore.write(book, watermark, pendingResults.apply(book.getPairId()));
+        }
+        journal.discardRecovered();
+        // Đuôi journal chưa force có thể đã mất mà kết quả của nó đã settle / ghi trade: sequence sẽ cấp lại các số
+        // đó -> id mới cho kết quả từ đây. Replay ở trên vẫn theo id cũ và không bao giờ chạy lại (đã snapshot)
+        if (!journal.wasCleanShutdown()) {
+            journal.renewId();
+            log.info("Journal was not closed cleanly, engine results continue under a new journal id");
+        }
+        long now = System.currentTimeMillis();
+        for (int shard = 0; shard < lastSnapshotSeq.length; shard++) {
+            journal.markReplayed(shard, watermark);
+            lastSnapshotSeq[shard] = watermark;
+            lastSnapshotAt[shard] = now;
+        }
+
+        log.info("Engine restored {} books from {} snapshots ({} rebuilt from Redis) and {} journal records in {} ms",
+                orderBookRegistry.all().size(), snapshots.size(), unreadable.size(), replayed, now - started);
+        return true;
+    }
+
+    /**
+     * Snapshots one pair as of {@code shard}'s last sequence, e.g. right before the pair moves to another shard, so
+     * the old shard may truncate the journal records of the pair afterwards. Shard thread only.
+     */
+    public long snapshot(int shard, OrderBook book) {
+        long seq = journal.lastSequence(shard);
+        if (journal.isEnabled()) snapshotStore.write(book, seq, pendingResults.apply(book.getPairId()));
+        return seq;
+    }
+
+    /**
+     * Runs on the shard thread, so the shard's books can be read without locking.
+     */
+    public void afterBatch(int shard) {
+        if (!journal.isEnabled()) return;
+
+        long seq = journal.lastSequence(shard);
+        long now = System.currentTimeMillis();
+        boolean due = seq - lastSnapshotSeq[shard] >= intervalCommands
+                || (seq > lastSnapshotSeq[shard] && now - lastSnapshotAt[shard] >= intervalMs);
+        if (!due) return;
+
+        journal.roll(shard);
+        int written = 0;
+        for (OrderBook book : orderBookRegistry.all()) {
+            if (sequencer.shardIndexOf(book.getPairId()) != shard) continue;
+            snapshotStore.write(book, seq, pendingResults.apply(book.getPairId()));
+            written++;
+        }
+        journal.truncate(shard, seq);
+        lastSnapshotSeq[shard] = seq;
+        lastSnapshotAt[shard] = now;
+        log.debug("Shard {} snapshotted {} books at sequence {}", shard, written, seq);
+    }
+}
@@ -0,0 +1,192 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Binary encoding shared by the journal and the book snapshots.
+ * Enums are written by name so records stay readable when constants are added.
+ */
+final class EngineCodec {
+
+    static final byte NEW_ORDER = 1;
+    static final byte CANCEL = 2;
+    static final byte TIMER = 3;
+    static final byte PRICE_TICK = 4;
+    static final byte AMEND = 5;
+
+    private EngineCodec() {
+    }
+
+    static void writeCommand(ByteBuffer buf, EngineCommand command) {
+        switch (command) {
+            case NewOrderCommand c -> {
+                buf.put(NEW_ORDER);
+                writeString(buf, c.pairId());
+                writeOrder(buf, c.order());
+                writeStats(buf, c.stats());
+            }
+            case CancelOrderCommand c -> {
+                buf.put(CANCEL);
+                writeString(buf, c.pairId());
+                writeString(buf, c.orderId());
+            }
+            case AmendOrderCommand c -> {
+                buf.put(AMEND);
+                writeString(buf, c.pairId());
+                writeString(buf, c.orderId());
+                writeDecimal(buf, c.price());
+                writeDecimal(buf, c.quantity());
+                writeDecimal(buf, c.reserved());
+                writeStats(buf, c.stats());
+            }
+            case TimerCommand c -> {
+                buf.put(TIMER);
+                writeString(buf, c.pairId());
+                writeString(buf, c.orderId());
+                writeEnum(buf, c.kind());
+            }
+            case PriceTickCommand c -> {
+                buf.put(PRICE_TICK);
+                writeString(buf, c.pairId());
+                writeDecimal(buf, c.price());
+                writeStats(buf, c.stats());
+            }
+        }
+    }
+
+    static EngineCommand readCommand(ByteBuffer buf) {
+        byte type = buf.get();
+        String pairId = readString(buf);
+        return switch (type) {
+            case NEW_ORDER -> new NewOrderCommand(pairId, readOrder(buf), readStats(buf));
+            case CANCEL -> new CancelOrderCommand(pairId, readString(buf));
+            case TIMER -> new TimerCommand(pairId, readString(buf), readEnum(buf, TimerCommand.Kind.class));
+            case PRICE_TICK -> new PriceTickCommand(pairId, readDecimal(buf), readStats(buf));
+            case AMEND -> new AmendOrderCommand(pairId, readString(buf), readDecimal(buf), readDecimal(buf),
+                    readDecimal(buf), readStats(buf));
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        };
+    }
+
+    static void writeOrder(ByteBuffer buf, Order order) {
+        writeString(buf, order.getId());
+        writeString(buf, order.getUserId());
+        writeString(buf, order.getGetCryptoId());
+        writeString(buf, order.getGiveCryptoId());
+        writeDecimal(buf, order.getQuantity());
+        writeDecimal(buf, order.getPrice());
+        writeDecimal(buf, order.getFilledQuantity());
+        writeEnum(buf, order.getSide());
+        writeEnum(buf, order.getType());
+        writeEnum(buf, order.getStatus());
+        writeEnum(buf, order.getTimeInForce());
+        writeInstant(buf, order.getCreatedAt());
+        writeInstant(buf, order.getUpdatedAt());
+        writeInstant(buf, order.getExpiresAt());
+        writeDecimal(buf, order.getStopPrice());
+        writeDecimal(buf, order.getTrailOffset());
+    }
+
+    static Order readOrder(ByteBuffer buf) {
+        return Order.builder()
+                .id(readString(buf))
+                .userId(readString(buf))
+                .getCryptoId(readString(buf))
+                .giveCryptoId(readString(buf))
+                .quantity(readDecimal(buf))
+                .price(readDecimal(buf))
+                .filledQuantity(readDecimal(buf))
+                .side(readEnum(buf, Side.class))
+                .type(readEnum(buf, OrderType.class))
+                .status(readEnum(buf, OrderStatus.class))
+                .timeInForce(readEnum(buf, TimeInForce.class))
+                .createdAt(readInstant(buf))
+                .updatedAt(readInstant(buf))
+                .expiresAt(readInstant(buf))
+                .stopPrice(readDecimal(buf))
+                .trailOffset(readDecimal(buf))
+                .build();
+    }
+
+    static void writeStats(ByteBuffer buf, OrderBookStats stats) {
+        buf.put((byte) (stats == null ? 0 : 1));
+        if (stats == null) return;
+        writeDecimal(buf, stats.getMinAskPrice());
+        writeDecimal(buf, stats.getMaxAskPrice());
+        writeDecimal(buf, stats.getMinBidPrice());
+        writeDecimal(buf, stats.getMaxBidPrice());
+    }
+
+    static OrderBookStats readStats(ByteBuffer buf) {
+        if (buf.get() == 0) return null;
+        return new OrderBookStats(readDecimal(buf), readDecimal(buf), readDecimal(buf), readDecimal(buf));
+    }
+
+    static void writeString(ByteBuffer buf, String value) {
+        if (value == null) {
+            buf.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    static String readString(ByteBuffer buf) {
+        short length = buf.getShort();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // scale (-1 = null) + unscaled value; đủ cho DECIMAL(19,8)
+    static void writeDecimal(ByteBuffer buf, BigDecimal value) {
+        if (value == null) {
+            buf.put((byte) -1);
+            return;
+        }
+        BigDecimal normalized = value.scale() < 0 ? value.setScale(0) : value;
+        buf.put((byte) normalized.scale());
+        byte[] unscaled = normalized.unscaledValue().toByteArray();
+        buf.put((byte) unscaled.length);
+        buf.put(unscaled);
+    }
+
+    static BigDecimal readDecimal(ByteBuffer buf) {
+        byte scale = buf.get();
+        if (scale < 0) return null;
+        byte[] unscaled = new byte[buf.get()];
+        buf.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static void writeEnum(ByteBuffer buf, Enum<?> value) {
+        writeString(buf, value == null ? null : value.name());
+    }
+
+    static <E extends Enum<E>> E readEnum(ByteBuffer buf, Class<E> type) {
+        String name = readString(buf);
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    static void writeInstant(ByteBuffer buf, Instant value) {
+        buf.putLong(value == null ? Long.MIN_VALUE : value.toEpochMilli());
+    }
+
+    static Instant readInstant(ByteBuffer buf) {
+        long millis = buf.getLong();
+        return millis == Long.MIN_VALUE ? null : Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,10 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+/**
+ * Input of the matching engine. Every command is routed by pair to exactly one sequencer shard,
+ * so commands of the same pair are applied one at a time, in submission order.
+ */
+public sealed interface EngineCommand permits NewOrderCommand, CancelOrderCommand, AmendOrderCommand, TimerCommand,
+        PriceTickCommand {
+    String pairId();
+}
@@ -0,0 +1,35 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+/**
+ * Callbacks run on the shard thread that owns the command's pair.
+ */
+public interface EngineHandler {
+
+    void handle(int shard, EngineCommand command);
+
+    /**
+     * Called once the shard has processed a drained batch; the place for per-shard housekeeping.
+     */
+    default void afterBatch(int shard) {
+    }
+
+    /**
+     * Called on every turn of the shard loop, including idle ones (at least every poll timeout).
+     */
+    default void onTick(int shard) {
+    }
+
+    /**
+     * Called on the shard giving up {@code pairId}, after it has processed every command routed to it before the
+     * reassignment. Returns opaque state handed to {@link #adopt} on the new shard.
+     */
+    default Object release(int shard, String pairId) {
+        return null;
+    }
+
+    /**
+     * Called on the shard taking over {@code pairId}, before any command of the pair it buffered meanwhile.
+     */
+    default void adopt(int shard, String pairId, Object state) {
+    }
+}
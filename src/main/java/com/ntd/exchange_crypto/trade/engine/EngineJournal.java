@@ -0,0 +1,346 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of sequenced engine inputs.
+ * Each shard writes its own segments ({@code shard-<n>-<firstSeq>-<millis>.journal}) from its own thread,
+ * so appends are lock-free. Records are {@code [length][seq][payload][crc32]}; sequence numbers are global so the journals of all
+ * shards can be merged on replay. Durability is group-committed: a background flusher forces dirty segments every
+ * {@code flush-interval-ms} instead of one fsync per order. A crash of the OS (not just the process) inside that
+ * window loses the unforced tail, whose results may already be settled; {@link #wasCleanShutdown} tells whether that
+ * can have happened.
+ */
+@Slf4j
+@Component
+public class EngineJournal {
+
+    private static final String SUFFIX = ".journal";
+    private static final String ID_FILE = "journal.id";
+    private static final String CLEAN_FILE = "journal.clean";
+    private static final int RECORD_OVERHEAD = 4 + 8 + 4;
+    private static final int MAX_PAYLOAD = 8 * 1024;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long segmentSize;
+    private final Writer[] writers;
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<Path> recovered = new ArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private String id;
+    private boolean cleanShutdown;
+
+    public EngineJournal(@Value("${app.engine.journal.enabled:false}") boolean enabled,
+                         @Value("${app.engine.journal.dir:./data/engine}") String dir,
+                         @Value("${app.engine.journal.segment-size-mb:64}") int segmentSizeMb,
+                         @Value("${app.engine.journal.flush-interval-ms:5}") long flushIntervalMs,
+                         @Value("${app.engine.shards:4}") int shardCount) {
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentSize = segmentSizeMb * 1024L * 1024L;
+        this.writers = new Writer[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            writers[i] = new Writer(i);
+        }
+
+        if (enabled) {
+            try {
+                Files.createDirectories(this.dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create journal directory " + dir, e);
+            }
+            this.id = readId();
+            // Xóa ngay khi mở: lần chạy này crash thì lần sau không thấy marker
+            this.cleanShutdown = deleteMarker();
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "engine-journal-flusher"));
+            flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+            this.id = UUID.randomUUID().toString();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Identity of this journal's sequence space. Engine results are keyed by it (and the pair), so settlement can
+     * tell a result replayed after a restart from a new one; a new id is issued when the sequence starts over.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Issues a new id, e.g. when nothing is left on disk and the sequence restarts from zero. Before the engine starts.
+     */
+    public void renewId() {
+        if (!enabled) return;
+        id = UUID.randomUUID().toString();
+        try {
+            Files.writeString(dir.resolve(ID_FILE), id, StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write journal id in " + dir, e);
+        }
+    }
+
+    /**
+     * Whether the previous run closed the journal after forcing every segment. False after a crash: the last records
+     * appended before it may be missing, and their sequence numbers may be issued again.
+     */
+    public boolean wasCleanShutdown() {
+        return cleanShutdown;
+    }
+
+    private boolean deleteMarker() {
+        try {
+            return Files.deleteIfExists(dir.resolve(CLEAN_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete journal marker in " + dir, e);
+        }
+    }
+
+    private String readId() {
+        Path file = dir.resolve(ID_FILE);
+        try {
+            if (Files.exists(file)) return Files.readString(file, StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read journal id in " + dir, e);
+        }
+        renewId();
+        return id;
+    }
+
+    /**
+     * Writes the command ahead of processing and returns its sequence number. Must be called from the shard thread.
+     */
+    public long append(int shard, EngineCommand command) {
+        long seq = sequence.incrementAndGet();
+        if (!enabled) return seq;
+
+        Writer writer = writers[shard];
+        writer.scratch.clear();
+        EngineCodec.writeCommand(writer.scratch, command);
+        writer.scratch.flip();
+        writer.write(seq, writer.scratch);
+        return seq;
+    }
+
+    /**
+     * Last sequence appended (or replayed) by a shard; used as the watermark of its snapshots.
+     */
+    public long lastSequence(int shard) {
+        return writers[shard].lastSeq;
+    }
+
+    public void markReplayed(int shard, long seq) {
+        writers[shard].lastSeq = Math.max(writers[shard].lastSeq, seq);
+    }
+
+    /**
+     * Reads every intact record of every segment on disk, ordered by sequence, and moves the sequence past them.
+     * A torn or corrupt record ends its segment.
+     */
+    public List<JournalRecord> readAll() {
+        List<JournalRecord> records = new ArrayList<>();
+        if (!enabled) return records;
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                readSegment(file, records);
+                recovered.add(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read journal " + dir, e);
+        }
+
+        records.sort(Comparator.comparingLong(JournalRecord::seq));
+        if (!records.isEmpty()) {
+            sequence.set(Math.max(sequence.get(), records.get(records.size() - 1).seq()));
+        }
+        return records;
+    }
+
+    public void advanceSequenceTo(long seq) {
+        sequence.accumulateAndGet(seq, Math::max);
+    }
+
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Deletes the segments read by {@link #readAll()}. Only safe once every book has been snapshotted after replay.
+     */
+    public void discardRecovered() {
+        for (Path file : recovered) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Cannot delete journal segment {}", file, e);
+            }
+        }
+        recovered.clear();
+    }
+
+    /**
+     * Deletes closed segments of a shard whose records are all covered by a snapshot. Shard thread only.
+     */
+    public void truncate(int shard, long upToSeq) {
+        if (!enabled) return;
+        writers[shard].closed.removeIf(segment -> {
+            if (segment.lastSeq() > upToSeq) return false;
+            try {
+                Files.deleteIfExists(segment.path());
+                return true;
+            } catch (IOException e) {
+                log.warn("Cannot delete journal segment {}", segment.path(), e);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Starts a new segment so the current one becomes eligible for truncation. Shard thread only.
+     */
+    public void roll(int shard) {
+        if (enabled) writers[shard].roll();
+    }
+
+    private void readSegment(Path file, List<JournalRecord> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            while (buf.remaining() >= RECORD_OVERHEAD) {
+                int length = buf.getInt();
+                if (length <= 0 || length > MAX_PAYLOAD || buf.remaining() < 8 + length + 4) break;
+
+                int start = buf.position();
+                long seq = buf.getLong();
+                ByteBuffer payload = buf.slice(buf.position(), length);
+                buf.position(buf.position() + length);
+                int expected = buf.getInt();
+
+                crc.reset();
+                crc.update(buf.slice(start, 8 + length));
+                if ((int) crc.getValue() != expected) {
+                    log.warn("Corrupt journal record in {} at offset {}, ignoring the rest of the segment", file, start);
+                    break;
+                }
+                records.add(new JournalRecord(seq, EngineCodec.readCommand(payload)));
+            }
+        }
+    }
+
+    private void flushAll() {
+        for (Writer writer : writers) {
+            writer.flush();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) return;
+        flusher.shutdown();
+        flushAll();
+        try {
+            Files.createFile(dir.resolve(CLEAN_FILE));
+        } catch (IOException e) {
+            log.warn("Cannot mark the journal in {} as cleanly closed", dir, e);
+        }
+    }
+
+    record JournalRecord(long seq, EngineCommand command) {
+    }
+
+    private record Segment(Path path, long lastSeq) {
+    }
+
+    private final class Writer {
+        private final int shard;
+        private final ByteBuffer scratch = ByteBuffer.allocate(MAX_PAYLOAD);
+        private final CRC32 crc = new CRC32();
+        private final List<Segment> closed = new ArrayList<>();
+        private volatile MappedByteBuffer current;
+        private volatile boolean dirty;
+        private Path currentPath;
+        private long lastSeq;
+
+        Writer(int shard) {
+            this.shard = shard;
+        }
+
+        void write(long seq, ByteBuffer payload) {
+            int length = payload.remaining();
+            if (current == null || current.remaining() < RECORD_OVERHEAD + length + 4) {
+                roll();
+            }
+
+            MappedByteBuffer buf = current;
+            int start = buf.position();
+            // length được ghi sau cùng: record chỉ "tồn tại" khi đã ghi đủ
+            buf.putInt(start, 0);
+            buf.position(start + 4);
+            buf.putLong(seq);
+            buf.put(payload);
+            crc.reset();
+            crc.update(buf.slice(start + 4, 8 + length));
+            buf.putInt((int) crc.getValue());
+            buf.putInt(start, length);
+
+            lastSeq = seq;
+            dirty = true;
+        }
+
+        void roll() {
+            if (current != null && current.position() == 0) return;
+            try {
+                if (current != null) {
+                    current.force();
+                    closed.add(new Segment(currentPath, lastSeq));
+                }
+                currentPath = dir.resolve("shard-%d-%020d-%d%s".formatted(
+                        shard, lastSeq + 1, System.currentTimeMillis(), SUFFIX));
+                try (FileChannel channel = FileChannel.open(currentPath,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    current = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                }
+                dirty = false;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open journal segment for shard " + shard, e);
+            }
+        }
+
+        void flush() {
+            MappedByteBuffer buf = current;
+            if (buf == null || !dirty) return;
+            dirty = false;
+            buf.force();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single-writer pipeline in front of the matching engine.
+ * Pairs are hashed onto a fixed number of shards; each shard has a bounded ring of commands and exactly one
+ * consumer thread, so the books of a shard are only ever touched by that thread and need no locking.
+ * A pair can be moved to another shard at runtime ({@link #reassign}): new commands are routed to the target right
+ * away but parked there until the old shard has drained everything it already had for the pair and released it,
+ * so the pair's commands keep their order and are never processed by two threads.
+ */
+@Slf4j
+@Component
+public class EngineSequencer {
+
+    private static final int DRAIN_BATCH = 256;
+    // Đánh thức shard đích đang chờ poll khi có Adopt trên kênh điều khiển
+    private static final Object WAKE_UP = new Object();
+
+    private final Shard[] shards;
+    // Ghi đè phân shard theo hash: routes = nơi nhận command mới, owners = shard đang giữ book
+    private final Map<String, Integer> routes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> owners = new ConcurrentHashMap<>();
+    private final Set<String> inTransit = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock routing = new ReentrantReadWriteLock();
+
+    public EngineSequencer(@Value("${app.engine.shards:4}") int shardCount,
+                           @Value("${app.engine.queue-capacity:65536}") int queueCapacity) {
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+    }
+
+    public synchronized void start(EngineHandler handler) {
+        for (Shard shard : shards) {
+            shard.start(handler);
+        }
+        log.info("Engine sequencer started with {} shards", shards.length);
+    }
+
+    /**
+     * Enqueues a command on the shard owning its pair. Blocks when that shard is full (back-pressure).
+     */
+    public void submit(EngineCommand command) {
+        routing.readLock().lock();
+        try {
+            shards[routeOf(command.pairId())].queue.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while submitting {}", command);
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Priority lane (cancels): the command is handled before anything still waiting in the shard's queue, so a
+     * backlog of new orders does not delay it. It may overtake earlier commands of the same pair; the handler has
+     * to cope with that.
+     */
+    public void submitUrgent(EngineCommand command) {
+        routing.readLock().lock();
+        try {
+            Shard shard = shards[routeOf(command.pairId())];
+            shard.urgent.add(command);
+            // Shard đang chờ poll -> đánh thức; queue đầy thì shard đang bận, sẽ thấy lệnh ở item kế tiếp
+            shard.queue.offer(WAKE_UP);
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Non-blocking variant for lossy inputs (market price ticks): drops the command when the shard is full.
+     */
+    public boolean offer(EngineCommand command) {
+        routing.readLock().lock();
+        try {
+            return shards[routeOf(command.pairId())].queue.offer(command);
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code task} on the shard of {@code pairId}, in order with the pair's commands. The task receives the
+     * shard index. Used for pair-level housekeeping (take-over / drop of a book) that is not an engine input.
+     */
+    public void execute(String pairId, IntConsumer task) {
+        routing.readLock().lock();
+        try {
+            shards[routeOf(pairId)].queue.put(new PairTask(pairId, task));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while scheduling a task for {}", pairId);
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Shard whose thread currently owns the pair's book, timers and snapshots.
+     */
+    public int shardIndexOf(String pairId) {
+        Integer owner = owners.get(pairId);
+        return owner != null ? owner : hashShard(pairId);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Moves {@code pairId} to {@code target}. Returns false when the pair is already there or still moving.
+     */
+    public boolean reassign(String pairId, int target) {
+        if (target < 0 || target >= shards.length) {
+            throw new IllegalArgumentException("Shard " + target + " does not exist");
+        }
+        routing.writeLock().lock();
+        Integer previous = null;
+        try {
+            int source = routeOf(pairId);
+            if (source == target || !inTransit.add(pairId)) return false;
+
+            shards[target].parked.add(pairId);
+            previous = routes.put(pairId, target);
+            // Marker đi sau mọi command cũ của pair trong queue của shard nguồn
+            shards[source].queue.put(new Release(pairId, target));
+            log.info("Moving pair {} from shard {} to shard {}", pairId, source, target);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shards[target].parked.remove(pairId);
+            if (previous != null) routes.put(pairId, previous);
+            else routes.remove(pairId);
+            inTransit.remove(pairId);
+            return false;
+        } finally {
+            routing.writeLock().unlock();
+        }
+    }
+
+    public List<ShardStats> stats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(shard.sample());
+        }
+        return stats;
+    }
+
+    private int routeOf(String pairId) {
+        Integer route = routes.get(pairId);
+        return route != null ? route : hashShard(pairId);
+    }
+
+    private int hashShard(String pairId) {
+        return Math.floorMod(pairId.hashCode(), shards.length);
+    }
+
+    /**
+     * Stops every shard after it has drained its queue. Idempotent.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+        for (Shard shard : shards) {
+            shard.await();
+        }
+    }
+
+    /**
+     * Queue depth and busy ratio of one shard; utilization covers the time since the previous sample.
+     */
+    public record ShardStats(int shard, int queueDepth, int queueCapacity, long processed, double utilization,
+                             int parkedCommands) {
+    }
+
+    private record PairTask(String pairId, IntConsumer task) {
+    }
+
+    // Marker trong queue của shard nguồn
+    private record Release(String pairId, int target) {
+    }
+
+    // Gửi qua kênh điều khiển của shard đích (không bị chặn bởi queue đầy)
+    private record Adopt(String pairId, Object state) {
+    }
+
+    private final class Shard implements Runnable {
+        private final int index;
+        private final BlockingQueue<Object> queue;
+        private final Queue<Adopt> control = new ConcurrentLinkedQueue<>();
+        private final Queue<EngineCommand> urgent = new ConcurrentLinkedQueue<>();
+        private final Set<String> parked = ConcurrentHashMap.newKeySet();
+        private final Map<String, List<Object>> parkedCommands = new HashMap<>();
+        private EngineHandler handler;
+        private Thread thread;
+        private volatile boolean running;
+        private volatile long sequence;
+        private volatile long busyNanos;
+        private volatile int parkedCount;
+        private long sampledAt = System.nanoTime();
+        private long sampledBusy;
+
+        Shard(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void start(EngineHandler handler) {
+            if (running) return;
+            this.handler = handler;
+            this.running = true;
+            this.thread = new Thread(this, "engine-shard-" + index);
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            if (thread != null) thread.interrupt();
+        }
+
+        void await() {
+            if (thread == null) return;
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized ShardStats sample() {
+            long now = System.nanoTime();
+            long busy = busyNanos;
+            double utilization = now > sampledAt ? (double) (busy - sampledBusy) / (now - sampledAt) : 0;
+            sampledAt = now;
+            sampledBusy = busy;
+            return new ShardStats(index, queue.size(), queue.size() + queue.remainingCapacity(), sequence,
+                    Math.min(1.0, utilization), parkedCount);
+        }
+
+        @Override
+        public void run() {
+            List<Object> batch = new ArrayList<>(DRAIN_BATCH);
+            while (running || !queue.isEmpty() || !urgent.isEmpty()) {
+                try {
+                    if (queue.drainTo(batch, DRAIN_BATCH) == 0 && control.isEmpty() && urgent.isEmpty()) {
+                        Object item = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if (item != null) batch.add(item);
+                    }
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        queue.drainTo(batch);
+                    }
+                }
+
+                long started = System.nanoTime();
+                for (Adopt adopt = control.poll(); adopt != null; adopt = control.poll()) {
+                    adopt(adopt);
+                }
+                drainUrgent();
+                for (Object item : batch) {
+                    if (item == WAKE_UP) continue;
+                    // Lệnh ưu tiên tới trong lúc xử lý batch được chen lên trước item kế tiếp
+                    drainUrgent();
+                    if (item instanceof Release release) {
+                        release(release);
+                    } else {
+                        dispatch(item);
+                    }
+                }
+                try {
+                    handler.onTick(index);
+                } catch (Exception e) {
+                    log.error("Shard {} tick failed", index, e);
+                }
+
+                if (!batch.isEmpty()) {
+                    batch.clear();
+                    try {
+                        handler.afterBatch(index);
+                    } catch (Exception e) {
+                        log.error("Shard {} housekeeping failed", index, e);
+                    }
+                }
+                busyNanos += System.nanoTime() - started;
+            }
+            log.info("Engine shard {} stopped after {} commands", index, sequence);
+        }
+
+        private void drainUrgent() {
+            for (EngineCommand command = urgent.poll(); command != null; command = urgent.poll()) {
+                dispatch(command);
+            }
+        }
+
+        private void dispatch(Object item) {
+            String pairId = item instanceof PairTask task ? task.pairId() : ((EngineCommand) item).pairId();
+            if (parked.contains(pairId)) {
+                parkedCommands.computeIfAbsent(pairId, k -> new ArrayList<>()).add(item);
+                parkedCount++;
+                return;
+            }
+            if (item instanceof PairTask task) {
+                try {
+                    task.task().accept(index);
+                } catch (Exception e) {
+                    log.error("Shard {} failed on a task for pair {}", index, pairId, e);
+                }
+                return;
+            }
+            EngineCommand command = (EngineCommand) item;
+            sequence++;
+            try {
+                handler.handle(index, command);
+            } catch (Exception e) {
+                log.error("Shard {} failed on command #{}: {}", index, sequence, command, e);
+            }
+        }
+
+        private void release(Release release) {
+            Object state = null;
+            try {
+                state = handler.release(index, release.pairId());
+            } catch (Exception e) {
+                log.error("Shard {} failed to release pair {}", index, release.pairId(), e);
+            }
+            owners.put(release.pairId(), release.target());
+            Shard target = shards[release.target()];
+            target.control.add(new Adopt(release.pairId(), state));
+            target.queue.offer(WAKE_UP);
+        }
+
+        private void adopt(Adopt adopt) {
+            try {
+                handler.adopt(index, adopt.pairId(), adopt.state());
+            } catch (Exception e) {
+                log.error("Shard {} failed to adopt pair {}", index, adopt.pairId(), e);
+            }
+            parked.remove(adopt.pairId());
+            List<Object> buffered = parkedCommands.remove(adopt.pairId());
+            if (buffered != null) {
+                parkedCount -= buffered.size();
+                buffered.forEach(this::dispatch);
+            }
+            inTransit.remove(adopt.pairId());
+            log.info("Shard {} took over pair {} ({} buffered commands)", index, adopt.pairId(),
+                    buffered == null ? 0 : buffered.size());
+        }
+    }
+}
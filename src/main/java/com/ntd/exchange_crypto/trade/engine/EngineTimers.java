@@ -0,0 +1,97 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * One {@link TimerWheel} per engine shard. Timers of a pair live on the wheel of the shard owning the pair,
+ * are advanced by that shard's thread and fire as {@link TimerCommand}s, so they go through the journal like any
+ * other input.
+ */
+@Component
+public class EngineTimers {
+
+    private final EngineSequencer sequencer;
+    private final TimerWheel<TimerCommand>[] wheels;
+    private final Map<TimerCommand, TimerWheel<TimerCommand>.Timeout>[] pending;
+
+    @SuppressWarnings("unchecked")
+    public EngineTimers(EngineSequencer sequencer,
+                        @Value("${app.engine.timer.tick-ms:100}") long tickMs,
+                        @Value("${app.engine.timer.wheel-size:4096}") int wheelSize,
+                        @Value("${app.engine.shards:4}") int shardCount) {
+        this.sequencer = sequencer;
+        this.wheels = new TimerWheel[shardCount];
+        this.pending = new Map[shardCount];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < shardCount; i++) {
+            wheels[i] = new TimerWheel<>(tickMs, wheelSize, now);
+            pending[i] = new HashMap<>();
+        }
+    }
+
+    /**
+     * Replaces any pending timer with the same key. Call from the shard thread owning the pair (or before start).
+     */
+    public void schedule(TimerCommand timer, long deadlineMs) {
+        int shard = sequencer.shardIndexOf(timer.pairId());
+        TimerWheel<TimerCommand>.Timeout previous = pending[shard].put(timer, wheels[shard].schedule(timer, deadlineMs));
+        if (previous != null) previous.cancel();
+    }
+
+    public boolean cancel(TimerCommand timer) {
+        TimerWheel<TimerCommand>.Timeout timeout = pending[sequencer.shardIndexOf(timer.pairId())].remove(timer);
+        return timeout != null && timeout.cancel();
+    }
+
+    public void cancelAll(String pairId, String orderId) {
+        for (TimerCommand.Kind kind : TimerCommand.Kind.values()) {
+            cancel(new TimerCommand(pairId, orderId, kind));
+        }
+    }
+
+    /**
+     * Cancels every pending timer of {@code pairId} on {@code shard} and returns them with their deadlines, so the
+     * new owner of the pair can {@link #attach} them. Call from the shard thread releasing the pair.
+     */
+    public List<PendingTimer> detach(int shard, String pairId) {
+        List<PendingTimer> detached = new ArrayList<>();
+        Iterator<Map.Entry<TimerCommand, TimerWheel<TimerCommand>.Timeout>> it = pending[shard].entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TimerCommand, TimerWheel<TimerCommand>.Timeout> entry = it.next();
+            if (!entry.getKey().pairId().equals(pairId)) continue;
+            if (entry.getValue().cancel()) {
+                detached.add(new PendingTimer(entry.getKey(), entry.getValue().deadlineMs()));
+            }
+            it.remove();
+        }
+        return detached;
+    }
+
+    public void attach(List<PendingTimer> timers) {
+        for (PendingTimer timer : timers) {
+            schedule(timer.timer(), timer.deadlineMs());
+        }
+    }
+
+    public void advance(int shard, long nowMs, Consumer<TimerCommand> onExpire) {
+        wheels[shard].advance(nowMs, timer -> {
+            pending[shard].remove(timer);
+            onExpire.accept(timer);
+        });
+    }
+
+    public int pendingCount(int shard) {
+        return wheels[shard].size();
+    }
+
+    public record PendingTimer(TimerCommand timer, long deadlineMs) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+
+/**
+ * {@code stats} is the Binance snapshot the engine matched against; it is captured when the command is journaled
+ * so that replay makes the same decisions.
+ */
+public record NewOrderCommand(String pairId, Order order, OrderBookStats stats) implements EngineCommand {
+
+    public NewOrderCommand(String pairId, Order order) {
+        this(pairId, order, null);
+    }
+
+    public NewOrderCommand withStats(OrderBookStats stats) {
+        return new NewOrderCommand(pairId, order, stats);
+    }
+}
@@ -0,0 +1,305 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Resident order book of one trading pair.
+ * Bids are sorted by price descending, asks ascending, so the first level of each side is the best one.
+ * Prices are scaled longs in the quote crypto's scale, quantities in the base crypto's scale;
+ * BigDecimal values from orders are converted once when they enter the book.
+ * Not thread-safe: callers must serialize access per pair.
+ */
+public class OrderBook {
+
+    // Giới hạn số cancel chờ order chưa tới (order đã khớp hết / không tồn tại thì cancel không bao giờ được dùng)
+    private static final int MAX_EARLY_CANCELS = 4096;
+
+    @Getter
+    private final String pairId;
+    @Getter
+    private final int priceScale;
+    @Getter
+    private final int quantityScale;
+    private final NavigableMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final NavigableMap<Long, PriceLevel> asks = new TreeMap<>();
+    private final Map<String, BookEntry> index = new HashMap<>();
+
+    // Order đang chờ khớp anonymous; được lưu vào snapshot để hẹn lại sau restart
+    private final Set<String> armedTimers = new LinkedHashSet<>();
+    // Cancel đi đường ưu tiên nên có thể tới trước NEW của chính order đó; cũng nằm trong snapshot
+    private final Set<String> earlyCancels = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_EARLY_CANCELS;
+        }
+    });
+    private BiConsumer<OrderBook, Order> removalListener = (book, order) -> {
+    };
+    // Prefix sums theo mức giá cho báo giá / ước tính chi phí, null = không gắn
+    private DepthIndex depth;
+
+    private final TriggerIndex triggers;
+    private final TrailingStopIndex trailingStops;
+    // Giá khớp gần nhất (nội bộ hoặc Binance), 0 = chưa biết
+    private long lastTradePrice;
+    private boolean priceMoved;
+    // Giá Binance mới nhất chưa đưa vào engine; ghi từ thread feed, shard lấy ra khi xếp command kế tiếp của pair
+    private final AtomicReference<BigDecimal> pendingMarketPrice = new AtomicReference<>();
+
+    private PriceLevel bestBid;
+    private PriceLevel bestAsk;
+
+    public OrderBook(String pairId) {
+        this(pairId, FixedPoint.DEFAULT_SCALE, FixedPoint.DEFAULT_SCALE);
+    }
+
+    public OrderBook(String pairId, int priceScale, int quantityScale) {
+        this.pairId = pairId;
+        this.priceScale = priceScale;
+        this.quantityScale = quantityScale;
+        this.triggers = new TriggerIndex(priceScale);
+        this.trailingStops = new TrailingStopIndex(priceScale);
+    }
+
+    public boolean add(Order order) {
+        if (index.containsKey(order.getId())) return false;
+
+        long price = toPrice(order.getPrice());
+        long remaining = toQuantity(order.getQuantity()) - toQuantity(order.getFilledQuantity());
+        if (remaining <= 0) return false;
+
+        PriceLevel level = levels(order.getSide()).computeIfAbsent(price, PriceLevel::new);
+        BookEntry entry = new BookEntry(order, price, remaining);
+        level.append(entry);
+        index.put(order.getId(), entry);
+        if (depth != null) depth.addInternal(order.getSide(), price, remaining);
+
+        refreshBest(order.getSide());
+        return true;
+    }
+
+    public Order remove(String orderId) {
+        BookEntry entry = index.remove(orderId);
+        if (entry == null) return null;
+        armedTimers.remove(orderId);
+
+        PriceLevel level = entry.level();
+        Side side = entry.getOrder().getSide();
+        if (depth != null) depth.addInternal(side, level.getPrice(), -entry.remaining);
+        level.unlink(entry);
+        if (level.isEmpty()) {
+            levels(side).remove(level.getPrice());
+            refreshBest(side);
+        }
+        removalListener.accept(this, entry.getOrder());
+        return entry.getOrder();
+    }
+
+    /**
+     * Records a fill of {@code quantity} (scaled) against a resting order; fully filled orders leave the book.
+     */
+    public void onFill(String orderId, long quantity) {
+        BookEntry entry = index.get(orderId);
+        if (entry == null) return;
+
+        entry.remaining -= quantity;
+        entry.level().reduce(quantity);
+        if (depth != null) depth.addInternal(entry.getOrder().getSide(), entry.price(), -quantity);
+        if (entry.remaining <= 0) {
+            remove(orderId);
+        }
+    }
+
+    /**
+     * Lowers the open quantity of a resting order by {@code quantity} (scaled) where it stands, keeping its place in
+     * the level's queue. The caller makes sure something remains.
+     */
+    public void reduce(String orderId, long quantity) {
+        BookEntry entry = index.get(orderId);
+        if (entry == null || quantity <= 0 || quantity >= entry.remaining) return;
+
+        entry.remaining -= quantity;
+        entry.level().reduce(quantity);
+        if (depth != null) depth.addInternal(entry.getOrder().getSide(), entry.price(), -quantity);
+    }
+
+    public boolean contains(String orderId) {
+        return index.containsKey(orderId);
+    }
+
+    /**
+     * Whether the order rests in the book or waits in one of the trigger indexes, i.e. was already delivered.
+     */
+    public boolean holds(String orderId) {
+        return index.containsKey(orderId) || triggers.contains(orderId) || trailingStops.contains(orderId);
+    }
+
+    public Order get(String orderId) {
+        BookEntry entry = index.get(orderId);
+        return entry != null ? entry.getOrder() : null;
+    }
+
+    public BookEntry entry(String orderId) {
+        return index.get(orderId);
+    }
+
+    public PriceLevel best(Side side) {
+        return side == Side.BID ? bestBid : bestAsk;
+    }
+
+    public PriceLevel level(Side side, long price) {
+        return levels(side).get(price);
+    }
+
+    /** Levels of one side from best to worst. */
+    public Collection<PriceLevel> levels(Side side, int depth) {
+        return levels(side).values().stream().limit(depth).toList();
+    }
+
+    public Collection<PriceLevel> allLevels(Side side) {
+        return levels(side).values();
+    }
+
+    /**
+     * Notified whenever an order leaves the book (fill, cancel, expiry), e.g. to cancel its timers.
+     */
+    public void setRemovalListener(BiConsumer<OrderBook, Order> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Mirrors this book into {@code depth} from now on; its internal levels are rebuilt from the current book.
+     */
+    public void attachDepth(DepthIndex depth) {
+        this.depth = depth;
+        if (depth == null) return;
+        depth.clearInternal();
+        for (Side side : Side.values()) {
+            for (PriceLevel level : levels(side).values()) {
+                depth.addInternal(side, level.getPrice(), level.getTotalQuantity());
+            }
+        }
+    }
+
+    public void armTimer(String orderId) {
+        armedTimers.add(orderId);
+    }
+
+    public boolean disarmTimer(String orderId) {
+        return armedTimers.remove(orderId);
+    }
+
+    public Set<String> armedTimers() {
+        return armedTimers;
+    }
+
+    /**
+     * Remembers a cancel for an order the book has not seen yet, so the order is canceled when it arrives.
+     */
+    public void cancelEarly(String orderId) {
+        earlyCancels.add(orderId);
+    }
+
+    public boolean takeEarlyCancel(String orderId) {
+        return !earlyCancels.isEmpty() && earlyCancels.remove(orderId);
+    }
+
+    public Set<String> earlyCancels() {
+        return earlyCancels;
+    }
+
+    public TriggerIndex triggers() {
+        return triggers;
+    }
+
+    public TrailingStopIndex trailingStops() {
+        return trailingStops;
+    }
+
+    public boolean hasPendingTriggers() {
+        return triggers.size() > 0 || trailingStops.size() > 0;
+    }
+
+    public void recordTrade(long price) {
+        if (price <= 0) return;
+        lastTradePrice = price;
+        priceMoved = true;
+    }
+
+    public long lastTradePrice() {
+        return lastTradePrice;
+    }
+
+    /**
+     * Records the latest market trade price from any thread; only the newest one is kept until the shard takes it.
+     */
+    public void offerMarketPrice(BigDecimal price) {
+        pendingMarketPrice.set(price);
+    }
+
+    /**
+     * Returns the market price offered since the previous call, or null, and clears it. Shard thread only.
+     */
+    public BigDecimal takeMarketPrice() {
+        return pendingMarketPrice.getAndSet(null);
+    }
+
+    /**
+     * Returns whether the last price changed since the previous call, and resets the flag.
+     */
+    public boolean takePriceMove() {
+        boolean moved = priceMoved;
+        priceMoved = false;
+        return moved;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /*--------------- Scaled-long conversion (edges only) ---------------*/
+
+    public long toPrice(BigDecimal price) {
+        return FixedPoint.toLong(price, priceScale);
+    }
+
+    public long toQuantity(BigDecimal quantity) {
+        return FixedPoint.toLong(quantity, quantityScale);
+    }
+
+    public BigDecimal price(long price) {
+        return FixedPoint.toBigDecimal(price, priceScale);
+    }
+
+    public BigDecimal quantity(long quantity) {
+        return FixedPoint.toBigDecimal(quantity, quantityScale);
+    }
+
+    private NavigableMap<Long, PriceLevel> levels(Side side) {
+        return side == Side.BID ? bids : asks;
+    }
+
+    private void refreshBest(Side side) {
+        NavigableMap<Long, PriceLevel> levels = levels(side);
+        PriceLevel best = levels.isEmpty() ? null : levels.firstEntry().getValue();
+        if (side == Side.BID) bestBid = best;
+        else bestAsk = best;
+    }
+}
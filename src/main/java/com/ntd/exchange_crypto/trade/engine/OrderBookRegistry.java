@@ -0,0 +1,189 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Owns the resident order books, one per pair.
+ * Redis ({@code orderbook:<pair>:<side>} + {@code order:<id>}) is only a mirror: it is read once on startup
+ * to rebuild the books and is never queried on the matching path.
+ * Each book is owned by one {@link EngineSequencer} shard thread once the engine is running.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderBookRegistry {
+
+    OrderBookRedisStore orderBookRedisStore;
+    CryptoExternalAPI cryptoExternalAPI;
+    MarketDepthService marketDepthService;
+    Map<String, OrderBook> books = new ConcurrentHashMap<>();
+    // BTCUSDT (Binance) -> BTC-USDT
+    Map<String, String> pairIdsBySymbol = new ConcurrentHashMap<>();
+    @NonFinal
+    BiConsumer<OrderBook, Order> removalListener = (book, order) -> {
+    };
+
+    public OrderBook getOrCreate(String pairId) {
+        return books.computeIfAbsent(pairId, this::newBook);
+    }
+
+    public void put(OrderBook book) {
+        book.setRemovalListener(removalListener);
+        attachDepth(book);
+        OrderBook previous = books.put(book.getPairId(), book);
+        if (previous != null && previous != book) previous.attachDepth(null);
+        pairIdsBySymbol.put(book.getPairId().replace("-", ""), book.getPairId());
+    }
+
+    public OrderBook findBySymbol(String symbol) {
+        String pairId = pairIdsBySymbol.get(symbol);
+        return pairId != null ? books.get(pairId) : null;
+    }
+
+    /**
+     * Installed on every book, existing and future. Set before the engine starts.
+     */
+    public void setRemovalListener(BiConsumer<OrderBook, Order> removalListener) {
+        this.removalListener = removalListener;
+        books.values().forEach(book -> book.setRemovalListener(removalListener));
+    }
+
+    public OrderBook find(String pairId) {
+        return books.get(pairId);
+    }
+
+    public OrderBook remove(String pairId) {
+        OrderBook book = books.remove(pairId);
+        if (book != null) {
+            book.attachDepth(null);
+            marketDepthService.index(pairId).clearInternal();
+        }
+        return book;
+    }
+
+    /**
+     * Replaces the pair's book with the Redis mirror, e.g. when this node takes the pair over from another one.
+     * {@code excludeOrderIds} (the intake batch that triggered the take-over) are left out: they are already in the
+     * mirror but still have to go through matching. Shard thread of the pair only.
+     */
+    public OrderBook reload(String pairId, Collection<String> excludeOrderIds) {
+        OrderBook book = newBook(pairId);
+        OrderBook previous = books.put(pairId, book);
+        if (previous != null) previous.attachDepth(null);
+        int loaded = 0;
+        for (Side side : Side.values()) {
+            loaded += hydrate(book, "orderbook:" + pairId + ":" + side.name().toLowerCase(), excludeOrderIds);
+        }
+        log.info("Order book {} reloaded from Redis: {} resting orders", pairId, loaded);
+        return book;
+    }
+
+    public Collection<OrderBook> all() {
+        return books.values();
+    }
+
+    /**
+     * Must run before the engine sequencer starts consuming, so books are never touched concurrently.
+     */
+    public void hydrateFromRedis() {
+        Set<String> keys = orderBookRedisStore.bookKeys();
+        if (keys.isEmpty()) return;
+
+        int loaded = 0;
+        for (String key : keys) {
+            // orderbook:<pairId>:<side>
+            String[] parts = key.split(":");
+            if (parts.length != 3) continue;
+            loaded += hydrate(getOrCreate(parts[1]), key, Set.of());
+        }
+        log.info("Order books hydrated from Redis: {} pairs, {} resting orders", books.size(), loaded);
+    }
+
+    private int hydrate(OrderBook book, String zsetKey, Collection<String> excludeOrderIds) {
+        List<String> orderIds = orderBookRedisStore.range(zsetKey, 0, -1);
+        if (orderIds.isEmpty()) return 0;
+        // Một pipeline HGET cho cả side thay vì mỗi order một round trip
+        List<byte[]> encodedOrders = orderBookRedisStore.getOrders(orderIds);
+
+        int loaded = 0;
+        for (int i = 0; i < orderIds.size(); i++) {
+            String orderId = orderIds.get(i);
+            if (excludeOrderIds.contains(orderId)) continue;
+            try {
+                byte[] encodedOrder = encodedOrders.get(i);
+                if (encodedOrder == null) continue;
+
+                Order order = OrderCodec.decode(encodedOrder);
+                if (!isResting(order)) continue;
+                // Lệnh điều kiện chưa kích hoạt nằm trong trigger index, không nằm trong book
+                boolean added;
+                if (TriggerIndex.isConditional(order)) {
+                    added = book.triggers().add(order);
+                } else if (TrailingStopIndex.isTrailing(order)) {
+                    // Watermark không nằm trong Redis -> bám lại từ giá đặt, snapshot mới giữ được watermark thật
+                    added = book.trailingStops().add(order, book.toPrice(order.getPrice()));
+                } else {
+                    added = book.add(order);
+                }
+                if (added) loaded++;
+            } catch (Exception e) {
+                log.error("Failed to hydrate order {} from {}", orderId, zsetKey, e);
+            }
+        }
+        return loaded;
+    }
+
+    // pairId = <base>-<quote>: giá theo scale của quote, khối lượng theo scale của base
+    private OrderBook newBook(String pairId) {
+        pairIdsBySymbol.put(pairId.replace("-", ""), pairId);
+        int separator = pairId.indexOf('-');
+        if (separator < 0) {
+            OrderBook book = new OrderBook(pairId);
+            book.setRemovalListener(removalListener);
+            attachDepth(book);
+            return book;
+        }
+        int quantityScale = cryptoExternalAPI.getScale(pairId.substring(0, separator));
+        int priceScale = cryptoExternalAPI.getScale(pairId.substring(separator + 1));
+        OrderBook book = new OrderBook(pairId, priceScale, quantityScale);
+        book.setRemovalListener(removalListener);
+        attachDepth(book);
+        return book;
+    }
+
+    // Book khôi phục từ snapshot có thể mang scale cũ -> không trộn vào index của scale hiện tại
+    private void attachDepth(OrderBook book) {
+        DepthIndex depth = marketDepthService.index(book.getPairId());
+        if (depth.getPriceScale() != book.getPriceScale() || depth.getQuantityScale() != book.getQuantityScale()) {
+            log.warn("Order book {} scales differ from the catalog, not indexed for depth quotes", book.getPairId());
+            return;
+        }
+        book.attachDepth(depth);
+    }
+
+    private boolean isResting(Order order) {
+        return order.getStatus() == OrderStatus.NEW
+                || order.getStatus() == OrderStatus.PENDING
+                || order.getStatus() == OrderStatus.PARTIALLY_FILLED;
+    }
+}
@@ -0,0 +1,280 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Cluster-wide ownership of pairs: a node may run the book of a pair only while it holds the pair's lease
+ * ({@code engine:lease:<pairId>} = node id, with a TTL). Leases are claimed lazily by the first node that sees an
+ * order of an unowned pair and renewed in the background; a node that dies loses its pairs after at most one TTL,
+ * after which the next node that receives an order of the pair takes it over.
+ * A node also stops treating a lease as its own once the local deadline passes without a successful renewal, so a
+ * paused node cannot keep matching after another node may have taken over.
+ * <p>
+ * The new owner rebuilds the book from the Redis mirror, which the previous owner's settlement stage keeps writing
+ * until its queued results are applied. Every acquisition therefore starts a new epoch of the pair
+ * ({@code engine:epoch:<pairId>}: epoch, owner, last drained epoch); an owner that lost a pair publishes its epoch as
+ * drained once it has no pending results of the pair, and {@link #awaitHandoff} holds the new owner until then, or
+ * until the previous owner's heartbeat ({@code engine:node:<nodeId>}) has expired, i.e. it is gone and writes
+ * nothing more.
+ * When disabled (single node) every pair is owned locally.
+ */
+@Slf4j
+@Component
+public class PairLeaseManager {
+
+    private static final String KEY_PREFIX = "engine:lease:";
+    private static final String EPOCH_PREFIX = "engine:epoch:";
+    private static final String NODE_PREFIX = "engine:node:";
+    private static final long HANDOFF_POLL_MS = 20;
+
+    // Chỉ gia hạn / xóa khi lease còn là của node này
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0",
+            Long.class);
+    // drained chỉ tăng: node cũ báo muộn không kéo lùi
+    private static final RedisScript<Long> MARK_DRAINED = new DefaultRedisScript<>(
+            "if tonumber(ARGV[1]) > tonumber(redis.call('hget', KEYS[1], 'drained') or '0') then "
+                    + "redis.call('hset', KEYS[1], 'drained', ARGV[1]) end return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final String nodeId;
+    private final long leaseTtlMs;
+    private final long handoffTimeoutMs;
+    // pairId -> hạn lease theo đồng hồ local
+    private final Map<String, Long> owned = new ConcurrentHashMap<>();
+    // pairId -> epoch của lượt sở hữu hiện tại
+    private final Map<String, Long> epochs = new ConcurrentHashMap<>();
+    // pairId -> epoch đã mất, chờ kết quả của pair durable để báo drained
+    private final Map<String, Long> draining = new ConcurrentHashMap<>();
+    // pairId -> lượt sở hữu trước, chờ ở awaitHandoff
+    private final Map<String, Handoff> handoffs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService renewer;
+    private volatile Consumer<String> onLost = pairId -> {
+    };
+    private volatile Predicate<String> drained = pairId -> true;
+
+    public PairLeaseManager(StringRedisTemplate redisTemplate,
+                            @Value("${app.engine.cluster.enabled:false}") boolean enabled,
+                            @Value("${app.engine.cluster.node-id:}") String nodeId,
+                            @Value("${app.engine.cluster.lease-ttl-ms:10000}") long leaseTtlMs,
+                            @Value("${app.engine.cluster.renew-interval-ms:3000}") long renewIntervalMs,
+                            @Value("${app.engine.cluster.handoff-timeout-ms:30000}") long handoffTimeoutMs) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.nodeId = nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.leaseTtlMs = leaseTtlMs;
+        this.handoffTimeoutMs = handoffTimeoutMs;
+
+        if (enabled) {
+            renewer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "engine-lease-renewer"));
+            // Lần đầu chạy ngay: heartbeat phải có trước khi node nhận pair nào
+            renewer.scheduleWithFixedDelay(this::renewAll, 0, renewIntervalMs, TimeUnit.MILLISECONDS);
+            log.info("Engine cluster mode on, node {} (lease ttl {} ms)", this.nodeId, leaseTtlMs);
+        } else {
+            renewer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Invoked from the renewer thread when a held lease could not be renewed.
+     */
+    public void setOnLost(Consumer<String> onLost) {
+        this.onLost = onLost;
+    }
+
+    /**
+     * Tells whether this node has no pending (not yet durable) results of a pair; polled from the renewer thread and
+     * by {@link #awaitHandoff}.
+     */
+    public void setDrained(Predicate<String> drained) {
+        this.drained = drained;
+    }
+
+    /**
+     * Makes sure this node owns {@code pairId}, taking the lease when nobody holds it.
+     */
+    public Claim claim(String pairId) {
+        if (!enabled) return Claim.OWNED;
+        if (owns(pairId)) return Claim.OWNED;
+
+        long deadline = System.currentTimeMillis() + leaseTtlMs;
+        Boolean acquired = redisTemplate.opsForValue()
+                .setIfAbsent(KEY_PREFIX + pairId, nodeId, Duration.ofMillis(leaseTtlMs));
+        if (Boolean.TRUE.equals(acquired)) {
+            owned.put(pairId, deadline);
+            startEpoch(pairId);
+            log.info("Node {} acquired the lease of pair {} (epoch {})", nodeId, pairId, epochs.get(pairId));
+            return Claim.ACQUIRED;
+        }
+        // Lease vẫn ghi tên node này (vd. mất hạn local vì renew chậm) -> lấy lại như mới
+        if (nodeId.equals(redisTemplate.opsForValue().get(KEY_PREFIX + pairId)) && renew(pairId)) {
+            // Vẫn là lượt sở hữu cũ: giữ epoch, awaitHandoff chỉ chờ kết quả của chính node này
+            Long epoch = draining.remove(pairId);
+            if (epoch != null) epochs.putIfAbsent(pairId, epoch);
+            return Claim.ACQUIRED;
+        }
+        return Claim.FOREIGN;
+    }
+
+    public boolean owns(String pairId) {
+        if (!enabled) return true;
+        Long deadline = owned.get(pairId);
+        return deadline != null && deadline > System.currentTimeMillis();
+    }
+
+    /**
+     * Blocks until the results of the pair's previous tenure are durable, so the Redis mirror reflects them: this
+     * node's own (see {@link #setDrained}) and, if another node held the pair, until it reported its epoch drained or
+     * its heartbeat expired. Gives up after {@code handoff-timeout-ms} and returns false. Call after
+     * {@link Claim#ACQUIRED}, before rebuilding the book.
+     */
+    public boolean awaitHandoff(String pairId) {
+        if (!enabled) return true;
+        Handoff previous = handoffs.remove(pairId);
+        long deadline = System.currentTimeMillis() + handoffTimeoutMs;
+        while (!drained.test(pairId) || !previousDrained(pairId, previous)) {
+            if (System.currentTimeMillis() > deadline) {
+                log.error("ALERT: pair {} taken over before the results of its previous owner {} were drained",
+                        pairId, previous != null ? previous.node() : nodeId);
+                return false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(HANDOFF_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean previousDrained(String pairId, Handoff previous) {
+        if (previous == null || previous.node() == null || previous.node().equals(nodeId)) return true;
+        Object drainedEpoch = redisTemplate.opsForHash().get(EPOCH_PREFIX + pairId, "drained");
+        if (drainedEpoch != null && Long.parseLong(drainedEpoch.toString()) >= previous.epoch()) return true;
+        return !Boolean.TRUE.equals(redisTemplate.hasKey(NODE_PREFIX + previous.node()));
+    }
+
+    // Chỉ node vừa giành được lease gọi -> không cần atomic giữa các bước
+    private void startEpoch(String pairId) {
+        String key = EPOCH_PREFIX + pairId;
+        Object previousNode = redisTemplate.opsForHash().get(key, "node");
+        long epoch = redisTemplate.opsForHash().increment(key, "epoch", 1);
+        redisTemplate.opsForHash().put(key, "node", nodeId);
+        epochs.put(pairId, epoch);
+        draining.remove(pairId);
+        handoffs.put(pairId, new Handoff(previousNode != null ? previousNode.toString() : null, epoch - 1));
+    }
+
+    public String ownerOf(String pairId) {
+        if (!enabled) return nodeId;
+        return redisTemplate.opsForValue().get(KEY_PREFIX + pairId);
+    }
+
+    private boolean renew(String pairId) {
+        long deadline = System.currentTimeMillis() + leaseTtlMs;
+        Long renewed = redisTemplate.execute(RENEW, List.of(KEY_PREFIX + pairId), nodeId, String.valueOf(leaseTtlMs));
+        if (renewed != null && renewed == 1L) {
+            owned.put(pairId, deadline);
+            return true;
+        }
+        return false;
+    }
+
+    private void renewAll() {
+        try {
+            redisTemplate.opsForValue().set(NODE_PREFIX + nodeId, "1", Duration.ofMillis(leaseTtlMs));
+        } catch (Exception e) {
+            log.warn("Cannot refresh the heartbeat of node {}", nodeId, e);
+        }
+        for (String pairId : List.copyOf(owned.keySet())) {
+            boolean renewed;
+            try {
+                renewed = renew(pairId);
+            } catch (Exception e) {
+                // Redis lỗi tạm thời: giữ lease tới hạn local, sau đó owns() tự trả false
+                log.warn("Cannot renew the lease of pair {}", pairId, e);
+                if (owns(pairId)) continue;
+                renewed = false;
+            }
+            if (!renewed) {
+                owned.remove(pairId);
+                Long epoch = epochs.remove(pairId);
+                if (epoch != null) draining.put(pairId, epoch);
+                log.warn("Node {} lost the lease of pair {}", nodeId, pairId);
+                onLost.accept(pairId);
+            }
+        }
+        for (Map.Entry<String, Long> entry : List.copyOf(draining.entrySet())) {
+            if (drained.test(entry.getKey()) && markDrained(entry.getKey(), entry.getValue())) {
+                draining.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private boolean markDrained(String pairId, long epoch) {
+        try {
+            redisTemplate.execute(MARK_DRAINED, List.of(EPOCH_PREFIX + pairId), String.valueOf(epoch));
+            log.info("Node {} drained pair {} (epoch {})", nodeId, pairId, epoch);
+            return true;
+        } catch (Exception e) {
+            log.warn("Cannot mark pair {} drained", pairId, e);
+            return false;
+        }
+    }
+
+    // Trả lease khi tắt để node khác nhận pair ngay, không phải chờ hết TTL
+    @PreDestroy
+    public void releaseAll() {
+        if (!enabled) return;
+        renewer.shutdown();
+        for (String pairId : List.copyOf(owned.keySet())) {
+            // Kết quả còn đang settle -> không báo drained; node mới chờ heartbeat của node này hết hạn
+            Long epoch = epochs.remove(pairId);
+            if (epoch != null && drained.test(pairId)) markDrained(pairId, epoch);
+            try {
+                redisTemplate.execute(RELEASE, List.of(KEY_PREFIX + pairId), nodeId);
+            } catch (Exception e) {
+                log.warn("Cannot release the lease of pair {}", pairId, e);
+            }
+        }
+        owned.clear();
+    }
+
+    public enum Claim {
+        OWNED, ACQUIRED, FOREIGN
+    }
+
+    private record Handoff(String node, long epoch) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import java.util.List;
+
+/**
+ * Engine results of one pair that were handed to settlement / trade persistence but are not durable yet, in their
+ * consumers' encoding. Kept in the pair's snapshot: the journal records that produced them are truncated with it, so
+ * after a crash they are submitted again (their consumers skip what they had already applied).
+ */
+public record PendingResults(List<byte[]> settlements, List<byte[]> trades) {
+
+    public static final PendingResults NONE = new PendingResults(List.of(), List.of());
+
+    public boolean isEmpty() {
+        return settlements.isEmpty() && trades.isEmpty();
+    }
+}
@@ -0,0 +1,73 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All resting orders at one price, in arrival (time priority) order.
+ * Append, unlink and head access are O(1). Price and total quantity are scaled longs.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PriceLevel {
+    final long price;
+    long totalQuantity;
+    int size;
+
+    @Getter(AccessLevel.NONE)
+    BookEntry head;
+    @Getter(AccessLevel.NONE)
+    BookEntry tail;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    void append(BookEntry entry) {
+        entry.level = this;
+        entry.prev = tail;
+        entry.next = null;
+        if (tail == null) head = entry;
+        else tail.next = entry;
+        tail = entry;
+        size++;
+        totalQuantity += entry.remaining;
+    }
+
+    void unlink(BookEntry entry) {
+        if (entry.prev == null) head = entry.next;
+        else entry.prev.next = entry.next;
+        if (entry.next == null) tail = entry.prev;
+        else entry.next.prev = entry.prev;
+
+        totalQuantity -= entry.remaining;
+        entry.level = null;
+        entry.prev = null;
+        entry.next = null;
+        size--;
+    }
+
+    void reduce(long quantity) {
+        totalQuantity -= quantity;
+    }
+
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    public BookEntry first() {
+        return head;
+    }
+
+    public List<BookEntry> entries() {
+        List<BookEntry> entries = new ArrayList<>(size);
+        for (BookEntry e = head; e != null; e = e.next) {
+            entries.add(e);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+
+import java.math.BigDecimal;
+
+/**
+ * Last trade price of a pair from the live market feed; releases crossed conditional orders.
+ */
+public record PriceTickCommand(String pairId, BigDecimal price, OrderBookStats stats) implements EngineCommand {
+
+    public PriceTickCommand(String pairId, BigDecimal price) {
+        this(pairId, price, null);
+    }
+
+    public PriceTickCommand withStats(OrderBookStats stats) {
+        return new PriceTickCommand(pairId, price, stats);
+    }
+}
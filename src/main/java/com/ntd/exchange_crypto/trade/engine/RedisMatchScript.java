@@ -0,0 +1,122 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.BookMember;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.order.enums.Side;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server-side matching primitive ({@code scripts/match_orders.lua}): pops and decrements the crossing makers of
+ * {@code orderbook:<pair>:<side>} for one taker in a single atomic call and returns compact fill tuples.
+ * The script is sent once and then called by SHA (EVALSHA, falling back to EVAL after a script flush).
+ * Prices and quantities cross the wire as integers in {@link #SCALE}; Lua numbers are doubles, so values must stay
+ * below 2^53 units ({@link #fits}). Makers of the taker's own user are skipped, as in the resident engine.
+ * <p>
+ * The maker hashes ({@code order:<id>}) are only known once the script reads the book, so they cannot be declared in
+ * KEYS: the script needs a single Redis node, not Redis Cluster.
+ * <p>
+ * {@link #cancel} ({@code scripts/cancel_order.lua}) is its counterpart for an order leaving the book: it cannot run
+ * in the middle of a match call, so the quantity it removes is never filled as well.
+ */
+@Component
+public class RedisMatchScript {
+
+    public static final int SCALE = 8;
+    public static final long MAX_UNITS = 1L << 53;
+    /** {@link #cancel}: the order is no longer in Redis (fully matched, canceled or expired). */
+    public static final long GONE = -1;
+    /** {@link #cancel}: the order was removed, but its hash predates the {@code rem} field. */
+    public static final long UNTRACKED = -2;
+
+    private final OrderBookRedisStore orderBookRedisStore;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> script;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> cancelScript;
+
+    public RedisMatchScript(OrderBookRedisStore orderBookRedisStore) {
+        this.orderBookRedisStore = orderBookRedisStore;
+        this.script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/match_orders.lua")));
+        script.setResultType(List.class);
+        this.cancelScript = new DefaultRedisScript<>();
+        cancelScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/cancel_order.lua")));
+        cancelScript.setResultType(List.class);
+    }
+
+    public static boolean fits(long units) {
+        return units >= 0 && units < MAX_UNITS;
+    }
+
+    /**
+     * Returns {@code null} when the taker is no longer in Redis or was already matched (duplicate delivery).
+     *
+     * @param limitPrice scaled limit price, or {@code null} for a market taker
+     */
+    public Result match(String pairId, String takerId, String takerUserId, Side takerSide, Long limitPrice,
+                        long quantity, int maxFills) {
+        Side makerSide = takerSide == Side.BID ? Side.ASK : Side.BID;
+        List<String> keys = List.of(bookKey(pairId, makerSide), bookKey(pairId, takerSide), "order:" + takerId);
+
+        // Reply giữ nguyên byte: field order của maker là nhị phân (OrderCodec)
+        List<?> raw = orderBookRedisStore.execute(script, keys,
+                takerId,
+                takerSide.name().toLowerCase(),
+                limitPrice == null ? "+" : "(" + BookMember.upTo(makerSide == Side.BID, limitPrice),
+                String.valueOf(quantity),
+                String.valueOf(maxFills),
+                takerUserId);
+        if (raw == null || raw.isEmpty()) {
+            throw new IllegalStateException("Empty reply from the match script for " + takerId);
+        }
+
+        long takerRemaining = number(raw.get(0));
+        if (takerRemaining < 0) return null;
+        List<Fill> fills = new ArrayList<>((raw.size() - 1) / 5);
+        for (int i = 1; i + 4 < raw.size(); i += 5) {
+            fills.add(new Fill(
+                    new String((byte[]) raw.get(i), StandardCharsets.UTF_8),
+                    number(raw.get(i + 1)),
+                    number(raw.get(i + 2)),
+                    number(raw.get(i + 3)),
+                    (byte[]) raw.get(i + 4)));
+        }
+        return new Result(takerRemaining, fills);
+    }
+
+    /**
+     * Takes a resting order off its book side and deletes its hash in one atomic call. Returns the scaled quantity
+     * that was still open and is now off the book, {@link #GONE} or {@link #UNTRACKED}.
+     */
+    public long cancel(String pairId, String orderId, Side side) {
+        List<?> raw = orderBookRedisStore.execute(cancelScript, List.of(bookKey(pairId, side), "order:" + orderId));
+        if (raw == null || raw.isEmpty()) {
+            throw new IllegalStateException("Empty reply from the cancel script for " + orderId);
+        }
+        return number(raw.get(0));
+    }
+
+    private static long number(Object reply) {
+        return OrderBookRedisStore.parseNumber((byte[]) reply);
+    }
+
+    private static String bookKey(String pairId, Side side) {
+        return "orderbook:" + pairId + ":" + side.name().toLowerCase();
+    }
+
+    /**
+     * {@code makerOrder} is the raw {@code order} field of the maker's hash, to be read with {@code OrderCodec}.
+     */
+    public record Fill(String makerId, long quantity, long price, long makerRemaining, byte[] makerOrder) {
+    }
+
+    public record Result(long takerRemaining, List<Fill> fills) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+/**
+ * Fired by the shard's {@link TimerWheel}; also used as the timer's key, so a pending timer can be canceled by value.
+ */
+public record TimerCommand(String pairId, String orderId, Kind kind) implements EngineCommand {
+
+    public enum Kind {
+        ANONYMOUS_FILL, // khớp với anonymous sau delay
+        EXPIRE // hết hạn DAY/GTD
+    }
+}
@@ -0,0 +1,131 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel: {@code wheelSize} slots of {@code tickMs} each; a timeout further away than one revolution
+ * keeps a round counter. Insert and cancel are O(1) (intrusive list per slot), and advancing costs one slot per tick
+ * regardless of how many timers are pending.
+ * Not thread-safe: owned and advanced by a single shard thread.
+ */
+public class TimerWheel<T> {
+
+    private final long tickMs;
+    private final int mask;
+    private final Timeout[] slots;
+    private final long startMs;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMs, int wheelSize, long startMs) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.mask = wheelSize - 1;
+        this.slots = (Timeout[]) new TimerWheel.Timeout[wheelSize];
+        this.startMs = startMs;
+    }
+
+    /**
+     * Deadlines in the past fire on the next {@link #advance}.
+     */
+    public Timeout schedule(T payload, long deadlineMs) {
+        long deadlineTick = Math.max(ceilDiv(deadlineMs - startMs, tickMs), currentTick);
+        Timeout timeout = new Timeout(payload, deadlineMs, (deadlineTick - currentTick) / slots.length);
+        link((int) (deadlineTick & mask), timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Processes every tick up to {@code nowMs} and hands expired payloads to {@code onExpire}, in deadline order.
+     * Callbacks may schedule or cancel timers.
+     */
+    public void advance(long nowMs, Consumer<T> onExpire) {
+        long targetTick = Math.floorDiv(nowMs - startMs, tickMs);
+        List<T> expired = new ArrayList<>();
+        while (currentTick <= targetTick) {
+            int slot = (int) (currentTick & mask);
+            Timeout timeout = slots[slot];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    unlink(timeout);
+                    size--;
+                    expired.add(timeout.payload);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+            currentTick++;
+
+            for (T payload : expired) {
+                onExpire.accept(payload);
+            }
+            expired.clear();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void link(int slot, Timeout timeout) {
+        timeout.slot = slot;
+        timeout.next = slots[slot];
+        if (slots[slot] != null) slots[slot].prev = timeout;
+        slots[slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev == null) slots[timeout.slot] = timeout.next;
+        else timeout.prev.next = timeout.next;
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    public final class Timeout {
+        private final T payload;
+        private final long deadlineMs;
+        private long rounds;
+        private int slot = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(T payload, long deadlineMs, long rounds) {
+            this.payload = payload;
+            this.deadlineMs = deadlineMs;
+            this.rounds = rounds;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        public long deadlineMs() {
+            return deadlineMs;
+        }
+
+        public boolean isActive() {
+            return slot >= 0;
+        }
+
+        public boolean cancel() {
+            if (!isActive()) return false;
+            unlink(this);
+            size--;
+            return true;
+        }
+    }
+}
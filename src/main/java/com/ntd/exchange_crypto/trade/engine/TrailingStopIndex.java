@@ -0,0 +1,183 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Resting trailing-stop orders of one pair.
+ * Sell trails follow the highest price seen since they were placed and fire {@code trailOffset} below it;
+ * buy trails follow the lowest price and fire {@code trailOffset} above it.
+ * Orders are bucketed by (side, offset) and, inside a bucket, grouped by watermark: a tick that makes a new high/low
+ * merges every group it passes into one, so a tick costs O(buckets * log groups) rather than one update per order.
+ * Merges move the smaller group into the larger, so each order is moved O(log n) times over its lifetime.
+ * Not thread-safe: owned by the shard thread of the pair.
+ */
+public class TrailingStopIndex {
+
+    private final int priceScale;
+    private final Map<Long, Bucket> sellBuckets = new HashMap<>();
+    private final Map<Long, Bucket> buyBuckets = new HashMap<>();
+    private final Map<String, Group> byId = new HashMap<>();
+    // Đọc từ thread nhận giá Binance để bỏ qua tick khi không có trailing stop
+    private volatile int size;
+
+    public TrailingStopIndex(int priceScale) {
+        this.priceScale = priceScale;
+    }
+
+    public static boolean isTrailing(Order order) {
+        return order.getType() == OrderType.TRAILING_STOP;
+    }
+
+    /**
+     * Starts trailing {@code order} from {@code watermark} (scaled price): usually the last trade price when placed.
+     */
+    public boolean add(Order order, long watermark) {
+        if (byId.containsKey(order.getId())) return false;
+        long offset = FixedPoint.toLong(order.getTrailOffset(), priceScale);
+        Map<Long, Bucket> buckets = order.getSide() == Side.ASK ? sellBuckets : buyBuckets;
+        Bucket bucket = buckets.computeIfAbsent(offset, k -> new Bucket(order.getSide(), k));
+        Group group = bucket.groups.computeIfAbsent(watermark, w -> new Group(bucket, w));
+        group.orders.put(order.getId(), order);
+        byId.put(order.getId(), group);
+        size = byId.size();
+        return true;
+    }
+
+    public boolean contains(String orderId) {
+        return byId.containsKey(orderId);
+    }
+
+    public Order remove(String orderId) {
+        Group group = byId.remove(orderId);
+        if (group == null) return null;
+        Order order = group.orders.remove(orderId);
+        if (group.orders.isEmpty()) {
+            Bucket bucket = group.bucket;
+            bucket.groups.remove(group.watermark);
+            if (bucket.groups.isEmpty()) {
+                (bucket.side == Side.ASK ? sellBuckets : buyBuckets).remove(bucket.offset);
+            }
+        }
+        size = byId.size();
+        return order;
+    }
+
+    public boolean wouldTrigger(Order order, long watermark, long lastPrice) {
+        long offset = FixedPoint.toLong(order.getTrailOffset(), priceScale);
+        return order.getSide() == Side.ASK ? lastPrice <= watermark - offset : lastPrice >= watermark + offset;
+    }
+
+    /**
+     * Moves the watermarks to {@code lastPrice}, then removes and returns every order whose trail it hits.
+     */
+    public List<Order> onPrice(long lastPrice) {
+        List<Order> released = new ArrayList<>();
+        if (byId.isEmpty()) return released;
+
+        for (Iterator<Bucket> it = sellBuckets.values().iterator(); it.hasNext(); ) {
+            Bucket bucket = it.next();
+            bucket.track(bucket.groups.headMap(lastPrice, false), lastPrice);
+            drain(bucket.groups.tailMap(lastPrice + bucket.offset, true), released);
+            if (bucket.groups.isEmpty()) it.remove();
+        }
+        for (Iterator<Bucket> it = buyBuckets.values().iterator(); it.hasNext(); ) {
+            Bucket bucket = it.next();
+            bucket.track(bucket.groups.tailMap(lastPrice, false), lastPrice);
+            drain(bucket.groups.headMap(lastPrice - bucket.offset, true), released);
+            if (bucket.groups.isEmpty()) it.remove();
+        }
+        size = byId.size();
+        return released;
+    }
+
+    public long watermark(String orderId) {
+        Group group = byId.get(orderId);
+        return group != null ? group.watermark : 0L;
+    }
+
+    public Collection<Order> orders() {
+        List<Order> orders = new ArrayList<>(byId.size());
+        for (Map<Long, Bucket> buckets : List.of(sellBuckets, buyBuckets)) {
+            for (Bucket bucket : buckets.values()) {
+                for (Group group : bucket.groups.values()) {
+                    orders.addAll(group.orders.values());
+                }
+            }
+        }
+        return orders;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void drain(NavigableMap<Long, Group> hit, List<Order> released) {
+        Iterator<Group> it = hit.values().iterator();
+        while (it.hasNext()) {
+            for (Order order : it.next().orders.values()) {
+                byId.remove(order.getId());
+                released.add(order);
+            }
+            it.remove();
+        }
+    }
+
+    private final class Bucket {
+        private final Side side;
+        private final long offset;
+        private final NavigableMap<Long, Group> groups = new TreeMap<>();
+
+        private Bucket(Side side, long offset) {
+            this.side = side;
+            this.offset = offset;
+        }
+
+        // Gộp mọi nhóm bị giá mới vượt qua thành một nhóm có watermark = giá mới
+        private void track(NavigableMap<Long, Group> passed, long price) {
+            if (passed.isEmpty()) return;
+            Group target = groups.remove(price);
+            Iterator<Group> it = passed.values().iterator();
+            while (it.hasNext()) {
+                Group group = it.next();
+                it.remove();
+                target = target == null ? group : merge(target, group);
+            }
+            target.watermark = price;
+            groups.put(price, target);
+        }
+
+        private Group merge(Group a, Group b) {
+            Group large = a.orders.size() >= b.orders.size() ? a : b;
+            Group small = large == a ? b : a;
+            for (Order order : small.orders.values()) {
+                large.orders.put(order.getId(), order);
+                byId.put(order.getId(), large);
+            }
+            return large;
+        }
+    }
+
+    private static final class Group {
+        private final Bucket bucket;
+        private final Map<String, Order> orders = new LinkedHashMap<>();
+        private long watermark;
+
+        private Group(Bucket bucket, long watermark) {
+            this.bucket = bucket;
+            this.watermark = watermark;
+        }
+    }
+}
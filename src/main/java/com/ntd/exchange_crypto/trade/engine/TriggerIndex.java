@@ -0,0 +1,117 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Resting stop-loss / take-profit orders of one pair, indexed by stop price (scaled long).
+ * Orders that trigger on a rising price live in {@code rising}, those that trigger on a falling price in
+ * {@code falling}; a new last price releases exactly the crossed range through one head/tail view,
+ * so a tick costs O(log n + k) no matter how many conditional orders rest.
+ * Not thread-safe: owned by the shard thread of the pair.
+ */
+public class TriggerIndex {
+
+    private final int priceScale;
+    private final NavigableMap<Long, Map<String, Order>> rising = new TreeMap<>();
+    private final NavigableMap<Long, Map<String, Order>> falling = new TreeMap<>();
+    private final Map<String, Order> byId = new HashMap<>();
+    // Đọc từ thread nhận giá Binance để bỏ qua tick khi không có lệnh điều kiện
+    private volatile int size;
+
+    public TriggerIndex(int priceScale) {
+        this.priceScale = priceScale;
+    }
+
+    public static boolean isConditional(Order order) {
+        return order.getType() == OrderType.STOP_LOSS
+                || order.getType() == OrderType.STOP_LOSS_LIMIT
+                || order.getType() == OrderType.TAKE_PROFIT
+                || order.getType() == OrderType.TAKE_PROFIT_LIMIT;
+    }
+
+    /**
+     * Buy stops and sell take-profits fire when the price rises to the stop; sell stops and buy take-profits when
+     * it falls to it.
+     */
+    public static boolean triggersOnRise(Order order) {
+        boolean stopLoss = order.getType() == OrderType.STOP_LOSS || order.getType() == OrderType.STOP_LOSS_LIMIT;
+        return stopLoss == (order.getSide() == Side.BID);
+    }
+
+    public boolean add(Order order) {
+        if (byId.containsKey(order.getId())) return false;
+        long stop = FixedPoint.toLong(order.getStopPrice(), priceScale);
+        side(order).computeIfAbsent(stop, k -> new LinkedHashMap<>()).put(order.getId(), order);
+        byId.put(order.getId(), order);
+        size = byId.size();
+        return true;
+    }
+
+    public boolean contains(String orderId) {
+        return byId.containsKey(orderId);
+    }
+
+    public Order remove(String orderId) {
+        Order order = byId.remove(orderId);
+        if (order == null) return null;
+        long stop = FixedPoint.toLong(order.getStopPrice(), priceScale);
+        NavigableMap<Long, Map<String, Order>> side = side(order);
+        Map<String, Order> atStop = side.get(stop);
+        atStop.remove(orderId);
+        if (atStop.isEmpty()) side.remove(stop);
+        size = byId.size();
+        return order;
+    }
+
+    public boolean wouldTrigger(Order order, long lastPrice) {
+        long stop = FixedPoint.toLong(order.getStopPrice(), priceScale);
+        return triggersOnRise(order) ? lastPrice >= stop : lastPrice <= stop;
+    }
+
+    /**
+     * Removes and returns every order crossed by {@code lastPrice}, nearest stop first.
+     */
+    public List<Order> release(long lastPrice) {
+        List<Order> released = new ArrayList<>();
+        drain(rising.headMap(lastPrice, true).descendingMap(), released);
+        drain(falling.tailMap(lastPrice, true), released);
+        size = byId.size();
+        return released;
+    }
+
+    public Collection<Order> orders() {
+        return byId.values();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void drain(NavigableMap<Long, Map<String, Order>> crossed, List<Order> released) {
+        Iterator<Map<String, Order>> it = crossed.values().iterator();
+        while (it.hasNext()) {
+            for (Order order : it.next().values()) {
+                byId.remove(order.getId());
+                released.add(order);
+            }
+            it.remove();
+        }
+    }
+
+    private NavigableMap<Long, Map<String, Order>> side(Order order) {
+        return triggersOnRise(order) ? rising : falling;
+    }
+}
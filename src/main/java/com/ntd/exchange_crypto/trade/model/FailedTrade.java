@@ -0,0 +1,36 @@
+package com.ntd.exchange_crypto.trade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+// Trade của engine không ghi được vì lỗi dữ liệu (không phải lỗi tạm thời): giữ lại để đối soát tay, không bao giờ bỏ
+@Entity
+@Table(name = "failed_trade")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class FailedTrade {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false, length = 36)
+    String id;
+
+    @Column(name = "trade_id", length = 36)
+    String tradeId;
+
+    @Lob
+    @Column(name = "detail", nullable = false)
+    String detail;
+
+    @Column(name = "error", length = 1000)
+    String error;
+
+    @Column(name = "created_at", nullable = false)
+    Instant createdAt;
+}
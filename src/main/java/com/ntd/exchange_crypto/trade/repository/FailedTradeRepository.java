@@ -0,0 +1,9 @@
+package com.ntd.exchange_crypto.trade.repository;
+
+import com.ntd.exchange_crypto.trade.model.FailedTrade;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FailedTradeRepository extends JpaRepository<FailedTrade, String> {
+}
@@ -0,0 +1,83 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.order.ExecutionReportEvent;
+import com.ntd.exchange_crypto.order.OrderDTO;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.model.Trade;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the trades and touched orders of one engine command so they go out as a single
+ * {@link ExecutionReportEvent}, and numbers the results the command emits (trades, settlements) within its journal
+ * sequence so consumers can tell a replayed result from a new one. Not thread-safe: one instance per matching thread, reused from command to command.
+ */
+final class ExecutionBatch {
+
+    private String pairId;
+    private String stream;
+    private long seq;
+    private int items;
+    private final List<ExecutionReportEvent.Fill> fills = new ArrayList<>();
+    // Giữ tham chiếu order, DTO chỉ dựng một lần lúc drain -> trạng thái cuối của order
+    private final Map<String, Order> orders = new LinkedHashMap<>();
+
+    void begin(String pairId, String stream, long seq) {
+        this.pairId = pairId;
+        this.stream = stream;
+        this.seq = seq;
+        this.items = 0;
+        fills.clear();
+        orders.clear();
+    }
+
+    String stream() {
+        return stream;
+    }
+
+    long seq() {
+        return seq;
+    }
+
+    // Thứ tự của kết quả kế tiếp trong command hiện tại
+    int nextItem() {
+        return items++;
+    }
+
+    void fill(Trade trade) {
+        fills.add(new ExecutionReportEvent.Fill(trade.getTakerOrderId(), trade.getMakerOrderId(),
+                trade.getPrice(), trade.getQuantity(), trade.isBuyerMaker()));
+    }
+
+    void order(Order order) {
+        orders.put(order.getId(), order);
+    }
+
+    boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    ExecutionReportEvent drain() {
+        List<OrderDTO> states = new ArrayList<>(orders.size());
+        for (Order order : orders.values()) {
+            states.add(OrderDTO.builder()
+                    .id(order.getId())
+                    .userId(order.getUserId())
+                    .pairId(pairId)
+                    .side(order.getSide().name())
+                    .type(order.getType().name())
+                    .quantity(order.getQuantity())
+                    .price(order.getPrice())
+                    .status(order.getStatus().name())
+                    .filledQuantity(order.getFilledQuantity())
+                    .trace(order.getTrace())
+                    .build());
+        }
+        ExecutionReportEvent report = new ExecutionReportEvent(pairId, List.copyOf(fills), states);
+        begin(null, null, 0);
+        return report;
+    }
+}
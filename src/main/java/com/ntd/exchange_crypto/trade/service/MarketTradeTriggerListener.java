@@ -0,0 +1,25 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.market.MarketTrade;
+import com.ntd.exchange_crypto.market.MarketTradeReceivedEvent;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// Đẩy giá khớp từ Binance vào engine để kích hoạt STOP_LOSS / TAKE_PROFIT
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MarketTradeTriggerListener {
+
+    MatchEngine matchEngine;
+
+    @EventListener
+    public void handleMarketTradeReceived(MarketTradeReceivedEvent event) {
+        MarketTrade marketTrade = event.marketTrade();
+        if (marketTrade == null || marketTrade.getPrice() == null) return;
+        matchEngine.processMarketTrade(marketTrade.getProductId(), marketTrade.getPrice());
+    }
+}
@@ -1,33 +1,54 @@
 package com.ntd.exchange_crypto.trade.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.ntd.exchange_crypto.order.OrderDTO;
+import com.ntd.exchange_crypto.common.LatencyStage;
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.order.OrderAmend;
 import com.ntd.exchange_crypto.order.OrderExternalAPI;
-import com.ntd.exchange_crypto.order.OrderReceivedEvent;
 import com.ntd.exchange_crypto.order.enums.OrderStatus;
 import com.ntd.exchange_crypto.order.enums.OrderType;
 import com.ntd.exchange_crypto.order.enums.Side;
-import com.ntd.exchange_crypto.order.mapper.OrderMapper;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
 import com.ntd.exchange_crypto.order.model.Order;
 import com.ntd.exchange_crypto.trade.OrderBookStatsService;
+import com.ntd.exchange_crypto.trade.dto.response.EngineShardResponse;
+import com.ntd.exchange_crypto.trade.engine.AmendOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.BookEntry;
+import com.ntd.exchange_crypto.trade.engine.CancelOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.EngineCheckpointer;
+import com.ntd.exchange_crypto.trade.engine.EngineCommand;
+import com.ntd.exchange_crypto.trade.engine.EngineHandler;
+import com.ntd.exchange_crypto.trade.engine.EngineJournal;
+import com.ntd.exchange_crypto.trade.engine.EngineSequencer;
+import com.ntd.exchange_crypto.trade.engine.EngineTimers;
+import com.ntd.exchange_crypto.trade.engine.NewOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.OrderBook;
+import com.ntd.exchange_crypto.trade.engine.OrderBookRegistry;
+import com.ntd.exchange_crypto.trade.engine.PairLeaseManager;
+import com.ntd.exchange_crypto.trade.engine.PendingResults;
+import com.ntd.exchange_crypto.trade.engine.PriceLevel;
+import com.ntd.exchange_crypto.trade.engine.PriceTickCommand;
+import com.ntd.exchange_crypto.trade.engine.TimerCommand;
 import com.ntd.exchange_crypto.trade.model.OrderBookStats;
 import com.ntd.exchange_crypto.trade.model.Trade;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
@@ -37,39 +58,388 @@ public class MatchEngine {
     private final TradeService tradeService;
     private final OrderBookStatsService orderBookStatsService;
     private final OrderExternalAPI orderExternalAPI;
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final ObjectMapper objectMapper;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final OrderBookRegistry orderBookRegistry;
+    private final EngineSequencer sequencer;
+    private final EngineJournal journal;
+    private final EngineCheckpointer checkpointer;
+    private final EngineTimers engineTimers;
+    private final PairLeaseManager leases;
+    private final RedisMatcher redisMatcher;
+    private final OrderLatencyMonitor orderLatencyMonitor;
+    // resident = book trong RAM theo shard; redis = khớp bằng Lua script trên book Redis (không giữ state)
+    private final boolean redisMode;
 
     public MatchEngine(TradeService tradeService,
                        OrderBookStatsService orderBookStatsService,
                        OrderExternalAPI orderExternalAPI,
-                       ApplicationEventPublisher eventPublisher, RedisTemplate<String,
-                    Object> redisTemplate, ObjectMapper objectMapper, OrderMapper orderMapper) {
+                       ApplicationEventPublisher eventPublisher,
+                       OrderBookRegistry orderBookRegistry,
+                       EngineSequencer sequencer,
+                       EngineJournal journal,
+                       EngineCheckpointer checkpointer,
+                       EngineTimers engineTimers,
+                       PairLeaseManager leases,
+                       RedisMatcher redisMatcher,
+                       OrderLatencyMonitor orderLatencyMonitor,
+                       @Value("${app.engine.mode:resident}") String mode) {
         this.tradeService = tradeService;
         this.orderBookStatsService = orderBookStatsService;
         this.orderExternalAPI = orderExternalAPI;
         this.eventPublisher = eventPublisher;
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+        this.orderBookRegistry = orderBookRegistry;
+        this.sequencer = sequencer;
+        this.journal = journal;
+        this.checkpointer = checkpointer;
+        this.engineTimers = engineTimers;
+        this.leases = leases;
+        this.redisMatcher = redisMatcher;
+        this.orderLatencyMonitor = orderLatencyMonitor;
+        this.redisMode = "redis".equalsIgnoreCase(mode);
+    }
+
+    // Chỉ true trong lúc replay journal khi khởi động (trước khi shard chạy)
+    private boolean replaying;
+    // pairId -> stream kết quả (journal + pair) mà settlement / trade sink dùng để nhận ra kết quả gửi lại
+    private final Map<String, String> streams = new ConcurrentHashMap<>();
+    // pairId -> stream của id journal trước restart, khi restore đã đổi id; giữ tới khi kết quả replay của nó durable
+    private final Map<String, String> recoveredStreams = new ConcurrentHashMap<>();
+    // Mỗi thread shard gom fill + order của command đang chạy thành một execution report
+    private final ThreadLocal<ExecutionBatch> batches = ThreadLocal.withInitial(ExecutionBatch::new);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Order rời book (khớp hết / hủy / hết hạn) -> hủy luôn timer của nó, O(1)
+        orderBookRegistry.setRemovalListener((book, order) -> engineTimers.cancelAll(book.getPairId(), order.getId()));
+        // Kết quả chưa durable ở settlement / trade sink đi theo snapshot của pair, gửi lại khi restore
+        checkpointer.setPendingResults(this::pendingResults);
+        if (!checkpointer.restore(this::replay, this::resubmit)) {
+            orderBookRegistry.hydrateFromRedis();
+        }
+        // Restore có thể đã đổi id journal: command mới dùng stream theo id hiện tại
+        String prefix = journal.id() + "/";
+        streams.forEach((pairId, stream) -> {
+            if (!stream.startsWith(prefix)) recoveredStreams.put(pairId, stream);
+        });
+        streams.clear();
+        rearmTimers();
+        // Mất lease -> bỏ book của pair trên shard đang giữ nó, node mới sẽ dựng lại từ Redis
+        leases.setOnLost(pairId -> sequencer.execute(pairId, shard -> dropPair(shard, pairId)));
+        // Pair chỉ được coi là drained khi settlement / trade sink không còn kết quả nào của nó
+        leases.setDrained(pairId -> pendingResults(pairId).isEmpty());
+
+        sequencer.start(new EngineHandler() {
+            @Override
+            public void handle(int shard, EngineCommand command) {
+                MatchEngine.this.handle(shard, command);
+            }
+
+            @Override
+            public void afterBatch(int shard) {
+                checkpointer.afterBatch(shard);
+            }
+
+            @Override
+            public void onTick(int shard) {
+                engineTimers.advance(shard, System.currentTimeMillis(), timer -> MatchEngine.this.handle(shard, timer));
+            }
+
+            @Override
+            public Object release(int shard, String pairId) {
+                return MatchEngine.this.release(shard, pairId);
+            }
 
+            @Override
+            public void adopt(int shard, String pairId, Object state) {
+                MatchEngine.this.adopt(shard, (PairHandoff) state);
+            }
+        });
     }
 
+    /**
+     * Moves a pair to another shard; commands keep flowing and are parked on the target during the handoff.
+     */
+    public boolean reassign(String pairId, int shard) {
+        return sequencer.reassign(pairId, shard);
+    }
+
+    public List<EngineShardResponse> shardStats() {
+        Map<Integer, List<String>> pairsByShard = new HashMap<>();
+        for (OrderBook book : orderBookRegistry.all()) {
+            pairsByShard.computeIfAbsent(sequencer.shardIndexOf(book.getPairId()), k -> new ArrayList<>())
+                    .add(book.getPairId());
+        }
+        return sequencer.stats().stream()
+                .map(stats -> EngineShardResponse.builder()
+                        .shard(stats.shard())
+                        .queueDepth(stats.queueDepth())
+                        .queueCapacity(stats.queueCapacity())
+                        .processed(stats.processed())
+                        .utilization(stats.utilization())
+                        .parkedCommands(stats.parkedCommands())
+                        .pendingTimers(engineTimers.pendingCount(stats.shard()))
+                        .pairs(pairsByShard.getOrDefault(stats.shard(), List.of()))
+                        .build())
+                .toList();
+    }
+
+    // Shard cũ: chụp snapshot pair + gỡ timer để shard mới nhận lại
+    private PairHandoff release(int shard, String pairId) {
+        long sequence = journal.lastSequence(shard);
+        OrderBook book = orderBookRegistry.find(pairId);
+        if (book != null) sequence = checkpointer.snapshot(shard, book);
+        return new PairHandoff(sequence, engineTimers.detach(shard, pairId));
+    }
+
+    // Shard mới: watermark snapshot của shard phải >= record cuối của pair trên shard cũ
+    private void adopt(int shard, PairHandoff handoff) {
+        if (handoff == null) return;
+        journal.markReplayed(shard, handoff.sequence());
+        engineTimers.attach(handoff.timers());
+    }
+
+    private record PairHandoff(long sequence, List<EngineTimers.PendingTimer> timers) {
+    }
+
+    // MatchEngine bị destroy trước TradeWriteBehindSink -> dừng shard trước để sink flush được trade cuối cùng
+    @PreDestroy
+    public void stop() {
+        sequencer.stop();
+    }
+
+
+    // Giá khớp Binance -> luôn ghi lại trên book (rẻ, không qua queue); command kế tiếp của pair sẽ chốt nó vào journal.
+    // Chỉ đánh thức shard khi pair có lệnh điều kiện đang chờ
+    public void processMarketTrade(String symbol, BigDecimal price) {
+        OrderBook book = orderBookRegistry.findBySymbol(symbol);
+        if (book == null || !leases.owns(book.getPairId())) return;
+        book.offerMarketPrice(price);
+        if (!book.hasPendingTriggers()) return;
+        if (!sequencer.offer(new PriceTickCommand(book.getPairId(), price))) {
+            log.debug("Engine shard busy, price tick {} {} waits for the next command", symbol, price);
+        }
+    }
 
-    // lắng nghe order mới từ Redis pub/sub
-    public void processNewOrder(Order order) throws JsonProcessingException {
-        if (order == null || order.getId() == null) {
-            log.error("Received null or invalid order");
+    /**
+     * A batch of new orders of one pair read from its intake stream. {@code onMatched} runs once every order of the
+     * batch has been matched (on the shard thread, after the batch's commands); false when the pair belongs to
+     * another node, in which case nothing was submitted.
+     */
+    public boolean processNewOrders(String pairId, List<Order> orders, Runnable onMatched) {
+        List<String> orderIds = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            orderIds.add(order.getId());
+            OrderTrace trace = order.getTrace();
+            if (trace != null) {
+                trace.setPairId(pairId);
+                orderLatencyMonitor.mark(trace, LatencyStage.TRANSPORT);
+            }
+        }
+        if (!claim(pairId, orderIds)) return false;
+        if (redisMode) {
+            for (Order order : orders) {
+                orderLatencyMonitor.engineStart(order.getTrace());
+                redisMatcher.process(order, pairId);
+                orderLatencyMonitor.mark(order.getTrace(), LatencyStage.MATCH);
+            }
+            onMatched.run();
+            return true;
+        }
+        for (Order order : orders) sequencer.submit(new NewOrderCommand(pairId, order));
+        // Cùng queue với các command trên -> chạy sau khi cả batch đã khớp
+        sequencer.execute(pairId, shard -> onMatched.run());
+        return true;
+    }
+
+    // lắng nghe lệnh hủy từ Redis pub/sub; đi đường ưu tiên của shard, không xếp sau backlog order mới
+    public void processCancel(String pairId, String orderId) {
+        if (!claim(pairId, List.of())) return;
+        if (redisMode) {
+            redisMatcher.cancel(orderId, pairId);
+            return;
+        }
+        sequencer.submitUrgent(new CancelOrderCommand(pairId, orderId));
+    }
+
+    // lắng nghe amend từ Redis pub/sub; đi cùng queue với order mới để giữ thứ tự
+    public void processAmend(String pairId, OrderAmend amend) {
+        if (!claim(pairId, List.of())) return;
+        if (redisMode) {
+            redisMatcher.rejectAmend(amend);
+            return;
+        }
+        sequencer.submit(new AmendOrderCommand(pairId, amend.orderId(), amend.price(), amend.quantity(),
+                amend.reserved()));
+    }
+
+    // Mọi node đều nhận pub/sub: chỉ node giữ lease của pair xử lý, các node khác bỏ qua
+    private boolean claim(String pairId, List<String> incomingOrderIds) {
+        switch (leases.claim(pairId)) {
+            case FOREIGN -> {
+                log.debug("Input for pair {} skipped, it is owned by another node", pairId);
+                return false;
+            }
+            case ACQUIRED -> {
+                if (!redisMode) sequencer.execute(pairId, shard -> takeOver(shard, pairId, incomingOrderIds));
+            }
+            case OWNED -> {
+            }
+        }
+        return true;
+    }
+
+    // Node vừa nhận lease: book local (nếu có) có thể đã cũ -> dựng lại từ Redis mirror, sau khi mirror đã nhận
+    // hết kết quả của lượt sở hữu trước (node cũ vẫn có thể đang settle)
+    private void takeOver(int shard, String pairId, List<String> incomingOrderIds) {
+        if (!leases.isEnabled()) return;
+        leases.awaitHandoff(pairId);
+        engineTimers.detach(shard, pairId);
+        OrderBook book = orderBookRegistry.reload(pairId, Set.copyOf(incomingOrderIds));
+        rearmTimers(book);
+        checkpointer.snapshot(shard, book);
+    }
+
+    private void dropPair(int shard, String pairId) {
+        if (leases.owns(pairId)) return;
+        engineTimers.detach(shard, pairId);
+        orderBookRegistry.remove(pairId);
+    }
+
+    // Chạy trên thread của shard sở hữu pair -> không cần lock.
+    // Package-private để benchmark JMH (src/jmh) gọi đồng bộ, không qua sequencer
+    void handle(int shard, EngineCommand command) {
+        // Lease hết hạn (hoặc book còn sót từ journal local) -> không được đụng vào pair
+        if (!leases.owns(command.pairId())) {
+            log.debug("Dropped {}: pair is not owned by node {}", command, leases.getNodeId());
             return;
         }
+        // Giá Binance ghi lại từ feed -> tick vào journal trước command này; tick đánh thức đã được chốt thì bỏ
+        OrderBook book = orderBookRegistry.find(command.pairId());
+        BigDecimal marketPrice = book != null ? book.takeMarketPrice() : null;
+        if (command instanceof PriceTickCommand) {
+            if (marketPrice == null) return;
+            command = new PriceTickCommand(command.pairId(), marketPrice);
+        } else if (marketPrice != null) {
+            sequence(shard, new PriceTickCommand(command.pairId(), marketPrice));
+        }
+        OrderTrace trace = command instanceof NewOrderCommand c ? c.order().getTrace() : null;
+        orderLatencyMonitor.engineStart(trace);
+        command = sequence(shard, command);
+
+        if (trace != null) {
+            orderLatencyMonitor.mark(trace, LatencyStage.MATCH);
+            // Order có thể còn nằm trong book: các lần khớp sau (làm maker, timer) không thuộc trace này
+            ((NewOrderCommand) command).order().setTrace(null);
+        }
+    }
+
+    private EngineCommand sequence(int shard, EngineCommand command) {
+        // Chốt stats Binance vào command trước khi ghi journal để replay ra cùng kết quả
+        if (command instanceof NewOrderCommand c && c.stats() == null) {
+            command = c.withStats(resolveStats(c.order()));
+        } else if (command instanceof AmendOrderCommand c && c.stats() == null) {
+            command = c.withStats(orderBookStatsService.getStats(c.pairId().replace("-", "")));
+        } else if (command instanceof PriceTickCommand c && c.stats() == null) {
+            command = c.withStats(orderBookStatsService.getStats(c.pairId().replace("-", "")));
+        }
+        long seq = journal.append(shard, command);
+        apply(command, seq);
+        return command;
+    }
+
+    // Kết quả (trade, settlement) vẫn phát lại: phần đã durable trước crash bị consumer bỏ qua theo seq
+    private void replay(EngineCommand command, long seq) {
+        replaying = true;
+        try {
+            apply(command, seq);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private void resubmit(PendingResults pending) {
+        pending.settlements().forEach(orderExternalAPI::resubmitSettlement);
+        pending.trades().forEach(tradeService::resubmit);
+    }
+
+    private String stream(String pairId) {
+        return streams.computeIfAbsent(pairId, p -> journal.id() + "/" + p);
+    }
+
+    private PendingResults pendingResults(String pairId) {
+        String stream = stream(pairId);
+        String recovered = recoveredStreams.get(pairId);
+        if (recovered == null) {
+            return new PendingResults(orderExternalAPI.unsettled(stream), tradeService.unsaved(stream));
+        }
+        List<byte[]> settlements = new ArrayList<>(orderExternalAPI.unsettled(recovered));
+        List<byte[]> trades = new ArrayList<>(tradeService.unsaved(recovered));
+        if (settlements.isEmpty() && trades.isEmpty()) recoveredStreams.remove(pairId);
+        settlements.addAll(orderExternalAPI.unsettled(stream));
+        trades.addAll(tradeService.unsaved(stream));
+        return new PendingResults(settlements, trades);
+    }
+
+    private void apply(EngineCommand command, long seq) {
+        OrderBook book = orderBookRegistry.getOrCreate(command.pairId());
+        ExecutionBatch batch = batches.get();
+        // Journal tắt -> seq không sống qua restart, không theo dõi
+        batch.begin(book.getPairId(), stream(book.getPairId()), journal.isEnabled() ? seq : 0);
+        OrderBookStats stats = null;
+        switch (command) {
+            case NewOrderCommand c -> {
+                stats = c.stats();
+                // Outbox giao ít nhất một lần -> order đã có trong book là bản gửi lại
+                if (book.holds(c.order().getId())) {
+                    log.debug("Duplicate delivery of order {} ignored", c.order().getId());
+                } else if (book.takeEarlyCancel(c.order().getId())) {
+                    cancel(book, c.order());
+                } else {
+                    handleNewOrder(book, c.order(), stats);
+                }
+            }
+            case CancelOrderCommand c -> handleCancel(book, c.orderId());
+            case AmendOrderCommand c -> {
+                stats = c.stats();
+                handleAmend(book, c, stats);
+            }
+            case TimerCommand c -> {
+                switch (c.kind()) {
+                    case ANONYMOUS_FILL -> handleAnonymousTimer(book, c.orderId());
+                    case EXPIRE -> handleExpire(book, c.orderId());
+                }
+            }
+            case PriceTickCommand c -> {
+                stats = c.stats();
+                book.recordTrade(book.toPrice(c.price()));
+            }
+        }
+
+        // Chỉ nhả lệnh điều kiện khi command mang stats đã chốt (NEW / tick) để replay cho cùng kết quả;
+        // giá khớp từ timer / cancel sẽ được xử lý ở command kế tiếp của pair
+        if (stats != null) {
+            fireTriggers(book, stats);
+        }
+
+        if (!replaying && !batch.isEmpty()) eventPublisher.publishEvent(batch.drain());
+    }
+
+    private void handleNewOrder(OrderBook book, Order order, OrderBookStats stats) {
         switch (order.getType()) {
             case MARKET:
                 log.info("🔥 Nhận order mới: {}", order);
-                handleMarketOrder(order);
+                handleMarketOrder(book, order, stats);
                 break;
 
             case LIMIT:
-                handleLimitOrder(order);
+                handleLimitOrder(book, order, stats);
+                break;
+
+            case STOP_LOSS, STOP_LOSS_LIMIT, TAKE_PROFIT, TAKE_PROFIT_LIMIT:
+                handleConditionalOrder(book, order, stats);
+                break;
+
+            case TRAILING_STOP:
+                handleTrailingStop(book, order, stats);
                 break;
 
             default:
@@ -78,88 +448,235 @@ public class MatchEngine {
         }
     }
 
+    // Lệnh điều kiện nằm chờ trong trigger index tới khi giá khớp vượt stopPrice
+    private void handleConditionalOrder(OrderBook book, Order order, OrderBookStats stats) {
+        if (order.getStopPrice() == null) {
+            log.warn("Conditional order {} has no stop price", order.getId());
+            expire(book, order);
+            return;
+        }
+        if (book.lastTradePrice() > 0 && book.triggers().wouldTrigger(order, book.lastTradePrice())) {
+            activate(book, order, stats);
+            return;
+        }
+        book.triggers().add(order);
+        scheduleExpiry(book, order);
+        log.info("🎯 Order {} {} chờ kích hoạt tại {}", order.getId(), order.getType(), order.getStopPrice());
+    }
+
+    // Trailing stop bám giá khớp gần nhất; chưa có giá thì bám từ giá đặt
+    private void handleTrailingStop(OrderBook book, Order order, OrderBookStats stats) {
+        if (order.getTrailOffset() == null) {
+            log.warn("Trailing-stop order {} has no trail offset", order.getId());
+            expire(book, order);
+            return;
+        }
+        long last = book.lastTradePrice();
+        long watermark = last > 0 ? last : book.toPrice(order.getPrice());
+        if (last > 0 && book.trailingStops().wouldTrigger(order, watermark, last)) {
+            activate(book, order, stats);
+            return;
+        }
+        book.trailingStops().add(order, watermark);
+        scheduleExpiry(book, order);
+        log.info("🎯 Order {} TRAILING_STOP bám từ {} với offset {}", order.getId(), book.price(watermark),
+                order.getTrailOffset());
+    }
+
+    private void fireTriggers(OrderBook book, OrderBookStats stats) {
+        // Lệnh được kích hoạt có thể tạo trade mới -> kích hoạt dây chuyền cho tới khi giá đứng yên
+        while (book.takePriceMove()) {
+            long last = book.lastTradePrice();
+            List<Order> released = new ArrayList<>(book.triggers().release(last));
+            released.addAll(book.trailingStops().onPrice(last));
+            for (Order order : released) {
+                log.info("🎯 Kích hoạt order {} {} tại giá {}", order.getId(), order.getType(), book.price(last));
+                activate(book, order, stats);
+            }
+        }
+    }
+
+    private void activate(OrderBook book, Order order, OrderBookStats stats) {
+        if (isMarketLike(order.getType())) {
+            handleMarketOrder(book, order, stats);
+        } else {
+            handleLimitOrder(book, order, stats);
+        }
+    }
+
+    // Lệnh điều kiện dạng market khớp như MARKET khi được kích hoạt
+    private static boolean isMarketLike(OrderType type) {
+        return type == OrderType.MARKET || type == OrderType.STOP_LOSS
+                || type == OrderType.TAKE_PROFIT || type == OrderType.TRAILING_STOP;
+    }
+
+    private void handleCancel(OrderBook book, String orderId) {
+        Order order = book.remove(orderId);
+        if (order == null) {
+            order = book.triggers().remove(orderId);
+        }
+        if (order == null) {
+            order = book.trailingStops().remove(orderId);
+        }
+        if (order == null) {
+            // Cancel vượt lên trước NEW của order (hoặc order đã khớp hết) -> hủy ngay khi order tới
+            log.info("Order {} is not resting in {}, cancel kept until it arrives", orderId, book.getPairId());
+            book.cancelEarly(orderId);
+            return;
+        }
+        cancel(book, order);
+    }
+
+    // Giảm quantity, giữ giá -> sửa tại chỗ, giữ ưu tiên; đổi giá / tăng quantity -> mất ưu tiên, khớp lại như order mới
+    private void handleAmend(OrderBook book, AmendOrderCommand command, OrderBookStats stats) {
+        BookEntry entry = book.entry(command.orderId());
+        if (entry == null || entry.getOrder().getType() != OrderType.LIMIT) {
+            log.info("Amend ignored, order {} is not resting in {}", command.orderId(), book.getPairId());
+            rejectAmend(command, entry != null ? entry.getOrder() : null);
+            return;
+        }
+        Order order = entry.getOrder();
+        BigDecimal previousPrice = order.getPrice();
+        BigDecimal previousQuantity = order.getQuantity();
+        long price = book.toPrice(command.price());
+        long quantity = book.toQuantity(command.quantity());
+        long filled = book.toQuantity(order.getFilledQuantity());
+
+        // Đã khớp tới (hoặc quá) quantity mới trong lúc amend đi tới engine -> hủy phần còn lại
+        if (quantity <= filled) {
+            book.remove(order.getId());
+            cancel(book, order);
+            settleAmend(order, previousPrice, previousQuantity, command.reserved());
+            return;
+        }
+        if (price == entry.price() && quantity == book.toQuantity(previousQuantity)) {
+            settleAmend(order, previousPrice, previousQuantity, command.reserved());
+            return;
+        }
+
+        // Lock cần cho order sau amend không được vượt lock đang giữ + phần API đã reserve thêm
+        BigDecimal required = OrderAmend.lockFor(order.getSide(), command.price(), book.quantity(quantity - filled));
+        BigDecimal available = OrderAmend.lockFor(order.getSide(), previousPrice, book.quantity(entry.remaining()))
+                .add(command.reserved());
+        if (required.compareTo(available) > 0) {
+            log.info("Amend of order {} rejected, it needs {} locked but only {} is", order.getId(), required, available);
+            rejectAmend(command, order);
+            return;
+        }
+
+        boolean inPlace = price == entry.price() && quantity < book.toQuantity(previousQuantity);
+        // Khớp lại cần stats Binance: thiếu thì giữ nguyên order trong book thay vì gỡ ra rồi không đặt lại được
+        if (!inPlace && stats == null) {
+            log.warn("Amend of order {} rejected, no order book stats for {}", order.getId(), book.getPairId());
+            rejectAmend(command, order);
+            return;
+        }
+
+        order.setQuantity(book.quantity(quantity));
+        if (inPlace) {
+            book.reduce(order.getId(), book.toQuantity(previousQuantity) - quantity);
+            settleAmend(order, previousPrice, previousQuantity, command.reserved());
+            log.info("✏️ Order {} reduced in place to {}", order.getId(), order.getQuantity());
+            report(order);
+            return;
+        }
+
+        book.remove(order.getId());
+        order.setPrice(book.price(price));
+        settleAmend(order, previousPrice, previousQuantity, command.reserved());
+        log.info("✏️ Order {} requeued at {} for {}", order.getId(), order.getPrice(), order.getQuantity());
+        handleLimitOrder(book, order, stats);
+    }
+
+    private void settleAmend(Order order, BigDecimal previousPrice, BigDecimal previousQuantity, BigDecimal reserved) {
+        ExecutionBatch batch = batches.get();
+        orderExternalAPI.submitAmend(batch.stream(), batch.seq(), batch.nextItem(), order, previousPrice,
+                previousQuantity, reserved);
+    }
 
-    private void handleMarketOrder(Order order) throws JsonProcessingException {
+    // Amend không áp được: chỉ trả lại phần API đã reserve thêm
+    private void rejectAmend(AmendOrderCommand command, Order order) {
+        if (command.reserved().signum() <= 0) return;
+        if (order == null) order = orderExternalAPI.getOrderById(command.orderId());
+        settleAmend(order, order.getPrice(), order.getQuantity(), command.reserved());
+    }
+
+    // Order đã rời book: trả lại balance còn lock cùng lúc với chuyển trạng thái
+    private void cancel(OrderBook book, Order order) {
+        order.setStatus(OrderStatus.CANCELED);
+        log.info("🛑 Order {} canceled in {}, filled={}/{}", order.getId(), book.getPairId(),
+                order.getFilledQuantity(), order.getQuantity());
+        submitRelease(order);
+        report(order);
+    }
+
+
+    private void handleMarketOrder(OrderBook book, Order order, OrderBookStats stats) {
         log.info("🔥 Nhận order mới MARKET: {}", order);
 
         // 1. Xác định chiều lệnh (BID hoặc ASK)
         Side side = order.getSide();
         String productId = this.getPairIdFromOrderBookData(side, order.getGiveCryptoId(), order.getGetCryptoId());
 
-        // 2. Lấy stats từ cache (đã cập nhật liên tục bởi BinanceWebSocketService)
-        OrderBookStats stats = orderBookStatsService.getStats(productId);
+        // 2. Stats đã được chốt khi nhận command (cache cập nhật liên tục bởi BinanceWebSocketService)
         if (stats == null) {
-            log.warn("No order book (Form Binance) stats available for {}", productId);
+            // Không có giá tham chiếu -> không khớp được; MARKET không nằm chờ -> hết hạn, trả lock
+            log.warn("No order book (Form Binance) stats available for {}, order {} expires", productId, order.getId());
+            expire(book, order);
             return;
         }
 
         BigDecimal bestPrice = (side == Side.BID) ? stats.getMinAskPrice() : stats.getMaxBidPrice();
         log.info("🔥 Best price for {}: {}", productId, bestPrice);
+        long bestPx = book.toPrice(bestPrice);
 
-        String pairId = orderExternalAPI.getPairId(side, order.getGiveCryptoId(), order.getGetCryptoId());
-
-        // 3. Tìm order đối ứng từ Redis (RedisZSet theo chiều ngược lại)
+        // 3. Tìm order đối ứng trong order book (chiều ngược lại, đã sắp theo giá tốt nhất)
         Side counterSide = (side == Side.BID) ? Side.ASK : Side.BID;
-        String redisZSetKey = "orderbook:" + pairId + ":" + counterSide.name().toLowerCase();
-        log.info("🔥 Redis ZSet key: {}", redisZSetKey);
-
-        // ---- Logic mới ----
-        BigDecimal remainingQty = order.getQuantity();
-        List<Order> matchedCounterOrders = new ArrayList<>();
 
-        // Lấy nhiều lệnh từ Redis (ví dụ lấy top 50)
-        Set<Object> counterOrders = redisTemplate.opsForZSet().range(redisZSetKey, 0, 49);
+        long remainingQty = book.toQuantity(order.getQuantity());
+        List<BookEntry> matchedCounterOrders = new ArrayList<>();
 
-        if (counterOrders != null && !counterOrders.isEmpty()) {
-            log.info("🔥 Found {} counter orders in Redis", counterOrders.size());
-            int counterOrderCount = 0;
-            for (Object keyObj : counterOrders) {
-                String counterOrderKey = (String) keyObj;
-                String orderJson = (String) redisTemplate.opsForHash().get("order:" + counterOrderKey, "order");
-                if (orderJson == null) continue;
-
-                Order counterOrder = objectMapper.readValue(orderJson, Order.class);
+        levels:
+        for (PriceLevel level : book.allLevels(counterSide)) {
+            // nếu giá không phù hợp thì break luôn (các level sau còn tệ hơn)
+            if ((side == Side.BID && level.getPrice() > bestPx) ||
+                    (side == Side.ASK && level.getPrice() < bestPx)) {
+                break;
+            }
 
-                if (counterOrder.getUserId().equals(order.getUserId())) {
+            for (BookEntry entry : level.entries()) {
+                if (entry.getOrder().getUserId().equals(order.getUserId())) {
                     // Không khớp lệnh với chính mình
                     continue;
                 }
 
-                // Check giá trước khi match
-                if ((side == Side.BID && counterOrder.getPrice().compareTo(bestPrice) <= 0) ||
-                        (side == Side.ASK && counterOrder.getPrice().compareTo(bestPrice) >= 0)) {
+                matchedCounterOrders.add(entry);
 
-                    matchedCounterOrders.add(counterOrder);
-                    log.info("Khớp lệnh lần: {}", ++counterOrderCount);
-
-                    // Trừ dần quantity
-                    if (remainingQty.compareTo(counterOrder.getQuantity()) > 0) {
-                        remainingQty = remainingQty.subtract(counterOrder.getQuantity());
-                    } else {
-                        remainingQty = BigDecimal.ZERO;
-                        break;
-                    }
+                // Trừ dần quantity
+                if (remainingQty > entry.remaining()) {
+                    remainingQty -= entry.remaining();
                 } else {
-                    // nếu giá không phù hợp thì break luôn (vì RedisZSet đã sắp theo giá)
-                    break;
+                    remainingQty = 0;
+                    break levels;
                 }
             }
         }
+        log.info("🔥 Found {} counter orders in order book", matchedCounterOrders.size());
 
         // Nếu tìm được counterOrders thì match
         if (!matchedCounterOrders.isEmpty()) {
-            match(order, matchedCounterOrders);
+            match(book, order, matchedCounterOrders);
         }
 
         // Nếu còn dư -> match với anonymous
-        if (remainingQty.compareTo(BigDecimal.ZERO) > 0) {
-            matchWithAnonymous(order, bestPrice, remainingQty);
+        if (remainingQty > 0) {
+            matchWithAnonymous(book, order, bestPrice, book.quantity(remainingQty));
         }
     }
 
 
     // Xử lý lệnh Limit
-    private void handleLimitOrder(Order order) throws JsonProcessingException {
+    private void handleLimitOrder(OrderBook book, Order order, OrderBookStats stats) {
         // 1. Xác định chiều lệnh (BID hoặc ASK)
         // 2. Lấy minAsk & maxAsk hoặc minBid & maxBid từ cache orderBookStatsService
         // 3. Kiểm tra có order đối ứng cùng giá trong Redis OrderBook
@@ -177,10 +694,18 @@ public class MatchEngine {
         Side side = order.getSide();
         String productId = this.getPairIdFromOrderBookData(side, order.getGiveCryptoId(), order.getGetCryptoId());
 
-        // 2. Get stats from cache (continuously updated by BinanceWebSocketService)
-        OrderBookStats stats = orderBookStatsService.getStats(productId);
+        // 2. Stats captured when the command was sequenced (cache continuously updated by BinanceWebSocketService)
         if (stats == null) {
-            log.warn("No order book (Form Binance) stats available for {}", productId);
+            // Without a price range the order cannot match now: it rests like any unmatched LIMIT, IOC expires
+            if (order.getTimeInForce() == TimeInForce.IOC) {
+                log.warn("No order book (Form Binance) stats available for {}, IOC order {} expires", productId,
+                        order.getId());
+                expire(book, order);
+            } else {
+                log.warn("No order book (Form Binance) stats available for {}, order {} rests", productId,
+                        order.getId());
+                rest(book, order);
+            }
             return;
         }
 
@@ -196,55 +721,63 @@ public class MatchEngine {
 
         log.info("🔥 Best price for {}: {} - {}", productId, minPrice, maxPrice);
 
-        List<Order> matchingOrders = findMatchingOrdersByPrice(order);
+        List<BookEntry> matchingOrders = findMatchingOrdersByPrice(book, order);
         if (!matchingOrders.isEmpty()) {
             // Gom quantity
-            BigDecimal totalCounterQty = matchingOrders.stream()
-                    .map(o -> o.getQuantity().subtract(
-                            o.getFilledQuantity() != null ? o.getFilledQuantity() : BigDecimal.ZERO))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            log.info("totalCounterQty: {}, order quantity: {}", totalCounterQty, order.getQuantity());
+            long totalCounterQty = 0;
+            for (BookEntry entry : matchingOrders) {
+                totalCounterQty += entry.remaining();
+            }
+            // Order khớp lại sau amend có thể đã khớp một phần -> so với phần còn lại, không phải quantity gốc
+            long remaining = book.toQuantity(order.getQuantity()) - book.toQuantity(order.getFilledQuantity());
+            log.info("totalCounterQty: {}, order remaining: {}", book.quantity(totalCounterQty),
+                    book.quantity(remaining));
 
-            if (totalCounterQty.compareTo(order.getQuantity()) >= 0) {
+            if (totalCounterQty >= remaining) {
                 log.info("🔥 Tìm thấy đủ counter orders cùng giá để khớp: {}", matchingOrders.size());
-                match(order, matchingOrders); // khớp lần lượt
+                match(book, order, matchingOrders); // khớp lần lượt
+            } else if (order.getTimeInForce() == TimeInForce.IOC) {
+                // IOC: khớp phần có thể, phần còn lại hết hạn ngay, không nằm chờ trong book
+                match(book, order, matchingOrders);
+                expire(book, order);
             } else {
                 log.info("🔥 Counter orders cùng giá chưa đủ quantity, order còn lại sẽ PENDING");
                 // khớp phần có thể -> sau đó set PENDING cho phần còn lại
-                match(order, matchingOrders);
-                order.setStatus(OrderStatus.PENDING);
-                orderExternalAPI.updateOrderStatus(order,
-                        order.getQuantity().subtract(order.getFilledQuantity()),
-                        order.getPrice());
+                match(book, order, matchingOrders);
+                if (order.getStatus() != OrderStatus.FILLED) {
+                    order.setStatus(OrderStatus.PENDING);
+                    updateOrderStatus(order,
+                            order.getQuantity().subtract(order.getFilledQuantity()),
+                            order.getPrice());
+                    rest(book, order);
+                }
+            }
+        } else if (order.getTimeInForce() == TimeInForce.IOC) {
+            // IOC không chờ: trong khoảng giá -> khớp anonymous ngay, ngoài khoảng -> hết hạn
+            long orderPx = book.toPrice(order.getPrice());
+            if (orderPx >= book.toPrice(minPrice) && orderPx <= book.toPrice(maxPrice)) {
+                matchWithAnonymous(book, order, order.getPrice(), order.getQuantity());
+            } else {
+                expire(book, order);
             }
         } else {
-            log.info("🔥 Không tìm thấy order đối ứng trong Redis");
+            log.info("🔥 Không tìm thấy order đối ứng trong order book");
+            // Order nằm chờ trong book cho tới khi khớp
+            rest(book, order);
             // Nếu giá nằm trong khoảng min-max
-            if (order.getPrice().compareTo(minPrice) >= 0 && order.getPrice().compareTo(maxPrice) <= 0) {
+            long orderPx = book.toPrice(order.getPrice());
+            if (orderPx >= book.toPrice(minPrice) && orderPx <= book.toPrice(maxPrice)) {
                 // Match with anonymous user after a random delay from 5 to 15 seconds
-                scheduleAnonymousMatch(order, Duration.ofSeconds(ThreadLocalRandom.current().nextInt(5, 8)));
+                scheduleAnonymousMatch(book, order, Duration.ofSeconds(ThreadLocalRandom.current().nextInt(5, 8)));
 
             } else {
                 // Set PENDING
                 log.info("🔥 Order {} nằm ngoài khoảng giá min-max, đặt trạng thái PENDING", order.getId());
 
                 order.setStatus(OrderStatus.PENDING);
-                orderExternalAPI.updateOrderStatus(order, BigDecimal.ZERO, BigDecimal.ZERO);
+                updateOrderStatus(order, BigDecimal.ZERO, BigDecimal.ZERO);
                 log.info("🔥 Order {} đã được đặt trạng thái PENDING", order.getId());
-                OrderDTO orderSendToAdmin = OrderDTO.builder()
-                        .id(order.getId())
-                        .userId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d")
-                        .pairId(orderExternalAPI.getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId()))
-                        .side(order.getSide().name())
-                        .type(order.getType().name())
-                        .quantity(order.getQuantity())
-                        .price(order.getPrice())
-                        .status(order.getStatus().name())
-                        .filledQuantity(order.getFilledQuantity())
-                        .build();
-
-                // send to admin
-                eventPublisher.publishEvent(new OrderReceivedEvent(orderSendToAdmin));
+                report(order);
             }
 
 
@@ -262,29 +795,27 @@ public class MatchEngine {
 
 
 
-    private void match(Order takerOrder, List<Order> makerOrders) {
-        // Lấy quantity còn lại của taker (chưa khớp hết)
-        BigDecimal remainingTakerQty = takerOrder.getQuantity();
-        BigDecimal takerFilled = takerOrder.getFilledQuantity() != null ?
-                takerOrder.getFilledQuantity() : BigDecimal.ZERO;
+    private void match(OrderBook book, Order takerOrder, List<BookEntry> makerEntries) {
+        // Lấy quantity còn lại của taker (chưa khớp hết), tính bằng scaled long
+        long remainingTakerQty = book.toQuantity(takerOrder.getQuantity())
+                - book.toQuantity(takerOrder.getFilledQuantity());
 
-        log.info("🔥 Bắt đầu khớp lệnh: Taker {} với {} Maker orders", takerOrder.getId(), makerOrders.size());
+        log.info("🔥 Bắt đầu khớp lệnh: Taker {} với {} Maker orders", takerOrder.getId(), makerEntries.size());
 
-        for (Order makerOrder : makerOrders) {
+        for (BookEntry makerEntry : makerEntries) {
             // Nếu taker đã khớp xong thì dừng
-            if (remainingTakerQty.compareTo(BigDecimal.ZERO) <= 0) break;
+            if (remainingTakerQty <= 0) break;
 
-            // Quantity còn lại của maker = quantity gốc - đã filled
-            BigDecimal makerRemaining = makerOrder.getQuantity().subtract(
-                    makerOrder.getFilledQuantity() != null ? makerOrder.getFilledQuantity() : BigDecimal.ZERO
-            );
+            Order makerOrder = makerEntry.getOrder();
+            long makerRemaining = makerEntry.remaining();
 
             // Nếu maker không còn quantity thì bỏ qua
-            if (makerRemaining.compareTo(BigDecimal.ZERO) <= 0) continue;
+            if (makerRemaining <= 0) continue;
 
             // Xác định quantity có thể khớp = min(takerRemaining, makerRemaining)
-            BigDecimal matchQuantity = remainingTakerQty.min(makerRemaining);
-            BigDecimal matchPrice = makerOrder.getPrice(); // Giá lấy từ maker
+            long matchQty = Math.min(remainingTakerQty, makerRemaining);
+            BigDecimal matchQuantity = book.quantity(matchQty);
+            BigDecimal matchPrice = book.price(makerEntry.price()); // Giá lấy từ maker
             boolean isBuyerMaker = makerOrder.getSide() == Side.BID;
 
             Trade trade = Trade.builder()
@@ -298,104 +829,43 @@ public class MatchEngine {
                     .isBuyerMaker(isBuyerMaker)
                     .build();
 
-            tradeService.saveTrade(trade);
+            saveTrade(trade);
             log.info("🔥 Đã tạo giao dịch: {}", trade);
 
-            takerFilled = takerFilled.add(matchQuantity);
-            takerOrder.setFilledQuantity(takerFilled);
-
-            BigDecimal makerFilled = makerOrder.getFilledQuantity() != null ?
-                    makerOrder.getFilledQuantity() : BigDecimal.ZERO;
-            makerOrder.setFilledQuantity(makerFilled.add(matchQuantity));
+            remainingTakerQty -= matchQty;
+            takerOrder.setFilledQuantity(book.quantity(book.toQuantity(takerOrder.getQuantity()) - remainingTakerQty));
+            makerOrder.setFilledQuantity(book.quantity(
+                    book.toQuantity(makerOrder.getQuantity()) - (makerRemaining - matchQty)));
+            book.onFill(makerOrder.getId(), matchQty);
+            book.onFill(takerOrder.getId(), matchQty);
 
             // ==================== 3. Cập nhật trạng thái ====================
-            if (takerOrder.getFilledQuantity().compareTo(takerOrder.getQuantity()) >= 0) {
+            if (remainingTakerQty <= 0) {
                 takerOrder.setStatus(OrderStatus.FILLED);
             } else {
                 takerOrder.setStatus(OrderStatus.PARTIALLY_FILLED);
             }
 
-            if (makerOrder.getFilledQuantity().compareTo(makerOrder.getQuantity()) >= 0) {
+            if (makerRemaining - matchQty <= 0) {
                 makerOrder.setStatus(OrderStatus.FILLED);
             } else {
                 makerOrder.setStatus(OrderStatus.PARTIALLY_FILLED);
             }
 
             // Với lệnh MARKET thì giá cuối cùng = giá của maker vừa khớp
-            if (takerOrder.getType() == OrderType.MARKET) {
+            if (isMarketLike(takerOrder.getType())) {
                 takerOrder.setPrice(matchPrice);
             }
+            book.recordTrade(makerEntry.price());
 
-            orderExternalAPI.updateOrderStatus(takerOrder, matchQuantity, matchPrice);
-            orderExternalAPI.updateOrderStatus(makerOrder, matchQuantity, matchPrice);
-
-            OrderDTO orderDtoTaker = OrderDTO.builder()
-                    .id(takerOrder.getId())
-                    .userId(takerOrder.getUserId())
-                    .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                    .side(takerOrder.getSide().name())
-                    .type(takerOrder.getType().name())
-                    .quantity(takerOrder.getQuantity())
-                    .price(takerOrder.getPrice())
-                    .status(takerOrder.getStatus().name())
-                    .filledQuantity(takerOrder.getFilledQuantity())
-                    .build();
-
-            OrderDTO orderDtoMaker = OrderDTO.builder()
-                    .id(makerOrder.getId())
-                    .userId(makerOrder.getUserId())
-                    .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                    .side(makerOrder.getSide().name())
-                    .type(makerOrder.getType().name())
-                    .quantity(makerOrder.getQuantity())
-                    .price(makerOrder.getPrice())
-                    .status(makerOrder.getStatus().name())
-                    .filledQuantity(makerOrder.getFilledQuantity())
-                    .build();
-
+            updateOrderStatus(takerOrder, matchQuantity, matchPrice);
+            updateOrderStatus(makerOrder, matchQuantity, matchPrice);
 
+            // Taker / maker chỉ xuất hiện một lần trong report, với trạng thái sau fill cuối cùng
+            report(takerOrder);
+            report(makerOrder);
 
-            // Bắn event cập nhật trạng thái của cả taker & maker
-            // send to user
-            eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoTaker));
-            eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoMaker));
 
-
-            // send to admin
-//            orderDtoMaker.setUserId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d");
-//            orderDtoTaker.setUserId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d");
-
-            OrderDTO orderDtoTakerAd = OrderDTO.builder()
-                    .id(takerOrder.getId())
-                    .userId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d")
-                    .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                    .side(takerOrder.getSide().name())
-                    .type(takerOrder.getType().name())
-                    .quantity(takerOrder.getQuantity())
-                    .price(takerOrder.getPrice())
-                    .status(takerOrder.getStatus().name())
-                    .filledQuantity(takerOrder.getFilledQuantity())
-                    .build();
-
-            OrderDTO orderDtoMakerAd = OrderDTO.builder()
-                    .id(makerOrder.getId())
-                    .userId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d")
-                    .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                    .side(makerOrder.getSide().name())
-                    .type(makerOrder.getType().name())
-                    .quantity(makerOrder.getQuantity())
-                    .price(makerOrder.getPrice())
-                    .status(makerOrder.getStatus().name())
-                    .filledQuantity(makerOrder.getFilledQuantity())
-                    .build();
-//
-            eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoTakerAd));
-            eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoMakerAd));
-
-
-
-            // ==================== 5. Giảm remainingQty của taker ====================
-            remainingTakerQty = remainingTakerQty.subtract(matchQuantity);
         }
 
         log.info("🔥 Hoàn tất khớp lệnh: Taker {} status={}, filled={}/{}",
@@ -408,7 +878,7 @@ public class MatchEngine {
 
 
     // Hàm khớp với anonymous user
-    private void matchWithAnonymous(Order takerOrder, BigDecimal matchPrice, BigDecimal matchQuantity) {
+    private void matchWithAnonymous(OrderBook book, Order takerOrder, BigDecimal matchPrice, BigDecimal matchQuantity) {
         log.info("🔥 Khớp lệnh với anonymous user: Order: {}, Price: {}, Quantity: {}", takerOrder, matchPrice, matchQuantity);
 
         // 1. Tạo Transaction với user ảo
@@ -428,74 +898,146 @@ public class MatchEngine {
                 .isBuyerMaker(isBuyerMaker)
                 .build();
 
-        tradeService.saveTrade(trade);
+        saveTrade(trade);
+        book.recordTrade(book.toPrice(matchPrice));
         log.info("🔥 Đã tạo giao dịch với anonymous user: {}", trade);
         // Giao dịch với anonymous user luôn là FILLED
         takerOrder.setStatus(OrderStatus.FILLED);
-        orderExternalAPI.updateOrderStatus(takerOrder, matchQuantity, matchPrice);
-
-        OrderDTO orderDtoTaker = OrderDTO.builder()
-                .id(takerOrder.getId())
-                .userId(takerOrder.getUserId())
-                .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                .side(takerOrder.getSide().name())
-                .type(takerOrder.getType().name())
-                .quantity(takerOrder.getQuantity())
-                .price(takerOrder.getPrice())
-                .status(takerOrder.getStatus().name())
-                .filledQuantity(takerOrder.getFilledQuantity())
-                .build();
-        eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoTaker));
-
-//        orderDtoTaker.setUserId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d");
-        OrderDTO orderDtoTakerAd = OrderDTO.builder()
-                .id(takerOrder.getId())
-                .userId("1218a33f-e5dd-4e4b-8589-8a53c4d0144d")
-                .pairId(orderExternalAPI.getPairId(takerOrder.getSide(), takerOrder.getGiveCryptoId(), takerOrder.getGetCryptoId()))
-                .side(takerOrder.getSide().name())
-                .type(takerOrder.getType().name())
-                .quantity(takerOrder.getQuantity())
-                .price(takerOrder.getPrice())
-                .status(takerOrder.getStatus().name())
-                .filledQuantity(takerOrder.getFilledQuantity())
-                .build();
-//
-        eventPublisher.publishEvent(new OrderReceivedEvent(orderDtoTakerAd));
+        takerOrder.setFilledQuantity(takerOrder.getQuantity());
+        book.remove(takerOrder.getId());
+        updateOrderStatus(takerOrder, matchQuantity, matchPrice);
+
+        report(takerOrder);
 
     }
 
     // Hàm delay khớp với anonymous sau 5-30s
-    private void scheduleAnonymousMatch(Order order, Duration delay) {
-        // 1. Sử dụng ScheduledExecutorService hoặc TaskScheduler để delay
-        // 2. Sau delay, kiểm tra lại khoảng giá và khớp nếu hợp lệ
-        scheduler.schedule(() -> {
-            try {
-
-                log.info("⏳ Khớp anonymous cho order {} sau {} giây", order.getId(), delay.toSeconds());
-
-                // Kiểm tra lại giá trước khi khớp (tránh khớp sai khi thị trường đã thay đổi)
-                List<Order> matchingOrders = findMatchingOrdersByPrice(order);
-                if (!matchingOrders.isEmpty()) {
-                    log.info("🔥 Tìm thấy order đối ứng trong lúc delay: {}", matchingOrders.size());
-                    match(order, matchingOrders);
-                } else {
-                    // Nếu vẫn không có order thật => khớp với anonymous user
-                    log.info("🔥 Khớp với anonymous user");
-                    log.info("🔥Khớp với anonymous user (Không tìm thấy order đối ứng");
-                    matchWithAnonymous(order, order.getPrice(), order.getQuantity());
-                }
+    private void scheduleAnonymousMatch(OrderBook book, Order order, Duration delay) {
+        // 1. Sau delay, timer wheel của shard bắn TimerCommand -> khớp chạy trên thread của shard
+        // 2. Khi xử lý, kiểm tra lại khoảng giá và khớp nếu hợp lệ
+        book.armTimer(order.getId());
+        if (replaying) return;
+
+        log.info("⏳ Hẹn khớp anonymous cho order {} sau {} giây", order.getId(), delay.toSeconds());
+        engineTimers.schedule(new TimerCommand(book.getPairId(), order.getId(), TimerCommand.Kind.ANONYMOUS_FILL),
+                System.currentTimeMillis() + delay.toMillis());
+    }
 
+    // Đưa order vào book; DAY/GTD thì hẹn luôn thời điểm hết hạn
+    private void rest(OrderBook book, Order order) {
+        book.add(order);
+        scheduleExpiry(book, order);
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    private void scheduleExpiry(OrderBook book, Order order) {
+        if (order.getExpiresAt() == null || replaying) return;
+        engineTimers.schedule(new TimerCommand(book.getPairId(), order.getId(), TimerCommand.Kind.EXPIRE),
+                order.getExpiresAt().toEpochMilli());
+    }
+
+    // DAY/GTD có thể hết hạn khi vẫn đang chờ kích hoạt trong trigger / trailing index
+    private void handleExpire(OrderBook book, String orderId) {
+        Order order = book.get(orderId);
+        if (order == null) order = book.triggers().remove(orderId);
+        if (order == null) order = book.trailingStops().remove(orderId);
+        if (order == null) return;
+        expire(book, order);
+    }
+
+    private void expire(OrderBook book, Order order) {
+        book.remove(order.getId());
+        order.setStatus(OrderStatus.EXPIRED);
+        log.info("⌛ Order {} hết hạn, filled={}/{}", order.getId(), order.getFilledQuantity(), order.getQuantity());
+        submitRelease(order);
+
+        report(order);
+    }
+
+    private void handleAnonymousTimer(OrderBook book, String orderId) {
+        book.disarmTimer(orderId);
+
+        // Order đã khớp hết (làm maker) trong lúc chờ
+        BookEntry entry = book.entry(orderId);
+        if (entry == null) return;
+        Order order = entry.getOrder();
+
+        // Kiểm tra lại giá trước khi khớp (tránh khớp sai khi thị trường đã thay đổi)
+        List<BookEntry> matchingOrders = findMatchingOrdersByPrice(book, order);
+        if (!matchingOrders.isEmpty()) {
+            log.info("🔥 Tìm thấy order đối ứng trong lúc delay: {}", matchingOrders.size());
+            match(book, order, matchingOrders);
+        } else {
+            // Nếu vẫn không có order thật => khớp với anonymous user
+            log.info("🔥Khớp với anonymous user (Không tìm thấy order đối ứng");
+            matchWithAnonymous(book, order, order.getPrice(), book.quantity(entry.remaining()));
+        }
+    }
 
+
+    // Timer đang chờ lúc tắt máy (khôi phục từ snapshot/journal) -> hẹn lại
+    private void rearmTimers() {
+        for (OrderBook book : orderBookRegistry.all()) {
+            rearmTimers(book);
+        }
+    }
+
+    private void rearmTimers(OrderBook book) {
+        for (Side side : Side.values()) {
+            for (PriceLevel level : book.allLevels(side)) {
+                for (BookEntry entry : level.entries()) {
+                    scheduleExpiry(book, entry.getOrder());
+                }
+            }
+        }
+        for (Order order : book.triggers().orders()) {
+            scheduleExpiry(book, order);
+        }
+        for (Order order : book.trailingStops().orders()) {
+            scheduleExpiry(book, order);
+        }
+        for (String orderId : List.copyOf(book.armedTimers())) {
+            Order order = book.get(orderId);
+            if (order == null) continue;
+            scheduleAnonymousMatch(book, order, Duration.ofSeconds(ThreadLocalRandom.current().nextInt(5, 8)));
+        }
     }
 
 
     /*--------------- Hàm tiện ích -------------------------------------------------------------------------------*/
 
+    private OrderBookStats resolveStats(Order order) {
+        String productId = getPairIdFromOrderBookData(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
+        return orderBookStatsService.getStats(productId);
+    }
+
+    // Khi replay journal, event / timer đã xảy ra trước khi restart -> bỏ qua; trade / settlement vẫn gửi,
+    // sink và settlement stage bỏ phần đã ghi nhờ seq của journal
+    private void saveTrade(Trade trade) {
+        ExecutionBatch batch = batches.get();
+        tradeService.saveTrade(batch.stream(), batch.seq(), batch.nextItem(), trade);
+        if (!replaying) batch.fill(trade);
+    }
+
+    private void submitRelease(Order order) {
+        ExecutionBatch batch = batches.get();
+        orderExternalAPI.submitRelease(batch.stream(), batch.seq(), batch.nextItem(), order);
+    }
+
+    private void updateOrderStatus(Order order, BigDecimal matchQuantity, BigDecimal matchPrice) {
+        ExecutionBatch batch = batches.get();
+        long start = System.nanoTime();
+        // Chỉ xếp vào settlement stage, không chờ DB / asset
+        orderExternalAPI.submitFill(batch.stream(), batch.seq(), batch.nextItem(), order, matchQuantity, matchPrice);
+        if (replaying) return;
+        orderLatencyMonitor.record(
+                orderExternalAPI.getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId()),
+                LatencyStage.STATUS_UPDATE, System.nanoTime() - start);
+    }
+
+    private void report(Order order) {
+        if (!replaying) batches.get().order(order);
+    }
+
 
     public String getPairIdFromOrderBookData(Side side, String giveCryptoId, String getCryptoId) {
         return side == Side.BID ?
@@ -503,40 +1045,20 @@ public class MatchEngine {
                 giveCryptoId + getCryptoId;
     }
 
-    private List<Order> findMatchingOrdersByPrice(Order order) throws JsonProcessingException {
+    private List<BookEntry> findMatchingOrdersByPrice(OrderBook book, Order order) {
         Side counterSide = (order.getSide() == Side.BID) ? Side.ASK : Side.BID;
-        String pairId = orderExternalAPI.getPairId(order.getSide(), order.getGiveCryptoId(), order.getGetCryptoId());
-        String redisZSetKey = "orderbook:" + pairId + ":" + counterSide.name().toLowerCase();
-
-        double pricePart = (counterSide == Side.BID)
-                ? -order.getPrice().doubleValue()
-                : order.getPrice().doubleValue();
-
-        // Cho phép ±epsilon khi so sánh giá (nếu cần)
-        double epsilon = 0.5;
-        double scoreMin = pricePart - epsilon;
-        double scoreMax = pricePart + epsilon;
-
-        System.out.println("🔥 Tìm kiếm nhiều order đối ứng trong Redis ZSet: " + redisZSetKey +
-                ", Score Min: " + scoreMin + ", Score Max: " + scoreMax);
 
         // Lấy tất cả order cùng giá
-        Set<Object> orderRedis = redisTemplate.opsForZSet()
-                .rangeByScore(redisZSetKey, scoreMin, scoreMax);
-
-        List<Order> counterOrders = new ArrayList<>();
-        if (orderRedis != null) {
-            for (Object keyObj : orderRedis) {
-                String counterOrderKey = (String) keyObj;
-                String orderJson = (String) redisTemplate.opsForHash().get("order:" + counterOrderKey, "order");
-                if (orderJson != null) {
-                    Order counterOrder = objectMapper.readValue(orderJson, Order.class);
-                    if (counterOrder.getUserId().equals(order.getUserId())) {
-                        // Không khớp lệnh với chính mình
-                        continue;
-                    }
-                    counterOrders.add(counterOrder);
+        PriceLevel level = book.level(counterSide, book.toPrice(order.getPrice()));
+
+        List<BookEntry> counterOrders = new ArrayList<>();
+        if (level != null) {
+            for (BookEntry entry : level.entries()) {
+                if (entry.getOrder().getUserId().equals(order.getUserId())) {
+                    // Không khớp lệnh với chính mình
+                    continue;
                 }
+                counterOrders.add(entry);
             }
         }
 
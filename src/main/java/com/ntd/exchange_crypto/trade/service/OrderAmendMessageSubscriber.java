@@ -0,0 +1,37 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.order.OrderAmend;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderAmendMessageSubscriber implements MessageListener {
+
+    MatchEngine matchEngine;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            // Channel "amend:<BTC-USDT>"
+            String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+            String pairId = channel.substring(channel.indexOf(':') + 1);
+            OrderAmend amend = OrderAmend.decode(message.getBody());
+
+            matchEngine.processAmend(pairId, amend);
+
+            log.info("Received amend of order {} on {}", amend.orderId(), pairId);
+        } catch (Exception e) {
+            log.error("Error processing amend message", e);
+        }
+    }
+}
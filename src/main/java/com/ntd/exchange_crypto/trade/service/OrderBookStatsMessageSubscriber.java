@@ -2,6 +2,7 @@ package com.ntd.exchange_crypto.trade.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ntd.exchange_crypto.market.OrderBookData;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
 import com.ntd.exchange_crypto.trade.OrderBookStatsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +17,7 @@ public class OrderBookStatsMessageSubscriber implements MessageListener {
 
     private final ObjectMapper objectMapper;
     private final OrderBookStatsService orderBookStatsService;
+    private final MarketDepthService marketDepthService;
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
@@ -28,6 +30,7 @@ public class OrderBookStatsMessageSubscriber implements MessageListener {
 
 
             orderBookStatsService.updateStats(productId, data);
+            marketDepthService.updateExternal(data);
 
         } catch (Exception e) {
             log.error("Error handling Redis message", e);
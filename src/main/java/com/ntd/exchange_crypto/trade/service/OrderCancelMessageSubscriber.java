@@ -0,0 +1,36 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OrderCancelMessageSubscriber implements MessageListener {
+
+    MatchEngine matchEngine;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            // Channel "cancel:<BTC-USDT>", body = order id
+            String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+            String pairId = channel.substring(channel.indexOf(':') + 1);
+            String orderId = new String(message.getBody(), StandardCharsets.UTF_8);
+
+            matchEngine.processCancel(pairId, orderId);
+
+            log.info("Received cancel of order {} on {}", orderId, pairId);
+        } catch (Exception e) {
+            log.error("Error processing cancel message", e);
+        }
+    }
+}
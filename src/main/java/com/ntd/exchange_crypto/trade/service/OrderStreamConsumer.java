@@ -0,0 +1,228 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.common.OrderIntakeStreams;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.dto.response.IntakeStreamResponse;
+import com.ntd.exchange_crypto.trade.engine.PairLeaseManager;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the engine from the order intake streams ({@link OrderIntakeStreams}). One reader thread per node, named
+ * after the node in the consumer group, reads up to {@code app.engine.intake.batch-size} entries per stream with one
+ * XREADGROUP over every stream it may serve, and hands them to the engine as one batch per pair. Entries are
+ * acknowledged once the engine has matched the whole batch; acks are collected and sent in one pipeline before the
+ * next read.
+ * <p>
+ * In cluster mode a node skips the streams of pairs leased to another node. Entries left pending by a consumer that
+ * died (or of a pair whose lease was lost mid-batch) are claimed after {@code app.engine.intake.reclaim-idle-ms}
+ * by the owner of the pair. Those are checked against the Redis mirror first: an order no longer there has already
+ * been matched, and one still resting is ignored by the engine.
+ */
+@Slf4j
+@Component
+public class OrderStreamConsumer {
+
+    private final OrderIntakeStreams streams;
+    private final OrderBookRedisStore orderBookRedisStore;
+    private final MatchEngine matchEngine;
+    private final PairLeaseManager leases;
+    private final int batchSize;
+    private final Duration block;
+    private final long refreshMs;
+    private final Duration reclaimIdle;
+    private final long reclaimIntervalMs;
+    private final ConcurrentLinkedQueue<Matched> matched = new ConcurrentLinkedQueue<>();
+    // Chỉ thread reader đọc / ghi
+    private final Set<String> known = new HashSet<>();
+    private List<String> readable = List.of();
+    private volatile boolean running;
+    private Thread reader;
+
+    public OrderStreamConsumer(OrderIntakeStreams streams,
+                               OrderBookRedisStore orderBookRedisStore,
+                               MatchEngine matchEngine,
+                               PairLeaseManager leases,
+                               @Value("${app.engine.intake.batch-size:256}") int batchSize,
+                               @Value("${app.engine.intake.block-ms:100}") long blockMs,
+                               @Value("${app.engine.intake.refresh-ms:1000}") long refreshMs,
+                               @Value("${app.engine.intake.reclaim-idle-ms:30000}") long reclaimIdleMs,
+                               @Value("${app.engine.intake.reclaim-interval-ms:5000}") long reclaimIntervalMs) {
+        this.streams = streams;
+        this.orderBookRedisStore = orderBookRedisStore;
+        this.matchEngine = matchEngine;
+        this.leases = leases;
+        this.batchSize = batchSize;
+        this.block = Duration.ofMillis(blockMs);
+        this.refreshMs = refreshMs;
+        this.reclaimIdle = Duration.ofMillis(reclaimIdleMs);
+        this.reclaimIntervalMs = reclaimIntervalMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        reader = new Thread(this::run, "order-intake-reader");
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Order intake consumer {} started (batch {}, block {} ms)", leases.getNodeId(), batchSize,
+                block.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (reader != null) reader.join(block.toMillis() * 5);
+    }
+
+    public List<IntakeStreamResponse> intakeStats() {
+        return streams.pairIds().stream()
+                .map(streams::lag)
+                .map(lag -> IntakeStreamResponse.builder()
+                        .pairId(lag.pairId())
+                        .length(lag.length())
+                        .pending(lag.pending())
+                        .lag(lag.lag())
+                        .consumers(lag.consumers())
+                        .build())
+                .toList();
+    }
+
+    private void run() {
+        long nextRefresh = 0;
+        long nextReclaim = System.currentTimeMillis() + reclaimIntervalMs;
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                if (now >= nextRefresh) {
+                    refresh();
+                    nextRefresh = now + refreshMs;
+                }
+                ackMatched();
+                if (readable.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(block.toMillis());
+                    continue;
+                }
+                dispatch(streams.read(leases.getNodeId(), readable, batchSize, block), false);
+                if (now >= nextReclaim) {
+                    reclaim();
+                    nextReclaim = now + reclaimIntervalMs;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                if (!running) break;
+                log.error("Cannot read the order intake streams", e);
+                pause();
+            }
+        }
+        try {
+            ackMatched();
+        } catch (Exception e) {
+            // Entry chưa ack sẽ được reclaim sau, engine bỏ qua bản trùng
+            log.warn("Cannot acknowledge the last intake entries", e);
+        }
+    }
+
+    // Stream mới (pair mới) + bỏ các pair đang thuộc node khác
+    private void refresh() {
+        List<String> next = new ArrayList<>();
+        for (String pairId : streams.pairIds()) {
+            if (known.add(pairId)) streams.ensureGroup(pairId);
+            if (!leases.isEnabled() || leases.owns(pairId) || leases.ownerOf(pairId) == null) next.add(pairId);
+        }
+        readable = next;
+    }
+
+    private void reclaim() {
+        for (String pairId : readable) {
+            if (!leases.owns(pairId)) continue;
+            List<OrderIntakeStreams.Entry> entries =
+                    streams.reclaim(pairId, leases.getNodeId(), reclaimIdle, batchSize);
+            if (entries.isEmpty()) continue;
+            log.warn("Reclaimed {} unacknowledged intake entries of {}", entries.size(), pairId);
+            dispatch(entries, true);
+        }
+    }
+
+    private void dispatch(List<OrderIntakeStreams.Entry> entries, boolean reclaimed) {
+        if (entries.isEmpty()) return;
+        Map<String, List<OrderIntakeStreams.Entry>> byPair = new LinkedHashMap<>();
+        for (OrderIntakeStreams.Entry entry : entries) {
+            byPair.computeIfAbsent(entry.pairId(), k -> new ArrayList<>()).add(entry);
+        }
+        byPair.forEach((pairId, pairEntries) -> dispatch(pairId, pairEntries, reclaimed));
+    }
+
+    private void dispatch(String pairId, List<OrderIntakeStreams.Entry> entries, boolean reclaimed) {
+        List<String> ids = new ArrayList<>(entries.size());
+        List<String> done = new ArrayList<>();
+        List<Order> orders = new ArrayList<>(entries.size());
+        for (OrderIntakeStreams.Entry entry : entries) {
+            ids.add(entry.id());
+            try {
+                orders.add(OrderCodec.decode(entry.order()));
+            } catch (Exception e) {
+                // Entry hỏng: ack luôn, không để nó bị giao lại mãi
+                log.error("Cannot decode intake entry {} of {}", entry.id(), pairId, e);
+                done.add(entry.id());
+            }
+        }
+        if (reclaimed && !orders.isEmpty()) {
+            // Order không còn trong mirror -> đã khớp xong / bị hủy trước khi consumer cũ kịp ack
+            List<byte[]> mirrored = orderBookRedisStore.getOrders(orders.stream().map(Order::getId).toList());
+            List<Order> pending = new ArrayList<>(orders.size());
+            for (int i = 0; i < orders.size(); i++) {
+                if (mirrored.get(i) != null) pending.add(orders.get(i));
+            }
+            orders = pending;
+        }
+        if (!done.isEmpty()) matched.add(new Matched(pairId, done));
+        ids.removeAll(done);
+        if (orders.isEmpty()) {
+            if (!ids.isEmpty()) matched.add(new Matched(pairId, ids));
+            return;
+        }
+        if (!matchEngine.processNewOrders(pairId, orders, () -> matched.add(new Matched(pairId, ids)))) {
+            log.debug("Intake batch of {} left pending, pair is owned by another node", pairId);
+        }
+    }
+
+    private void ackMatched() {
+        if (matched.isEmpty()) return;
+        Map<String, List<String>> idsByPair = new LinkedHashMap<>();
+        Matched batch;
+        while ((batch = matched.poll()) != null) {
+            idsByPair.computeIfAbsent(batch.pairId(), k -> new ArrayList<>()).addAll(batch.ids());
+        }
+        streams.ack(idsByPair);
+    }
+
+    private void pause() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(block.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Matched(String pairId, List<String> ids) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.common.FixedPoint;
+import com.ntd.exchange_crypto.order.OrderAmend;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.OrderExternalAPI;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.engine.RedisMatchScript;
+import com.ntd.exchange_crypto.trade.model.Trade;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+
+/**
+ * Stateless engine mode ({@code app.engine.mode=redis}): the book lives only in Redis and each order is matched by
+ * one call of {@link RedisMatchScript} instead of ZRANGE + HGET per maker + ZREM/HSET round trips.
+ * Any thread may match, since the script is atomic per call and marks the taker, so a duplicate delivery is a no-op.
+ * Only LIMIT and MARKET orders are supported; there is no anonymous liquidity in this mode, a MARKET or IOC remainder
+ * expires and a LIMIT remainder keeps resting in the Redis book. Requires a single Redis node (see
+ * {@link RedisMatchScript}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RedisMatcher {
+
+    RedisMatchScript matchScript;
+    OrderExternalAPI orderExternalAPI;
+    TradeService tradeService;
+    ApplicationEventPublisher eventPublisher;
+
+    @NonFinal
+    @Value("${app.engine.redis.max-fills:128}")
+    int maxFills;
+
+    public void process(Order order, String pairId) {
+        ExecutionBatch batch = new ExecutionBatch();
+        batch.begin(pairId, null, 0);
+        process(order, pairId, batch);
+        if (!batch.isEmpty()) eventPublisher.publishEvent(batch.drain());
+    }
+
+    /**
+     * Removes a resting order from the Redis book and releases its balance. The removal is one script call
+     * ({@link RedisMatchScript#cancel}), so only the quantity it took off the book is released; whatever a match call
+     * filled before it is settled by that fill.
+     */
+    public void cancel(String orderId, String pairId) {
+        Order order = orderExternalAPI.getOrderById(orderId);
+        if (order.getStatus() != OrderStatus.NEW && order.getStatus() != OrderStatus.PENDING
+                && order.getStatus() != OrderStatus.PARTIALLY_FILLED) {
+            log.info("Cancel ignored, order {} is already {}", orderId, order.getStatus());
+            return;
+        }
+        ExecutionBatch batch = new ExecutionBatch();
+        batch.begin(pairId, null, 0);
+        if (!leave(order, pairId, OrderStatus.CANCELED)) {
+            log.info("Cancel ignored, order {} is no longer open in the redis book", orderId);
+            return;
+        }
+        batch.order(order);
+        eventPublisher.publishEvent(batch.drain());
+    }
+
+    /**
+     * Amends are not supported in this mode: the order stays as it is and the extra balance locked for it is
+     * released.
+     */
+    public void rejectAmend(OrderAmend amend) {
+        log.warn("Amend of order {} is not supported in redis engine mode, ignored", amend.orderId());
+        if (amend.reserved().signum() <= 0) return;
+        Order order = orderExternalAPI.getOrderById(amend.orderId());
+        orderExternalAPI.settleAmend(order, order.getPrice(), order.getQuantity(), amend.reserved());
+    }
+
+    private void process(Order order, String pairId, ExecutionBatch batch) {
+        if (order.getType() != OrderType.LIMIT && order.getType() != OrderType.MARKET) {
+            log.warn("Order type {} is not supported in redis engine mode, order {} expires", order.getType(), order.getId());
+            expire(order, pairId, batch);
+            return;
+        }
+
+        long quantity = FixedPoint.toLong(order.getQuantity().subtract(order.getFilledQuantity()), RedisMatchScript.SCALE);
+        Long limitPrice = order.getType() == OrderType.LIMIT
+                ? FixedPoint.toLong(order.getPrice(), RedisMatchScript.SCALE)
+                : null;
+        if (!RedisMatchScript.fits(quantity) || (limitPrice != null && !RedisMatchScript.fits(limitPrice))) {
+            log.error("Order {} exceeds the integer range of the redis match script", order.getId());
+            expire(order, pairId, batch);
+            return;
+        }
+
+        RedisMatchScript.Result result = matchScript.match(pairId, order.getId(), order.getUserId(), order.getSide(),
+                limitPrice, quantity, maxFills);
+        if (result == null) {
+            log.info("Order {} already matched or no longer in the redis book, skipped", order.getId());
+            return;
+        }
+        log.info("🔥 Redis match {}: {} fills, còn lại {}", order.getId(), result.fills().size(),
+                FixedPoint.toBigDecimal(result.takerRemaining(), RedisMatchScript.SCALE));
+
+        for (RedisMatchScript.Fill fill : result.fills()) {
+            applyFill(order, pairId, fill, batch);
+        }
+
+        boolean restable = order.getType() == OrderType.LIMIT && order.getTimeInForce() != TimeInForce.IOC;
+        if (result.takerRemaining() > 0 && !restable) {
+            expire(order, pairId, batch);
+        }
+    }
+
+    private void applyFill(Order takerOrder, String pairId, RedisMatchScript.Fill fill, ExecutionBatch batch) {
+        Order makerOrder;
+        try {
+            makerOrder = OrderCodec.decode(fill.makerOrder());
+            if (makerOrder == null) throw new IllegalStateException("Maker hash has no order field");
+        } catch (Exception e) {
+            log.error("Cannot decode maker {} of a redis fill, taker {}", fill.makerId(), takerOrder.getId(), e);
+            return;
+        }
+
+        BigDecimal matchQuantity = FixedPoint.toBigDecimal(fill.quantity(), RedisMatchScript.SCALE);
+        BigDecimal matchPrice = FixedPoint.toBigDecimal(fill.price(), RedisMatchScript.SCALE);
+
+        Trade trade = Trade.builder()
+                .takerOrderId(takerOrder.getId())
+                .makerOrderId(makerOrder.getId())
+                .productId(pairId)
+                .price(matchPrice)
+                .quantity(matchQuantity)
+                .isBuyerMaker(makerOrder.getSide() == Side.BID)
+                .build();
+        tradeService.saveTrade(trade);
+        batch.fill(trade);
+
+        takerOrder.setFilledQuantity(takerOrder.getFilledQuantity().add(matchQuantity));
+        takerOrder.setStatus(takerOrder.getFilledQuantity().compareTo(takerOrder.getQuantity()) >= 0
+                ? OrderStatus.FILLED : OrderStatus.PARTIALLY_FILLED);
+        if (takerOrder.getType() == OrderType.MARKET) {
+            takerOrder.setPrice(matchPrice);
+        }
+        makerOrder.setFilledQuantity(makerOrder.getQuantity()
+                .subtract(FixedPoint.toBigDecimal(fill.makerRemaining(), RedisMatchScript.SCALE)));
+        makerOrder.setStatus(fill.makerRemaining() <= 0 ? OrderStatus.FILLED : OrderStatus.PARTIALLY_FILLED);
+
+        orderExternalAPI.updateOrderStatus(takerOrder, matchQuantity, matchPrice);
+        orderExternalAPI.updateOrderStatus(makerOrder, matchQuantity, matchPrice);
+
+        batch.order(takerOrder);
+        batch.order(makerOrder);
+    }
+
+    // Phần còn lại lấy từ Redis: một cancel chen vào sau lần khớp có thể đã gỡ và trả lock của nó
+    private void expire(Order order, String pairId, ExecutionBatch batch) {
+        if (leave(order, pairId, OrderStatus.EXPIRED)) batch.order(order);
+    }
+
+    // Gỡ order khỏi book Redis rồi trả lock đúng phần script đã gỡ; false nếu không còn gì để gỡ
+    private boolean leave(Order order, String pairId, OrderStatus status) {
+        long removed = matchScript.cancel(pairId, order.getId(), order.getSide());
+        if (removed == RedisMatchScript.GONE || removed == 0) return false;
+        order.setStatus(status);
+        if (removed == RedisMatchScript.UNTRACKED) {
+            orderExternalAPI.releaseOrder(order);
+        } else {
+            orderExternalAPI.releaseOrder(order, FixedPoint.toBigDecimal(removed, RedisMatchScript.SCALE));
+        }
+        return true;
+    }
+}
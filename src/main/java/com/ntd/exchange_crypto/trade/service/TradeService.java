@@ -21,6 +21,11 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -28,6 +33,7 @@ import org.springframework.stereotype.Service;
 public class TradeService implements TradeExternalApi {
     TradeRepository tradeRepository;
     TradeMapper tradeMapper;
+    TradeWriteBehindSink tradeWriteBehindSink;
 
     @Override
     public SliceResponse<TradeResponse> getAllTradesAdmin(int page, int size) {
@@ -50,6 +56,32 @@ public class TradeService implements TradeExternalApi {
 
     @Override
     public void saveTrade(Trade trade) {
-        tradeRepository.save(trade);
+        // Id & createdAt gán tại đây vì trade được ghi bằng JDBC batch, không qua JPA
+        if (trade.getId() == null) trade.setId(UUID.randomUUID().toString());
+        trade.setCreatedAt(Instant.now());
+        tradeWriteBehindSink.enqueue(trade);
+    }
+
+    /**
+     * Saves a trade of the matching engine. With a journal sequence ({@code seq > 0}) the id is derived from
+     * {@code stream}, {@code seq} and {@code item}, so a trade produced again by a replay is stored once.
+     */
+    public void saveTrade(String stream, long seq, int item, Trade trade) {
+        if (seq <= 0) {
+            saveTrade(trade);
+            return;
+        }
+        trade.setId(UUID.nameUUIDFromBytes((stream + "/" + seq + "/" + item).getBytes(StandardCharsets.UTF_8))
+                .toString());
+        trade.setCreatedAt(Instant.now());
+        tradeWriteBehindSink.enqueue(stream, trade);
+    }
+
+    public List<byte[]> unsaved(String stream) {
+        return tradeWriteBehindSink.unsaved(stream);
+    }
+
+    public void resubmit(byte[] trade) {
+        tradeWriteBehindSink.resubmit(trade);
     }
 }
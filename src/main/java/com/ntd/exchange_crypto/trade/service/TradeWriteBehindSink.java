@@ -0,0 +1,325 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.trade.model.FailedTrade;
+import com.ntd.exchange_crypto.trade.model.Trade;
+import com.ntd.exchange_crypto.trade.repository.FailedTradeRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind sink for trades produced by the matching engine.
+ * Trades are queued in memory and inserted with one JDBC batch every {@code batch-size} trades or
+ * {@code flush-interval-ms}, whichever comes first. The queue is bounded: when MySQL falls behind, producers
+ * block on the queue (back-pressure) instead of waiting on a round trip per fill.
+ * <p>
+ * Transient database errors (lost connection, timeout, deadlock) are retried with backoff. A batch failing with any
+ * other error is written again trade by trade, and a trade that still fails is parked in {@code failed_trade} for
+ * reconciliation with an alert in the log, so one bad row never blocks the sink and, through back-pressure, the
+ * engine.
+ * <p>
+ * Inserts ignore a trade whose id is already stored: the engine derives trade ids from its journal, so the trades it
+ * submits again after a crash (replayed commands, or trades kept in its snapshots via {@link #unsaved}) are written
+ * once.
+ */
+@Slf4j
+@Component
+public class TradeWriteBehindSink implements Runnable {
+
+    private static final String INSERT_SQL = """
+            INSERT IGNORE INTO trades (id, taker_order_id, maker_order_id, product_id, price, quantity, is_buyer_maker, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FailedTradeRepository failedTradeRepository;
+    private final BlockingQueue<Pending> queue;
+    // stream -> trade đã nhận nhưng chưa ghi; engine chụp vào snapshot
+    private final Map<String, Deque<Pending>> inFlight = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final AtomicLong parked = new AtomicLong();
+    private Thread flusher;
+    private volatile boolean running;
+
+    public TradeWriteBehindSink(JdbcTemplate jdbcTemplate,
+                                FailedTradeRepository failedTradeRepository,
+                                @Value("${app.trade.write-behind.queue-capacity:65536}") int queueCapacity,
+                                @Value("${app.trade.write-behind.batch-size:500}") int batchSize,
+                                @Value("${app.trade.write-behind.flush-interval-ms:50}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.failedTradeRepository = failedTradeRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this, "trade-write-behind");
+        flusher.start();
+    }
+
+    public void enqueue(Trade trade) {
+        enqueue(null, trade);
+    }
+
+    /**
+     * Queues a trade of an engine result stream; it is reported by {@link #unsaved} until written.
+     */
+    public void enqueue(String stream, Trade trade) {
+        Pending pending = new Pending(stream, trade);
+        if (stream != null) inFlight.computeIfAbsent(stream, k -> new ConcurrentLinkedDeque<>()).add(pending);
+        if (!running) {
+            // Sink đã dừng (đang shutdown) -> ghi thẳng để không mất trade
+            flushWithRetry(List.of(pending));
+            return;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flushWithRetry(List.of(pending));
+        }
+    }
+
+    /**
+     * Trades of {@code stream} queued but not written yet, encoded for {@link #resubmit}.
+     */
+    public List<byte[]> unsaved(String stream) {
+        Deque<Pending> trades = inFlight.get(stream);
+        if (trades == null || trades.isEmpty()) return List.of();
+        List<byte[]> encoded = new ArrayList<>(trades.size());
+        for (Pending pending : trades) encoded.add(encode(pending));
+        return encoded;
+    }
+
+    public void resubmit(byte[] encoded) {
+        Pending pending = decode(encoded);
+        enqueue(pending.stream(), pending.trade());
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    // Số trade đã vào failed_trade từ lúc khởi động
+    public long parked() {
+        return parked.get();
+    }
+
+    @Override
+    public void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Gom thêm tới batchSize hoặc hết flushInterval
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0) break;
+                    Pending next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+            }
+
+            if (!batch.isEmpty()) {
+                flushWithRetry(batch);
+                batch.clear();
+            }
+        }
+        log.info("Trade write-behind sink stopped");
+    }
+
+    private void flushWithRetry(List<Pending> batch) {
+        long backoffMs = 100;
+        while (true) {
+            try {
+                insert(batch);
+                done(batch);
+                return;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    log.warn("Trade batch of {} failed, writing trade by trade", batch.size(), e);
+                    flushOneByOne(batch);
+                    return;
+                }
+                log.error("Failed to flush {} trades, retrying in {} ms", batch.size(), backoffMs, e);
+            }
+            backoffMs = backoff(backoffMs);
+        }
+    }
+
+    private void flushOneByOne(List<Pending> batch) {
+        for (Pending pending : batch) {
+            long backoffMs = 100;
+            while (true) {
+                try {
+                    insert(List.of(pending));
+                    break;
+                } catch (Exception e) {
+                    if (isTransient(e)) {
+                        log.error("Cannot write trade {}, retrying in {} ms", pending.trade().getId(), backoffMs, e);
+                    } else if (park(pending, e)) {
+                        // Thử lại không giúp được -> dead letter; chưa ghi được dead letter thì thử lại cả trade
+                        break;
+                    }
+                }
+                backoffMs = backoff(backoffMs);
+            }
+            done(List.of(pending));
+        }
+    }
+
+    // Mất kết nối / timeout / deadlock thì thử lại có thể qua; lỗi dữ liệu (constraint, kiểu, null) thì không
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    private static long backoff(long backoffMs) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoffMs);
+        } catch (InterruptedException ignored) {
+            // đang shutdown: vẫn phải ghi xong batch hiện tại
+        }
+        return Math.min(backoffMs * 2, 5_000);
+    }
+
+    private void done(List<Pending> written) {
+        for (Pending pending : written) {
+            if (pending.stream() != null) inFlight.get(pending.stream()).removeFirstOccurrence(pending);
+        }
+    }
+
+    private boolean park(Pending pending, Exception cause) {
+        Trade trade = pending.trade();
+        String error = String.valueOf(cause);
+        FailedTrade failed = FailedTrade.builder()
+                .tradeId(trade.getId())
+                .detail(describe(pending))
+                .error(error.length() > 1000 ? error.substring(0, 1000) : error)
+                .createdAt(Instant.now())
+                .build();
+        try {
+            failedTradeRepository.save(failed);
+        } catch (Exception e) {
+            log.error("Cannot park trade {} in failed_trade, retrying", trade.getId(), e);
+            return false;
+        }
+        parked.incrementAndGet();
+        log.error("ALERT: trade {} could not be written and was parked in failed_trade ({}) for reconciliation",
+                trade.getId(), failed.getId(), cause);
+        return true;
+    }
+
+    private static String describe(Pending pending) {
+        Trade trade = pending.trade();
+        return "Trade[stream=" + pending.stream() + ", id=" + trade.getId() + ", takerOrderId=" + trade.getTakerOrderId()
+                + ", makerOrderId=" + trade.getMakerOrderId() + ", productId=" + trade.getProductId()
+                + ", price=" + trade.getPrice() + ", quantity=" + trade.getQuantity()
+                + ", isBuyerMaker=" + trade.isBuyerMaker() + ", createdAt=" + trade.getCreatedAt() + "]";
+    }
+
+    private void insert(List<Pending> trades) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, trades, trades.size(), (ps, pending) -> {
+            Trade trade = pending.trade();
+            ps.setString(1, trade.getId());
+            ps.setString(2, trade.getTakerOrderId());
+            ps.setString(3, trade.getMakerOrderId());
+            ps.setString(4, trade.getProductId());
+            ps.setBigDecimal(5, trade.getPrice());
+            ps.setBigDecimal(6, trade.getQuantity());
+            ps.setBoolean(7, trade.isBuyerMaker());
+            ps.setTimestamp(8, Timestamp.from(trade.getCreatedAt()));
+        });
+    }
+
+    /**
+     * Flush-on-shutdown: stop accepting into the queue and wait for the flusher to write what is left.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join();
+        }
+    }
+
+    private static byte[] encode(Pending pending) {
+        Trade trade = pending.trade();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(192);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(pending.stream());
+            out.writeUTF(trade.getId());
+            out.writeUTF(trade.getTakerOrderId());
+            out.writeUTF(trade.getMakerOrderId());
+            out.writeUTF(trade.getProductId());
+            out.writeUTF(trade.getPrice().toPlainString());
+            out.writeUTF(trade.getQuantity().toPlainString());
+            out.writeBoolean(trade.isBuyerMaker());
+            out.writeLong(trade.getCreatedAt().toEpochMilli());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Pending decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            String stream = in.readUTF();
+            Trade trade = Trade.builder()
+                    .id(in.readUTF())
+                    .takerOrderId(in.readUTF())
+                    .makerOrderId(in.readUTF())
+                    .productId(in.readUTF())
+                    .price(new BigDecimal(in.readUTF()))
+                    .quantity(new BigDecimal(in.readUTF()))
+                    .isBuyerMaker(in.readBoolean())
+                    .createdAt(Instant.ofEpochMilli(in.readLong()))
+                    .build();
+            return new Pending(stream, trade);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // stream null: trade không thuộc engine có journal (Redis matcher, journal tắt)
+    private record Pending(String stream, Trade trade) {
+    }
+}
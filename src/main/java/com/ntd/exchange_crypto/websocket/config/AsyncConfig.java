@@ -2,6 +2,7 @@ package com.ntd.exchange_crypto.websocket.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -49,6 +50,14 @@ public class AsyncConfig {
         return executor;
     }
 
+    // Listener của order outbox chỉ đứng chờ flush -> virtual thread, không bị pool giới hạn kích thước batch
+    @Bean("orderOutboxExecutor")
+    public Executor orderOutboxExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("OrderOutbox-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
     // Thêm logging để debug
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AsyncConfig.class);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.ntd.exchange_crypto.websocket.service;
 
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
 import com.ntd.exchange_crypto.common.WebSocketMessageEvent;
 import com.ntd.exchange_crypto.common.WebSocketUserMessageEvent;
 import lombok.AccessLevel;
@@ -17,6 +18,7 @@ import org.springframework.stereotype.Service;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class WebSocketBroadcastService {
     SimpMessagingTemplate messagingTemplate;
+    OrderLatencyMonitor orderLatencyMonitor;
 
 
     @EventListener
@@ -29,6 +31,7 @@ public class WebSocketBroadcastService {
     @Async("websocketExecutor")
     public void sendToUser(WebSocketUserMessageEvent event) {
         messagingTemplate.convertAndSendToUser(event.getUserId(), event.getDestination(), event.getPayload());
+        orderLatencyMonitor.pushed(event.getTrace());
     }
 
     public void broadcastToTopic(String topic, Object payload) {
@@ -0,0 +1,20 @@
+-- Gỡ một order khỏi book Redis trong một lần gọi (atomic): không chen được vào giữa một lần match_orders.lua,
+-- nên phần đã gỡ ở đây không thể đồng thời bị khớp.
+-- KEYS[1] = orderbook:<pair>:<side của order>, KEYS[2] = order:<orderId>
+-- Trả về: { rem } = quantity còn mở vừa gỡ (scale 8; hash bị xóa nên rem về 0),
+-- { '-1' } nếu order không còn trong Redis (đã khớp hết / đã hủy),
+-- { '-2' } nếu hash không có field rem (ghi bởi bản cũ; match script cũng không khớp được order này)
+
+local orderKey = KEYS[2]
+if redis.call('EXISTS', orderKey) == 0 then
+    return { '-1' }
+end
+
+local member = redis.call('HGET', orderKey, 'mbr')
+if member then redis.call('ZREM', KEYS[1], member) end
+local rem = redis.call('HGET', orderKey, 'rem')
+-- Xóa hash: message NEW tới sau cancel thấy taker không còn -> match script bỏ qua
+redis.call('DEL', orderKey)
+
+if not rem then return { '-2' } end
+return { rem }
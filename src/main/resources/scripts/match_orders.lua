@@ -0,0 +1,73 @@
+-- Khớp một taker với đầu book đối ứng trong một lần gọi (atomic).
+-- KEYS[1] = orderbook:<pair>:<side đối ứng>, KEYS[2] = orderbook:<pair>:<side của taker>, KEYS[3] = order:<takerId>
+-- ARGV[1] = takerId, ARGV[2] = 'bid' | 'ask' (side của taker),
+-- ARGV[3] = cận trên ZRANGEBYLEX của các maker khớp được với giá giới hạn ('+' = MARKET, xem BookMember),
+-- ARGV[4] = quantity còn lại, ARGV[5] = số fill tối đa, ARGV[6] = userId của taker
+-- Giá / quantity là số nguyên scale 8 (field px / rem trong hash order:<id>).
+-- Hash order:<id> của maker chỉ biết được khi đọc book nên không khai báo trong KEYS: script chỉ chạy trên
+-- Redis một node (không Cluster), như toàn bộ mirror order book.
+-- Trả về: { takerRemaining, makerId, qty, px, makerRemaining, makerOrder, ... } hoặc { '-1' } nếu bỏ qua
+-- makerOrder là field order nguyên bản (nhị phân OrderCodec), Java tự giải mã.
+
+local function fmt(n)
+    return string.format('%.0f', n)
+end
+
+-- Taker đã rời book hoặc đã được khớp (message pub/sub tới lần hai) -> không làm gì
+local takerKey = KEYS[3]
+if redis.call('EXISTS', takerKey) == 0 or redis.call('HSETNX', takerKey, 'matched', '1') == 0 then
+    return { '-1' }
+end
+
+local upTo = ARGV[3]
+local remaining = tonumber(ARGV[4])
+local maxFills = tonumber(ARGV[5])
+local takerUser = ARGV[6]
+local out = { '' }
+local fills = 0
+-- Maker của chính taker được bỏ qua (không tự khớp), giữ nguyên chỗ trong book; tối đa maxFills lần
+local skipped = 0
+
+while remaining > 0 and fills < maxFills do
+    -- Chỉ lấy maker có giá khớp được: cận lex thay cho so sánh giá
+    local head = redis.call('ZRANGEBYLEX', KEYS[1], '-', upTo, 'LIMIT', skipped, 1)
+    if #head == 0 then break end
+
+    -- member = <giá 16 hex><thời gian 16 hex>:<orderId>
+    local makerId = string.sub(head[1], 34)
+    local makerKey = 'order:' .. makerId
+    local px = tonumber(redis.call('HGET', makerKey, 'px'))
+    local rem = tonumber(redis.call('HGET', makerKey, 'rem'))
+    -- Maker thiếu field khớp (ghi bởi bản cũ) -> dừng, để Java xử lý phần còn lại
+    if px == nil or rem == nil then break end
+
+    if redis.call('HGET', makerKey, 'uid') == takerUser then
+        skipped = skipped + 1
+        if skipped >= maxFills then break end
+    else
+        if rem > 0 then
+            local qty = math.min(remaining, rem)
+            remaining = remaining - qty
+            rem = rem - qty
+            redis.call('HSET', makerKey, 'rem', fmt(rem))
+
+            out[#out + 1] = makerId
+            out[#out + 1] = fmt(qty)
+            out[#out + 1] = fmt(px)
+            out[#out + 1] = fmt(rem)
+            out[#out + 1] = redis.call('HGET', makerKey, 'order')
+            fills = fills + 1
+        end
+        if rem <= 0 then
+            redis.call('ZREM', KEYS[1], head[1])
+        end
+    end
+end
+
+redis.call('HSET', takerKey, 'rem', fmt(remaining))
+if remaining <= 0 then
+    local takerMember = redis.call('HGET', takerKey, 'mbr')
+    if takerMember then redis.call('ZREM', KEYS[2], takerMember) end
+end
+out[1] = fmt(remaining)
+return out
@@ -0,0 +1,150 @@
+package com.ntd.exchange_crypto.asset.service;
+
+import com.ntd.exchange_crypto.asset.BalanceChange;
+import com.ntd.exchange_crypto.asset.exception.AssetErrorCode;
+import com.ntd.exchange_crypto.asset.exception.AssetException;
+import com.ntd.exchange_crypto.asset.model.Asset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AssetBalanceStoreTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private AssetBalanceStore store;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        store = new AssetBalanceStore(jdbcTemplate, 60_000);
+    }
+
+    @Test
+    void lockIsOneConditionalUpdate() {
+        when(jdbcTemplate.update(startsWith("UPDATE asset"), any(Object[].class))).thenReturn(1);
+
+        assertThat(store.tryLock("u-1", "USDT", new BigDecimal("10"))).isTrue();
+        verify(jdbcTemplate).update(startsWith("UPDATE asset"), any(Object[].class));
+    }
+
+    @Test
+    void lockRefusedByTheTableReturnsFalse() {
+        when(jdbcTemplate.update(startsWith("UPDATE asset"), any(Object[].class))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), any(Object[].class)))
+                .thenReturn(1);
+
+        assertThat(store.tryLock("u-1", "USDT", new BigDecimal("10"))).isFalse();
+    }
+
+    @Test
+    void lockOnAMissingAccountFails() {
+        when(jdbcTemplate.update(startsWith("UPDATE asset"), any(Object[].class))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), any(Object[].class)))
+                .thenReturn(0);
+
+        assertThatThrownBy(() -> store.tryLock("u-1", "USDT", BigDecimal.ONE))
+                .isInstanceOfSatisfying(AssetException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(AssetErrorCode.USER_ASSET_NOTFOUND));
+    }
+
+    @Test
+    void unlockRefusedByTheTableIsReported() {
+        when(jdbcTemplate.update(startsWith("UPDATE asset"), any(Object[].class))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), any(Object[].class)))
+                .thenReturn(1);
+
+        assertThatThrownBy(() -> store.unlock("u-1", "USDT", BigDecimal.ONE))
+                .isInstanceOfSatisfying(AssetException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(AssetErrorCode.LOCKED_BALANCE_INSUFFICIENT));
+    }
+
+    @Test
+    void creditThatMayOpenTheAccountIsAnUpsert() {
+        store.credit("u-1", "BTC", new BigDecimal("0.5"), true);
+
+        verify(jdbcTemplate).update(startsWith("INSERT INTO asset"), any(Object[].class));
+    }
+
+    @Test
+    void readsComeFromTheCacheUntilAChangeEvictsIt() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("u-1")))
+                .thenReturn(List.of(asset("100", "30")))
+                .thenReturn(List.of(asset("100", "40")));
+        when(jdbcTemplate.update(startsWith("UPDATE asset"), any(Object[].class))).thenReturn(1);
+
+        assertThat(store.available("u-1", "USDT")).isEqualByComparingTo("70");
+        assertThat(store.available("u-1", "USDT")).isEqualByComparingTo("70");
+        assertThat(store.available("u-1", "BTC")).isNull();
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), eq("u-1"));
+
+        store.tryLock("u-1", "USDT", BigDecimal.TEN);
+        assertThat(store.available("u-1", "USDT")).isEqualByComparingTo("60");
+        assertThat(store.accounts("u-1")).hasSize(1);
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class), eq("u-1"));
+    }
+
+    @Test
+    void settlementSendsCreditsAsUpsertsAndTheRestAsConditionalUpdates() {
+        BalanceChange received = new BalanceChange("u-1", "BTC", new BigDecimal("0.5"), BigDecimal.ZERO);
+        BalanceChange paid = new BalanceChange("u-1", "USDT", new BigDecimal("-100"), new BigDecimal("-100"));
+        BalanceChange sold = new BalanceChange("u-2", "BTC", new BigDecimal("-0.5"), new BigDecimal("-0.5"));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE asset"), anyList(), anyInt(), any()))
+                .thenReturn(new int[][]{{1, 1}});
+
+        store.settle(List.of(received, paid, sold));
+
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO asset"), eq(List.of(received)), eq(1), any());
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE asset"), eq(List.of(paid, sold)), eq(2), any());
+    }
+
+    @Test
+    void settlementChangesRefusedByTheTableAreReported() {
+        BalanceChange paid = new BalanceChange("u-1", "USDT", new BigDecimal("-100"), new BigDecimal("-100"));
+        BalanceChange overdrawn = new BalanceChange("u-2", "USDT", new BigDecimal("-100"), new BigDecimal("-100"));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE asset"), anyList(), anyInt(), any()))
+                .thenReturn(new int[][]{{1, 0}});
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), any(Object[].class)))
+                .thenReturn(1);
+
+        assertThatThrownBy(() -> store.settle(List.of(paid, overdrawn)))
+                .isInstanceOfSatisfying(AssetException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(AssetErrorCode.LOCKED_BALANCE_INSUFFICIENT));
+        verify(jdbcTemplate).queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), eq("u-2"), eq("USDT"));
+    }
+
+    @Test
+    void settlementOnAMissingAccountIsReported() {
+        BalanceChange paid = new BalanceChange("u-1", "USDT", new BigDecimal("-100"), new BigDecimal("-100"));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE asset"), anyList(), anyInt(), any()))
+                .thenReturn(new int[][]{{0}});
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Integer.class), any(Object[].class)))
+                .thenReturn(0);
+
+        assertThatThrownBy(() -> store.settle(List.of(paid)))
+                .isInstanceOfSatisfying(AssetException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(AssetErrorCode.USER_ASSET_NOTFOUND));
+    }
+
+    private static Asset asset(String balance, String locked) {
+        return Asset.builder().id("a-1").userId("u-1").cryptoId("USDT").balance(new BigDecimal(balance))
+                .lockedBalance(new BigDecimal(locked)).lastUpdated(Instant.now()).build();
+    }
+}
@@ -0,0 +1,82 @@
+package com.ntd.exchange_crypto.asset.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AssetKeyMigrationTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private Connection connection;
+    private AssetKeyMigration migration;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+        migration = new AssetKeyMigration(jdbcTemplate);
+    }
+
+    @Test
+    void freshDatabaseIsLeftToTheSchemaUpdate() {
+        table(0);
+
+        migration.afterPropertiesSet();
+
+        verify(jdbcTemplate, never()).update(anyString());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void existingKeyMeansNothingToDo() {
+        table(1);
+        key(1);
+
+        migration.afterPropertiesSet();
+
+        verify(jdbcTemplate, never()).update(anyString());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void duplicatesAreMergedAndCommittedBeforeTheKeyIsAdded() throws Exception {
+        table(1);
+        key(0);
+        when(jdbcTemplate.update(startsWith("UPDATE asset"))).thenReturn(1);
+        when(jdbcTemplate.update(startsWith("DELETE a"))).thenReturn(2);
+
+        migration.afterPropertiesSet();
+
+        InOrder order = inOrder(jdbcTemplate, connection);
+        order.verify(jdbcTemplate).update(startsWith("UPDATE asset"));
+        order.verify(jdbcTemplate).update(startsWith("DELETE a"));
+        order.verify(connection).commit();
+        order.verify(jdbcTemplate).execute(contains("ADD CONSTRAINT " + AssetKeyMigration.KEY_NAME));
+    }
+
+    private void table(int count) {
+        when(jdbcTemplate.queryForObject(contains("information_schema.tables"), eq(Integer.class))).thenReturn(count);
+    }
+
+    private void key(int count) {
+        when(jdbcTemplate.queryForObject(contains("information_schema.statistics"), eq(Integer.class)))
+                .thenReturn(count);
+    }
+}
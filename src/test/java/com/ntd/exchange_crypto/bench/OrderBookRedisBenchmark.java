@@ -0,0 +1,139 @@
+package com.ntd.exchange_crypto.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntd.exchange_crypto.common.BookMember;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.common.OrderIntakeStreams;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Round trips and wall time per order of the order-book mirror, unbatched (one command per call, as before
+ * {@link OrderBookRedisStore}) versus pipelined. Needs a disposable Redis: keys under {@code bench:*} are written and
+ * removed, together with the {@code order:bench-*} hashes.
+ * <p>
+ * Run: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ntd.exchange_crypto.bench.OrderBookRedisBenchmark} (REDIS_HOST / REDIS_PORT, default
+ * localhost:6379).
+ * <p>
+ * Per order (place, read the 50 best counter orders, remove when filled):
+ * unbatched = HSET + ZADD + ZRANGE + 50 HGET + DEL + ZREM = 55 round trips;
+ * pipelined = 1 + (ZRANGE + 1 pipeline) + 1 = 4 round trips.
+ */
+public class OrderBookRedisBenchmark {
+
+    private static final int ORDERS = 2_000;
+    private static final int COUNTER_ORDERS = 50;
+
+    public static void main(String[] args) {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"))));
+        factory.afterPropertiesSet();
+        RedisTemplate<String, Object> template = template(factory);
+        RedisTemplate<String, byte[]> bytesTemplate = bytesTemplate(factory);
+        OrderBookRedisStore store = new OrderBookRedisStore(bytesTemplate, new OrderIntakeStreams(bytesTemplate));
+
+        String askKey = "bench:orderbook:BTC-USDT:ask";
+        String bidKey = "bench:orderbook:BTC-USDT:bid";
+        // Book đối ứng cố định để đo phần đọc
+        for (int i = 0; i < COUNTER_ORDERS; i++) {
+            store.addOrder("bench-ask-" + i, Map.of("order", payload("bench-ask-" + i)), askKey,
+                    BookMember.of(false, i, Instant.now(), "bench-ask-" + i));
+        }
+
+        try {
+            long[] unbatched = run(() -> {
+                String id = "bench-" + UUID.randomUUID();
+                template.opsForHash().put("order:" + id, "order", "{\"id\":\"" + id + "\"}");
+                template.opsForZSet().add(bidKey, id, 1);
+                Set<Object> ids = template.opsForZSet().range(askKey, 0, COUNTER_ORDERS - 1);
+                for (Object counterId : ids) {
+                    template.opsForHash().get("order:" + counterId, "order");
+                }
+                template.delete("order:" + id);
+                template.opsForZSet().remove(bidKey, id);
+                return 5 + ids.size();
+            });
+
+            long[] pipelined = run(() -> {
+                long before = store.roundTrips();
+                String id = "bench-" + UUID.randomUUID();
+                store.addOrder(id, Map.of("order", payload(id)), bidKey, BookMember.of(true, 1, Instant.now(), id));
+                store.topOrders(askKey, COUNTER_ORDERS);
+                store.removeOrder(id, bidKey);
+                return store.roundTrips() - before;
+            });
+
+            report("unbatched", unbatched);
+            report("pipelined", pipelined);
+        } finally {
+            for (int i = 0; i < COUNTER_ORDERS; i++) {
+                store.removeOrder("bench-ask-" + i, askKey);
+            }
+            factory.destroy();
+        }
+    }
+
+    // {elapsedNanos, roundTrips}
+    private static long[] run(Workload workload) {
+        for (int i = 0; i < ORDERS / 10; i++) {
+            workload.run();
+        }
+        long roundTrips = 0;
+        long started = System.nanoTime();
+        for (int i = 0; i < ORDERS; i++) {
+            roundTrips += workload.run();
+        }
+        return new long[]{System.nanoTime() - started, roundTrips};
+    }
+
+    private static void report(String name, long[] result) {
+        System.out.printf("%-10s %6.1f round trips/order  %8.1f us/order%n",
+                name, (double) result[1] / ORDERS, result[0] / 1_000.0 / ORDERS);
+    }
+
+    private static byte[] payload(String id) {
+        return ("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static RedisTemplate<String, byte[]> bytesTemplate(LettuceConnectionFactory factory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    static RedisTemplate<String, Object> template(LettuceConnectionFactory factory) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        Jackson2JsonRedisSerializer<Object> serializer =
+                new Jackson2JsonRedisSerializer<>(new ObjectMapper().findAndRegisterModules(), Object.class);
+        template.setValueSerializer(serializer);
+        template.setHashValueSerializer(serializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @FunctionalInterface
+    private interface Workload {
+        // Trả về số round trip đã gửi
+        long run();
+    }
+}
@@ -0,0 +1,118 @@
+package com.ntd.exchange_crypto.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.order.OrderCodec;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-order Redis footprint of the order-book mirror, Jackson JSON (as before {@link OrderCodec}) versus the binary
+ * codec: encoded sizes of the {@code order} hash field and of the pub/sub payload, then, when a Redis is reachable,
+ * {@code MEMORY USAGE} of {@code order:<id>} hashes written both ways. Keys under {@code order:bench-fp-*} are
+ * written and removed.
+ * <p>
+ * Run: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ntd.exchange_crypto.bench.OrderRedisFootprintReport} (REDIS_HOST / REDIS_PORT, default
+ * localhost:6379).
+ */
+public class OrderRedisFootprintReport {
+
+    private static final int ORDERS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        Jackson2JsonRedisSerializer<Object> jackson = new Jackson2JsonRedisSerializer<>(objectMapper, Object.class);
+
+        Order order = sample();
+        // Hash field cũ: chuỗi JSON đi qua Jackson serializer thêm một lần nữa
+        byte[] jsonField = jackson.serialize(objectMapper.writeValueAsString(order));
+        byte[] jsonMessage = jackson.serialize(order);
+        byte[] binary = OrderCodec.encode(order);
+
+        System.out.printf("order field     json %4d B  binary %4d B  (-%d%%)%n",
+                jsonField.length, binary.length, 100 - 100 * binary.length / jsonField.length);
+        System.out.printf("pub/sub payload json %4d B  binary %4d B  (-%d%%)%n",
+                jsonMessage.length, binary.length, 100 - 100 * binary.length / jsonMessage.length);
+
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"))));
+        factory.afterPropertiesSet();
+        RedisTemplate<String, Object> template = OrderBookRedisBenchmark.template(factory);
+        RedisTemplate<String, byte[]> bytesTemplate = OrderBookRedisBenchmark.bytesTemplate(factory);
+        try {
+            long json = 0;
+            long compact = 0;
+            for (int i = 0; i < ORDERS; i++) {
+                Order next = sample();
+                String jsonKey = OrderBookRedisStore.orderKey("bench-fp-json-" + i);
+                String binaryKey = OrderBookRedisStore.orderKey("bench-fp-bin-" + i);
+
+                Map<String, Object> jsonFields = new HashMap<>();
+                jsonFields.put("order", objectMapper.writeValueAsString(next));
+                jsonFields.put("px", 6_512_345_000_000L);
+                jsonFields.put("rem", 12_500_000L);
+                template.opsForHash().putAll(jsonKey, jsonFields);
+
+                Map<String, byte[]> binaryFields = new HashMap<>();
+                binaryFields.put("order", OrderCodec.encode(next));
+                binaryFields.put("px", OrderBookRedisStore.number(6_512_345_000_000L));
+                binaryFields.put("rem", OrderBookRedisStore.number(12_500_000L));
+                bytesTemplate.opsForHash().putAll(binaryKey, binaryFields);
+
+                json += memoryUsage(template, jsonKey);
+                compact += memoryUsage(template, binaryKey);
+                template.delete(jsonKey);
+                template.delete(binaryKey);
+            }
+            System.out.printf("MEMORY USAGE    json %4d B  binary %4d B  per order:<id> hash (avg of %d)%n",
+                    json / ORDERS, compact / ORDERS, ORDERS);
+        } catch (Exception e) {
+            System.out.println("Redis not reachable, MEMORY USAGE skipped: " + e.getMessage());
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static long memoryUsage(RedisTemplate<String, Object> template, String key) {
+        Object reply = template.execute((RedisCallback<Object>) connection -> connection.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.US_ASCII), key.getBytes(StandardCharsets.UTF_8)));
+        if (reply instanceof Number number) return number.longValue();
+        return Long.parseLong(new String((byte[]) reply, StandardCharsets.US_ASCII));
+    }
+
+    private static Order sample() {
+        Instant now = Instant.now();
+        return Order.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(UUID.randomUUID().toString())
+                .getCryptoId("BTC")
+                .giveCryptoId("USDT")
+                .quantity(new BigDecimal("0.12500000"))
+                .price(new BigDecimal("65123.45000000"))
+                .filledQuantity(BigDecimal.ZERO)
+                .createdAt(now)
+                .updatedAt(now)
+                .side(Side.BID)
+                .type(OrderType.LIMIT)
+                .status(OrderStatus.PENDING)
+                .timeInForce(TimeInForce.GTC)
+                .build();
+    }
+}
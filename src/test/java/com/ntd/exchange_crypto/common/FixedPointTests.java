@@ -0,0 +1,54 @@
+package com.ntd.exchange_crypto.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FixedPointTests {
+
+    @Test
+    void convertsBothWays() {
+        assertThat(FixedPoint.toLong(new BigDecimal("65000.12"), 2)).isEqualTo(6_500_012L);
+        assertThat(FixedPoint.toBigDecimal(6_500_012L, 2)).isEqualByComparingTo("65000.12");
+        assertThat(FixedPoint.toLong(null, 8)).isZero();
+    }
+
+    @Test
+    void truncatesDigitsBeyondScale() {
+        assertThat(FixedPoint.toLong(new BigDecimal("0.123456789"), 8)).isEqualTo(12_345_678L);
+        assertThat(FixedPoint.toLong(new BigDecimal("-0.129"), 2)).isEqualTo(-12L);
+        assertThat(FixedPoint.normalize(new BigDecimal("1.239"), 2)).isEqualTo(new BigDecimal("1.23"));
+        assertThat(FixedPoint.normalize(null, 2)).isNull();
+    }
+
+    @Test
+    void multiplyKeepsTheScaleOfTheFirstOperand() {
+        // 65000.00 x 0.001 BTC = 65.00
+        assertThat(FixedPoint.multiply(6_500_000L, 1L, 3)).isEqualTo(6_500L);
+        // 1.5 x 2.5 = 3.75 (scale 1 x scale 1 -> /10)
+        assertThat(FixedPoint.multiply(15L, 25L, 1)).isEqualTo(37L);
+    }
+
+    @Test
+    void multiplyFallsBackToBigIntegerOnOverflow() {
+        long price = FixedPoint.toLong(new BigDecimal("90000000"), 8);
+        long quantity = FixedPoint.toLong(new BigDecimal("50"), 8);
+        assertThat(FixedPoint.multiply(price, quantity, 8)).isEqualTo(FixedPoint.toLong(new BigDecimal("4500000000"), 8));
+        assertThat(FixedPoint.multiply(-price, quantity, 8)).isEqualTo(-FixedPoint.toLong(new BigDecimal("4500000000"), 8));
+    }
+
+    @Test
+    void rejectsValuesThatDoNotFitALong() {
+        assertThatThrownBy(() -> FixedPoint.toLong(new BigDecimal("1e12"), 8)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void powersOfTen() {
+        assertThat(FixedPoint.pow10(0)).isEqualTo(1L);
+        assertThat(FixedPoint.pow10(8)).isEqualTo(100_000_000L);
+        assertThat(FixedPoint.pow10(18)).isEqualTo(1_000_000_000_000_000_000L);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ntd.exchange_crypto.order;
+
+import com.ntd.exchange_crypto.common.OrderTrace;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderCodecTests {
+
+    @Test
+    void binaryFormRoundTripsEveryField() {
+        Order order = order(UUID.randomUUID().toString());
+
+        byte[] encoded = OrderCodec.encode(order);
+
+        assertThat(OrderCodec.isBinary(encoded)).isTrue();
+        assertThat(OrderCodec.decode(encoded)).usingRecursiveComparison().isEqualTo(order);
+    }
+
+    @Test
+    void nonUuidIdsAndNullFieldsRoundTrip() {
+        Order order = Order.builder().id("legacy-42").side(Side.ASK).type(OrderType.MARKET).build();
+
+        assertThat(OrderCodec.decode(OrderCodec.encode(order))).usingRecursiveComparison().isEqualTo(order);
+    }
+
+    @Test
+    void messageFormCarriesTheTrace() {
+        Order order = order(UUID.randomUUID().toString());
+        order.setTrace(OrderTrace.resume(1_000L, 2_000L));
+
+        Order decoded = OrderCodec.decode(OrderCodec.encodeMessage(order));
+
+        assertThat(decoded.getTrace()).isNotNull();
+        assertThat(decoded.getTrace().received()).isEqualTo(1_000L);
+        assertThat(decoded.getTrace().last()).isEqualTo(2_000L);
+        // Dạng lưu Redis không mang trace
+        assertThat(OrderCodec.decode(OrderCodec.encode(order)).getTrace()).isNull();
+    }
+
+    @Test
+    void readsLegacyJson() {
+        String json = """
+                {"id":"o-1","userId":"u-1","getCryptoId":"BTC","giveCryptoId":"USDT","quantity":0.5,
+                 "price":65000.10,"side":"BID","type":"LIMIT","status":"NEW","filledQuantity":0}""";
+
+        Order decoded = OrderCodec.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(OrderCodec.isBinary(json.getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(decoded.getId()).isEqualTo("o-1");
+        assertThat(decoded.getPrice()).isEqualByComparingTo("65000.10");
+        assertThat(decoded.getSide()).isEqualTo(Side.BID);
+    }
+
+    @Test
+    void emptyInputDecodesToNull() {
+        assertThat(OrderCodec.decode(null)).isNull();
+        assertThat(OrderCodec.decode(new byte[0])).isNull();
+    }
+
+    private static Order order(String id) {
+        return Order.builder()
+                .id(id)
+                .userId(UUID.randomUUID().toString())
+                .getCryptoId("BTC")
+                .giveCryptoId("USDT")
+                .quantity(new BigDecimal("0.25000000"))
+                .price(new BigDecimal("65000.10"))
+                .filledQuantity(new BigDecimal("0.1"))
+                .side(Side.BID)
+                .type(OrderType.TRAILING_STOP)
+                .status(OrderStatus.PARTIALLY_FILLED)
+                .timeInForce(TimeInForce.GTD)
+                .createdAt(Instant.ofEpochMilli(1_700_000_000_123L))
+                .updatedAt(Instant.ofEpochMilli(1_700_000_000_456L))
+                .expiresAt(Instant.ofEpochMilli(1_700_086_400_000L))
+                .stopPrice(new BigDecimal("64000"))
+                .trailOffset(new BigDecimal("150.5"))
+                .build();
+    }
+}
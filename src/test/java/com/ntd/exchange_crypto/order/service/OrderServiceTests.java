@@ -0,0 +1,129 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntd.exchange_crypto.asset.AssetExternalAPI;
+import com.ntd.exchange_crypto.asset.BalanceChange;
+import com.ntd.exchange_crypto.common.OrderBookRedisStore;
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.mapper.OrderMapper;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.order.repository.OrderRepository;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
+import com.ntd.exchange_crypto.trade.OrderBookStatsService;
+import com.ntd.exchange_crypto.user.UserExternalAPI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderServiceTests {
+
+    private OrderRepository orderRepository;
+    private AssetExternalAPI assetExternalAPI;
+    private OrderBookRedisStore orderBookRedisStore;
+    private Consumer<List<OrderSettlement.Settlement>> settler;
+
+    private final Order buyer = order("buy", "u-1", Side.BID, "USDT", "BTC");
+    private final Order seller = order("sell", "u-2", Side.ASK, "BTC", "USDT");
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        assetExternalAPI = mock(AssetExternalAPI.class);
+        orderBookRedisStore = mock(OrderBookRedisStore.class);
+        OrderSettlement orderSettlement = mock(OrderSettlement.class);
+        OrderService orderService = new OrderService(mock(RedisTemplate.class), new ObjectMapper(),
+                mock(ApplicationEventPublisher.class), mock(UserExternalAPI.class), orderRepository, assetExternalAPI,
+                mock(OrderBookStatsService.class), mock(OrderMapper.class), mock(CryptoExternalAPI.class),
+                orderBookRedisStore, mock(OrderLatencyMonitor.class), mock(MarketDepthService.class), orderSettlement);
+
+        when(orderRepository.findAllById(any())).thenReturn(List.of(buyer, seller));
+        when(orderRepository.findById("buy")).thenReturn(Optional.of(buyer));
+
+        // Lấy settler mà OrderService giao cho settlement stage, gọi trực tiếp như một batch
+        orderService.startSettlement();
+        ArgumentCaptor<Consumer<List<OrderSettlement.Settlement>>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(orderSettlement).start(captor.capture());
+        settler = captor.getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void consecutiveFillsAreNettedPerAccount() {
+        settler.accept(List.of(
+                fill("buy", OrderStatus.PARTIALLY_FILLED, "1", "100"),
+                fill("sell", OrderStatus.PARTIALLY_FILLED, "1", "100"),
+                fill("buy", OrderStatus.FILLED, "1", "99"),
+                fill("sell", OrderStatus.FILLED, "1", "99")));
+
+        ArgumentCaptor<List<BalanceChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(assetExternalAPI).settleBalances(changes.capture());
+        assertThat(changes.getValue()).containsExactly(
+                // Trả 199 đã lock, lệnh mua đã khớp hết -> mở lock nốt 2 * (100 - 99)
+                new BalanceChange("u-1", "USDT", new BigDecimal("-199"), new BigDecimal("-201")),
+                new BalanceChange("u-1", "BTC", new BigDecimal("2"), BigDecimal.ZERO),
+                new BalanceChange("u-2", "BTC", new BigDecimal("-2"), new BigDecimal("-2")),
+                new BalanceChange("u-2", "USDT", new BigDecimal("199"), BigDecimal.ZERO));
+
+        assertThat(buyer.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(buyer.getFilledQuantity()).isEqualByComparingTo("2");
+        assertThat(seller.getFilledQuantity()).isEqualByComparingTo("2");
+        verify(orderRepository).saveAll(any());
+        verify(orderBookRedisStore, times(2)).removeOrder(any(), any());
+    }
+
+    @Test
+    void releaseSettlesAfterTheFillsBeforeIt() {
+        buyer.setStatus(OrderStatus.CANCELED);
+        settler.accept(List.of(
+                fill("sell", OrderStatus.PARTIALLY_FILLED, "1", "100"),
+                new OrderSettlement.Release("s", 2, 0, buyer),
+                fill("sell", OrderStatus.FILLED, "1", "100")));
+
+        InOrder order = inOrder(assetExternalAPI);
+        order.verify(assetExternalAPI).settleBalances(anyList());
+        order.verify(assetExternalAPI).unlockBalance("u-1", "USDT", new BigDecimal("200"));
+        order.verify(assetExternalAPI).settleBalances(anyList());
+    }
+
+    @Test
+    void pendingFillOnlyMovesTheStatus() {
+        settler.accept(List.of(fill("buy", OrderStatus.PENDING, "0", "0")));
+
+        verify(assetExternalAPI, never()).settleBalances(anyList());
+        assertThat(buyer.getStatus()).isEqualTo(OrderStatus.PENDING);
+        assertThat(buyer.getFilledQuantity()).isEqualByComparingTo("0");
+    }
+
+    private static OrderSettlement.Fill fill(String orderId, OrderStatus status, String quantity, String price) {
+        return new OrderSettlement.Fill("s", 1, 0, orderId, status, new BigDecimal(quantity), new BigDecimal(price));
+    }
+
+    private static Order order(String id, String userId, Side side, String give, String get) {
+        return Order.builder().id(id).userId(userId).side(side).type(OrderType.LIMIT).status(OrderStatus.NEW)
+                .giveCryptoId(give).getCryptoId(get).price(new BigDecimal("100")).quantity(new BigDecimal("2"))
+                .filledQuantity(BigDecimal.ZERO).build();
+    }
+}
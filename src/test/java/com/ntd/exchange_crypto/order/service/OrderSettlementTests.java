@@ -0,0 +1,180 @@
+package com.ntd.exchange_crypto.order.service;
+
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.order.model.SettlementWatermark;
+import com.ntd.exchange_crypto.order.repository.FailedSettlementRepository;
+import com.ntd.exchange_crypto.order.repository.SettlementWatermarkRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderSettlementTests {
+
+    private static final String STREAM = "journal-1/BTC-USDT";
+
+    private FailedSettlementRepository failedSettlementRepository;
+    // Bảng settlement_watermark giả: lưu bản sao như một bảng thật
+    private final Map<String, SettlementWatermark> watermarks = new ConcurrentHashMap<>();
+    private final List<String> settled = Collections.synchronizedList(new ArrayList<>());
+    private OrderSettlement settlement;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        failedSettlementRepository = mock(FailedSettlementRepository.class);
+        SettlementWatermarkRepository watermarkRepository = mock(SettlementWatermarkRepository.class);
+        when(watermarkRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<SettlementWatermark> found = new ArrayList<>();
+            for (String stream : invocation.<Iterable<String>>getArgument(0)) {
+                SettlementWatermark watermark = watermarks.get(stream);
+                if (watermark != null) found.add(copy(watermark));
+            }
+            return found;
+        });
+        when(watermarkRepository.saveAll(any())).thenAnswer(invocation -> {
+            for (SettlementWatermark watermark : invocation.<Iterable<SettlementWatermark>>getArgument(0)) {
+                watermarks.put(watermark.getStream(), copy(watermark));
+            }
+            return List.of();
+        });
+        settlement = new OrderSettlement(transactionManager, failedSettlementRepository, watermarkRepository,
+                1024, 100, 20);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        settlement.stop();
+    }
+
+    @Test
+    void resultsAtOrBeforeTheWatermarkAreSettledOnce() throws InterruptedException {
+        settlement.start(record(batch -> {
+        }));
+        settlement.fill(STREAM, 1, 0, order("a"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 1, 1, order("b"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 2, 0, order("c"), BigDecimal.ONE, BigDecimal.TEN);
+        // Engine gửi lại sau restart: phần đã settle bị bỏ, phần mới vẫn áp
+        settlement.fill(STREAM, 1, 1, order("b"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 2, 0, order("c"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 3, 0, order("d"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.stop();
+
+        assertThat(settled).containsExactly("a", "b", "c", "d");
+        assertThat(watermarks.get(STREAM).getSeq()).isEqualTo(3);
+        assertThat(watermarks.get(STREAM).getItem()).isZero();
+        assertThat(settlement.unsettled(STREAM)).isEmpty();
+    }
+
+    @Test
+    void resultsWithoutSequenceAreNotTracked() throws InterruptedException {
+        settlement.start(record(batch -> {
+        }));
+        settlement.fill(null, 0, 0, order("a"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(null, 0, 0, order("a"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.stop();
+
+        assertThat(settled).containsExactly("a", "a");
+        assertThat(watermarks).isEmpty();
+    }
+
+    @Test
+    void failingItemIsParkedAndCountsAsSettled() throws InterruptedException {
+        settlement.start(record(batch -> {
+            if (batch.stream().anyMatch(s -> s instanceof OrderSettlement.Fill f && f.orderId().equals("bad"))) {
+                throw new IllegalStateException("broken order");
+            }
+        }));
+        settlement.fill(STREAM, 1, 0, order("a"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 2, 0, order("bad"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.fill(STREAM, 3, 0, order("c"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.stop();
+        settlement.start(record(batch -> {
+        }));
+        settlement.fill(STREAM, 2, 0, order("bad"), BigDecimal.ONE, BigDecimal.TEN);
+        settlement.stop();
+
+        assertThat(settlement.parked()).isEqualTo(1);
+        verify(failedSettlementRepository).save(any());
+        assertThat(settled).doesNotContain("bad").contains("a", "c");
+        assertThat(watermarks.get(STREAM).getSeq()).isEqualTo(3);
+    }
+
+    @Test
+    void unsettledResultsSurviveEncodingUntilCommitted() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        settlement.start(record(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        Order order = order("a");
+        order.setStatus(OrderStatus.CANCELED);
+        settlement.fill(STREAM, 1, 0, order("f"), new BigDecimal("0.5"), new BigDecimal("65000.10"));
+        settlement.release(STREAM, 1, 1, order);
+        settlement.amend(STREAM, 2, 0, order, new BigDecimal("64000"), null, BigDecimal.ONE);
+
+        List<byte[]> unsettled = settlement.unsettled(STREAM);
+        assertThat(unsettled).hasSize(3);
+        assertThat(OrderSettlement.decode(unsettled.get(0)))
+                .isEqualTo(new OrderSettlement.Fill(STREAM, 1, 0, "f", OrderStatus.PARTIALLY_FILLED,
+                        new BigDecimal("0.5"), new BigDecimal("65000.10")));
+        OrderSettlement.Release decodedRelease = (OrderSettlement.Release) OrderSettlement.decode(unsettled.get(1));
+        assertThat(decodedRelease.item()).isEqualTo(1);
+        assertThat(decodedRelease.order()).usingRecursiveComparison().isEqualTo(order);
+        OrderSettlement.Amend decodedAmend = (OrderSettlement.Amend) OrderSettlement.decode(unsettled.get(2));
+        assertThat(decodedAmend.seq()).isEqualTo(2);
+        assertThat(decodedAmend.previousPrice()).isEqualTo(new BigDecimal("64000"));
+        assertThat(decodedAmend.previousQuantity()).isNull();
+        assertThat(decodedAmend.reserved()).isEqualTo(BigDecimal.ONE);
+
+        release.countDown();
+        settlement.stop();
+        assertThat(settlement.unsettled(STREAM)).isEmpty();
+    }
+
+    private Consumer<List<OrderSettlement.Settlement>> record(Consumer<List<OrderSettlement.Settlement>> settler) {
+        return batch -> {
+            settler.accept(batch);
+            for (OrderSettlement.Settlement item : batch) {
+                settled.add(switch (item) {
+                    case OrderSettlement.Fill fill -> fill.orderId();
+                    case OrderSettlement.Release r -> r.order().getId();
+                    case OrderSettlement.Amend a -> a.order().getId();
+                });
+            }
+        };
+    }
+
+    private static SettlementWatermark copy(SettlementWatermark watermark) {
+        return new SettlementWatermark(watermark.getStream(), watermark.getSeq(), watermark.getItem());
+    }
+
+    private static Order order(String id) {
+        return Order.builder().id(id).userId("u-" + id).getCryptoId("BTC").giveCryptoId("USDT").side(Side.BID)
+                .type(OrderType.LIMIT).status(OrderStatus.PARTIALLY_FILLED).price(new BigDecimal("65000"))
+                .quantity(BigDecimal.ONE).filledQuantity(BigDecimal.ZERO).build();
+    }
+}
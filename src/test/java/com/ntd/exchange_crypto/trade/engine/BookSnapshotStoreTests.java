@@ -0,0 +1,202 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookSnapshotStoreTests {
+
+    private static final String PAIR = "BTC-USDT";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void currentVersionRoundTripsTheWholeBook() {
+        OrderBook book = new OrderBook(PAIR, 2, 3);
+        book.add(limit("ask-1", Side.ASK, "65010.00"));
+        book.add(limit("ask-2", Side.ASK, "65010.00"));
+        book.add(limit("bid-1", Side.BID, "64990.00"));
+        book.armTimer("bid-1");
+        book.recordTrade(6_500_000);
+        book.triggers().add(conditional("stop-1", Side.ASK, "64000.00"));
+        book.trailingStops().add(trailing("trail-1"), 6_510_000);
+        book.cancelEarly("late-1");
+        PendingResults pending = new PendingResults(List.of(new byte[]{1, 2, 3}), List.of(new byte[]{4}, new byte[0]));
+
+        new BookSnapshotStore(dir.toString()).write(book, 42, pending);
+        BookSnapshotStore.BookSnapshot snapshot = readOnly();
+
+        OrderBook read = snapshot.book();
+        assertThat(snapshot.watermark()).isEqualTo(42);
+        assertThat(read.getPairId()).isEqualTo(PAIR);
+        assertThat(read.getPriceScale()).isEqualTo(2);
+        assertThat(read.getQuantityScale()).isEqualTo(3);
+        assertThat(read.level(Side.ASK, 6_501_000).entries()).extracting(e -> e.getOrder().getId())
+                .containsExactly("ask-1", "ask-2");
+        assertThat(read.best(Side.BID).getPrice()).isEqualTo(6_499_000);
+        assertThat(read.armedTimers()).containsExactly("bid-1");
+        assertThat(read.lastTradePrice()).isEqualTo(6_500_000);
+        assertThat(read.takePriceMove()).isFalse();
+        assertThat(read.triggers().contains("stop-1")).isTrue();
+        assertThat(read.trailingStops().watermark("trail-1")).isEqualTo(6_510_000);
+        assertThat(read.earlyCancels()).containsExactly("late-1");
+        assertThat(snapshot.pending().settlements()).containsExactly(new byte[]{1, 2, 3});
+        assertThat(snapshot.pending().trades()).containsExactly(new byte[]{4}, new byte[0]);
+    }
+
+    @Test
+    void largeBooksSpanSeveralWriteBuffers() {
+        OrderBook book = new OrderBook(PAIR, 2, 3);
+        for (int i = 0; i < 5_000; i++) {
+            book.add(limit("ask-" + i, Side.ASK, BigDecimal.valueOf(65_000 + i % 100).toPlainString()));
+        }
+        byte[] blob = new byte[10_000];
+        Arrays.fill(blob, (byte) 7);
+
+        new BookSnapshotStore(dir.toString()).write(book, 1, new PendingResults(List.of(blob, blob), List.of()));
+        BookSnapshotStore.BookSnapshot snapshot = readOnly();
+
+        assertThat(snapshot.book().size()).isEqualTo(5_000);
+        assertThat(snapshot.pending().settlements()).hasSize(2).allSatisfy(b -> assertThat(b).isEqualTo(blob));
+    }
+
+    // v1 gốc: chỉ order + timer
+    @Test
+    void readsOriginalVersionOneLayout() throws IOException {
+        ByteBuffer buf = header(1);
+        buf.putInt(0);
+        writeFile(buf);
+
+        BookSnapshotStore.BookSnapshot snapshot = readOnly();
+        assertThat(snapshot.book().size()).isEqualTo(1);
+        assertThat(snapshot.book().armedTimers()).isEmpty();
+        assertThat(snapshot.book().lastTradePrice()).isZero();
+        assertThat(snapshot.pending().isEmpty()).isTrue();
+    }
+
+    // v1 ghi sau khi có lệnh điều kiện: + giá khớp cuối + trigger
+    @Test
+    void readsVersionOneWithTriggers() throws IOException {
+        ByteBuffer buf = header(1);
+        buf.putInt(1);
+        EngineCodec.writeString(buf, "bid-1");
+        buf.putLong(6_500_000);
+        buf.putInt(1);
+        EngineCodec.writeOrder(buf, conditional("stop-1", Side.ASK, "64000.00"));
+        writeFile(buf);
+
+        OrderBook book = readOnly().book();
+        assertThat(book.armedTimers()).containsExactly("bid-1");
+        assertThat(book.lastTradePrice()).isEqualTo(6_500_000);
+        assertThat(book.triggers().contains("stop-1")).isTrue();
+        assertThat(book.trailingStops().size()).isZero();
+    }
+
+    @Test
+    void readsVersionTwoWithTrailingStops() throws IOException {
+        ByteBuffer buf = header(2);
+        buf.putInt(0);
+        buf.putLong(6_500_000);
+        buf.putInt(0);
+        buf.putInt(1);
+        EngineCodec.writeOrder(buf, trailing("trail-1"));
+        buf.putLong(6_520_000);
+        writeFile(buf);
+
+        OrderBook book = readOnly().book();
+        assertThat(book.trailingStops().watermark("trail-1")).isEqualTo(6_520_000);
+        assertThat(book.earlyCancels()).isEmpty();
+    }
+
+    @Test
+    void readsVersionThreeWithEarlyCancels() throws IOException {
+        ByteBuffer buf = header(3);
+        buf.putInt(0);
+        buf.putLong(0);
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putInt(2);
+        EngineCodec.writeString(buf, "late-1");
+        EngineCodec.writeString(buf, "late-2");
+        writeFile(buf);
+
+        BookSnapshotStore.BookSnapshot snapshot = readOnly();
+        assertThat(snapshot.book().earlyCancels()).containsExactlyInAnyOrder("late-1", "late-2");
+        assertThat(snapshot.pending()).isSameAs(PendingResults.NONE);
+    }
+
+    @Test
+    void unreadableFilesAreReportedByPair() throws IOException {
+        new BookSnapshotStore(dir.toString()).write(new OrderBook(PAIR, 2, 3), 7, PendingResults.NONE);
+        Files.write(dir.resolve("snapshots").resolve("ETH-USDT.snap"), new byte[]{1, 2, 3});
+        ByteBuffer future = ByteBuffer.allocate(8).putInt(0x45534E50).putShort((short) 99);
+        Files.write(dir.resolve("snapshots").resolve("SOL-USDT.snap"), Arrays.copyOf(future.array(), future.position()));
+
+        Set<String> unreadable = new HashSet<>();
+        List<BookSnapshotStore.BookSnapshot> snapshots = new BookSnapshotStore(dir.toString()).readAll(unreadable);
+
+        assertThat(snapshots).extracting(s -> s.book().getPairId()).containsExactly(PAIR);
+        assertThat(unreadable).containsExactlyInAnyOrder("ETH-USDT", "SOL-USDT");
+    }
+
+    // Header + một order ask nghỉ ở 65010.00, như mọi version
+    private static ByteBuffer header(int version) {
+        ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+        buf.putInt(0x45534E50);
+        buf.putShort((short) version);
+        EngineCodec.writeString(buf, PAIR);
+        buf.putInt(2);
+        buf.putInt(3);
+        buf.putLong(9);
+        buf.putInt(1);
+        EngineCodec.writeOrder(buf, limit("ask-1", Side.ASK, "65010.00"));
+        return buf;
+    }
+
+    private void writeFile(ByteBuffer buf) throws IOException {
+        Path snapshots = Files.createDirectories(dir.resolve("snapshots"));
+        Files.write(snapshots.resolve(PAIR + ".snap"), Arrays.copyOf(buf.array(), buf.position()));
+    }
+
+    private BookSnapshotStore.BookSnapshot readOnly() {
+        Set<String> unreadable = new HashSet<>();
+        List<BookSnapshotStore.BookSnapshot> snapshots = new BookSnapshotStore(dir.toString()).readAll(unreadable);
+        assertThat(unreadable).isEmpty();
+        assertThat(snapshots).hasSize(1);
+        return snapshots.get(0);
+    }
+
+    private static Order limit(String id, Side side, String price) {
+        return Order.builder().id(id).userId("u-" + id).side(side).type(OrderType.LIMIT).status(OrderStatus.NEW)
+                .price(new BigDecimal(price)).quantity(new BigDecimal("1.000")).filledQuantity(BigDecimal.ZERO)
+                .build();
+    }
+
+    private static Order conditional(String id, Side side, String stopPrice) {
+        return Order.builder().id(id).userId("u-" + id).side(side).type(OrderType.STOP_LOSS)
+                .status(OrderStatus.PENDING).quantity(new BigDecimal("1.000")).filledQuantity(BigDecimal.ZERO)
+                .stopPrice(new BigDecimal(stopPrice)).build();
+    }
+
+    private static Order trailing(String id) {
+        return Order.builder().id(id).userId("u-" + id).side(Side.ASK).type(OrderType.TRAILING_STOP)
+                .status(OrderStatus.PENDING).quantity(new BigDecimal("1.000")).filledQuantity(BigDecimal.ZERO)
+                .trailOffset(new BigDecimal("100.00")).build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.Side;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DepthIndexTests {
+
+    // Giá scale 2, khối lượng scale 3: 100.00 -> 10_000, 1.000 -> 1_000
+    private final DepthIndex depth = new DepthIndex(2, 3);
+
+    @Test
+    void buyTakesAsksFromTheLowestPrice() {
+        depth.addInternal(Side.ASK, 10_100, 1_000);
+        depth.addInternal(Side.ASK, 10_000, 1_000);
+        depth.addInternal(Side.ASK, 10_200, 1_000);
+
+        DepthIndex.Fill fill = depth.quote(Side.BID, 1_500, 0);
+
+        assertThat(fill.filled()).isEqualTo(1_500);
+        // 1 x 100.00 + 0.5 x 101.00
+        assertThat(fill.notional()).isEqualTo(15_050);
+        assertThat(fill.bestPrice()).isEqualTo(10_000);
+        assertThat(fill.worstPrice()).isEqualTo(10_100);
+        assertThat(fill.levels()).isEqualTo(2);
+    }
+
+    @Test
+    void sellTakesBidsFromTheHighestPrice() {
+        depth.addInternal(Side.BID, 9_900, 1_000);
+        depth.addInternal(Side.BID, 9_800, 1_000);
+
+        DepthIndex.Fill fill = depth.quote(Side.ASK, 1_000, 0);
+
+        assertThat(fill.notional()).isEqualTo(9_900);
+        assertThat(fill.worstPrice()).isEqualTo(9_900);
+    }
+
+    @Test
+    void stopsAtTheLimitPriceOrWhenDepthRunsOut() {
+        depth.addInternal(Side.ASK, 10_000, 1_000);
+        depth.addInternal(Side.ASK, 10_100, 1_000);
+
+        DepthIndex.Fill limited = depth.quote(Side.BID, 5_000, 10_000);
+        assertThat(limited.filled()).isEqualTo(1_000);
+        assertThat(limited.levels()).isEqualTo(1);
+
+        DepthIndex.Fill exhausted = depth.quote(Side.BID, 5_000, 0);
+        assertThat(exhausted.requested()).isEqualTo(5_000);
+        assertThat(exhausted.filled()).isEqualTo(2_000);
+    }
+
+    @Test
+    void internalAndExternalLevelsAddUpAndInternalCountsFirst() {
+        depth.addInternal(Side.ASK, 10_000, 400);
+        depth.replaceExternal(Side.ASK, new long[]{10_000, 10_100}, new long[]{600, 1_000});
+
+        assertThat(depth.levelCount(Side.ASK)).isEqualTo(2);
+        DepthIndex.Fill fill = depth.quote(Side.BID, 500, 0);
+        assertThat(fill.internalFilled()).isEqualTo(400);
+
+        // Snapshot mới thay hẳn snapshot cũ
+        depth.replaceExternal(Side.ASK, new long[]{10_200}, new long[]{1_000});
+        assertThat(depth.levelCount(Side.ASK)).isEqualTo(2);
+        assertThat(depth.quote(Side.BID, 2_000, 0).filled()).isEqualTo(1_400);
+
+        depth.clearInternal();
+        assertThat(depth.levelCount(Side.ASK)).isEqualTo(1);
+        assertThat(depth.quote(Side.BID, 2_000, 0).bestPrice()).isEqualTo(10_200);
+    }
+
+    @Test
+    void removingALevelsQuantityRemovesTheLevel() {
+        depth.addInternal(Side.BID, 9_900, 1_000);
+        depth.addInternal(Side.BID, 9_900, -1_000);
+
+        assertThat(depth.levelCount(Side.BID)).isZero();
+        assertThat(depth.quote(Side.ASK, 1_000, 0).filled()).isZero();
+    }
+
+    @Test
+    void quoteMatchesALinearWalkOfTheLevels() {
+        SplittableRandom random = new SplittableRandom(7);
+        long[] quantities = new long[200];
+        for (int i = 0; i < 2_000; i++) {
+            int level = random.nextInt(quantities.length);
+            long change = random.nextBoolean() ? 1 + random.nextInt(5_000) : -quantities[level] / 2;
+            quantities[level] += change;
+            depth.addInternal(Side.ASK, 10_000 + level, change);
+        }
+
+        for (long want : new long[]{1, 1_234, 50_000, 400_000, Long.MAX_VALUE / 4}) {
+            long remaining = want, filled = 0, notional = 0;
+            for (int level = 0; level < quantities.length && remaining > 0; level++) {
+                long take = Math.min(remaining, quantities[level]);
+                filled += take;
+                notional += (10_000L + level) * take / 1_000;
+                remaining -= take;
+            }
+            DepthIndex.Fill fill = depth.quote(Side.BID, want, 0);
+            assertThat(fill.filled()).isEqualTo(filled);
+            // Notional cắt cụt theo từng mức giá -> sai lệch tối đa một đơn vị mỗi mức
+            assertThat(fill.notional()).isBetween(notional - quantities.length, notional + quantities.length);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class EngineCheckpointerTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoreAfterACrashContinuesUnderANewJournalId() {
+        EngineJournal before = journal();
+        before.append(0, new CancelOrderCommand("BTC-USDT", "o-1"));
+        // Không close: như process / OS chết giữa hai lần force
+
+        EngineJournal after = journal();
+        List<Long> replayed = new ArrayList<>();
+        assertThat(after.wasCleanShutdown()).isFalse();
+        assertThat(checkpointer(after).restore((command, seq) -> replayed.add(seq), pending -> {
+        })).isTrue();
+
+        assertThat(replayed).containsExactly(1L);
+        assertThat(after.id()).isNotEqualTo(before.id());
+        // Sequence tiếp tục sau record đã replay; id mới chỉ áp cho kết quả từ đây
+        assertThat(after.append(0, new CancelOrderCommand("BTC-USDT", "o-2"))).isEqualTo(2);
+        after.close();
+    }
+
+    @Test
+    void restoreAfterACleanShutdownKeepsTheJournalId() {
+        EngineJournal before = journal();
+        before.append(0, new CancelOrderCommand("BTC-USDT", "o-1"));
+        before.close();
+
+        EngineJournal after = journal();
+        assertThat(after.wasCleanShutdown()).isTrue();
+        assertThat(checkpointer(after).restore((command, seq) -> {
+        }, pending -> {
+        })).isTrue();
+
+        assertThat(after.id()).isEqualTo(before.id());
+        after.close();
+        // Marker chỉ dùng một lần: lần mở sau không close thì lại coi là crash
+        journal();
+        assertThat(journal().wasCleanShutdown()).isFalse();
+    }
+
+    private EngineJournal journal() {
+        return new EngineJournal(true, dir.toString(), 1, 60_000, 1);
+    }
+
+    private EngineCheckpointer checkpointer(EngineJournal journal) {
+        CryptoExternalAPI cryptos = mock(CryptoExternalAPI.class);
+        OrderBookRegistry registry = new OrderBookRegistry(null, cryptos, new MarketDepthService(cryptos));
+        return new EngineCheckpointer(journal, new BookSnapshotStore(dir.toString()), registry,
+                new EngineSequencer(1, 16), 50_000, 60_000, 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EngineCodecTests {
+
+    private static final OrderBookStats STATS = new OrderBookStats(new BigDecimal("65010.5"),
+            new BigDecimal("65100"), new BigDecimal("64900"), new BigDecimal("64999.99"));
+
+    @Test
+    void newOrderRoundTripsEveryField() {
+        Order order = order();
+        NewOrderCommand decoded = (NewOrderCommand) roundTrip(new NewOrderCommand("BTC-USDT", order, STATS));
+
+        assertThat(decoded.pairId()).isEqualTo("BTC-USDT");
+        assertThat(decoded.order()).usingRecursiveComparison().isEqualTo(order);
+        assertThat(decoded.stats()).usingRecursiveComparison().isEqualTo(STATS);
+    }
+
+    @Test
+    void nullFieldsStayNull() {
+        Order order = Order.builder().id("o-1").side(Side.ASK).type(OrderType.MARKET).build();
+        NewOrderCommand decoded = (NewOrderCommand) roundTrip(new NewOrderCommand("BTC-USDT", order));
+
+        assertThat(decoded.order()).usingRecursiveComparison().isEqualTo(order);
+        assertThat(decoded.stats()).isNull();
+    }
+
+    @Test
+    void otherCommandsRoundTrip() {
+        EngineCommand[] commands = {
+                new CancelOrderCommand("ETH-USDT", "o-2"),
+                new TimerCommand("ETH-USDT", "o-3", TimerCommand.Kind.EXPIRE),
+                new PriceTickCommand("ETH-USDT", new BigDecimal("3120.45"), STATS),
+                new AmendOrderCommand("ETH-USDT", "o-4", new BigDecimal("3100"), new BigDecimal("0.5"),
+                        BigDecimal.ZERO, null)
+        };
+        for (EngineCommand command : commands) {
+            assertThat(roundTrip(command)).usingRecursiveComparison().isEqualTo(command);
+        }
+    }
+
+    @Test
+    void decimalsKeepTheirScale() {
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        EngineCodec.writeDecimal(buf, new BigDecimal("0.00000001"));
+        EngineCodec.writeDecimal(buf, new BigDecimal("-123456789012.12345678"));
+        EngineCodec.writeDecimal(buf, new BigDecimal("1E+3"));
+        buf.flip();
+
+        assertThat(EngineCodec.readDecimal(buf)).isEqualTo(new BigDecimal("0.00000001"));
+        assertThat(EngineCodec.readDecimal(buf)).isEqualTo(new BigDecimal("-123456789012.12345678"));
+        // Scale âm được chuẩn hóa về 0
+        assertThat(EngineCodec.readDecimal(buf)).isEqualTo(new BigDecimal("1000"));
+    }
+
+    static Order order() {
+        return Order.builder()
+                .id("o-1")
+                .userId("u-1")
+                .getCryptoId("BTC")
+                .giveCryptoId("USDT")
+                .quantity(new BigDecimal("0.250"))
+                .price(new BigDecimal("65000.00"))
+                .filledQuantity(new BigDecimal("0.100"))
+                .side(Side.BID)
+                .type(OrderType.STOP_LOSS_LIMIT)
+                .status(OrderStatus.PARTIALLY_FILLED)
+                .timeInForce(TimeInForce.GTD)
+                .createdAt(Instant.ofEpochMilli(1_700_000_000_000L))
+                .updatedAt(Instant.ofEpochMilli(1_700_000_001_000L))
+                .expiresAt(Instant.ofEpochMilli(1_700_086_400_000L))
+                .stopPrice(new BigDecimal("64000.00"))
+                .trailOffset(new BigDecimal("150.00"))
+                .build();
+    }
+
+    private static EngineCommand roundTrip(EngineCommand command) {
+        ByteBuffer buf = ByteBuffer.allocate(4 * 1024);
+        EngineCodec.writeCommand(buf, command);
+        buf.flip();
+        EngineCommand decoded = EngineCodec.readCommand(buf);
+        assertThat(buf.hasRemaining()).isFalse();
+        return decoded;
+    }
+}
@@ -0,0 +1,99 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EngineSequencerTests {
+
+    private final EngineSequencer sequencer = new EngineSequencer(4, 1024);
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @AfterEach
+    void tearDown() {
+        sequencer.stop();
+    }
+
+    @Test
+    void commandsOfAPairRunInOrderOnOneThread() {
+        sequencer.start(recorder());
+        for (int i = 0; i < 1_000; i++) {
+            sequencer.submit(new CancelOrderCommand("BTC-USDT", "o-" + i));
+        }
+        sequencer.stop();
+
+        assertThat(handled).hasSize(1_000);
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(handled.get(i)).isEqualTo(sequencer.shardIndexOf("BTC-USDT") + ":o-" + i);
+        }
+        assertThat(threads).hasSize(1);
+    }
+
+    @Test
+    void tasksRunInOrderWithThePairsCommands() {
+        sequencer.start(recorder());
+        sequencer.submit(new CancelOrderCommand("BTC-USDT", "before"));
+        sequencer.execute("BTC-USDT", shard -> handled.add(shard + ":task"));
+        sequencer.submit(new CancelOrderCommand("BTC-USDT", "after"));
+        sequencer.stop();
+
+        int shard = sequencer.shardIndexOf("BTC-USDT");
+        assertThat(handled).containsExactly(shard + ":before", shard + ":task", shard + ":after");
+    }
+
+    @Test
+    void movedPairKeepsItsOrderAcrossShards() {
+        List<String> moves = Collections.synchronizedList(new ArrayList<>());
+        sequencer.start(new EngineHandler() {
+            @Override
+            public void handle(int shard, EngineCommand command) {
+                handled.add(((CancelOrderCommand) command).orderId());
+            }
+
+            @Override
+            public Object release(int shard, String pairId) {
+                moves.add("release:" + shard);
+                return "state";
+            }
+
+            @Override
+            public void adopt(int shard, String pairId, Object state) {
+                moves.add("adopt:" + shard + ":" + state);
+            }
+        });
+        int source = sequencer.shardIndexOf("BTC-USDT");
+        int target = (source + 1) % sequencer.shardCount();
+
+        for (int i = 0; i < 500; i++) {
+            sequencer.submit(new CancelOrderCommand("BTC-USDT", "o-" + i));
+        }
+        assertThat(sequencer.reassign("BTC-USDT", target)).isTrue();
+        for (int i = 500; i < 1_000; i++) {
+            sequencer.submit(new CancelOrderCommand("BTC-USDT", "o-" + i));
+        }
+        sequencer.stop();
+
+        assertThat(handled).hasSize(1_000);
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(handled.get(i)).isEqualTo("o-" + i);
+        }
+        assertThat(moves).containsExactly("release:" + source, "adopt:" + target + ":state");
+        assertThat(sequencer.shardIndexOf("BTC-USDT")).isEqualTo(target);
+        assertThat(sequencer.reassign("BTC-USDT", target)).isFalse();
+    }
+
+    private EngineHandler recorder() {
+        return (shard, command) -> {
+            threads.add(Thread.currentThread().getName());
+            handled.add(shard + ":" + ((CancelOrderCommand) command).orderId());
+        };
+    }
+}
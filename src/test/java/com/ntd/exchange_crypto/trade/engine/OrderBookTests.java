@@ -0,0 +1,142 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderBookTests {
+
+    // Giá scale 2, quantity scale 3
+    private final OrderBook book = new OrderBook("BTC-USDT", 2, 3);
+
+    @Test
+    void levelKeepsArrivalOrder() {
+        book.add(order("a", Side.ASK, "100.00", "1.000"));
+        book.add(order("b", Side.ASK, "100.00", "2.000"));
+        book.add(order("c", Side.ASK, "100.00", "0.500"));
+
+        PriceLevel level = book.level(Side.ASK, 10_000);
+        assertThat(ids(level)).containsExactly("a", "b", "c");
+        assertThat(level.first().getOrder().getId()).isEqualTo("a");
+        assertThat(level.getTotalQuantity()).isEqualTo(3_500);
+        assertThat(level.getSize()).isEqualTo(3);
+    }
+
+    @Test
+    void bestLevelIsTheHighestBidAndTheLowestAsk() {
+        book.add(order("b1", Side.BID, "99.00", "1.000"));
+        book.add(order("b2", Side.BID, "99.50", "1.000"));
+        book.add(order("a1", Side.ASK, "101.00", "1.000"));
+        book.add(order("a2", Side.ASK, "100.50", "1.000"));
+
+        assertThat(book.best(Side.BID).getPrice()).isEqualTo(9_950);
+        assertThat(book.best(Side.ASK).getPrice()).isEqualTo(10_050);
+        assertThat(book.allLevels(Side.BID)).extracting(PriceLevel::getPrice).containsExactly(9_950L, 9_900L);
+        assertThat(book.allLevels(Side.ASK)).extracting(PriceLevel::getPrice).containsExactly(10_050L, 10_100L);
+    }
+
+    @Test
+    void removeByIdUnlinksOnlyThatOrder() {
+        List<String> removed = new ArrayList<>();
+        book.setRemovalListener((b, order) -> removed.add(order.getId()));
+        book.add(order("a", Side.BID, "100.00", "1.000"));
+        book.add(order("b", Side.BID, "100.00", "2.000"));
+        book.add(order("c", Side.BID, "100.00", "3.000"));
+
+        assertThat(book.remove("b").getId()).isEqualTo("b");
+
+        PriceLevel level = book.level(Side.BID, 10_000);
+        assertThat(ids(level)).containsExactly("a", "c");
+        assertThat(level.getTotalQuantity()).isEqualTo(4_000);
+        assertThat(book.contains("b")).isFalse();
+        assertThat(book.remove("b")).isNull();
+        assertThat(removed).containsExactly("b");
+    }
+
+    @Test
+    void emptiedLevelLeavesTheBookAndTheNextOneBecomesBest() {
+        book.add(order("a", Side.ASK, "100.00", "1.000"));
+        book.add(order("b", Side.ASK, "101.00", "1.000"));
+
+        book.remove("a");
+
+        assertThat(book.level(Side.ASK, 10_000)).isNull();
+        assertThat(book.best(Side.ASK).getPrice()).isEqualTo(10_100);
+        book.remove("b");
+        assertThat(book.best(Side.ASK)).isNull();
+    }
+
+    @Test
+    void reduceLowersTheOpenQuantityInPlace() {
+        book.add(order("a", Side.BID, "100.00", "1.000"));
+        book.add(order("b", Side.BID, "100.00", "2.000"));
+
+        book.reduce("a", 400);
+
+        PriceLevel level = book.level(Side.BID, 10_000);
+        assertThat(ids(level)).containsExactly("a", "b");
+        assertThat(book.entry("a").remaining()).isEqualTo(600);
+        assertThat(level.getTotalQuantity()).isEqualTo(2_600);
+
+        // Giảm hết (hoặc quá) phần còn lại không phải việc của reduce
+        book.reduce("a", 600);
+        assertThat(book.entry("a").remaining()).isEqualTo(600);
+    }
+
+    @Test
+    void fillsShrinkAnOrderUntilItLeavesTheBook() {
+        book.add(order("a", Side.ASK, "100.00", "1.000"));
+        book.add(order("b", Side.ASK, "100.00", "1.000"));
+
+        book.onFill("a", 300);
+        assertThat(book.entry("a").remaining()).isEqualTo(700);
+        assertThat(book.level(Side.ASK, 10_000).getTotalQuantity()).isEqualTo(1_700);
+
+        book.onFill("a", 700);
+        assertThat(book.contains("a")).isFalse();
+        assertThat(ids(book.level(Side.ASK, 10_000))).containsExactly("b");
+    }
+
+    @Test
+    void partlyFilledOrderRestsWithWhatIsLeft() {
+        Order order = order("a", Side.BID, "100.00", "1.000");
+        order.setFilledQuantity(new BigDecimal("0.250"));
+
+        assertThat(book.add(order)).isTrue();
+        assertThat(book.entry("a").remaining()).isEqualTo(750);
+
+        Order filled = order("b", Side.BID, "100.00", "1.000");
+        filled.setFilledQuantity(new BigDecimal("1.000"));
+        assertThat(book.add(filled)).isFalse();
+        assertThat(book.add(order("a", Side.BID, "100.00", "5.000"))).isFalse();
+        assertThat(book.size()).isEqualTo(1);
+    }
+
+    @Test
+    void earlyCancelIsTakenOnce() {
+        book.cancelEarly("late");
+
+        assertThat(book.takeEarlyCancel("other")).isFalse();
+        assertThat(book.takeEarlyCancel("late")).isTrue();
+        assertThat(book.takeEarlyCancel("late")).isFalse();
+    }
+
+    private static List<String> ids(PriceLevel level) {
+        return level.entries().stream().map(entry -> entry.getOrder().getId()).toList();
+    }
+
+    private static Order order(String id, Side side, String price, String quantity) {
+        Order order = new Order();
+        order.setId(id);
+        order.setSide(side);
+        order.setPrice(new BigDecimal(price));
+        order.setQuantity(new BigDecimal(quantity));
+        return order;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PairLeaseManagerTests {
+
+    private static final String EPOCH = "engine:epoch:BTC-USDT";
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    @SuppressWarnings("unchecked")
+    private final HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+    private PairLeaseManager leases;
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(redis.opsForHash()).thenReturn(hashes);
+        when(values.setIfAbsent(eq("engine:lease:BTC-USDT"), eq("node-b"), any(Duration.class))).thenReturn(true);
+        // Lượt trước (epoch 4) thuộc node-a
+        when(hashes.get(EPOCH, "node")).thenReturn("node-a");
+        when(hashes.increment(EPOCH, "epoch", 1)).thenReturn(5L);
+        leases = new PairLeaseManager(redis, true, "node-b", 10_000, 60_000, 300);
+    }
+
+    @AfterEach
+    void tearDown() {
+        leases.releaseAll();
+    }
+
+    @Test
+    void takeOverWaitsUntilThePreviousOwnerReportsItsEpochDrained() {
+        when(redis.hasKey("engine:node:node-a")).thenReturn(true);
+        when(hashes.get(EPOCH, "drained")).thenReturn(null, null, "4");
+
+        assertThat(leases.claim("BTC-USDT")).isEqualTo(PairLeaseManager.Claim.ACQUIRED);
+        assertThat(leases.awaitHandoff("BTC-USDT")).isTrue();
+        verify(hashes).put(EPOCH, "node", "node-b");
+    }
+
+    @Test
+    void takeOverDoesNotWaitForAPreviousOwnerThatIsGone() {
+        when(redis.hasKey("engine:node:node-a")).thenReturn(false);
+
+        leases.claim("BTC-USDT");
+
+        assertThat(leases.awaitHandoff("BTC-USDT")).isTrue();
+    }
+
+    @Test
+    void takeOverAlsoWaitsForThisNodesOwnPendingResults() {
+        when(redis.hasKey(anyString())).thenReturn(false);
+        AtomicBoolean drained = new AtomicBoolean();
+        leases.setDrained(pairId -> drained.getAndSet(true));
+
+        leases.claim("BTC-USDT");
+
+        assertThat(leases.awaitHandoff("BTC-USDT")).isTrue();
+        assertThat(drained).isTrue();
+    }
+
+    @Test
+    void takeOverGivesUpWhenALiveOwnerNeverDrains() {
+        when(redis.hasKey("engine:node:node-a")).thenReturn(true);
+
+        leases.claim("BTC-USDT");
+
+        assertThat(leases.awaitHandoff("BTC-USDT")).isFalse();
+    }
+}
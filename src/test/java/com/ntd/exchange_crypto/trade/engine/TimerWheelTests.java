@@ -0,0 +1,100 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimerWheelTests {
+
+    @Test
+    void firesWhenTheDeadlineTickIsReached() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        wheel.schedule("a", 25);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(29, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(30, fired::add);
+        assertThat(fired).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void keepsRoundsForDeadlinesBeyondOneRevolution() {
+        // 8 slot x 10 ms = 80 ms một vòng
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        wheel.schedule("near", 20);
+        wheel.schedule("far", 260);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(250, fired::add);
+        assertThat(fired).containsExactly("near");
+        wheel.advance(260, fired::add);
+        assertThat(fired).containsExactly("near", "far");
+    }
+
+    @Test
+    void firesInDeadlineOrderAcrossSlots() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        wheel.schedule("third", 70);
+        wheel.schedule("first", 10);
+        wheel.schedule("second", 40);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(100, fired::add);
+        assertThat(fired).containsExactly("first", "second", "third");
+    }
+
+    // Deadline đã qua -> rơi vào tick kế tiếp
+    @Test
+    void pastDeadlinesFireOnTheNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 1_000);
+        wheel.advance(1_500, s -> {
+        });
+        wheel.schedule("late", 1_200);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(1_510, fired::add);
+        assertThat(fired).containsExactly("late");
+    }
+
+    @Test
+    void cancelledTimersNeverFire() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        TimerWheel<String>.Timeout a = wheel.schedule("a", 30);
+        wheel.schedule("b", 30);
+        TimerWheel<String>.Timeout c = wheel.schedule("c", 30);
+
+        assertThat(a.cancel()).isTrue();
+        assertThat(c.cancel()).isTrue();
+        assertThat(a.cancel()).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(40, fired::add);
+        assertThat(fired).containsExactly("b");
+        assertThat(a.isActive()).isFalse();
+    }
+
+    @Test
+    void callbacksMayScheduleTimers() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        wheel.schedule("a", 10);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(50, payload -> {
+            fired.add(payload);
+            if (payload.equals("a")) wheel.schedule("b", 30);
+        });
+        assertThat(fired).containsExactly("a", "b");
+    }
+
+    @Test
+    void rejectsWheelSizesThatAreNotPowersOfTwo() {
+        assertThatThrownBy(() -> new TimerWheel<String>(10, 6, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrailingStopIndexTests {
+
+    // Giá scale 2: 100.00 -> 10_000
+    private final TrailingStopIndex index = new TrailingStopIndex(2);
+
+    @Test
+    void sellTrailFollowsTheHighAndFiresOffsetBelowIt() {
+        index.add(trail("sell", Side.ASK, "5"), 10_000);
+
+        assertThat(index.onPrice(10_200)).isEmpty();
+        assertThat(index.watermark("sell")).isEqualTo(10_200);
+        // Giá giảm không kéo watermark xuống
+        assertThat(index.onPrice(9_800)).isEmpty();
+        assertThat(index.watermark("sell")).isEqualTo(10_200);
+
+        assertThat(index.onPrice(9_700)).extracting(Order::getId).containsExactly("sell");
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void buyTrailFollowsTheLowAndFiresOffsetAboveIt() {
+        index.add(trail("buy", Side.BID, "5"), 10_000);
+
+        assertThat(index.onPrice(9_500)).isEmpty();
+        assertThat(index.watermark("buy")).isEqualTo(9_500);
+        assertThat(index.onPrice(9_999)).isEmpty();
+
+        assertThat(index.onPrice(10_000)).extracting(Order::getId).containsExactly("buy");
+    }
+
+    @Test
+    void groupsPassedByANewHighShareOneWatermark() {
+        index.add(trail("a", Side.ASK, "5"), 10_000);
+        index.add(trail("b", Side.ASK, "5"), 10_100);
+        index.add(trail("c", Side.ASK, "5"), 10_400);
+
+        index.onPrice(10_300);
+        assertThat(index.watermark("a")).isEqualTo(10_300);
+        assertThat(index.watermark("b")).isEqualTo(10_300);
+        assertThat(index.watermark("c")).isEqualTo(10_400);
+
+        // c chạm ở 10_400 - 500, a và b cùng chạm ở 10_300 - 500
+        assertThat(index.onPrice(9_850)).extracting(Order::getId).containsExactly("c");
+        assertThat(index.orders()).extracting(Order::getId).containsExactlyInAnyOrder("a", "b");
+        assertThat(index.onPrice(9_800)).extracting(Order::getId).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void bucketsWithDifferentOffsetsFireIndependently() {
+        index.add(trail("tight", Side.ASK, "1"), 10_000);
+        index.add(trail("wide", Side.ASK, "10"), 10_000);
+
+        assertThat(index.onPrice(9_900)).extracting(Order::getId).containsExactly("tight");
+        assertThat(index.contains("wide")).isTrue();
+        assertThat(index.onPrice(9_000)).extracting(Order::getId).containsExactly("wide");
+    }
+
+    @Test
+    void removedOrdersAreNotReleased() {
+        Order order = trail("a", Side.ASK, "5");
+        assertThat(index.add(order, 10_000)).isTrue();
+        assertThat(index.add(order, 10_000)).isFalse();
+
+        assertThat(index.remove("a")).isSameAs(order);
+        assertThat(index.remove("a")).isNull();
+        assertThat(index.watermark("a")).isZero();
+        assertThat(index.onPrice(1)).isEmpty();
+    }
+
+    @Test
+    void wouldTriggerMatchesOnPrice() {
+        Order sell = trail("sell", Side.ASK, "5");
+        Order buy = trail("buy", Side.BID, "5");
+
+        assertThat(index.wouldTrigger(sell, 10_000, 9_501)).isFalse();
+        assertThat(index.wouldTrigger(sell, 10_000, 9_500)).isTrue();
+        assertThat(index.wouldTrigger(buy, 10_000, 10_499)).isFalse();
+        assertThat(index.wouldTrigger(buy, 10_000, 10_500)).isTrue();
+    }
+
+    private static Order trail(String id, Side side, String offset) {
+        return Order.builder().id(id).side(side).type(OrderType.TRAILING_STOP).trailOffset(new BigDecimal(offset))
+                .build();
+    }
+}
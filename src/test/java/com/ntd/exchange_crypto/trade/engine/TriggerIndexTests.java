@@ -0,0 +1,78 @@
+package com.ntd.exchange_crypto.trade.engine;
+
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TriggerIndexTests {
+
+    // Giá scale 2: 100.00 -> 10_000
+    private final TriggerIndex index = new TriggerIndex(2);
+
+    @Test
+    void buyStopsAndSellTakeProfitsFireOnRise() {
+        assertThat(TriggerIndex.triggersOnRise(order("a", Side.BID, OrderType.STOP_LOSS, "1"))).isTrue();
+        assertThat(TriggerIndex.triggersOnRise(order("b", Side.ASK, OrderType.TAKE_PROFIT_LIMIT, "1"))).isTrue();
+        assertThat(TriggerIndex.triggersOnRise(order("c", Side.ASK, OrderType.STOP_LOSS_LIMIT, "1"))).isFalse();
+        assertThat(TriggerIndex.triggersOnRise(order("d", Side.BID, OrderType.TAKE_PROFIT, "1"))).isFalse();
+        assertThat(TriggerIndex.isConditional(order("e", Side.BID, OrderType.LIMIT, "1"))).isFalse();
+    }
+
+    @Test
+    void releasesOnlyTheCrossedRangeNearestStopFirst() {
+        index.add(order("up-101", Side.BID, OrderType.STOP_LOSS, "101"));
+        index.add(order("up-103", Side.BID, OrderType.STOP_LOSS, "103"));
+        index.add(order("up-105", Side.BID, OrderType.STOP_LOSS, "105"));
+        index.add(order("down-99", Side.ASK, OrderType.STOP_LOSS, "99"));
+
+        assertThat(index.release(10_000)).isEmpty();
+        assertThat(index.release(10_300)).extracting(Order::getId).containsExactly("up-103", "up-101");
+        assertThat(index.size()).isEqualTo(2);
+
+        assertThat(index.release(9_900)).extracting(Order::getId).containsExactly("down-99");
+        assertThat(index.orders()).extracting(Order::getId).containsExactly("up-105");
+    }
+
+    @Test
+    void ordersAtTheSameStopKeepArrivalOrder() {
+        // Giá giảm: stop gần giá mới nhất ra trước
+        index.add(order("first", Side.ASK, OrderType.STOP_LOSS, "95"));
+        index.add(order("second", Side.ASK, OrderType.STOP_LOSS, "95"));
+        index.add(order("deeper", Side.ASK, OrderType.STOP_LOSS, "90"));
+
+        assertThat(index.release(8_000)).extracting(Order::getId).containsExactly("deeper", "first", "second");
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void removedOrdersAreNotReleased() {
+        Order order = order("a", Side.BID, OrderType.STOP_LOSS, "101");
+        assertThat(index.add(order)).isTrue();
+        assertThat(index.add(order)).isFalse();
+        assertThat(index.contains("a")).isTrue();
+
+        assertThat(index.remove("a")).isSameAs(order);
+        assertThat(index.remove("a")).isNull();
+        assertThat(index.release(20_000)).isEmpty();
+    }
+
+    @Test
+    void wouldTriggerMatchesRelease() {
+        Order rising = order("a", Side.BID, OrderType.STOP_LOSS, "101");
+        Order falling = order("b", Side.ASK, OrderType.STOP_LOSS, "99");
+
+        assertThat(index.wouldTrigger(rising, 10_099)).isFalse();
+        assertThat(index.wouldTrigger(rising, 10_100)).isTrue();
+        assertThat(index.wouldTrigger(falling, 9_901)).isFalse();
+        assertThat(index.wouldTrigger(falling, 9_900)).isTrue();
+    }
+
+    private static Order order(String id, Side side, OrderType type, String stopPrice) {
+        return Order.builder().id(id).side(side).type(type).stopPrice(new BigDecimal(stopPrice)).build();
+    }
+}
@@ -0,0 +1,254 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.common.OrderLatencyMonitor;
+import com.ntd.exchange_crypto.cryptocurrency.CryptoExternalAPI;
+import com.ntd.exchange_crypto.order.OrderExternalAPI;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.enums.TimeInForce;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.MarketDepthService;
+import com.ntd.exchange_crypto.trade.engine.AmendOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.BookEntry;
+import com.ntd.exchange_crypto.trade.engine.CancelOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.EngineJournal;
+import com.ntd.exchange_crypto.trade.engine.EngineSequencer;
+import com.ntd.exchange_crypto.trade.engine.EngineTimers;
+import com.ntd.exchange_crypto.trade.engine.NewOrderCommand;
+import com.ntd.exchange_crypto.trade.engine.OrderBook;
+import com.ntd.exchange_crypto.trade.engine.OrderBookRegistry;
+import com.ntd.exchange_crypto.trade.engine.PairLeaseManager;
+import com.ntd.exchange_crypto.trade.model.OrderBookStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class MatchEngineTests {
+
+    private static final String PAIR = "BTC-USDT";
+    // Khoảng giá Binance nằm rất xa book -> LIMIT không khớp thì nằm chờ PENDING, không hẹn khớp anonymous
+    private static final OrderBookStats STATS = new OrderBookStats(
+            new BigDecimal("10000000"), new BigDecimal("10000000"), new BigDecimal("10000000"),
+            new BigDecimal("10000000"));
+
+    private final OrderExternalAPI orders = mock(OrderExternalAPI.class);
+    private final TradeService trades = mock(TradeService.class);
+    // "orderId:STATUS:quantity" theo thứ tự settlement stage nhận
+    private final List<String> fills = new ArrayList<>();
+    private MatchEngine engine;
+    private OrderBook book;
+    private int sequence;
+
+    @BeforeEach
+    void setUp() {
+        EngineSequencer sequencer = new EngineSequencer(1, 16);
+        EngineJournal journal = new EngineJournal(false, "target/test-journal", 1, 5, 1);
+        EngineTimers timers = new EngineTimers(sequencer, 100, 64, 1);
+        CryptoExternalAPI cryptos = mock(CryptoExternalAPI.class);
+        OrderBookRegistry registry = new OrderBookRegistry(null, cryptos, new MarketDepthService(cryptos));
+        PairLeaseManager leases = new PairLeaseManager(null, false, "test", 10_000, 3_000, 30_000);
+        engine = new MatchEngine(trades, null, orders, event -> {
+        }, registry, sequencer, journal, null, timers, leases, null, new OrderLatencyMonitor(false, 60_000),
+                "resident");
+        book = new OrderBook(PAIR, 2, 3);
+        registry.put(book);
+
+        doAnswer(invocation -> {
+            Order order = invocation.getArgument(3);
+            BigDecimal quantity = invocation.getArgument(4);
+            fills.add(order.getId() + ":" + order.getStatus() + ":" + quantity.stripTrailingZeros().toPlainString());
+            return null;
+        }).when(orders).submitFill(anyString(), anyLong(), anyInt(), any(), any(), any());
+    }
+
+    @Test
+    void takerFillsMakersOfALevelInArrivalOrder() {
+        Order first = place(Side.ASK, "100.00", "0.300");
+        Order second = place(Side.ASK, "100.00", "0.300");
+        Order taker = place(Side.BID, "100.00", "0.400");
+
+        assertThat(taker.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(first.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(second.getStatus()).isEqualTo(OrderStatus.PARTIALLY_FILLED);
+        assertThat(second.getFilledQuantity()).isEqualByComparingTo("0.1");
+        assertThat(book.contains(first.getId())).isFalse();
+        assertThat(book.entry(second.getId()).remaining()).isEqualTo(200);
+        assertThat(fills).containsSubsequence(taker.getId() + ":PARTIALLY_FILLED:0.3", first.getId() + ":FILLED:0.3",
+                taker.getId() + ":FILLED:0.1", second.getId() + ":PARTIALLY_FILLED:0.1");
+    }
+
+    @Test
+    void unfilledRemainderOfALimitOrderRests() {
+        Order maker = place(Side.ASK, "100.00", "0.300");
+        Order taker = place(Side.BID, "100.00", "1.000");
+
+        assertThat(maker.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(taker.getStatus()).isEqualTo(OrderStatus.PENDING);
+        assertThat(book.entry(taker.getId()).remaining()).isEqualTo(700);
+        assertThat(book.best(Side.BID).getPrice()).isEqualTo(10_000);
+    }
+
+    @Test
+    void makersOfTheSameUserAreSkipped() {
+        Order own = order(Side.ASK, TimeInForce.GTC, "100.00", "1.000");
+        Order other = place(Side.ASK, "100.00", "1.000");
+        engine.handle(0, new NewOrderCommand(PAIR, own, STATS));
+        Order taker = order(Side.BID, TimeInForce.GTC, "100.00", "1.500");
+        taker.setUserId(own.getUserId());
+        engine.handle(0, new NewOrderCommand(PAIR, taker, STATS));
+
+        assertThat(other.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(own.getFilledQuantity()).isEqualByComparingTo("0");
+        assertThat(book.contains(own.getId())).isTrue();
+        assertThat(taker.getFilledQuantity()).isEqualByComparingTo("1.000");
+    }
+
+    @Test
+    void iocRemainderExpiresInsteadOfResting() {
+        Order maker = place(Side.ASK, "100.00", "0.300");
+        Order taker = order(Side.BID, TimeInForce.IOC, "100.00", "1.000");
+        engine.handle(0, new NewOrderCommand(PAIR, taker, STATS));
+
+        assertThat(maker.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(taker.getStatus()).isEqualTo(OrderStatus.EXPIRED);
+        assertThat(taker.getFilledQuantity()).isEqualByComparingTo("0.3");
+        assertThat(book.contains(taker.getId())).isFalse();
+        verify(orders).submitRelease(anyString(), anyLong(), anyInt(), eq(taker));
+    }
+
+    @Test
+    void iocWithoutCounterOrdersOutsideThePriceRangeExpires() {
+        Order taker = order(Side.BID, TimeInForce.IOC, "100.00", "1.000");
+        engine.handle(0, new NewOrderCommand(PAIR, taker, STATS));
+
+        assertThat(taker.getStatus()).isEqualTo(OrderStatus.EXPIRED);
+        assertThat(book.size()).isZero();
+        verify(orders).submitRelease(anyString(), anyLong(), anyInt(), eq(taker));
+        verifyNoInteractions(trades);
+    }
+
+    @Test
+    void cancelRemovesARestingOrderAndReleasesIt() {
+        Order order = place(Side.BID, "100.00", "1.000");
+
+        engine.handle(0, new CancelOrderCommand(PAIR, order.getId()));
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELED);
+        assertThat(book.contains(order.getId())).isFalse();
+        verify(orders).submitRelease(anyString(), anyLong(), anyInt(), eq(order));
+    }
+
+    @Test
+    void cancelArrivingBeforeItsOrderCancelsItOnArrival() {
+        Order order = order(Side.BID, TimeInForce.GTC, "100.00", "1.000");
+        engine.handle(0, new CancelOrderCommand(PAIR, order.getId()));
+        place(Side.ASK, "100.00", "1.000");
+
+        engine.handle(0, new NewOrderCommand(PAIR, order, STATS));
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELED);
+        assertThat(order.getFilledQuantity()).isEqualByComparingTo("0");
+        assertThat(book.contains(order.getId())).isFalse();
+        verify(orders).submitRelease(anyString(), anyLong(), anyInt(), eq(order));
+    }
+
+    @Test
+    void amendDownAtTheSamePriceKeepsQueuePriority() {
+        Order first = place(Side.BID, "100.00", "1.000");
+        Order second = place(Side.BID, "100.00", "1.000");
+
+        engine.handle(0, new AmendOrderCommand(PAIR, first.getId(), new BigDecimal("100.00"),
+                new BigDecimal("0.400"), BigDecimal.ZERO, STATS));
+
+        assertThat(book.level(Side.BID, 10_000).first().getOrder()).isSameAs(first);
+        assertThat(book.entry(first.getId()).remaining()).isEqualTo(400);
+        assertThat(book.level(Side.BID, 10_000).getTotalQuantity()).isEqualTo(1_400);
+        assertThat(book.contains(second.getId())).isTrue();
+        verify(orders).submitAmend(anyString(), anyLong(), anyInt(), eq(first), eq(new BigDecimal("100.00")),
+                eq(new BigDecimal("1.000")), eq(BigDecimal.ZERO));
+    }
+
+    @Test
+    void repricedAmendLosesPriorityAndMatchesAgain() {
+        Order order = place(Side.BID, "100.00", "1.000");
+        Order later = place(Side.BID, "101.00", "1.000");
+        Order ask = place(Side.ASK, "101.00", "0.500");
+        assertThat(later.getFilledQuantity()).isEqualByComparingTo("0.5");
+
+        // Lên 101: xếp sau "later" ở mức 101, lúc đó không còn ask nào để khớp
+        engine.handle(0, new AmendOrderCommand(PAIR, order.getId(), new BigDecimal("101.00"),
+                new BigDecimal("1.000"), new BigDecimal("1"), STATS));
+
+        assertThat(ask.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(order.getPrice()).isEqualByComparingTo("101.00");
+        assertThat(book.level(Side.BID, 10_000)).isNull();
+        assertThat(book.level(Side.BID, 10_100).entries()).extracting(BookEntry::getOrder).containsExactly(later, order);
+    }
+
+    @Test
+    void amendNeedingMoreLockThanReservedIsRejected() {
+        Order order = place(Side.BID, "100.00", "1.000");
+
+        engine.handle(0, new AmendOrderCommand(PAIR, order.getId(), new BigDecimal("100.00"),
+                new BigDecimal("2.000"), BigDecimal.ZERO, STATS));
+
+        assertThat(order.getQuantity()).isEqualByComparingTo("1.000");
+        assertThat(book.entry(order.getId()).remaining()).isEqualTo(1_000);
+    }
+
+    @Test
+    void requeuedPartlyFilledOrderIsMatchedOnWhatIsLeft() {
+        Order maker = place(Side.ASK, "100.00", "0.400");
+        Order order = place(Side.BID, "100.00", "1.000");
+        Order counter = place(Side.ASK, "101.00", "0.700");
+        assertThat(order.getFilledQuantity()).isEqualByComparingTo("0.4");
+        assertThat(maker.getStatus()).isEqualTo(OrderStatus.FILLED);
+        fills.clear();
+
+        // Lên giá: 0.700 ở 101 đủ cho 0.600 còn lại nhưng không đủ cho 1.000 gốc
+        engine.handle(0, new AmendOrderCommand(PAIR, order.getId(), new BigDecimal("101.00"),
+                new BigDecimal("1.000"), new BigDecimal("0.6"), STATS));
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.FILLED);
+        assertThat(order.getFilledQuantity()).isEqualByComparingTo("1.000");
+        assertThat(book.contains(order.getId())).isFalse();
+        assertThat(book.entry(counter.getId()).remaining()).isEqualTo(100);
+        assertThat(fills).containsExactly(order.getId() + ":FILLED:0.6", counter.getId() + ":PARTIALLY_FILLED:0.6");
+    }
+
+    private Order place(Side side, String price, String quantity) {
+        Order order = order(side, TimeInForce.GTC, price, quantity);
+        engine.handle(0, new NewOrderCommand(PAIR, order, STATS));
+        return order;
+    }
+
+    private Order order(Side side, TimeInForce timeInForce, String price, String quantity) {
+        Order order = new Order();
+        order.setId("o-" + ++sequence);
+        order.setUserId("u-" + sequence);
+        order.setGetCryptoId(side == Side.BID ? "BTC" : "USDT");
+        order.setGiveCryptoId(side == Side.BID ? "USDT" : "BTC");
+        order.setSide(side);
+        order.setType(OrderType.LIMIT);
+        order.setStatus(OrderStatus.NEW);
+        order.setTimeInForce(timeInForce);
+        order.setPrice(new BigDecimal(price));
+        order.setQuantity(new BigDecimal(quantity));
+        return order;
+    }
+}
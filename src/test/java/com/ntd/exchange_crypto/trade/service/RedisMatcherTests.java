@@ -0,0 +1,81 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.order.OrderExternalAPI;
+import com.ntd.exchange_crypto.order.enums.OrderStatus;
+import com.ntd.exchange_crypto.order.enums.OrderType;
+import com.ntd.exchange_crypto.order.enums.Side;
+import com.ntd.exchange_crypto.order.model.Order;
+import com.ntd.exchange_crypto.trade.engine.RedisMatchScript;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisMatcherTests {
+
+    private final RedisMatchScript script = mock(RedisMatchScript.class);
+    private final OrderExternalAPI orders = mock(OrderExternalAPI.class);
+    private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+    private final RedisMatcher matcher = new RedisMatcher(script, orders, mock(TradeService.class), events);
+
+    @Test
+    void cancelReleasesOnlyWhatTheScriptRemoved() {
+        Order order = order();
+        when(orders.getOrderById("o-1")).thenReturn(order);
+        // 1.0 đặt, DB chưa thấy fill; script chỉ còn gỡ được 0.25
+        when(script.cancel("BTC-USDT", "o-1", Side.BID)).thenReturn(25_000_000L);
+
+        matcher.cancel("o-1", "BTC-USDT");
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELED);
+        verify(orders).releaseOrder(order, new BigDecimal("0.25000000"));
+        verify(orders, never()).releaseOrder(order);
+        verify(events).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void cancelOfAnOrderNoLongerInTheBookReleasesNothing() {
+        Order order = order();
+        when(orders.getOrderById("o-1")).thenReturn(order);
+        when(script.cancel("BTC-USDT", "o-1", Side.BID)).thenReturn(RedisMatchScript.GONE);
+
+        matcher.cancel("o-1", "BTC-USDT");
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.PENDING);
+        verify(orders, never()).releaseOrder(any());
+        verify(orders, never()).releaseOrder(any(), any());
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void legacyHashFallsBackToTheDatabaseRemainder() {
+        Order order = order();
+        when(orders.getOrderById("o-1")).thenReturn(order);
+        when(script.cancel("BTC-USDT", "o-1", Side.BID)).thenReturn(RedisMatchScript.UNTRACKED);
+
+        matcher.cancel("o-1", "BTC-USDT");
+
+        verify(orders).releaseOrder(order);
+        verify(orders, never()).releaseOrder(eq(order), any());
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setId("o-1");
+        order.setUserId("u-1");
+        order.setSide(Side.BID);
+        order.setType(OrderType.LIMIT);
+        order.setStatus(OrderStatus.PENDING);
+        order.setPrice(new BigDecimal("100"));
+        order.setQuantity(BigDecimal.ONE);
+        return order;
+    }
+}
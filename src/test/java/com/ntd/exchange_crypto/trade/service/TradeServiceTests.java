@@ -0,0 +1,51 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.trade.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class TradeServiceTests {
+
+    private final TradeWriteBehindSink sink = mock(TradeWriteBehindSink.class);
+    private final TradeService tradeService = new TradeService(null, null, sink);
+
+    @Test
+    void engineTradeIdsAreDerivedFromTheJournal() {
+        Trade first = trade();
+        Trade replayed = trade();
+        Trade next = trade();
+
+        tradeService.saveTrade("journal-1/BTC-USDT", 42, 0, first);
+        tradeService.saveTrade("journal-1/BTC-USDT", 42, 0, replayed);
+        tradeService.saveTrade("journal-1/BTC-USDT", 42, 1, next);
+
+        assertThat(replayed.getId()).isEqualTo(first.getId()).hasSize(36);
+        assertThat(next.getId()).isNotEqualTo(first.getId());
+        verify(sink).enqueue(eq("journal-1/BTC-USDT"), same(first));
+    }
+
+    @Test
+    void tradesWithoutSequenceGetRandomIds() {
+        Trade first = trade();
+        Trade second = trade();
+
+        tradeService.saveTrade("journal-1/BTC-USDT", 0, 0, first);
+        tradeService.saveTrade("journal-1/BTC-USDT", 0, 0, second);
+
+        assertThat(first.getId()).isNotEqualTo(second.getId());
+        assertThat(first.getCreatedAt()).isNotNull();
+        verify(sink).enqueue(same(first));
+    }
+
+    private static Trade trade() {
+        return Trade.builder().takerOrderId("t").makerOrderId("m").productId("BTCUSDT")
+                .price(new BigDecimal("65000")).quantity(BigDecimal.ONE).build();
+    }
+}
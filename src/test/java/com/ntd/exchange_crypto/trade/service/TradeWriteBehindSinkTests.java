@@ -0,0 +1,116 @@
+package com.ntd.exchange_crypto.trade.service;
+
+import com.ntd.exchange_crypto.trade.model.FailedTrade;
+import com.ntd.exchange_crypto.trade.model.Trade;
+import com.ntd.exchange_crypto.trade.repository.FailedTradeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TradeWriteBehindSinkTests {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final FailedTradeRepository failedTrades = mock(FailedTradeRepository.class);
+    private final TradeWriteBehindSink sink = new TradeWriteBehindSink(jdbcTemplate, failedTrades, 16, 10, 200);
+    // id của các trade đã ghi được, theo thứ tự
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void badRowIsParkedAndTheRestIsWritten() throws InterruptedException {
+        failInsertsOf("bad", new DataIntegrityViolationException("Duplicate entry"));
+        sink.start();
+
+        sink.enqueue("j/BTC-USDT", trade("good-1"));
+        sink.enqueue("j/BTC-USDT", trade("bad"));
+        sink.enqueue("j/BTC-USDT", trade("good-2"));
+        sink.stop();
+
+        assertThat(written).containsSubsequence("good-1", "good-2").doesNotContain("bad");
+        assertThat(sink.parked()).isEqualTo(1);
+        ArgumentCaptor<FailedTrade> parked = ArgumentCaptor.forClass(FailedTrade.class);
+        verify(failedTrades).save(parked.capture());
+        assertThat(parked.getValue().getTradeId()).isEqualTo("bad");
+        assertThat(parked.getValue().getDetail()).contains("stream=j/BTC-USDT");
+        // Trade đã vào dead letter không còn bị coi là chưa ghi
+        assertThat(sink.unsaved("j/BTC-USDT")).isEmpty();
+    }
+
+    @Test
+    void transientErrorIsRetriedNotParked() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    if (calls.incrementAndGet() == 1) throw new QueryTimeoutException("Lock wait timeout");
+                    written.addAll(ids(invocation.getArgument(1), invocation.getArgument(3)));
+                    return new int[0][];
+                });
+
+        sink.enqueue("j/BTC-USDT", trade("t-1"));
+
+        assertThat(written).containsExactly("t-1");
+        assertThat(calls).hasValue(2);
+        assertThat(sink.parked()).isZero();
+        verify(failedTrades, never()).save(any());
+    }
+
+    private void failInsertsOf(String tradeId, RuntimeException error) {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    List<String> ids = ids(invocation.getArgument(1), invocation.getArgument(3));
+                    if (ids.contains(tradeId)) throw error;
+                    written.addAll(ids);
+                    return new int[0][];
+                });
+    }
+
+    // Chạy setter của batch trên PreparedStatement giả để đọc id (tham số 1) của từng trade
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<String> ids(Collection<?> batch, ParameterizedPreparedStatementSetter setter)
+            throws SQLException {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (Object pending : batch) {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            setter.setValues(ps, pending);
+            ArgumentCaptor<String> id = ArgumentCaptor.forClass(String.class);
+            verify(ps).setString(eq(1), id.capture());
+            ids.add(id.getValue());
+        }
+        return ids;
+    }
+
+    private static Trade trade(String id) {
+        return Trade.builder()
+                .id(id)
+                .takerOrderId("taker")
+                .makerOrderId("maker")
+                .productId("BTC-USDT")
+                .price(new BigDecimal("65000"))
+                .quantity(new BigDecimal("0.1"))
+                .createdAt(Instant.now())
+                .build();
+    }
+}